@@ -0,0 +1,193 @@
+/**
+ *
+ * bloomfilter - Bloom filters for Java
+ * Copyright (c) 2014-2015, Sandeep Gupta
+ * 
+ * http://sangupta.com/projects/bloomfilter
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+
+package com.sangupta.bloomfilter.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.BitSet;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.sangupta.bloomfilter.BloomFilter;
+
+/**
+ * JMH benchmarks for the <code>add(byte[])</code>,
+ * <code>contains(byte[])</code> and <code>containsBatch(byte[][])</code> hot
+ * paths of the bloom filter across all
+ * {@link FilterBackend}s, filter sizes, key sizes and hit ratios.
+ * 
+ * Throughput and latency percentiles are reported by the benchmark modes
+ * themselves; run with <code>-prof gc</code> to also get the bytes allocated
+ * per operation.
+ * 
+ * @author sangupta
+ * @since 1.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BloomFilterBenchmark {
+	
+	/**
+	 * Number of distinct keys that are cycled through during the benchmark
+	 */
+	private static final int NUM_QUERIES = 1 << 16;
+	
+	/**
+	 * Number of keys tested per invocation of the batch benchmark
+	 */
+	private static final int BATCH = 64;
+	
+	/**
+	 * The false positive probability the filters are sized for
+	 */
+	private static final double FPP = 0.01d;
+	
+	@Param({ "MEMORY", "OFF_HEAP", "CONCURRENT", "BLOCKED", "SPLIT_BLOCK", "FILE", "MMAP" })
+	public FilterBackend backend;
+	
+	@Param({ "1000000", "100000000", "1000000000" })
+	public int numBits;
+	
+	@Param({ "16", "64", "256" })
+	public int keySize;
+	
+	/**
+	 * Fraction of the queried keys that were added to the filter before the
+	 * measurement started
+	 */
+	@Param({ "0.0", "0.5", "1.0" })
+	public double hitRatio;
+	
+	/**
+	 * Number of keys added to the filter before the measurement starts. This
+	 * is the pool from which the hits are drawn.
+	 */
+	@Param({ "10000" })
+	public int numPresent;
+	
+	private File file;
+	
+	private BloomFilter<String> filter;
+	
+	private byte[][] queries;
+	
+	@Setup(Level.Trial)
+	public void setup() throws IOException {
+		if(this.backend.needsFile()) {
+			this.file = File.createTempFile("bloomfilter-benchmark", ".bits");
+			this.file.deleteOnExit();
+		}
+		
+		this.filter = this.backend.create(this.numBits, FPP, this.file);
+		
+		Random random = new Random(42);
+		byte[][] present = new byte[this.numPresent][];
+		for(int index = 0; index < present.length; index++) {
+			present[index] = randomKey(random);
+			this.filter.add(present[index]);
+		}
+		
+		this.queries = new byte[NUM_QUERIES][];
+		for(int index = 0; index < NUM_QUERIES; index++) {
+			if(random.nextDouble() < this.hitRatio) {
+				this.queries[index] = present[random.nextInt(present.length)];
+			} else {
+				this.queries[index] = randomKey(random);
+			}
+		}
+	}
+	
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		this.filter.close();
+		if(this.file != null) {
+			this.file.delete();
+		}
+	}
+	
+	/**
+	 * Per-thread position in the query array
+	 */
+	@State(Scope.Thread)
+	public static class Cursor {
+		
+		private int position;
+		
+		private final byte[][] batch = new byte[BATCH][];
+		
+		int next() {
+			return (this.position++) & (NUM_QUERIES - 1);
+		}
+		
+		byte[][] nextBatch(byte[][] queries) {
+			for(int index = 0; index < BATCH; index++) {
+				this.batch[index] = queries[next()];
+			}
+			
+			return this.batch;
+		}
+		
+	}
+	
+	@Benchmark
+	public boolean add(Cursor cursor) {
+		return this.filter.add(this.queries[cursor.next()]);
+	}
+	
+	@Benchmark
+	public boolean contains(Cursor cursor) {
+		return this.filter.contains(this.queries[cursor.next()]);
+	}
+	
+	@Benchmark
+	@OperationsPerInvocation(BATCH)
+	public BitSet containsBatch(Cursor cursor) {
+		return this.filter.containsBatch(cursor.nextBatch(this.queries));
+	}
+	
+	private byte[] randomKey(Random random) {
+		byte[] key = new byte[this.keySize];
+		random.nextBytes(key);
+		return key;
+	}
+	
+}
@@ -0,0 +1,212 @@
+/**
+ *
+ * bloomfilter - Bloom filters for Java
+ * Copyright (c) 2014-2015, Sandeep Gupta
+ * 
+ * http://sangupta.com/projects/bloomfilter
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+
+package com.sangupta.bloomfilter.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+
+import com.sangupta.bloomfilter.AbstractBloomFilter;
+import com.sangupta.bloomfilter.BloomFilter;
+import com.sangupta.bloomfilter.core.BitArray;
+import com.sangupta.bloomfilter.core.FastBitArray;
+import com.sangupta.bloomfilter.core.FileBackedBitArray;
+import com.sangupta.bloomfilter.core.MMapFileBackedBitArray;
+import com.sangupta.bloomfilter.impl.BlockedBloomFilter;
+import com.sangupta.bloomfilter.impl.ConcurrentInMemoryBloomFilter;
+import com.sangupta.bloomfilter.impl.InMemoryBloomFilter;
+import com.sangupta.bloomfilter.impl.OffHeapBloomFilter;
+import com.sangupta.bloomfilter.impl.SplitBlockBloomFilter;
+
+/**
+ * The different {@link BitArray} backends that are exercised by the
+ * benchmarks. Each backend knows how to build a {@link BloomFilter} of a given
+ * size in bits.
+ * 
+ * @author sangupta
+ * @since 1.0
+ */
+public enum FilterBackend {
+	
+	/**
+	 * {@link InMemoryBloomFilter} backed by a {@link FastBitArray}
+	 */
+	MEMORY {
+		
+		@Override
+		public BloomFilter<String> create(int numBits, double fpp, File file) {
+			return new InMemoryBloomFilter<String>(expectedInsertions(numBits, fpp), fpp);
+		}
+		
+	},
+	
+	/**
+	 * {@link OffHeapBloomFilter} held in direct memory, aligned for huge pages
+	 */
+	OFF_HEAP {
+		
+		@Override
+		public BloomFilter<String> create(int numBits, double fpp, File file) {
+			return new OffHeapBloomFilter<String>(expectedInsertions(numBits, fpp), fpp, 2 * 1024 * 1024);
+		}
+		
+	},
+	
+	/**
+	 * Lock-free {@link ConcurrentInMemoryBloomFilter}, run with <code>-t</code>
+	 * to measure scaling across threads
+	 */
+	CONCURRENT {
+		
+		@Override
+		public BloomFilter<String> create(int numBits, double fpp, File file) {
+			return new ConcurrentInMemoryBloomFilter<String>(expectedInsertions(numBits, fpp), fpp);
+		}
+		
+	},
+	
+	/**
+	 * Cache-line {@link BlockedBloomFilter} held in memory
+	 */
+	BLOCKED {
+		
+		@Override
+		public BloomFilter<String> create(int numBits, double fpp, File file) {
+			return new BlockedBloomFilter<String>(expectedInsertions(numBits, fpp), fpp);
+		}
+		
+	},
+	
+	/**
+	 * Parquet style {@link SplitBlockBloomFilter} held in memory, sized to the
+	 * next power of two bytes
+	 */
+	SPLIT_BLOCK {
+		
+		@Override
+		public BloomFilter<String> create(int numBits, double fpp, File file) {
+			return new SplitBlockBloomFilter<String>(expectedInsertions(numBits, fpp), fpp);
+		}
+		
+	},
+	
+	/**
+	 * Filter backed by a {@link FileBackedBitArray}
+	 */
+	FILE {
+		
+		@Override
+		public BloomFilter<String> create(int numBits, double fpp, final File file) {
+			return new AbstractBloomFilter<String>(expectedInsertions(numBits, fpp), fpp) {
+				
+				@Override
+				protected BitArray createBitArray(long numBits) {
+					try {
+						return new FileBackedBitArray(file, numBits);
+					} catch (IOException e) {
+						throw new RuntimeException("Unable to create file backed bit array", e);
+					}
+				}
+				
+			};
+		}
+		
+		@Override
+		public boolean needsFile() {
+			return true;
+		}
+		
+	},
+	
+	/**
+	 * Filter backed by a {@link MMapFileBackedBitArray}
+	 */
+	MMAP {
+		
+		@Override
+		public BloomFilter<String> create(int numBits, double fpp, final File file) {
+			return new AbstractBloomFilter<String>(expectedInsertions(numBits, fpp), fpp) {
+				
+				@Override
+				protected BitArray createBitArray(long numBits) {
+					try {
+						return new MMapFileBackedBitArray(file, numBits);
+					} catch (IOException e) {
+						throw new RuntimeException("Unable to create memory-mapped bit array", e);
+					}
+				}
+				
+			};
+		}
+		
+		@Override
+		public boolean needsFile() {
+			return true;
+		}
+		
+	};
+	
+	/**
+	 * Create a new filter that uses roughly the given number of bits.
+	 * 
+	 * @param numBits
+	 *            the number of bits the filter should use
+	 * 
+	 * @param fpp
+	 *            the false positive probability the filter is sized for
+	 * 
+	 * @param file
+	 *            the backing file to use, if {@link #needsFile()} is
+	 *            <code>true</code>
+	 * 
+	 * @return the newly created filter
+	 */
+	public abstract BloomFilter<String> create(int numBits, double fpp, File file);
+	
+	/**
+	 * Whether this backend needs a backing file.
+	 * 
+	 * @return <code>true</code> if a file must be supplied to
+	 *         {@link #create(int, double, File)}
+	 */
+	public boolean needsFile() {
+		return false;
+	}
+	
+	/**
+	 * Compute the number of insertions for which a filter of the given size
+	 * is optimal. This is the inverse of
+	 * {@link AbstractBloomFilter#optimalBitSizeOrM(double, double)}.
+	 * 
+	 * @param numBits
+	 *            the desired number of bits
+	 * 
+	 * @param fpp
+	 *            the desired false positive probability
+	 * 
+	 * @return the number of expected insertions
+	 */
+	public static int expectedInsertions(long numBits, double fpp) {
+		return (int) Math.max(1, (-numBits * AbstractBloomFilter.LOG_2_SQUARE / Math.log(fpp)));
+	}
+
+}
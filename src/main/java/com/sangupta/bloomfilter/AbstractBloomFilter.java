@@ -22,26 +22,27 @@
 package com.sangupta.bloomfilter;
 
 import java.io.Closeable;
+import java.io.File;
 import java.io.IOException;
-import java.nio.charset.Charset;
+import java.io.RandomAccessFile;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.BitSet;
 import java.util.Collection;
+import java.util.zip.CRC32;
 
 import com.sangupta.bloomfilter.core.BitArray;
-import com.sangupta.bloomfilter.decompose.ByteSink;
-import com.sangupta.bloomfilter.decompose.Decomposable;
+import com.sangupta.bloomfilter.core.BitArrayCodec;
 import com.sangupta.bloomfilter.decompose.Decomposer;
-import com.sangupta.bloomfilter.decompose.DefaultDecomposer;
 import com.sangupta.bloomfilter.hash.HashFunction;
-import com.sangupta.bloomfilter.hash.Murmur3HashFunction;
+import com.sangupta.bloomfilter.hash.SeededHashFunction;
 
 /**
- * An abstract implementation for the bloom filter.
- * 
- * The default composer is a simple {@link Object#toString()} decomposer which
- * then converts this {@link String} into raw bytes.
- * 
- * The default {@link HashFunction} used by the bloom filter is the
- * {@link Murmur3HashFunction}.
+ * An abstract implementation for the bloom filter. Values are decomposed
+ * and hashed as described in {@link AbstractHashingFilter}.
  * 
  * One may override the decomposer to be used, the hash function to be used
  * as well as the implementation of the {@link BitArray} that needs to be
@@ -52,58 +53,71 @@ import com.sangupta.bloomfilter.hash.Murmur3HashFunction;
  * 
  * @param <T> the type of objects to be stored in the filter
  */
-public abstract class AbstractBloomFilter<T> implements BloomFilter<T> {
+public abstract class AbstractBloomFilter<T> extends AbstractHashingFilter<T> {
 	
 	/**
-	 * The decomposer to use when there is none specified at construction
+	 * Constant
 	 */
-	protected static final Decomposer<Object> DEFAULT_COMPOSER = new DefaultDecomposer();
+	public static final double LOG_2 = Math.log(2);
 	
 	/**
-	 * The default hasher to use if one is not specified
+	 * Constant
 	 */
-	protected static final HashFunction DEFAULT_HASHER = new Murmur3HashFunction();
+	public static final double LOG_2_SQUARE = LOG_2 * LOG_2;
 	
 	/**
-	 * Constant
+	 * Number of elements hashed together before probing the {@link BitArray}
+	 * in the batch operations
 	 */
-	public static final double LOG_2 = Math.log(2);
+	protected static final int BATCH_SIZE = 64;
 	
 	/**
-	 * Constant
+	 * Magic number at the start of a filter file, <code>BFLT</code>
 	 */
-	public static final double LOG_2_SQUARE = LOG_2 * LOG_2;
+	public static final int FILE_MAGIC = 0x42464C54;
 	
 	/**
-	 * The default {@link Charset} is the platform encoding charset
+	 * Version of the file format
 	 */
-	protected transient Charset currentCharset = Charset.defaultCharset();
+	public static final int FILE_VERSION = 1;
 	
 	/**
-	 * The {@link BitArray} instance that holds the entire data
+	 * Size of the file header in bytes
 	 */
-	protected final BitArray bitArray;
+	private static final int FILE_HEADER_SIZE = 48;
 	
 	/**
-	 * Number of hash functions needed
+	 * Probe layout of filters that set <code>k</code> bits anywhere in the
+	 * array by double hashing
 	 */
-	protected final int kOrNumberOfHashFunctions;
+	public static final int PROBE_LAYOUT_STANDARD = 1;
 	
 	/**
-	 * Holds the custom decomposer that should be used for this bloom filter
-	 * 
+	 * Probe layout of filters that set all bits of an element in one block
+	 * of a cache line
+	 */
+	public static final int PROBE_LAYOUT_BLOCKED = 2;
+	
+	/**
+	 * Probe layout of filters that set one bit in each of the eight 32-bit
+	 * lanes of a 256-bit block, as Apache Parquet does
+	 */
+	public static final int PROBE_LAYOUT_SPLIT_BLOCK = 3;
+	
+	/**
+	 * The {@link BitArray} instance that holds the entire data
 	 */
-	protected final Decomposer<T> customDecomposer;
+	protected final BitArray bitArray;
 	
 	/**
-	 * The hashing method to be used for hashing
+	 * Number of hash functions needed
 	 */
-	protected final HashFunction hasher;
+	protected final int kOrNumberOfHashFunctions;
 	
 	/**
 	 * Number of bits required for the bloom filter
 	 */
-	protected final int numBitsRequired;
+	protected final long numBitsRequired;
 	
 	// Various construction mechanisms
 	
@@ -117,7 +131,7 @@ public abstract class AbstractBloomFilter<T> implements BloomFilter<T> {
 	 *            the max false positive probability rate that the bloom filter
 	 *            can give
 	 */
-	protected AbstractBloomFilter(int expectedInsertions, double falsePositiveProbability) {
+	protected AbstractBloomFilter(long expectedInsertions, double falsePositiveProbability) {
 		this(expectedInsertions, falsePositiveProbability, null, null);
 	}
 	
@@ -135,7 +149,7 @@ public abstract class AbstractBloomFilter<T> implements BloomFilter<T> {
 	 *            a {@link Decomposer} that helps decompose the given object
 	 * 
 	 */
-	protected AbstractBloomFilter(int expectedInsertions, double falsePositiveProbability, Decomposer<T> decomposer) {
+	protected AbstractBloomFilter(long expectedInsertions, double falsePositiveProbability, Decomposer<T> decomposer) {
 		this(expectedInsertions, falsePositiveProbability, decomposer, null);
 	}
 	
@@ -154,21 +168,51 @@ public abstract class AbstractBloomFilter<T> implements BloomFilter<T> {
 	 * 
 	 * @param hasher
 	 *            the hash function to use. If <code>null</code> is specified
-	 *            the {@link AbstractBloomFilter#DEFAULT_HASHER} will be used as
+	 *            the {@link AbstractHashingFilter#DEFAULT_HASHER} will be used as
 	 *            the hashing function
 	 */
-	protected AbstractBloomFilter(int expectedInsertions, double falsePositiveProbability, Decomposer<T> decomposer, HashFunction hasher) {
-		this.numBitsRequired = optimalBitSizeOrM(expectedInsertions, falsePositiveProbability);
+	protected AbstractBloomFilter(long expectedInsertions, double falsePositiveProbability, Decomposer<T> decomposer, HashFunction hasher) {
+		super(decomposer, hasher);
+		
+		this.numBitsRequired = checkedBitSize(expectedInsertions, falsePositiveProbability);
 		this.kOrNumberOfHashFunctions = optimalNumberofHashFunctionsOrK(expectedInsertions, numBitsRequired);
 		this.bitArray = createBitArray(numBitsRequired);
+	}
+	
+	/**
+	 * Create a new bloom filter over an already existing {@link BitArray}, say
+	 * one that was persisted earlier or written by another tool. The
+	 * {@link #createBitArray(long)} method is not invoked.
+	 * 
+	 * @param bitArray
+	 *            the {@link BitArray} that holds the filter data
+	 * 
+	 * @param numHashFunctions
+	 *            the number of hash functions, or <code>k</code>, the filter
+	 *            was built with
+	 * 
+	 * @param decomposer
+	 *            a {@link Decomposer} that helps decompose the given object
+	 * 
+	 * @param hasher
+	 *            the hash function to use. If <code>null</code> is specified
+	 *            the {@link AbstractHashingFilter#DEFAULT_HASHER} will be used as
+	 *            the hashing function
+	 */
+	protected AbstractBloomFilter(BitArray bitArray, int numHashFunctions, Decomposer<T> decomposer, HashFunction hasher) {
+		super(decomposer, hasher);
 		
-		this.customDecomposer = decomposer;
+		if(bitArray == null) {
+			throw new IllegalArgumentException("BitArray cannot be null");
+		}
 		
-		if(hasher != null) {
-			this.hasher = hasher;
-		} else {
-			this.hasher = DEFAULT_HASHER;
+		if(numHashFunctions <= 0) {
+			throw new IllegalArgumentException("Number of hash functions cannot be less than or equal to zero");
 		}
+		
+		this.bitArray = bitArray;
+		this.numBitsRequired = bitArray.bitSize();
+		this.kOrNumberOfHashFunctions = numHashFunctions;
 	}
 	
 	// Default bloom filter functions follow
@@ -184,11 +228,42 @@ public abstract class AbstractBloomFilter<T> implements BloomFilter<T> {
 	 * 
 	 * @return the optimal size in bits for the filter, or <code>m</code>
 	 */
-	public static int optimalBitSizeOrM(final double n, final double p) {
-		return (int) (-n * Math.log(p) / (LOG_2_SQUARE));
+	public static long optimalBitSizeOrM(final double n, final double p) {
+		return Math.max(1, (long) (-n * Math.log(p) / (LOG_2_SQUARE)));
         // return (int) Math.ceil(-1 * n * Math.log(p) / LOG_2_SQUARE);
 	}
 	
+	/**
+	 * Validate the number of expected insertions and the false positive
+	 * probability, and compute the optimal size of the bloom filter in bits.
+	 * For subclasses that create their {@link BitArray} before calling the
+	 * constructor.
+	 * 
+	 * @param expectedInsertions
+	 *            the number of max expected insertions
+	 * 
+	 * @param falsePositiveProbability
+	 *            the max false positive probability rate that the bloom filter
+	 *            can give
+	 * 
+	 * @return the optimal size in bits for the filter
+	 * 
+	 * @throws IllegalArgumentException
+	 *             if the expected insertions are not positive, or the
+	 *             probability is not between zero and one
+	 */
+	protected static long checkedBitSize(long expectedInsertions, double falsePositiveProbability) {
+		if(expectedInsertions <= 0) {
+			throw new IllegalArgumentException("Expected insertions cannot be less than or equal to zero");
+		}
+		
+		if(falsePositiveProbability <= 0 || falsePositiveProbability >= 1) {
+			throw new IllegalArgumentException("False positive probability must be between zero and one");
+		}
+		
+		return optimalBitSizeOrM(expectedInsertions, falsePositiveProbability);
+	}
+	
 	/**
 	 * Compute the optimal number of hash functions, <code>k</code>
 	 * 
@@ -202,7 +277,7 @@ public abstract class AbstractBloomFilter<T> implements BloomFilter<T> {
 	 *         <code>k</code>
 	 */
 	public static int optimalNumberofHashFunctionsOrK(final long n, final long m) {
-		return Math.max(1, (int) Math.round(m / n * Math.log(2)));
+		return Math.max(1, (int) Math.round((double) m / n * LOG_2));
 		// return Math.max(1, (int) Math.round(m / n * LOG_2));
 	}
 	
@@ -216,7 +291,7 @@ public abstract class AbstractBloomFilter<T> implements BloomFilter<T> {
 	 * 
 	 * @return the {@link BitArray} implementation to be used
 	 */
-	protected abstract BitArray createBitArray(int numBits);
+	protected abstract BitArray createBitArray(long numBits);
 	
 	// Main functions that govern the bloom filter
 	
@@ -234,22 +309,7 @@ public abstract class AbstractBloomFilter<T> implements BloomFilter<T> {
 	 */
 	@Override
 	public final boolean add(byte[] bytes) {
-		long hash64 = getLongHash64(bytes);
-		
-		// apply the less hashing technique
-		int hash1 = (int) hash64;
-		int hash2 = (int) (hash64 >>> 32);
-		
-		boolean bitsChanged = false;
-		for (int i = 1; i <= this.kOrNumberOfHashFunctions; i++) {
-			int nextHash = hash1 + i * hash2;
-			if (nextHash < 0) {
-				nextHash = ~nextHash;
-			}
-			bitsChanged |= this.bitArray.setBit(nextHash % this.bitArray.bitSize());
-		}
-		
-		return bitsChanged;
+		return setBits(this.bitArray, getLongHash64(bytes));
 	}
 	
 	/**
@@ -267,72 +327,324 @@ public abstract class AbstractBloomFilter<T> implements BloomFilter<T> {
 	 */
 	@Override
 	public final boolean contains(byte[] bytes) {
-		long hash64 = getLongHash64(bytes);
-		
-		int hash1 = (int) hash64;
-		int hash2 = (int) (hash64 >>> 32);
-		for (int i = 1; i <= this.kOrNumberOfHashFunctions; i++) {
-			int nextHash = hash1 + i * hash2;
-			if (nextHash < 0) {
-				nextHash = ~nextHash;
+		return testBits(this.bitArray, getLongHash64(bytes));
+	}
+	
+	/**
+	 * Add a batch of byte arrays to the bloom filter. The elements are hashed
+	 * in chunks of {@link #BATCH_SIZE}, and each chunk is then probed using
+	 * {@link #setBitsBatch(BitArray, long[], int, BitSet, int)}.
+	 * 
+	 * @param keys
+	 *            the byte arrays to be added, none of which can be null
+	 * 
+	 * @return a {@link BitSet} where bit <code>i</code> is set if any bit was
+	 *         modified when adding <code>keys[i]</code>
+	 * 
+	 * @throws IllegalArgumentException
+	 *             if the keys, or any of them, are <code>null</code>
+	 */
+	@Override
+	public final BitSet addBatch(byte[][] keys) {
+		if(keys == null) {
+			throw new IllegalArgumentException("Keys to add to bloom filter cannot be null");
+		}
+		
+		BitSet changed = new BitSet(keys.length);
+		long[] hashes = new long[Math.min(BATCH_SIZE, keys.length)];
+		for(int start = 0; start < keys.length; start += BATCH_SIZE) {
+			int count = Math.min(BATCH_SIZE, keys.length - start);
+			for(int index = 0; index < count; index++) {
+				hashes[index] = getLongHash64(keys[start + index]);
 			}
-			if (!this.bitArray.getBit(nextHash % this.bitArray.bitSize())) {
-				return false;
+			
+			setBitsBatch(this.bitArray, hashes, count, changed, start);
+		}
+		
+		return changed;
+	}
+	
+	/**
+	 * Check a batch of byte arrays for existence in the bloom filter. The
+	 * elements are hashed in chunks of {@link #BATCH_SIZE}, and each chunk is
+	 * then probed using
+	 * {@link #testBitsBatch(BitArray, long[], int, BitSet, int)}.
+	 * 
+	 * @param keys
+	 *            the byte arrays to be tested, none of which can be null
+	 * 
+	 * @return a {@link BitSet} where bit <code>i</code> is set if
+	 *         <code>keys[i]</code> may be present in the bloom filter
+	 * 
+	 * @throws IllegalArgumentException
+	 *             if the keys, or any of them, are <code>null</code>
+	 */
+	@Override
+	public final BitSet containsBatch(byte[][] keys) {
+		if(keys == null) {
+			throw new IllegalArgumentException("Keys to test in bloom filter cannot be null");
+		}
+		
+		BitSet present = new BitSet(keys.length);
+		long[] hashes = new long[Math.min(BATCH_SIZE, keys.length)];
+		for(int start = 0; start < keys.length; start += BATCH_SIZE) {
+			int count = Math.min(BATCH_SIZE, keys.length - start);
+			for(int index = 0; index < count; index++) {
+				hashes[index] = getLongHash64(keys[start + index]);
 			}
+			
+			testBitsBatch(this.bitArray, hashes, count, present, start);
 		}
-		return true;
+		
+		return present;
 	}
 	
-	// Helper functions for functionality within
+	// Hash-level access, for filters composed of several bloom filters
 	
 	/**
-	 * Compute one 64-bit hash from the given byte-array using the specified
-	 * {@link HashFunction}.
+	 * Compute the 64-bit hash of the given byte array, as used by
+	 * {@link #addHash(long)} and {@link #containsHash(long)}. Filters made of
+	 * several bloom filters sharing a hash function hash each element once.
 	 * 
 	 * @param bytes
-	 *            the byte-array to use for hash computation
+	 *            the byte array to be hashed, cannot be null
+	 * 
+	 * @return the 64-bit hash of the byte array
+	 * 
+	 * @throws IllegalArgumentException
+	 *             if the byte array is <code>null</code>
+	 */
+	public final long hash64(byte[] bytes) {
+		return getLongHash64(bytes);
+	}
+	
+	/**
+	 * Compute the 64-bit hash of the given value, as used by
+	 * {@link #addHash(long)} and {@link #containsHash(long)}.
+	 * 
+	 * @param value
+	 *            the value to be hashed
 	 * 
-	 * @return the 64-bit hash
+	 * @return the 64-bit hash of the decomposed value
 	 */
-	protected long getLongHash64(byte[] bytes) {
-		if(bytes == null) {
-			throw new IllegalArgumentException("Bytes to add to bloom filter cannot be null");
+	public final long hash64(T value) {
+		return decomposedHash64(value);
+	}
+	
+	/**
+	 * Add the element with the given 64-bit hash to the bloom filter.
+	 * 
+	 * @param hash64
+	 *            the hash of the element, from {@link #hash64(byte[])} or
+	 *            {@link #hash64(Object)}
+	 * 
+	 * @return <code>true</code> if any bit was modified, <code>false</code>
+	 *         otherwise
+	 */
+	public final boolean addHash(long hash64) {
+		return setBits(this.bitArray, hash64);
+	}
+	
+	/**
+	 * Check if the element with the given 64-bit hash exists in the bloom
+	 * filter.
+	 * 
+	 * @param hash64
+	 *            the hash of the element, from {@link #hash64(byte[])} or
+	 *            {@link #hash64(Object)}
+	 * 
+	 * @return <code>true</code> if the element may be present,
+	 *         <code>false</code> otherwise
+	 */
+	public final boolean containsHash(long hash64) {
+		return testBits(this.bitArray, hash64);
+	}
+	
+	/**
+	 * Remove all elements from the bloom filter.
+	 */
+	public void clear() {
+		this.bitArray.clear();
+	}
+	
+	// Probe layout
+	
+	/**
+	 * Set all bits for the element with the given 64-bit hash in the given
+	 * {@link BitArray}. The default implementation uses the less hashing
+	 * technique to derive <code>k</code> probes spread over the whole array.
+	 * Implementations that want a different layout of bits should override
+	 * this method along with {@link #testBits(BitArray, long)} and the batch
+	 * variants {@link #setBitsBatch(BitArray, long[], int, BitSet, int)} and
+	 * {@link #testBitsBatch(BitArray, long[], int, BitSet, int)}.
+	 * 
+	 * @param bits
+	 *            the {@link BitArray} to set the bits in
+	 * 
+	 * @param hash64
+	 *            the 64-bit hash of the element
+	 * 
+	 * @return <code>true</code> if any bit was modified, <code>false</code>
+	 *         otherwise
+	 */
+	protected boolean setBits(BitArray bits, long hash64) {
+		final long numBits = bits.bitSize();
+		
+		// apply the less hashing technique
+		long combinedHash = hash64;
+		final long hash2 = secondHash(hash64);
+		
+		boolean bitsChanged = false;
+		for (int i = 0; i < this.kOrNumberOfHashFunctions; i++) {
+			bitsChanged |= bits.setBit((combinedHash & Long.MAX_VALUE) % numBits);
+			combinedHash += hash2;
 		}
 		
-		if(this.hasher.isSingleValued()) {
-			return this.hasher.hash(bytes);
+		return bitsChanged;
+	}
+	
+	/**
+	 * Check whether all bits for the element with the given 64-bit hash are
+	 * set in the given {@link BitArray}.
+	 * 
+	 * @param bits
+	 *            the {@link BitArray} to test the bits in
+	 * 
+	 * @param hash64
+	 *            the 64-bit hash of the element
+	 * 
+	 * @return <code>true</code> if all bits are set, <code>false</code>
+	 *         otherwise
+	 */
+	protected boolean testBits(BitArray bits, long hash64) {
+		final long numBits = bits.bitSize();
+		
+		long combinedHash = hash64;
+		final long hash2 = secondHash(hash64);
+		
+		for (int i = 0; i < this.kOrNumberOfHashFunctions; i++) {
+			if (!bits.getBit((combinedHash & Long.MAX_VALUE) % numBits)) {
+				return false;
+			}
+			combinedHash += hash2;
 		}
+		return true;
+	}
+	
+	/**
+	 * Set all bits for a batch of elements with the given 64-bit hashes. The
+	 * default implementation works probe-major: the first probe of every
+	 * element is made before the second probe of any, so the memory accesses
+	 * of different elements are independent and their cache misses overlap.
+	 * The bits set are exactly those set by {@link #setBits(BitArray, long)}.
+	 * 
+	 * @param bits
+	 *            the {@link BitArray} to set the bits in
+	 * 
+	 * @param hashes
+	 *            the 64-bit hashes of the elements, which may be overwritten
+	 * 
+	 * @param count
+	 *            the number of hashes to use from the start of the array
+	 * 
+	 * @param changed
+	 *            the {@link BitSet} in which to set bit
+	 *            <code>resultOffset + i</code> if any bit was modified for
+	 *            element <code>i</code>
+	 * 
+	 * @param resultOffset
+	 *            the offset of the first element in the result
+	 */
+	protected void setBitsBatch(BitArray bits, long[] hashes, int count, BitSet changed, int resultOffset) {
+		final long numBits = bits.bitSize();
 		
-		return this.hasher.hashMultiple(bytes)[0];
+		long[] second = new long[count];
+		for(int index = 0; index < count; index++) {
+			second[index] = secondHash(hashes[index]);
+		}
+		
+		for (int i = 0; i < this.kOrNumberOfHashFunctions; i++) {
+			for(int index = 0; index < count; index++) {
+				if(bits.setBit((hashes[index] & Long.MAX_VALUE) % numBits)) {
+					changed.set(resultOffset + index);
+				}
+				hashes[index] += second[index];
+			}
+		}
 	}
 	
 	/**
-	 * Given the value object, decompose it into a byte-array so that hashing
-	 * can be done over the returned bytes. If a custom {@link Decomposer} has
-	 * been specified, it will be used, otherwise the {@link DefaultDecomposer}
-	 * will be used.
+	 * Check whether all bits are set for a batch of elements with the given
+	 * 64-bit hashes. The default implementation works probe-major, like
+	 * {@link #setBitsBatch(BitArray, long[], int, BitSet, int)}, and stops
+	 * probing an element as soon as one of its bits is found unset.
 	 * 
-	 * @param value
-	 *            the value to be decomposed
+	 * @param bits
+	 *            the {@link BitArray} to test the bits in
 	 * 
-	 * @return the decomposed byte array
+	 * @param hashes
+	 *            the 64-bit hashes of the elements, which may be overwritten
+	 * 
+	 * @param count
+	 *            the number of hashes to use from the start of the array
+	 * 
+	 * @param present
+	 *            the {@link BitSet} in which to set bit
+	 *            <code>resultOffset + i</code> if all bits are set for
+	 *            element <code>i</code>
+	 * 
+	 * @param resultOffset
+	 *            the offset of the first element in the result
 	 */
-	protected byte[] decomposedValue(T value) {
-		ByteSink sink = new ByteSink();
+	protected void testBitsBatch(BitArray bits, long[] hashes, int count, BitSet present, int resultOffset) {
+		final long numBits = bits.bitSize();
 		
-		if(value instanceof Decomposable) {
-			((Decomposable) value).decompose(sink);
-			
-			return sink.getByteArray();
+		long[] second = new long[count];
+		int[] alive = new int[count];
+		for(int index = 0; index < count; index++) {
+			second[index] = secondHash(hashes[index]);
+			alive[index] = index;
 		}
 		
-		if(this.customDecomposer != null) {
-			this.customDecomposer.decompose(value, sink);
-			return sink.getByteArray();
+		int numAlive = count;
+		for (int i = 0; i < this.kOrNumberOfHashFunctions && numAlive > 0; i++) {
+			// keep only the elements whose bits have all been set so far
+			int survivors = 0;
+			for(int position = 0; position < numAlive; position++) {
+				int index = alive[position];
+				if(bits.getBit((hashes[index] & Long.MAX_VALUE) % numBits)) {
+					hashes[index] += second[index];
+					alive[survivors++] = index;
+				}
+			}
+			
+			numAlive = survivors;
 		}
 		
-		DEFAULT_COMPOSER.decompose(value, sink);
-		return sink.getByteArray();
+		for(int position = 0; position < numAlive; position++) {
+			present.set(resultOffset + alive[position]);
+		}
+	}
+	
+	/**
+	 * Derive the second 64-bit hash used by the less hashing technique from
+	 * the first one. A 64-bit finalization mix is used, so that both hashes
+	 * cover the full range of <code>long</code> even when the hash function
+	 * produces fewer bits (like CRC32), and arrays of more than
+	 * <code>2^31</code> bits are addressed uniformly.
+	 * 
+	 * @param hash64
+	 *            the 64-bit hash of the element
+	 * 
+	 * @return the second hash
+	 */
+	protected static long secondHash(long hash64) {
+		long hash = hash64 ^ (hash64 >>> 33);
+		hash *= 0xff51afd7ed558ccdL;
+		hash ^= hash >>> 33;
+		hash *= 0xc4ceb9fe1a85ec53L;
+		hash ^= hash >>> 33;
+		return hash;
 	}
 	
 	// Overridden helper functions follow
@@ -352,7 +664,7 @@ public abstract class AbstractBloomFilter<T> implements BloomFilter<T> {
 			return false;
 		}
 		
-		return add(decomposedValue(value));
+		return setBits(this.bitArray, decomposedHash64(value));
 	}
 
 	/**
@@ -371,13 +683,43 @@ public abstract class AbstractBloomFilter<T> implements BloomFilter<T> {
 		}
 		
 		boolean success = true;
+		
+		BitSet changed = new BitSet(BATCH_SIZE);
+		long[] hashes = new long[BATCH_SIZE];
+		int count = 0;
 		for(T value : values) {
-			success = add(value) && success; 
+			if(value == null) {
+				success = false;
+				continue;
+			}
+			
+			hashes[count++] = decomposedHash64(value);
+			if(count == BATCH_SIZE) {
+				success = addHashes(hashes, count, changed) && success;
+				count = 0;
+			}
+		}
+		
+		if(count > 0) {
+			success = addHashes(hashes, count, changed) && success;
 		}
 		
 		return success;
 	}
 	
+	/**
+	 * Set the bits for a batch of hashes and check that every element
+	 * modified some bit.
+	 * 
+	 * @return <code>true</code> if all elements modified some bit,
+	 *         <code>false</code> otherwise
+	 */
+	private boolean addHashes(long[] hashes, int count, BitSet changed) {
+		changed.clear();
+		setBitsBatch(this.bitArray, hashes, count, changed, 0);
+		return changed.cardinality() == count;
+	}
+	
 	/**
 	 * Check if the given value exists in the bloom filter. Note that this
 	 * method may return <code>true</code>, indicating a false positive - but
@@ -392,7 +734,7 @@ public abstract class AbstractBloomFilter<T> implements BloomFilter<T> {
 			return false;
 		}
 		
-		return contains(value.toString().getBytes(this.currentCharset));
+		return testBits(this.bitArray, decomposedHash64(value));
 	}
 	
 	/**
@@ -407,99 +749,411 @@ public abstract class AbstractBloomFilter<T> implements BloomFilter<T> {
 			return false;
 		}
 		
+		BitSet present = new BitSet(BATCH_SIZE);
+		long[] hashes = new long[BATCH_SIZE];
+		int count = 0;
 		for(T value : values) {
-			if(!contains(value)) {
+			if(value == null) {
 				return false;
 			}
+			
+			hashes[count++] = decomposedHash64(value);
+			if(count == BATCH_SIZE) {
+				if(!containsHashes(hashes, count, present)) {
+					return false;
+				}
+				
+				count = 0;
+			}
 		}
 		
-		return true;
+		return count == 0 || containsHashes(hashes, count, present);
 	}
 	
 	/**
-	 * Override the default charset that will be used when decomposing the
-	 * {@link String} values into byte arrays. The default {@link Charset} used
-	 * in the platform's default {@link Charset}.
+	 * Check that all elements of a batch of hashes are present.
 	 * 
-	 * @param charsetName
-	 *            the name of the charset that needs to be set
+	 * @return <code>true</code> if all elements are present,
+	 *         <code>false</code> otherwise
+	 */
+	private boolean containsHashes(long[] hashes, int count, BitSet present) {
+		present.clear();
+		testBitsBatch(this.bitArray, hashes, count, present, 0);
+		return present.cardinality() == count;
+	}
+	
+	
+	/**
+	 * @see BloomFilter#getNumberOfBits()
+	 */
+	@Override
+	public long getNumberOfBits() {
+		return this.numBitsRequired;
+	}
+	
+	/**
+	 * Estimate the current false positive rate (approximated) when given number
+	 * of elements have been inserted in to the filter.
 	 * 
-	 * @throws IllegalArgumentException
-	 *             if the charsetName is null
+	 * @param numInsertedElements
+	 *            the number of elements inserted into the filter
 	 * 
-	 * @throws IllegalCharsetNameException
-	 *             If the given charset name is illegal
+	 * @return the approximated false positive rate
+	 */
+	@Override
+	public double getFalsePositiveProbability(long numInsertedElements) {
+		return Math.pow((1 - Math.exp((- this.kOrNumberOfHashFunctions) * (double) numInsertedElements / (double) this.numBitsRequired)), this.kOrNumberOfHashFunctions);
+	}
+
+	/**
+	 * Estimate the number of elements from the fraction of bits set, as
+	 * <code>-m/k * ln(1 - X/m)</code> for <code>X</code> bits set, after
+	 * Swamidass and Baldi. A filter with all bits set returns
+	 * {@link Long#MAX_VALUE}.
 	 * 
-	 * @throws UnsupportedCharsetException
-	 *             If no support for the named charset is available in this
-	 *             instance of the Java virtual machine
+	 * @see com.sangupta.bloomfilter.BloomFilter#getApproximateElementCount()
+	 */
+	@Override
+	public long getApproximateElementCount() {
+		double numBits = this.bitArray.bitSize();
+		return Math.round(-numBits / this.kOrNumberOfHashFunctions * Math.log1p(-getFillRatio()));
+	}
+	
+	/**
+	 * @see com.sangupta.bloomfilter.BloomFilter#getFillRatio()
 	 */
 	@Override
-	public void setCharset(String charsetName) {
-		if(charsetName == null) {
-			throw new IllegalArgumentException("Charset to be changed to cannot be null");
+	public double getFillRatio() {
+		return (double) this.bitArray.bitCount() / this.bitArray.bitSize();
+	}
+	
+	/**
+	 * Estimate the rate for the approximate number of elements, so that
+	 * filters with their own model of the rate, like blocked filters, apply
+	 * it. For a plain filter this is the fill ratio raised to the power of
+	 * <code>k</code>.
+	 * 
+	 * @see com.sangupta.bloomfilter.BloomFilter#getCurrentFalsePositiveProbability()
+	 */
+	@Override
+	public double getCurrentFalsePositiveProbability() {
+		if(this.bitArray.bitCount() == this.bitArray.bitSize()) {
+			return 1;
 		}
 		
-		setCharset(Charset.forName(charsetName));
+		return getFalsePositiveProbability(getApproximateElementCount());
 	}
-
+	
 	/**
-	 * Override the default charset that will be used when decomposing the
-	 * {@link String} values into byte arrays. The default {@link Charset} used
-	 * in the platform's default {@link Charset}.
+	 * Add all elements of the given filter to this filter, by a Boolean OR of
+	 * the bit arrays. Afterwards this filter is exactly the filter that would
+	 * have been built by adding the elements of both filters to it, which
+	 * allows filters built over shards of the data to be merged.
 	 * 
-	 * @param charset
-	 *            the {@link Charset} to be used
+	 * @param other
+	 *            the filter to merge into this filter
 	 * 
 	 * @throws IllegalArgumentException
-	 *             if the charset is null
+	 *             if the filters do not have the same type, number of bits,
+	 *             number of hash functions, hash function and seed
+	 */
+	public void union(AbstractBloomFilter<T> other) {
+		checkCompatible(other);
+		this.bitArray.or(other.bitArray);
+	}
+	
+	/**
+	 * Keep only the elements that are also present in the given filter, by a
+	 * Boolean AND of the bit arrays. Elements present in both filters remain
+	 * present. The false positive rate is at most that of either filter, but
+	 * may be higher than that of a filter built from the common elements only.
+	 * 
+	 * @param other
+	 *            the filter to intersect this filter with
 	 * 
+	 * @throws IllegalArgumentException
+	 *             if the filters do not have the same type, number of bits,
+	 *             number of hash functions, hash function and seed
 	 */
-	@Override
-	public void setCharset(Charset charset) {
-		if(charset == null) {
-			throw new IllegalArgumentException("Charset to be changed to cannot be null");
+	public void intersect(AbstractBloomFilter<T> other) {
+		checkCompatible(other);
+		this.bitArray.and(other.bitArray);
+	}
+	
+	/**
+	 * Whether all the state of the filter is in its bits, so that the bits of
+	 * elements can be set in other arrays, as by
+	 * {@link ParallelBloomFilterLoader}, and merged into the filter later.
+	 * Filters that keep more state when adding, like counters, return
+	 * <code>false</code>.
+	 * 
+	 * @return <code>true</code> if the filter can be built by merging bits,
+	 *         <code>false</code> otherwise
+	 */
+	protected boolean isBitwiseMergeable() {
+		return true;
+	}
+	
+	/**
+	 * Identify the bits the filter sets for an element, recorded in the file
+	 * header, so that a file can be read by any filter with the same probe
+	 * layout, whatever its class or bit array. Filters that choose their bits
+	 * in a new way must return a new identifier.
+	 * 
+	 * @return the probe layout, {@link #PROBE_LAYOUT_STANDARD} by default
+	 */
+	protected int getProbeLayoutId() {
+		return PROBE_LAYOUT_STANDARD;
+	}
+	
+	/**
+	 * Check that the given filter sets the same bits for the same elements as
+	 * this filter, so that the two can be combined bit for bit.
+	 * 
+	 * @param other
+	 *            the filter to combine with
+	 */
+	protected void checkCompatible(AbstractBloomFilter<T> other) {
+		if(other == null) {
+			throw new IllegalArgumentException("Filter to combine with cannot be null");
+		}
+		
+		if(this.getClass() != other.getClass()) {
+			throw new IllegalArgumentException("Filters must be of the same type");
+		}
+		
+		if(this.bitArray.bitSize() != other.bitArray.bitSize() || this.kOrNumberOfHashFunctions != other.kOrNumberOfHashFunctions) {
+			throw new IllegalArgumentException("Filters must have the same number of bits and hash functions");
 		}
 		
-		this.currentCharset = charset;
+		if(this.hasher.getClass() != other.hasher.getClass() || this.getHashSeed() != other.getHashSeed()) {
+			throw new IllegalArgumentException("Filters must use the same hash function and seed");
+		}
+	}
+
+	/**
+	 * Write the filter to the given file, replacing its contents, with the
+	 * bits encoded by {@link BitArrayCodec#RAW}.
+	 * 
+	 * @param file
+	 *            the file to write to
+	 * 
+	 * @throws IOException
+	 *             if the file cannot be written
+	 */
+	public void writeTo(File file) throws IOException {
+		writeTo(file, BitArrayCodec.RAW);
 	}
 	
 	/**
-	 * Get the current custom decomposer that is being used. If no custom
-	 * decomposer is specified, <code>null</code> is returned to signify that we
-	 * are using the {@link AbstractBloomFilter#DEFAULT_HASHER} hash function.
+	 * Write the filter to the given file, replacing its contents. See
+	 * {@link #writeTo(WritableByteChannel, BitArrayCodec)} for the format.
+	 * 
+	 * @param file
+	 *            the file to write to
 	 * 
-	 * @return the current custom decomposer being used, if any
+	 * @param codec
+	 *            the {@link BitArrayCodec} to encode the bits with
+	 * 
+	 * @throws IOException
+	 *             if the file cannot be written
 	 */
-	@Override
-	public Decomposer<T> getObjectDecomposer() {
-		if(this.customDecomposer != null) {
-			return this.customDecomposer;
+	public void writeTo(File file, BitArrayCodec codec) throws IOException {
+		if(file == null) {
+			throw new IllegalArgumentException("File cannot be null");
 		}
 		
-		return null;
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try {
+			FileChannel channel = raf.getChannel();
+			writeTo(channel, codec);
+			channel.truncate(channel.position());
+			channel.force(true);
+		} finally {
+			raf.close();
+		}
 	}
 	
 	/**
-	 * @see BloomFilter#getNumberOfBits()
+	 * Write the filter to the given channel, with the bits encoded by
+	 * {@link BitArrayCodec#RAW}.
+	 * 
+	 * @param channel
+	 *            the channel to write to
+	 * 
+	 * @throws IOException
+	 *             if the channel cannot be written
 	 */
-	@Override
-	public int getNumberOfBits() {
-		return this.numBitsRequired;
+	public void writeTo(WritableByteChannel channel) throws IOException {
+		writeTo(channel, BitArrayCodec.RAW);
 	}
 	
 	/**
-	 * Estimate the current false positive rate (approximated) when given number
-	 * of elements have been inserted in to the filter.
+	 * Write the filter to the given channel, which may be a file or a
+	 * socket. A header of 48 big-endian bytes holds the magic number, the
+	 * format version, the number of bits <code>m</code>, the number of hash
+	 * functions <code>k</code>, the probe layout, the identifier of the hash
+	 * function, the identifier of the codec, the seed of the hash function and
+	 * the approximate number of elements. The bits follow as encoded by the
+	 * codec, and a CRC32 checksum of all preceding bytes, as a big-endian
+	 * <code>long</code>, closes the filter.
 	 * 
-	 * @param numInsertedElements
-	 *            the number of elements inserted into the filter
+	 * {@link BitArrayCodec#RAW} lays the bits out as in the files of the
+	 * file-backed bit arrays, while {@link BitArrayCodec#ROARING} shrinks
+	 * lightly filled filters to a fraction of their size. Either way the bits
+	 * are streamed in frames of at most 1 MB, and the filter should not be
+	 * modified while it is written.
 	 * 
-	 * @return the approximated false positive rate
+	 * @param channel
+	 *            the channel to write to
+	 * 
+	 * @param codec
+	 *            the {@link BitArrayCodec} to encode the bits with
+	 * 
+	 * @throws IOException
+	 *             if the channel cannot be written
 	 */
-	@Override
-	public double getFalsePositiveProbability(int numInsertedElements) {
-		return Math.pow((1 - Math.exp((- this.kOrNumberOfHashFunctions) * (double) numInsertedElements / (double) this.numBitsRequired)), this.kOrNumberOfHashFunctions);
+	public void writeTo(WritableByteChannel channel, BitArrayCodec codec) throws IOException {
+		if(channel == null) {
+			throw new IllegalArgumentException("Channel cannot be null");
+		}
+		
+		if(codec == null) {
+			throw new IllegalArgumentException("Codec cannot be null");
+		}
+		
+		ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_SIZE);
+		header.putInt(FILE_MAGIC).putInt(FILE_VERSION).putLong(this.bitArray.bitSize());
+		header.putInt(this.kOrNumberOfHashFunctions).putInt(getProbeLayoutId()).putInt(this.hasher.getId()).putInt(codec.getId());
+		header.putLong(getHashSeed()).putLong(getApproximateElementCount());
+		((Buffer) header).flip();
+		
+		CRC32 checksum = new CRC32();
+		checksum.update(header.array(), 0, FILE_HEADER_SIZE);
+		writeFully(channel, header);
+		
+		codec.encode(this.bitArray, channel, checksum);
+		
+		ByteBuffer trailer = ByteBuffer.allocate(8);
+		trailer.putLong(checksum.getValue());
+		((Buffer) trailer).flip();
+		writeFully(channel, trailer);
+	}
+	
+	/**
+	 * Read the filter from the given file, written by
+	 * {@link #writeTo(File, BitArrayCodec)}. See
+	 * {@link #readFrom(ReadableByteChannel)}.
+	 * 
+	 * @param file
+	 *            the file to read from
+	 * 
+	 * @throws IOException
+	 *             if the file cannot be read, is not a filter file, or was
+	 *             written by a different filter
+	 */
+	public void readFrom(File file) throws IOException {
+		if(file == null) {
+			throw new IllegalArgumentException("File cannot be null");
+		}
+		
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			readFrom(raf.getChannel());
+		} finally {
+			raf.close();
+		}
+	}
+	
+	/**
+	 * Replace the bits of the filter with those read from the given channel,
+	 * as written by {@link #writeTo(WritableByteChannel, BitArrayCodec)} with
+	 * any codec. The bits are decoded straight into the bit array of the
+	 * filter, and exactly the bytes of the filter are read from the channel.
+	 * The filter must have been written by a filter of the same class, with
+	 * the same number of bits and hash functions, and the same hash function
+	 * and seed, otherwise its bits would mean different elements. If the
+	 * checksum does not match the bytes read, the filter is left empty.
+	 * 
+	 * @param channel
+	 *            the channel to read from
+	 * 
+	 * @throws IOException
+	 *             if the channel cannot be read, does not hold a filter, or
+	 *             holds a filter that does not match this one
+	 */
+	public void readFrom(ReadableByteChannel channel) throws IOException {
+		if(channel == null) {
+			throw new IllegalArgumentException("Channel cannot be null");
+		}
+		
+		ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_SIZE);
+		readFully(channel, header);
+		if(header.getInt(0) != FILE_MAGIC || header.getInt(4) != FILE_VERSION) {
+			throw new IOException("Not a bloom filter file");
+		}
+		
+		final long numBits = this.bitArray.bitSize();
+		if(header.getLong(8) != numBits || header.getInt(16) != this.kOrNumberOfHashFunctions) {
+			throw new IOException("Filter file has " + header.getLong(8) + " bits and " + header.getInt(16) + " hash functions, expected " + numBits + " and " + this.kOrNumberOfHashFunctions);
+		}
+		
+		if(header.getInt(20) != getProbeLayoutId()) {
+			throw new IOException("Filter file was written by a filter with a different probe layout");
+		}
+		
+		if(header.getInt(24) != this.hasher.getId() || header.getLong(32) != getHashSeed()) {
+			throw new IOException("Filter file was written using a different hash function or seed");
+		}
+		
+		BitArrayCodec codec = BitArrayCodec.forId(header.getInt(28));
+		if(codec == null) {
+			throw new IOException("Filter file uses an unknown codec: " + header.getInt(28));
+		}
+		
+		CRC32 checksum = new CRC32();
+		checksum.update(header.array(), 0, FILE_HEADER_SIZE);
+		
+		this.bitArray.clear();
+		try {
+			codec.decode(channel, checksum, this.bitArray);
+			
+			ByteBuffer trailer = ByteBuffer.allocate(8);
+			readFully(channel, trailer);
+			if(checksum.getValue() != trailer.getLong(0)) {
+				throw new IOException("Checksum mismatch in filter file");
+			}
+		} catch(IOException e) {
+			this.bitArray.clear();
+			throw e;
+		}
+	}
+	
+	/**
+	 * Return the seed of the hash function, or zero if it does not tell.
+	 * 
+	 * @return the seed of the hash function
+	 */
+	private long getHashSeed() {
+		if(this.hasher instanceof SeededHashFunction) {
+			return ((SeededHashFunction) this.hasher).getSeed();
+		}
+		
+		return 0;
+	}
+	
+	private static void writeFully(WritableByteChannel channel, ByteBuffer buffer) throws IOException {
+		while(buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+	}
+	
+	private static void readFully(ReadableByteChannel channel, ByteBuffer buffer) throws IOException {
+		while(buffer.hasRemaining()) {
+			if(channel.read(buffer) < 0) {
+				throw new IOException("Filter file is truncated");
+			}
+		}
 	}
 
 	/**
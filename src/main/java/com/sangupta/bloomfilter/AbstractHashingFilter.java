@@ -0,0 +1,337 @@
+/**
+ *
+ * bloomfilter - Bloom filters for Java
+ * Copyright (c) 2014-2015, Sandeep Gupta
+ * 
+ * http://sangupta.com/projects/bloomfilter
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+
+package com.sangupta.bloomfilter;
+
+import java.nio.charset.Charset;
+
+import com.sangupta.bloomfilter.decompose.ByteSink;
+import com.sangupta.bloomfilter.decompose.Decomposable;
+import com.sangupta.bloomfilter.decompose.Decomposer;
+import com.sangupta.bloomfilter.hash.HashFunction;
+import com.sangupta.bloomfilter.hash.HashingSink;
+import com.sangupta.bloomfilter.hash.Murmur3HashFunction;
+import com.sangupta.bloomfilter.hash.StreamingHashFunction;
+
+/**
+ * The base of all filters that turn values into hashes: values are
+ * decomposed into bytes using a {@link Decomposer}, and the bytes are hashed
+ * using a {@link HashFunction}. How the hashes are stored is left to the
+ * subclasses, like {@link AbstractBloomFilter}.
+ * 
+ * The default composer is a simple {@link Object#toString()} decomposer which
+ * then converts this {@link String} into raw bytes.
+ * 
+ * The default {@link HashFunction} used by the filter is the
+ * {@link Murmur3HashFunction}.
+ * 
+ * @author sangupta
+ * @since 1.0
+ * 
+ * @param <T> the type of objects to be stored in the filter
+ */
+public abstract class AbstractHashingFilter<T> implements BloomFilter<T> {
+	
+	/**
+	 * The default hasher to use if one is not specified
+	 */
+	protected static final HashFunction DEFAULT_HASHER = new Murmur3HashFunction();
+	
+	/**
+	 * Largest buffer, in bytes, of the per-thread {@link ByteSink} that is
+	 * kept around for reuse
+	 */
+	private static final int MAX_RETAINED_SINK_SIZE = 64 * 1024;
+	
+	/**
+	 * The reusable {@link ByteSink} for every thread, used to decompose values
+	 * without allocating
+	 */
+	private static final ThreadLocal<ByteSink> SINK = new ThreadLocal<ByteSink>() {
+		
+		@Override
+		protected ByteSink initialValue() {
+			return new ByteSink();
+		}
+		
+	};
+	
+	/**
+	 * The default {@link Charset} is the platform encoding charset
+	 */
+	protected transient Charset currentCharset = Charset.defaultCharset();
+	
+	/**
+	 * Holds the custom decomposer that should be used for this filter
+	 * 
+	 */
+	protected final Decomposer<T> customDecomposer;
+	
+	/**
+	 * The hashing method to be used for hashing
+	 */
+	protected final HashFunction hasher;
+	
+	/**
+	 * The reusable {@link HashingSink} for every thread when objects are to
+	 * be hashed while being decomposed, <code>null</code> otherwise
+	 */
+	protected transient volatile ThreadLocal<HashingSink> hashingSink;
+	
+	/**
+	 * Create a new filter.
+	 * 
+	 * @param decomposer
+	 *            a {@link Decomposer} that helps decompose the given object
+	 * 
+	 * @param hasher
+	 *            the hash function to use. If <code>null</code> is specified
+	 *            the {@link AbstractHashingFilter#DEFAULT_HASHER} will be used
+	 *            as the hashing function
+	 */
+	protected AbstractHashingFilter(Decomposer<T> decomposer, HashFunction hasher) {
+		this.customDecomposer = decomposer;
+		
+		if(hasher != null) {
+			this.hasher = hasher;
+		} else {
+			this.hasher = DEFAULT_HASHER;
+		}
+	}
+	
+	// Helper functions for functionality within
+	
+	/**
+	 * Compute one 64-bit hash from the given byte-array using the specified
+	 * {@link HashFunction}. No memory is allocated.
+	 * 
+	 * @param bytes
+	 *            the byte-array to use for hash computation
+	 * 
+	 * @return the 64-bit hash
+	 */
+	protected long getLongHash64(byte[] bytes) {
+		if(bytes == null) {
+			throw new IllegalArgumentException("Bytes to add to bloom filter cannot be null");
+		}
+		
+		return this.hasher.hash64(bytes, 0, bytes.length);
+	}
+	
+	/**
+	 * Given the value object, decompose it into a byte-array so that hashing
+	 * can be done over the returned bytes, as described in
+	 * {@link #decompose(Object, ByteSink)}.
+	 * 
+	 * @param value
+	 *            the value to be decomposed
+	 * 
+	 * @return the decomposed byte array
+	 */
+	protected byte[] decomposedValue(T value) {
+		ByteSink sink = new ByteSink();
+		decompose(value, sink);
+		return sink.getByteArray();
+	}
+	
+	/**
+	 * Decompose the given value into a per-thread reusable {@link ByteSink}
+	 * and compute the 64-bit hash over the internal buffer of the sink. The
+	 * bytes hashed are the same as those returned by
+	 * {@link #decomposedValue(Object)}, but no memory is allocated in steady
+	 * state. As the sink is shared by all filters on the thread, decomposers
+	 * must not add to or query a filter themselves.
+	 * 
+	 * When streaming is enabled using {@link #setStreamingHash(boolean)} the
+	 * value is decomposed into a {@link HashingSink} instead, which computes
+	 * the same hash without holding the bytes.
+	 * 
+	 * @param value
+	 *            the value to be decomposed
+	 * 
+	 * @return the 64-bit hash of the decomposed value
+	 */
+	protected long decomposedHash64(T value) {
+		ThreadLocal<HashingSink> streaming = this.hashingSink;
+		if(streaming != null) {
+			HashingSink sink = streaming.get().reset();
+			decompose(value, sink);
+			return sink.hash64();
+		}
+		
+		ByteSink sink = SINK.get();
+		sink.reset();
+		
+		try {
+			decompose(value, sink);
+			return this.hasher.hash64(sink.getBuffer(), 0, sink.size());
+		} finally {
+			// do not hold on to buffers grown for unusually large values
+			if(sink.getBuffer().length > MAX_RETAINED_SINK_SIZE) {
+				SINK.remove();
+			}
+		}
+	}
+	
+	/**
+	 * Decompose the given value into the given {@link ByteSink}. Objects that
+	 * are {@link Decomposable} decompose themselves; otherwise the custom
+	 * {@link Decomposer}, if any, is used. Failing both the
+	 * {@link Object#toString()} value is encoded in the {@link Charset} set on
+	 * this filter.
+	 * 
+	 * @param value
+	 *            the value to be decomposed
+	 * 
+	 * @param sink
+	 *            the sink to decompose into
+	 */
+	protected void decompose(T value, ByteSink sink) {
+		if(value instanceof Decomposable) {
+			((Decomposable) value).decompose(sink);
+			return;
+		}
+		
+		if(this.customDecomposer != null) {
+			this.customDecomposer.decompose(value, sink);
+			return;
+		}
+		
+		if(value instanceof CharSequence) {
+			sink.putString((CharSequence) value, this.currentCharset);
+			return;
+		}
+		
+		sink.putString(value.toString(), this.currentCharset);
+	}
+	
+	/**
+	 * Override the default charset that will be used when decomposing the
+	 * {@link String} values into byte arrays. The default {@link Charset} used
+	 * in the platform's default {@link Charset}.
+	 * 
+	 * @param charsetName
+	 *            the name of the charset that needs to be set
+	 * 
+	 * @throws IllegalArgumentException
+	 *             if the charsetName is null
+	 * 
+	 * @throws IllegalCharsetNameException
+	 *             If the given charset name is illegal
+	 * 
+	 * @throws UnsupportedCharsetException
+	 *             If no support for the named charset is available in this
+	 *             instance of the Java virtual machine
+	 */
+	@Override
+	public void setCharset(String charsetName) {
+		if(charsetName == null) {
+			throw new IllegalArgumentException("Charset to be changed to cannot be null");
+		}
+		
+		setCharset(Charset.forName(charsetName));
+	}
+
+	/**
+	 * Override the default charset that will be used when decomposing the
+	 * {@link String} values into byte arrays. The default {@link Charset} used
+	 * in the platform's default {@link Charset}.
+	 * 
+	 * @param charset
+	 *            the {@link Charset} to be used
+	 * 
+	 * @throws IllegalArgumentException
+	 *             if the charset is null
+	 * 
+	 */
+	@Override
+	public void setCharset(Charset charset) {
+		if(charset == null) {
+			throw new IllegalArgumentException("Charset to be changed to cannot be null");
+		}
+		
+		this.currentCharset = charset;
+	}
+	
+	/**
+	 * Select whether objects are hashed while they are being decomposed,
+	 * using a {@link HashingSink}, instead of being decomposed into a byte
+	 * array first. Both ways produce the same hash, and thus the same bits.
+	 * Streaming avoids the intermediate buffer, which helps for objects that
+	 * decompose into many bytes.
+	 * 
+	 * @param streaming
+	 *            <code>true</code> to hash while decomposing,
+	 *            <code>false</code> to decompose into a byte array first
+	 * 
+	 * @throws IllegalArgumentException
+	 *             if streaming is requested and the {@link HashFunction} of
+	 *             this filter is not a {@link StreamingHashFunction}
+	 */
+	public void setStreamingHash(boolean streaming) {
+		if(!streaming) {
+			this.hashingSink = null;
+			return;
+		}
+		
+		if(!(this.hasher instanceof StreamingHashFunction)) {
+			throw new IllegalArgumentException("Hash function does not support streaming: " + this.hasher.getClass().getName());
+		}
+		
+		final StreamingHashFunction function = (StreamingHashFunction) this.hasher;
+		this.hashingSink = new ThreadLocal<HashingSink>() {
+			
+			@Override
+			protected HashingSink initialValue() {
+				return function.newHashingSink();
+			}
+			
+		};
+	}
+	
+	/**
+	 * Whether objects are hashed while being decomposed.
+	 * 
+	 * @return <code>true</code> if streaming hashing is enabled,
+	 *         <code>false</code> otherwise
+	 */
+	public boolean isStreamingHash() {
+		return this.hashingSink != null;
+	}
+	
+	/**
+	 * Get the current custom decomposer that is being used. If no custom
+	 * decomposer is specified, <code>null</code> is returned to signify that we
+	 * are using the {@link AbstractBloomFilter#DEFAULT_HASHER} hash function.
+	 * 
+	 * @return the current custom decomposer being used, if any
+	 */
+	@Override
+	public Decomposer<T> getObjectDecomposer() {
+		if(this.customDecomposer != null) {
+			return this.customDecomposer;
+		}
+		
+		return null;
+	}
+
+}
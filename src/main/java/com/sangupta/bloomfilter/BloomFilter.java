@@ -22,6 +22,7 @@
 package com.sangupta.bloomfilter;
 
 import java.nio.charset.Charset;
+import java.util.BitSet;
 import java.util.Collection;
 
 import com.sangupta.bloomfilter.decompose.Decomposer;
@@ -84,6 +85,19 @@ public interface BloomFilter<T> {
 	 */
 	public boolean addAll(Collection<T> values);
 	
+	/**
+	 * Add a batch of values, each represented as bytes, to the bloom filter.
+	 * All values are hashed before the filter is probed, so that the memory
+	 * accesses of different values overlap.
+	 * 
+	 * @param keys
+	 *            the values to be added to the bloom filter
+	 * 
+	 * @return a {@link BitSet} where bit <code>i</code> is set if any bit of
+	 *         the filter was modified when adding <code>keys[i]</code>
+	 */
+	public BitSet addBatch(byte[][] keys);
+	
 	/**
 	 * Check if the value represented as byte-array is present in the bloom
 	 * filter or not.
@@ -120,6 +134,19 @@ public interface BloomFilter<T> {
 	 *         are present in the filter, <code>false</code> otherwise
 	 */
 	public boolean containsAll(Collection<T> values);
+	
+	/**
+	 * Check whether each of a batch of values, each represented as bytes, is
+	 * present in the bloom filter. All values are hashed before the filter is
+	 * probed, so that the memory accesses of different values overlap.
+	 * 
+	 * @param keys
+	 *            the values to be tested for existence in the bloom filter
+	 * 
+	 * @return a {@link BitSet} where bit <code>i</code> is set if the bloom
+	 *         filter indicates the presence of <code>keys[i]</code>
+	 */
+	public BitSet containsBatch(byte[][] keys);
 
 	/**
 	 * Set the {@link Charset} for the given name for converting objects to byte-arrays.
@@ -147,7 +174,7 @@ public interface BloomFilter<T> {
 	 * 
 	 * @return the number of bits used by the filter
 	 */
-	public int getNumberOfBits();
+	public long getNumberOfBits();
 	
 	/**
 	 * Estimate the current false positive rate (approximated) when given number
@@ -158,7 +185,32 @@ public interface BloomFilter<T> {
 	 * 
 	 * @return the approximated false positive rate
 	 */
-	public double getFalsePositiveProbability(int numInsertedElements);
+	public double getFalsePositiveProbability(long numInsertedElements);
+	
+	/**
+	 * Estimate the number of distinct elements inserted into the filter from
+	 * its current state, so that the caller need not count insertions, which
+	 * is not possible across restarts or merges anyway.
+	 * 
+	 * @return the approximate number of elements in the filter
+	 */
+	public long getApproximateElementCount();
+	
+	/**
+	 * Return the fraction of the filter that is in use: the fraction of bits
+	 * set for a bloom filter, or the fraction of slots filled for a filter
+	 * storing fingerprints.
+	 * 
+	 * @return the fill ratio, between zero and one
+	 */
+	public double getFillRatio();
+	
+	/**
+	 * Estimate the false positive rate of the filter in its current state.
+	 * 
+	 * @return the approximated false positive rate
+	 */
+	public double getCurrentFalsePositiveProbability();
 	
 	/**
 	 * Close down the bloom filter and flush any pending changes
@@ -22,6 +22,7 @@
 package com.sangupta.bloomfilter;
 
 import java.nio.charset.Charset;
+import java.util.BitSet;
 import java.util.Collection;
 
 import com.sangupta.bloomfilter.decompose.Decomposer;
@@ -62,6 +63,14 @@ public abstract class DelegatingBloomFilter<T> implements BloomFilter<T> {
 		return this.originalBloomFilter.addAll(values);
 	}
 
+	/**
+	 * @see com.sangupta.bloomfilter.BloomFilter#addBatch(byte[][])
+	 */
+	@Override
+	public BitSet addBatch(byte[][] keys) {
+		return this.originalBloomFilter.addBatch(keys);
+	}
+
 	/**
 	 * @see com.sangupta.bloomfilter.BloomFilter#contains(byte[])
 	 */
@@ -86,6 +95,14 @@ public abstract class DelegatingBloomFilter<T> implements BloomFilter<T> {
 		return this.originalBloomFilter.containsAll(values);
 	}
 
+	/**
+	 * @see com.sangupta.bloomfilter.BloomFilter#containsBatch(byte[][])
+	 */
+	@Override
+	public BitSet containsBatch(byte[][] keys) {
+		return this.originalBloomFilter.containsBatch(keys);
+	}
+
 	/**
 	 * @see com.sangupta.bloomfilter.BloomFilter#setCharset(java.lang.String)
 	 */
@@ -114,18 +131,42 @@ public abstract class DelegatingBloomFilter<T> implements BloomFilter<T> {
 	 * @see com.sangupta.bloomfilter.BloomFilter#getNumberOfBits()
 	 */
 	@Override
-	public int getNumberOfBits() {
+	public long getNumberOfBits() {
 		return this.originalBloomFilter.getNumberOfBits();
 	}
 
 	/**
-	 * @see com.sangupta.bloomfilter.BloomFilter#getFalsePositiveProbability(int)
+	 * @see com.sangupta.bloomfilter.BloomFilter#getFalsePositiveProbability(long)
 	 */
 	@Override
-	public double getFalsePositiveProbability(int numInsertedElements) {
+	public double getFalsePositiveProbability(long numInsertedElements) {
 		return this.originalBloomFilter.getFalsePositiveProbability(numInsertedElements);
 	}
 
+	/**
+	 * @see com.sangupta.bloomfilter.BloomFilter#getApproximateElementCount()
+	 */
+	@Override
+	public long getApproximateElementCount() {
+		return this.originalBloomFilter.getApproximateElementCount();
+	}
+
+	/**
+	 * @see com.sangupta.bloomfilter.BloomFilter#getFillRatio()
+	 */
+	@Override
+	public double getFillRatio() {
+		return this.originalBloomFilter.getFillRatio();
+	}
+
+	/**
+	 * @see com.sangupta.bloomfilter.BloomFilter#getCurrentFalsePositiveProbability()
+	 */
+	@Override
+	public double getCurrentFalsePositiveProbability() {
+		return this.originalBloomFilter.getCurrentFalsePositiveProbability();
+	}
+
 	/**
 	 * @see com.sangupta.bloomfilter.BloomFilter#close()
 	 */
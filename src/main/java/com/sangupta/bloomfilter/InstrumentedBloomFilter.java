@@ -0,0 +1,561 @@
+/**
+ *
+ * bloomfilter - Bloom filters for Java
+ * Copyright (c) 2014-2015, Sandeep Gupta
+ * 
+ * http://sangupta.com/projects/bloomfilter
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+
+package com.sangupta.bloomfilter;
+
+import java.lang.management.ManagementFactory;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * A {@link BloomFilter} that records how another filter is used: the
+ * number of elements added and looked up, the rate of positive answers,
+ * and histograms of the latency of a sample of the calls. Together with
+ * the fill ratio, the estimated false positive rate and the size of the
+ * filter, these are exposed through JMX once the filter is registered
+ * using {@link #register(String)}, so that saturated filters and slow
+ * disk-backed filters show up before they hurt.
+ * 
+ * Counters are atomic, so the filter is as thread-safe as the filter it
+ * wraps. Only one call in {@link #getSampleInterval()} is timed. Once
+ * recording is disabled using {@link #setEnabled(boolean)} every call
+ * costs a single volatile read on top of the wrapped filter.
+ * 
+ * @author sangupta
+ * @since 1.0
+ * 
+ * @param <T> the type of objects to be stored in the filter
+ */
+public class InstrumentedBloomFilter<T> extends DelegatingBloomFilter<T> implements InstrumentedBloomFilterMBean {
+	
+	/**
+	 * The default number of calls per timed call
+	 */
+	public static final int DEFAULT_SAMPLE_INTERVAL = 64;
+	
+	/**
+	 * The JMX domain filters are registered in
+	 */
+	public static final String JMX_DOMAIN = "com.sangupta.bloomfilter";
+	
+	/**
+	 * The number of buckets of a latency histogram, one per power of two
+	 */
+	private static final int HISTOGRAM_BUCKETS = 64;
+	
+	/**
+	 * Marks a call that is not timed
+	 */
+	private static final long NOT_SAMPLED = Long.MIN_VALUE;
+	
+	/**
+	 * Mask of the call counter bits that select the timed calls
+	 */
+	private final int sampleMask;
+	
+	private volatile boolean enabled = true;
+	
+	private final AtomicLong addCount = new AtomicLong();
+	
+	private final AtomicLong addChangedCount = new AtomicLong();
+	
+	private final AtomicLong containsCount = new AtomicLong();
+	
+	private final AtomicLong positiveCount = new AtomicLong();
+	
+	private final AtomicLongArray addLatency = new AtomicLongArray(HISTOGRAM_BUCKETS);
+	
+	private final AtomicLongArray containsLatency = new AtomicLongArray(HISTOGRAM_BUCKETS);
+	
+	/**
+	 * The name the filter is registered under, if any
+	 */
+	private ObjectName objectName;
+	
+	/**
+	 * Instrument the given filter, timing one call in
+	 * {@link #DEFAULT_SAMPLE_INTERVAL}.
+	 * 
+	 * @param original
+	 *            the filter to instrument
+	 */
+	public InstrumentedBloomFilter(BloomFilter<T> original) {
+		this(original, DEFAULT_SAMPLE_INTERVAL);
+	}
+	
+	/**
+	 * Instrument the given filter.
+	 * 
+	 * @param original
+	 *            the filter to instrument
+	 * 
+	 * @param sampleInterval
+	 *            the number of calls per timed call, a power of two; use
+	 *            <code>1</code> to time every call
+	 */
+	public InstrumentedBloomFilter(BloomFilter<T> original, int sampleInterval) {
+		super(original);
+		
+		if(original == null) {
+			throw new IllegalArgumentException("Filter to instrument cannot be null");
+		}
+		
+		if(sampleInterval <= 0 || Integer.bitCount(sampleInterval) != 1) {
+			throw new IllegalArgumentException("Sample interval must be a power of two");
+		}
+		
+		this.sampleMask = sampleInterval - 1;
+	}
+	
+	/**
+	 * Register the filter with the platform MBean server, under the name
+	 * <code>com.sangupta.bloomfilter:type=BloomFilter,name=&lt;name&gt;</code>.
+	 * The filter is unregistered when closed.
+	 * 
+	 * @param name
+	 *            the name of the filter, unique among registered filters
+	 * 
+	 * @return the name the filter is registered under
+	 * 
+	 * @throws JMException
+	 *             if the filter cannot be registered, say as the name is
+	 *             already taken
+	 */
+	public synchronized ObjectName register(String name) throws JMException {
+		if(name == null || name.isEmpty()) {
+			throw new IllegalArgumentException("Name cannot be null/empty");
+		}
+		
+		if(this.objectName != null) {
+			throw new IllegalStateException("Filter is already registered as " + this.objectName);
+		}
+		
+		ObjectName objectName = new ObjectName(JMX_DOMAIN + ":type=BloomFilter,name=" + ObjectName.quote(name));
+		ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+		
+		this.objectName = objectName;
+		return objectName;
+	}
+	
+	/**
+	 * Unregister the filter from the platform MBean server, if registered.
+	 * 
+	 */
+	public synchronized void unregister() {
+		if(this.objectName == null) {
+			return;
+		}
+		
+		try {
+			ManagementFactory.getPlatformMBeanServer().unregisterMBean(this.objectName);
+		} catch(JMException e) {
+			e.printStackTrace();
+		}
+		
+		this.objectName = null;
+	}
+	
+	/**
+	 * @see com.sangupta.bloomfilter.BloomFilter#add(byte[])
+	 */
+	@Override
+	public boolean add(byte[] bytes) {
+		if(!this.enabled) {
+			return super.add(bytes);
+		}
+		
+		long start = start(this.addCount, 1);
+		boolean changed = super.add(bytes);
+		end(this.addLatency, start, 1);
+		
+		if(changed) {
+			this.addChangedCount.incrementAndGet();
+		}
+		
+		return changed;
+	}
+	
+	/**
+	 * @see com.sangupta.bloomfilter.BloomFilter#add(java.lang.Object)
+	 */
+	@Override
+	public boolean add(T value) {
+		if(!this.enabled) {
+			return super.add(value);
+		}
+		
+		long start = start(this.addCount, 1);
+		boolean changed = super.add(value);
+		end(this.addLatency, start, 1);
+		
+		if(changed) {
+			this.addChangedCount.incrementAndGet();
+		}
+		
+		return changed;
+	}
+	
+	/**
+	 * Counts every value as added. As the wrapped filter only tells whether
+	 * any value changed it, no value is counted as having changed it.
+	 * 
+	 * @see com.sangupta.bloomfilter.BloomFilter#addAll(java.util.Collection)
+	 */
+	@Override
+	public boolean addAll(Collection<T> values) {
+		if(!this.enabled || values == null || values.isEmpty()) {
+			return super.addAll(values);
+		}
+		
+		long start = start(this.addCount, values.size());
+		boolean changed = super.addAll(values);
+		end(this.addLatency, start, values.size());
+		return changed;
+	}
+	
+	/**
+	 * @see com.sangupta.bloomfilter.BloomFilter#addBatch(byte[][])
+	 */
+	@Override
+	public BitSet addBatch(byte[][] keys) {
+		if(!this.enabled || keys == null || keys.length == 0) {
+			return super.addBatch(keys);
+		}
+		
+		long start = start(this.addCount, keys.length);
+		BitSet changed = super.addBatch(keys);
+		end(this.addLatency, start, keys.length);
+		
+		this.addChangedCount.addAndGet(changed.cardinality());
+		return changed;
+	}
+	
+	/**
+	 * @see com.sangupta.bloomfilter.BloomFilter#contains(byte[])
+	 */
+	@Override
+	public boolean contains(byte[] bytes) {
+		if(!this.enabled) {
+			return super.contains(bytes);
+		}
+		
+		long start = start(this.containsCount, 1);
+		boolean present = super.contains(bytes);
+		end(this.containsLatency, start, 1);
+		
+		if(present) {
+			this.positiveCount.incrementAndGet();
+		}
+		
+		return present;
+	}
+	
+	/**
+	 * @see com.sangupta.bloomfilter.BloomFilter#contains(java.lang.Object)
+	 */
+	@Override
+	public boolean contains(T value) {
+		if(!this.enabled) {
+			return super.contains(value);
+		}
+		
+		long start = start(this.containsCount, 1);
+		boolean present = super.contains(value);
+		end(this.containsLatency, start, 1);
+		
+		if(present) {
+			this.positiveCount.incrementAndGet();
+		}
+		
+		return present;
+	}
+	
+	/**
+	 * Counts every value as looked up, and every value as present only if
+	 * all are, as the wrapped filter stops at the first absent value.
+	 * 
+	 * @see com.sangupta.bloomfilter.BloomFilter#containsAll(java.util.Collection)
+	 */
+	@Override
+	public boolean containsAll(Collection<T> values) {
+		if(!this.enabled || values == null || values.isEmpty()) {
+			return super.containsAll(values);
+		}
+		
+		long start = start(this.containsCount, values.size());
+		boolean present = super.containsAll(values);
+		end(this.containsLatency, start, values.size());
+		
+		if(present) {
+			this.positiveCount.addAndGet(values.size());
+		}
+		
+		return present;
+	}
+	
+	/**
+	 * @see com.sangupta.bloomfilter.BloomFilter#containsBatch(byte[][])
+	 */
+	@Override
+	public BitSet containsBatch(byte[][] keys) {
+		if(!this.enabled || keys == null || keys.length == 0) {
+			return super.containsBatch(keys);
+		}
+		
+		long start = start(this.containsCount, keys.length);
+		BitSet present = super.containsBatch(keys);
+		end(this.containsLatency, start, keys.length);
+		
+		this.positiveCount.addAndGet(present.cardinality());
+		return present;
+	}
+	
+	/**
+	 * Unregister the filter, then close the wrapped filter.
+	 * 
+	 * @see com.sangupta.bloomfilter.BloomFilter#close()
+	 */
+	@Override
+	public void close() {
+		unregister();
+		super.close();
+	}
+	
+	/**
+	 * @see com.sangupta.bloomfilter.InstrumentedBloomFilterMBean#isEnabled()
+	 */
+	@Override
+	public boolean isEnabled() {
+		return this.enabled;
+	}
+	
+	/**
+	 * @see com.sangupta.bloomfilter.InstrumentedBloomFilterMBean#setEnabled(boolean)
+	 */
+	@Override
+	public void setEnabled(boolean enabled) {
+		this.enabled = enabled;
+	}
+	
+	/**
+	 * @see com.sangupta.bloomfilter.InstrumentedBloomFilterMBean#getAddCount()
+	 */
+	@Override
+	public long getAddCount() {
+		return this.addCount.get();
+	}
+	
+	/**
+	 * @see com.sangupta.bloomfilter.InstrumentedBloomFilterMBean#getAddChangedCount()
+	 */
+	@Override
+	public long getAddChangedCount() {
+		return this.addChangedCount.get();
+	}
+	
+	/**
+	 * @see com.sangupta.bloomfilter.InstrumentedBloomFilterMBean#getContainsCount()
+	 */
+	@Override
+	public long getContainsCount() {
+		return this.containsCount.get();
+	}
+	
+	/**
+	 * @see com.sangupta.bloomfilter.InstrumentedBloomFilterMBean#getPositiveCount()
+	 */
+	@Override
+	public long getPositiveCount() {
+		return this.positiveCount.get();
+	}
+	
+	/**
+	 * @see com.sangupta.bloomfilter.InstrumentedBloomFilterMBean#getPositiveRate()
+	 */
+	@Override
+	public double getPositiveRate() {
+		long lookups = this.containsCount.get();
+		if(lookups == 0) {
+			return 0;
+		}
+		
+		return (double) this.positiveCount.get() / lookups;
+	}
+	
+	/**
+	 * @see com.sangupta.bloomfilter.InstrumentedBloomFilterMBean#getMemoryBytes()
+	 */
+	@Override
+	public long getMemoryBytes() {
+		return (getNumberOfBits() + 7) >>> 3;
+	}
+	
+	/**
+	 * @see com.sangupta.bloomfilter.InstrumentedBloomFilterMBean#getSampleInterval()
+	 */
+	@Override
+	public int getSampleInterval() {
+		return this.sampleMask + 1;
+	}
+	
+	/**
+	 * @see com.sangupta.bloomfilter.InstrumentedBloomFilterMBean#getAddLatencyHistogram()
+	 */
+	@Override
+	public long[] getAddLatencyHistogram() {
+		return snapshot(this.addLatency);
+	}
+	
+	/**
+	 * @see com.sangupta.bloomfilter.InstrumentedBloomFilterMBean#getContainsLatencyHistogram()
+	 */
+	@Override
+	public long[] getContainsLatencyHistogram() {
+		return snapshot(this.containsLatency);
+	}
+	
+	/**
+	 * @see com.sangupta.bloomfilter.InstrumentedBloomFilterMBean#getAddLatency99thPercentileNanos()
+	 */
+	@Override
+	public long getAddLatency99thPercentileNanos() {
+		return percentile(snapshot(this.addLatency), 0.99);
+	}
+	
+	/**
+	 * @see com.sangupta.bloomfilter.InstrumentedBloomFilterMBean#getContainsLatency99thPercentileNanos()
+	 */
+	@Override
+	public long getContainsLatency99thPercentileNanos() {
+		return percentile(snapshot(this.containsLatency), 0.99);
+	}
+	
+	/**
+	 * @see com.sangupta.bloomfilter.InstrumentedBloomFilterMBean#reset()
+	 */
+	@Override
+	public void reset() {
+		this.addCount.set(0);
+		this.addChangedCount.set(0);
+		this.containsCount.set(0);
+		this.positiveCount.set(0);
+		
+		for(int bucket = 0; bucket < HISTOGRAM_BUCKETS; bucket++) {
+			this.addLatency.set(bucket, 0);
+			this.containsLatency.set(bucket, 0);
+		}
+	}
+	
+	/**
+	 * Count the elements of a call, and decide whether to time it: a call is
+	 * timed when the counter crosses a multiple of the sample interval, so
+	 * that no separate sampling state is needed.
+	 * 
+	 * @param counter
+	 *            the counter of the kind of call
+	 * 
+	 * @param count
+	 *            the number of elements in the call
+	 * 
+	 * @return the start time of a timed call, or {@link #NOT_SAMPLED}
+	 */
+	private long start(AtomicLong counter, int count) {
+		long after = counter.addAndGet(count);
+		if((after & ~this.sampleMask) == ((after - count) & ~this.sampleMask)) {
+			return NOT_SAMPLED;
+		}
+		
+		return System.nanoTime();
+	}
+	
+	/**
+	 * Record the latency of a timed call, per element for a call of many
+	 * elements.
+	 * 
+	 * @param histogram
+	 *            the histogram of the kind of call
+	 * 
+	 * @param start
+	 *            the start time of the call, or {@link #NOT_SAMPLED}
+	 * 
+	 * @param count
+	 *            the number of elements in the call
+	 */
+	private static void end(AtomicLongArray histogram, long start, int count) {
+		if(start == NOT_SAMPLED) {
+			return;
+		}
+		
+		long nanos = Math.max(0, System.nanoTime() - start) / count;
+		histogram.incrementAndGet(64 - Long.numberOfLeadingZeros(nanos));
+	}
+	
+	private static long[] snapshot(AtomicLongArray histogram) {
+		long[] counts = new long[histogram.length()];
+		for(int bucket = 0; bucket < counts.length; bucket++) {
+			counts[bucket] = histogram.get(bucket);
+		}
+		
+		return counts;
+	}
+	
+	/**
+	 * Find the upper bound of the bucket holding the given fraction of the
+	 * samples.
+	 * 
+	 * @param counts
+	 *            the number of samples per bucket
+	 * 
+	 * @param fraction
+	 *            the fraction of samples, between zero and one
+	 * 
+	 * @return the upper bound in nanoseconds, or <code>0</code> if there
+	 *         are no samples
+	 */
+	private static long percentile(long[] counts, double fraction) {
+		long total = 0;
+		for(long count : counts) {
+			total += count;
+		}
+		
+		if(total == 0) {
+			return 0;
+		}
+		
+		long threshold = (long) Math.ceil(total * fraction);
+		long seen = 0;
+		for(int bucket = 0; bucket < counts.length; bucket++) {
+			seen += counts[bucket];
+			if(seen >= threshold) {
+				return bucket == counts.length - 1 ? Long.MAX_VALUE : 1L << bucket;
+			}
+		}
+		
+		return Long.MAX_VALUE;
+	}
+
+}
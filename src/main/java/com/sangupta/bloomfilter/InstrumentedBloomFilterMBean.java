@@ -0,0 +1,172 @@
+/**
+ *
+ * bloomfilter - Bloom filters for Java
+ * Copyright (c) 2014-2015, Sandeep Gupta
+ * 
+ * http://sangupta.com/projects/bloomfilter
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+
+package com.sangupta.bloomfilter;
+
+/**
+ * The management interface of an {@link InstrumentedBloomFilter}, exposed
+ * through JMX once the filter is registered with
+ * {@link InstrumentedBloomFilter#register(String)}.
+ * 
+ * Latency histograms have one bucket per power of two: bucket
+ * <code>b</code> counts the sampled calls that took from
+ * <code>2^(b-1)</code> up to, but excluding, <code>2^b</code>
+ * nanoseconds.
+ * 
+ * @author sangupta
+ * @since 1.0
+ */
+public interface InstrumentedBloomFilterMBean {
+	
+	/**
+	 * Whether calls are being recorded.
+	 * 
+	 * @return <code>true</code> if calls are recorded
+	 */
+	public boolean isEnabled();
+	
+	/**
+	 * Start or stop recording calls. Counters keep their values while
+	 * recording is stopped.
+	 * 
+	 * @param enabled
+	 *            <code>true</code> to record calls
+	 */
+	public void setEnabled(boolean enabled);
+	
+	/**
+	 * The number of elements added, one per element of a batch.
+	 * 
+	 * @return the number of elements added
+	 */
+	public long getAddCount();
+	
+	/**
+	 * The number of elements whose addition changed the filter.
+	 * 
+	 * @return the number of elements that changed the filter
+	 */
+	public long getAddChangedCount();
+	
+	/**
+	 * The number of elements looked up, one per element of a batch.
+	 * 
+	 * @return the number of elements looked up
+	 */
+	public long getContainsCount();
+	
+	/**
+	 * The number of elements looked up that the filter reported present.
+	 * 
+	 * @return the number of positive answers
+	 */
+	public long getPositiveCount();
+	
+	/**
+	 * The fraction of look ups that the filter reported present. A rate
+	 * that climbs towards one for elements that are mostly new hints at a
+	 * saturated filter.
+	 * 
+	 * @return the rate of positive answers
+	 */
+	public double getPositiveRate();
+	
+	/**
+	 * The fraction of the filter in use.
+	 * 
+	 * @return the fill ratio
+	 * 
+	 * @see BloomFilter#getFillRatio()
+	 */
+	public double getFillRatio();
+	
+	/**
+	 * The approximate number of elements in the filter.
+	 * 
+	 * @return the approximate number of elements
+	 * 
+	 * @see BloomFilter#getApproximateElementCount()
+	 */
+	public long getApproximateElementCount();
+	
+	/**
+	 * The false positive rate of the filter in its current state.
+	 * 
+	 * @return the estimated false positive rate
+	 * 
+	 * @see BloomFilter#getCurrentFalsePositiveProbability()
+	 */
+	public double getCurrentFalsePositiveProbability();
+	
+	/**
+	 * The memory, or file space, taken by the bits of the filter.
+	 * 
+	 * @return the size of the filter in bytes
+	 */
+	public long getMemoryBytes();
+	
+	/**
+	 * The number of calls per timed call.
+	 * 
+	 * @return the sampling interval
+	 */
+	public int getSampleInterval();
+	
+	/**
+	 * The histogram of the latency of sampled add calls.
+	 * 
+	 * @return the number of samples per bucket
+	 */
+	public long[] getAddLatencyHistogram();
+	
+	/**
+	 * The histogram of the latency of sampled look up calls.
+	 * 
+	 * @return the number of samples per bucket
+	 */
+	public long[] getContainsLatencyHistogram();
+	
+	/**
+	 * The upper bound of the bucket holding the 99th percentile of the
+	 * latency of sampled add calls.
+	 * 
+	 * @return the latency in nanoseconds, or <code>0</code> if nothing was
+	 *         sampled
+	 */
+	public long getAddLatency99thPercentileNanos();
+	
+	/**
+	 * The upper bound of the bucket holding the 99th percentile of the
+	 * latency of sampled look up calls.
+	 * 
+	 * @return the latency in nanoseconds, or <code>0</code> if nothing was
+	 *         sampled
+	 */
+	public long getContainsLatency99thPercentileNanos();
+	
+	/**
+	 * Reset all counters and histograms to zero.
+	 * 
+	 */
+	public void reset();
+
+}
@@ -0,0 +1,328 @@
+/**
+ *
+ * bloomfilter - Bloom filters for Java
+ * Copyright (c) 2014-2015, Sandeep Gupta
+ * 
+ * http://sangupta.com/projects/bloomfilter
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+
+package com.sangupta.bloomfilter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Queue;
+import java.util.RandomAccess;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import com.sangupta.bloomfilter.core.BitArray;
+import com.sangupta.bloomfilter.core.FastBitArray;
+
+/**
+ * Builds bloom filters from large datasets using all available cores. The
+ * values are partitioned over a {@link ForkJoinPool}; every worker sets the
+ * bits of its values in a private {@link FastBitArray}, and the private
+ * arrays are OR-ed into the {@link BitArray} of the filter at the end.
+ * 
+ * As setting bits commutes, the filter ends up bit-for-bit identical to one
+ * built by adding the same values sequentially, whatever the parallelism.
+ * This only holds for filters whose state is all in their bits: filters
+ * that keep more, like the counters of a counting filter or the cells of a
+ * stable filter, cannot be loaded and are refused with an
+ * {@link UnsupportedOperationException}. The filter must not be modified
+ * by other threads while it is being loaded, and its
+ * {@link com.sangupta.bloomfilter.decompose.Decomposer} and
+ * {@link com.sangupta.bloomfilter.hash.HashFunction} must be thread-safe.
+ * 
+ * Each worker needs its own copy of the bits, so up to
+ * <code>parallelism</code> extra arrays the size of the filter are held in
+ * memory during a load.
+ * 
+ * @author sangupta
+ * @since 1.0
+ * 
+ * @param <T> the type of objects to be stored in the filter
+ */
+public class ParallelBloomFilterLoader<T> {
+	
+	/**
+	 * Minimum number of values handled by a single task
+	 */
+	private static final int MIN_TASK_SIZE = 4 * 1024;
+	
+	/**
+	 * Number of tasks created per unit of parallelism, so that work can be
+	 * stolen when some tasks run slower
+	 */
+	private static final int TASKS_PER_WORKER = 8;
+	
+	/**
+	 * The number of workers to use
+	 */
+	protected final int parallelism;
+	
+	/**
+	 * The pool to run in, <code>null</code> to use a new pool for every load
+	 */
+	protected final ForkJoinPool pool;
+	
+	/**
+	 * Create a loader that uses as many workers as there are processors.
+	 * 
+	 */
+	public ParallelBloomFilterLoader() {
+		this(Runtime.getRuntime().availableProcessors());
+	}
+	
+	/**
+	 * Create a loader that uses the given number of workers.
+	 * 
+	 * @param parallelism
+	 *            the number of workers to use
+	 */
+	public ParallelBloomFilterLoader(int parallelism) {
+		if(parallelism <= 0) {
+			throw new IllegalArgumentException("Parallelism cannot be less than or equal to zero");
+		}
+		
+		this.parallelism = parallelism;
+		this.pool = null;
+	}
+	
+	/**
+	 * Create a loader that runs in the given pool. The pool is not shut down
+	 * by the loader.
+	 * 
+	 * @param pool
+	 *            the pool to run in
+	 */
+	public ParallelBloomFilterLoader(ForkJoinPool pool) {
+		if(pool == null) {
+			throw new IllegalArgumentException("ForkJoinPool cannot be null");
+		}
+		
+		this.parallelism = pool.getParallelism();
+		this.pool = pool;
+	}
+	
+	/**
+	 * Add all the given values to the filter, in parallel. <code>null</code>
+	 * values are skipped.
+	 * 
+	 * @param filter
+	 *            the filter to load
+	 * 
+	 * @param values
+	 *            the values to add
+	 * 
+	 * @throws UnsupportedOperationException
+	 *             if the filter keeps state besides its bits
+	 */
+	public void load(final AbstractBloomFilter<T> filter, Collection<? extends T> values) {
+		if(filter == null) {
+			throw new IllegalArgumentException("Filter to load cannot be null");
+		}
+		
+		if(values == null) {
+			throw new IllegalArgumentException("Values to load cannot be null");
+		}
+		
+		final List<? extends T> list;
+		if(values instanceof List && values instanceof RandomAccess) {
+			list = (List<? extends T>) values;
+		} else {
+			list = new ArrayList<T>(values);
+		}
+		
+		run(filter, list.size(), new Source() {
+			
+			@Override
+			public long hash(int index) {
+				return filter.decomposedHash64(list.get(index));
+			}
+			
+			@Override
+			public boolean skip(int index) {
+				return list.get(index) == null;
+			}
+			
+		});
+	}
+	
+	/**
+	 * Add all the given byte arrays to the filter, in parallel.
+	 * 
+	 * @param filter
+	 *            the filter to load
+	 * 
+	 * @param keys
+	 *            the byte arrays to add, none of which can be
+	 *            <code>null</code>
+	 * 
+	 * @throws UnsupportedOperationException
+	 *             if the filter keeps state besides its bits
+	 */
+	public void load(final AbstractBloomFilter<?> filter, final byte[][] keys) {
+		if(filter == null) {
+			throw new IllegalArgumentException("Filter to load cannot be null");
+		}
+		
+		if(keys == null) {
+			throw new IllegalArgumentException("Keys to load cannot be null");
+		}
+		
+		run(filter, keys.length, new Source() {
+			
+			@Override
+			public long hash(int index) {
+				return filter.getLongHash64(keys[index]);
+			}
+			
+			@Override
+			public boolean skip(int index) {
+				return false;
+			}
+			
+		});
+	}
+	
+	/**
+	 * Set the bits for all values of the source in private arrays and merge
+	 * them into the filter.
+	 */
+	private void run(AbstractBloomFilter<?> filter, int size, Source source) {
+		if(!filter.isBitwiseMergeable()) {
+			throw new UnsupportedOperationException("Filter keeps state besides its bits and cannot be loaded in parallel");
+		}
+		
+		if(size == 0) {
+			return;
+		}
+		
+		int taskSize = Math.max(MIN_TASK_SIZE, size / (this.parallelism * TASKS_PER_WORKER));
+		Queue<FastBitArray> arrays = new ConcurrentLinkedQueue<FastBitArray>();
+		LoadTask task = new LoadTask(filter, source, arrays, 0, size, taskSize);
+		
+		if(this.pool != null) {
+			this.pool.invoke(task);
+		} else {
+			ForkJoinPool pool = new ForkJoinPool(this.parallelism);
+			try {
+				pool.invoke(task);
+			} finally {
+				pool.shutdown();
+			}
+		}
+		
+		merge(filter.bitArray, arrays);
+	}
+	
+	/**
+	 * OR all the private arrays into the {@link BitArray} of the filter.
+	 * 
+	 * @param target
+	 *            the array of the filter
+	 * 
+	 * @param arrays
+	 *            the private arrays of the workers
+	 */
+	private static void merge(BitArray target, Queue<FastBitArray> arrays) {
+		FastBitArray merged = arrays.poll();
+		for(FastBitArray array = arrays.poll(); array != null; array = arrays.poll()) {
+			merged.or(array);
+		}
+		
+		target.or(merged);
+	}
+	
+	/**
+	 * The values to load, addressed by index.
+	 */
+	private static abstract class Source {
+		
+		/**
+		 * Whether the value at the given index should be skipped.
+		 */
+		abstract boolean skip(int index);
+		
+		/**
+		 * The 64-bit hash of the value at the given index.
+		 */
+		abstract long hash(int index);
+		
+	}
+	
+	/**
+	 * Sets the bits for a range of values, splitting it while it is large.
+	 */
+	private static class LoadTask extends RecursiveAction {
+		
+		private static final long serialVersionUID = 1L;
+		
+		private final AbstractBloomFilter<?> filter;
+		
+		private final Source source;
+		
+		private final Queue<FastBitArray> arrays;
+		
+		private final int start;
+		
+		private final int end;
+		
+		private final int taskSize;
+		
+		LoadTask(AbstractBloomFilter<?> filter, Source source, Queue<FastBitArray> arrays, int start, int end, int taskSize) {
+			this.filter = filter;
+			this.source = source;
+			this.arrays = arrays;
+			this.start = start;
+			this.end = end;
+			this.taskSize = taskSize;
+		}
+
+		@Override
+		protected void compute() {
+			if(this.end - this.start > this.taskSize) {
+				int middle = (this.start + this.end) >>> 1;
+				invokeAll(new LoadTask(this.filter, this.source, this.arrays, this.start, middle, this.taskSize),
+						  new LoadTask(this.filter, this.source, this.arrays, middle, this.end, this.taskSize));
+				return;
+			}
+			
+			// at most one array per running task is ever created
+			FastBitArray bits = this.arrays.poll();
+			if(bits == null) {
+				bits = new FastBitArray(this.filter.bitArray.bitSize());
+			}
+			
+			try {
+				for(int index = this.start; index < this.end; index++) {
+					if(!this.source.skip(index)) {
+						this.filter.setBits(bits, this.source.hash(index));
+					}
+				}
+			} finally {
+				this.arrays.offer(bits);
+			}
+		}
+		
+	}
+
+}
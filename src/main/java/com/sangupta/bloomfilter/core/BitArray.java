@@ -26,6 +26,10 @@ import java.io.Closeable;
 /**
  * A contract for all implementations of bit-arrays. This provides
  * specific methods that will be needed for working with bloom filters.
+ * 
+ * Bits are addressed using <code>long</code> indexes so that arrays
+ * larger than <code>2^31</code> bits can be supported by the backends
+ * capable of it.
  *  
  * @author sangupta
  * @since 1.0
@@ -40,7 +44,7 @@ public interface BitArray extends Closeable {
 	 * 
 	 * @return <code>true<code> if the but is set, <code>false</code> otherwise
 	 */
-	public boolean getBit(int index);
+	public boolean getBit(long index);
 	
 	/**
 	 * Set the bit at index
@@ -52,7 +56,7 @@ public interface BitArray extends Closeable {
 	 *         otherwise.
 	 * 
 	 */
-	public boolean setBit(int index);
+	public boolean setBit(long index);
 	
 	/**
 	 * Clear all bits in the array.
@@ -66,7 +70,7 @@ public interface BitArray extends Closeable {
 	 * @param index
 	 *            the index of the bit in the array
 	 */
-	public void clearBit(int index);
+	public void clearBit(long index);
 	
 	/**
 	 * Set the bit at index if the bit is unset.
@@ -77,7 +81,7 @@ public interface BitArray extends Closeable {
 	 * @return <code>true</code> if the bit was updated, <code>false</code>
 	 *         otherwise.
 	 */
-	public boolean setBitIfUnset(int index);
+	public boolean setBitIfUnset(long index);
 
 	/**
 	 * Do a Boolean OR with the second {@link BitArray}.
@@ -96,10 +100,76 @@ public interface BitArray extends Closeable {
 	public void and(BitArray bitArray);
 	
 	/**
-	 * The space used by this {@link BitArray} in number of bytes.
+	 * Read a run of 64-bit words from the array. Bit <code>i</code> of word
+	 * <code>w</code> is the bit at index <code>64 * w + i</code>, whatever the
+	 * layout of the backing storage; bits past the end of the array read as
+	 * zero.
+	 * 
+	 * @param fromWord
+	 *            the index of the first word to read
+	 * 
+	 * @param words
+	 *            the array to read the words into
+	 * 
+	 * @param offset
+	 *            the position in <code>words</code> of the first word
+	 * 
+	 * @param length
+	 *            the number of words to read
+	 */
+	public void getWords(long fromWord, long[] words, int offset, int length);
+	
+	/**
+	 * Do a Boolean OR of a run of 64-bit words, laid out as in
+	 * {@link #getWords(long, long[], int, int)}, into the array. Bits past the
+	 * end of the array must be zero.
+	 * 
+	 * @param fromWord
+	 *            the index of the first word to OR with
+	 * 
+	 * @param words
+	 *            the words to OR with
+	 * 
+	 * @param offset
+	 *            the position in <code>words</code> of the first word
+	 * 
+	 * @param length
+	 *            the number of words to OR with
+	 */
+	public void orWords(long fromWord, long[] words, int offset, int length);
+	
+	/**
+	 * Do a Boolean AND of a run of 64-bit words, laid out as in
+	 * {@link #getWords(long, long[], int, int)}, into the array.
+	 * 
+	 * @param fromWord
+	 *            the index of the first word to AND with
+	 * 
+	 * @param words
+	 *            the words to AND with
+	 * 
+	 * @param offset
+	 *            the position in <code>words</code> of the first word
+	 * 
+	 * @param length
+	 *            the number of words to AND with
+	 */
+	public void andWords(long fromWord, long[] words, int offset, int length);
+	
+	/**
+	 * The number of bits this {@link BitArray} holds. Valid indexes are from
+	 * zero up to, but excluding, this value.
+	 * 
+	 * @return the number of bits in the array
+	 */
+	public long bitSize();
+	
+	/**
+	 * The number of bits that are set. Implementations keep the count up to
+	 * date as bits change, so that this method is cheap to call.
 	 * 
-	 * @return the number of bytes being used
+	 * @return the number of set bits
 	 */
-	public int bitSize();
+	public long bitCount();
 
 }
\ No newline at end of file
@@ -0,0 +1,476 @@
+/**
+ *
+ * bloomfilter - Bloom filters for Java
+ * Copyright (c) 2014-2015, Sandeep Gupta
+ * 
+ * http://sangupta.com/projects/bloomfilter
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+
+package com.sangupta.bloomfilter.core;
+
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.zip.Checksum;
+
+/**
+ * Encodings of the bits of a {@link BitArray} for persistence or transfer
+ * over the network. The array is split into containers of
+ * <code>2^16</code> bits, 1024 words, that are encoded one after the other,
+ * so that neither encoding nor decoding needs more than a frame of memory,
+ * whatever the size of the array. Containers are grouped into frames of at
+ * most 1 MB, each prefixed by its length in bytes. All values are
+ * little-endian.
+ * 
+ * {@link #RAW} writes every word as is. {@link #ROARING} chooses the
+ * smallest of three encodings per container, as in Roaring bitmaps: the
+ * sorted positions of the set bits, the runs of set bits, or the words
+ * themselves. Lightly filled filters, which are mostly zeros, shrink to
+ * about two bytes per set bit, while a filter at its design load costs at
+ * most one byte per container more than with {@link #RAW}.
+ * 
+ * @author sangupta
+ * @since 1.0
+ */
+public enum BitArrayCodec {
+	
+	/**
+	 * Every word of the array, as is
+	 */
+	RAW(0) {
+		
+		@Override
+		void encodeContainer(long[] words, int count, ByteBuffer frame) {
+			frame.asLongBuffer().put(words, 0, count);
+			((Buffer) frame).position(frame.position() + count * 8);
+		}
+		
+		@Override
+		void decodeContainer(ByteBuffer frame, long[] words, int count) throws IOException {
+			if(frame.remaining() < count * 8) {
+				throw new IOException("Frame ends within a container");
+			}
+			
+			frame.asLongBuffer().get(words, 0, count);
+			((Buffer) frame).position(frame.position() + count * 8);
+		}
+		
+	},
+	
+	/**
+	 * Roaring-style containers, each holding either the positions of its set
+	 * bits, its runs of set bits, or its words
+	 */
+	ROARING(1) {
+		
+		@Override
+		void encodeContainer(long[] words, int count, ByteBuffer frame) {
+			int cardinality = 0;
+			int runs = 0;
+			long previous = 0;
+			for(int index = 0; index < count; index++) {
+				long word = words[index];
+				cardinality += Long.bitCount(word);
+				
+				// a run starts at every set bit whose lower neighbour is unset
+				runs += Long.bitCount(word & ~((word << 1) | (previous >>> 63)));
+				previous = word;
+			}
+			
+			if(cardinality == 0) {
+				frame.put(EMPTY_CONTAINER);
+				return;
+			}
+			
+			int arraySize = 2 + 2 * cardinality;
+			int runSize = 2 + 4 * runs;
+			int bitmapSize = 8 * count;
+			
+			if(arraySize <= runSize && arraySize < bitmapSize) {
+				frame.put(ARRAY_CONTAINER);
+				frame.putShort((short) cardinality);
+				for(int index = 0; index < count; index++) {
+					long word = words[index];
+					while(word != 0) {
+						frame.putShort((short) ((index << 6) + Long.numberOfTrailingZeros(word)));
+						word &= word - 1;
+					}
+				}
+				
+				return;
+			}
+			
+			if(runSize < bitmapSize) {
+				frame.put(RUN_CONTAINER);
+				frame.putShort((short) runs);
+				
+				int bit = 0;
+				final int numBits = count << 6;
+				while(bit < numBits) {
+					int start = nextBit(words, bit, numBits, true);
+					if(start == numBits) {
+						break;
+					}
+					
+					bit = nextBit(words, start, numBits, false);
+					frame.putShort((short) start);
+					frame.putShort((short) (bit - start - 1));
+				}
+				
+				return;
+			}
+			
+			frame.put(BITMAP_CONTAINER);
+			RAW.encodeContainer(words, count, frame);
+		}
+		
+		@Override
+		void decodeContainer(ByteBuffer frame, long[] words, int count) throws IOException {
+			final int numBits = count << 6;
+			
+			byte type = frame.get();
+			switch(type) {
+				case EMPTY_CONTAINER:
+					clear(words, count);
+					return;
+					
+				case ARRAY_CONTAINER:
+					clear(words, count);
+					int cardinality = frame.getShort() & 0xFFFF;
+					for(int index = 0; index < cardinality; index++) {
+						int bit = frame.getShort() & 0xFFFF;
+						if(bit >= numBits) {
+							throw new IOException("Bit position outside the container: " + bit);
+						}
+						
+						words[bit >>> 6] |= 1L << bit;
+					}
+					return;
+					
+				case RUN_CONTAINER:
+					clear(words, count);
+					int runs = frame.getShort() & 0xFFFF;
+					for(int index = 0; index < runs; index++) {
+						int start = frame.getShort() & 0xFFFF;
+						int end = start + (frame.getShort() & 0xFFFF) + 1;
+						if(end > numBits) {
+							throw new IOException("Run outside the container: " + start + " to " + end);
+						}
+						
+						setRange(words, start, end);
+					}
+					return;
+					
+				case BITMAP_CONTAINER:
+					RAW.decodeContainer(frame, words, count);
+					return;
+					
+				default:
+					throw new IOException("Unknown container type: " + type);
+			}
+		}
+		
+	};
+	
+	/**
+	 * The number of words in a container, <code>2^16</code> bits
+	 */
+	static final int CONTAINER_WORDS = 1024;
+	
+	/**
+	 * The largest number of bytes in a frame, 1 MB
+	 */
+	static final int MAX_FRAME_SIZE = 1024 * 1024;
+	
+	private static final byte EMPTY_CONTAINER = 0;
+	
+	private static final byte ARRAY_CONTAINER = 1;
+	
+	private static final byte RUN_CONTAINER = 2;
+	
+	private static final byte BITMAP_CONTAINER = 3;
+	
+	/**
+	 * The identifier of the codec, as recorded in file headers
+	 */
+	private final int id;
+	
+	private BitArrayCodec(int id) {
+		this.id = id;
+	}
+	
+	/**
+	 * Return the identifier of the codec, as recorded in file headers.
+	 * 
+	 * @return the identifier
+	 */
+	public int getId() {
+		return this.id;
+	}
+	
+	/**
+	 * Find the codec with the given identifier.
+	 * 
+	 * @param id
+	 *            the identifier of the codec
+	 * 
+	 * @return the codec, or <code>null</code> if there is none
+	 */
+	public static BitArrayCodec forId(int id) {
+		for(BitArrayCodec codec : values()) {
+			if(codec.id == id) {
+				return codec;
+			}
+		}
+		
+		return null;
+	}
+	
+	/**
+	 * Encode all bits of the given array to the given channel.
+	 * 
+	 * @param bitArray
+	 *            the array to encode
+	 * 
+	 * @param channel
+	 *            the channel to write to
+	 * 
+	 * @param checksum
+	 *            the checksum to update with every byte written, may be
+	 *            <code>null</code>
+	 * 
+	 * @throws IOException
+	 *             if the channel cannot be written
+	 */
+	public void encode(BitArray bitArray, WritableByteChannel channel, Checksum checksum) throws IOException {
+		if(bitArray == null) {
+			throw new IllegalArgumentException("BitArray cannot be null");
+		}
+		
+		if(channel == null) {
+			throw new IllegalArgumentException("Channel cannot be null");
+		}
+		
+		final long numWords = BitArrays.numWords(bitArray.bitSize());
+		long[] words = new long[CONTAINER_WORDS];
+		ByteBuffer frame = ByteBuffer.allocate(4 + MAX_FRAME_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+		((Buffer) frame).position(4);
+		
+		for(long word = 0; word < numWords; word += CONTAINER_WORDS) {
+			int count = (int) Math.min(CONTAINER_WORDS, numWords - word);
+			bitArray.getWords(word, words, 0, count);
+			
+			// a container is never split across frames
+			if(frame.remaining() < 1 + 8 * count) {
+				writeFrame(frame, channel, checksum);
+			}
+			
+			encodeContainer(words, count, frame);
+		}
+		
+		if(frame.position() > 4) {
+			writeFrame(frame, channel, checksum);
+		}
+	}
+	
+	/**
+	 * Decode bits from the given channel, as written by
+	 * {@link #encode(BitArray, WritableByteChannel, Checksum)}, into the
+	 * given array. The decoded words are ORed into the array a container at a
+	 * time, so an array that is not empty keeps its bits. Exactly the bytes
+	 * written by the encoder are read from the channel.
+	 * 
+	 * @param channel
+	 *            the channel to read from
+	 * 
+	 * @param checksum
+	 *            the checksum to update with every byte read, may be
+	 *            <code>null</code>
+	 * 
+	 * @param bitArray
+	 *            the array to decode into, of the size of the encoded array
+	 * 
+	 * @throws IOException
+	 *             if the channel cannot be read, or the encoding is corrupt
+	 */
+	public void decode(ReadableByteChannel channel, Checksum checksum, BitArray bitArray) throws IOException {
+		if(channel == null) {
+			throw new IllegalArgumentException("Channel cannot be null");
+		}
+		
+		if(bitArray == null) {
+			throw new IllegalArgumentException("BitArray cannot be null");
+		}
+		
+		final long numBits = bitArray.bitSize();
+		final long numWords = BitArrays.numWords(numBits);
+		long[] words = new long[CONTAINER_WORDS];
+		ByteBuffer frame = ByteBuffer.allocate(MAX_FRAME_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+		ByteBuffer length = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+		
+		long word = 0;
+		while(word < numWords) {
+			((Buffer) length).clear();
+			readFully(channel, length, checksum);
+			
+			int frameSize = length.getInt(0);
+			if(frameSize <= 0 || frameSize > MAX_FRAME_SIZE) {
+				throw new IOException("Invalid frame size: " + frameSize);
+			}
+			
+			((Buffer) frame).clear();
+			((Buffer) frame).limit(frameSize);
+			readFully(channel, frame, checksum);
+			((Buffer) frame).flip();
+			
+			try {
+				while(frame.hasRemaining()) {
+					if(word >= numWords) {
+						throw new IOException("Encoding holds more bits than the array");
+					}
+					
+					int count = (int) Math.min(CONTAINER_WORDS, numWords - word);
+					decodeContainer(frame, words, count);
+					
+					if(word + count == numWords && (numBits & 63) != 0) {
+						words[count - 1] &= ~(-1L << numBits);
+					}
+					
+					bitArray.orWords(word, words, 0, count);
+					word += count;
+				}
+			} catch(BufferUnderflowException e) {
+				throw new IOException("Frame ends within a container");
+			}
+		}
+	}
+	
+	/**
+	 * Encode a container into the frame, which has room for its words plus
+	 * one byte.
+	 * 
+	 * @param words
+	 *            the words of the container
+	 * 
+	 * @param count
+	 *            the number of words in the container
+	 * 
+	 * @param frame
+	 *            the frame to encode into
+	 */
+	abstract void encodeContainer(long[] words, int count, ByteBuffer frame);
+	
+	/**
+	 * Decode a container from the frame, overwriting the given words.
+	 * 
+	 * @param frame
+	 *            the frame to decode from
+	 * 
+	 * @param words
+	 *            the words of the container
+	 * 
+	 * @param count
+	 *            the number of words in the container
+	 * 
+	 * @throws IOException
+	 *             if the encoding is corrupt
+	 */
+	abstract void decodeContainer(ByteBuffer frame, long[] words, int count) throws IOException;
+	
+	/**
+	 * Write the frame, prefixed with its length, and reset it for the next
+	 * frame.
+	 */
+	private static void writeFrame(ByteBuffer frame, WritableByteChannel channel, Checksum checksum) throws IOException {
+		frame.putInt(0, frame.position() - 4);
+		((Buffer) frame).flip();
+		
+		if(checksum != null) {
+			checksum.update(frame.array(), 0, frame.limit());
+		}
+		
+		while(frame.hasRemaining()) {
+			channel.write(frame);
+		}
+		
+		((Buffer) frame).clear();
+		((Buffer) frame).position(4);
+	}
+	
+	private static void readFully(ReadableByteChannel channel, ByteBuffer buffer, Checksum checksum) throws IOException {
+		int start = buffer.position();
+		while(buffer.hasRemaining()) {
+			if(channel.read(buffer) < 0) {
+				throw new IOException("Encoding is truncated");
+			}
+		}
+		
+		if(checksum != null) {
+			checksum.update(buffer.array(), start, buffer.position() - start);
+		}
+	}
+	
+	/**
+	 * Find the first bit at or after the given one that is set, or unset.
+	 * 
+	 * @return the index of the bit, or <code>numBits</code> if there is none
+	 */
+	private static int nextBit(long[] words, int from, int numBits, boolean set) {
+		int index = from >>> 6;
+		long word = (set ? words[index] : ~words[index]) & (-1L << from);
+		while(true) {
+			if(word != 0) {
+				return (index << 6) + Long.numberOfTrailingZeros(word);
+			}
+			
+			if(++index == numBits >>> 6) {
+				return numBits;
+			}
+			
+			word = set ? words[index] : ~words[index];
+		}
+	}
+	
+	/**
+	 * Set the bits from the start, inclusive, to the end, exclusive.
+	 */
+	private static void setRange(long[] words, int start, int end) {
+		int first = start >>> 6;
+		int last = (end - 1) >>> 6;
+		if(first == last) {
+			words[first] |= (-1L << start) & (-1L >>> -end);
+			return;
+		}
+		
+		words[first] |= -1L << start;
+		for(int index = first + 1; index < last; index++) {
+			words[index] = -1L;
+		}
+		words[last] |= -1L >>> -end;
+	}
+	
+	private static void clear(long[] words, int count) {
+		for(int index = 0; index < count; index++) {
+			words[index] = 0;
+		}
+	}
+
+}
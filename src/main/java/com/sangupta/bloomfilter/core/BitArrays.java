@@ -0,0 +1,202 @@
+/**
+ *
+ * bloomfilter - Bloom filters for Java
+ * Copyright (c) 2014-2015, Sandeep Gupta
+ * 
+ * http://sangupta.com/projects/bloomfilter
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+
+package com.sangupta.bloomfilter.core;
+
+/**
+ * Helper methods to combine {@link BitArray}s of any backend a word at a
+ * time. Words are streamed from the source array in chunks through
+ * {@link BitArray#getWords(long, long[], int, int)} so that arrays of any
+ * size can be combined with a small, fixed buffer.
+ * 
+ * @author sangupta
+ * @since 1.0
+ */
+final class BitArrays {
+	
+	/**
+	 * The number of words combined per chunk, 64KB worth of bits
+	 */
+	static final int WORD_BUFFER_SIZE = 8 * 1024;
+	
+	private BitArrays() {
+		// no instances
+	}
+	
+	/**
+	 * Do a Boolean OR of the source array into the target array.
+	 * 
+	 * @param target
+	 *            the array to be updated
+	 * 
+	 * @param source
+	 *            the array to OR with
+	 */
+	static void or(BitArray target, BitArray source) {
+		checkCompatible(target, source);
+		
+		long numWords = numWords(target.bitSize());
+		long[] buffer = new long[(int) Math.min(WORD_BUFFER_SIZE, numWords)];
+		for(long word = 0; word < numWords; word += buffer.length) {
+			int length = (int) Math.min(buffer.length, numWords - word);
+			source.getWords(word, buffer, 0, length);
+			target.orWords(word, buffer, 0, length);
+		}
+	}
+	
+	/**
+	 * Do a Boolean AND of the source array into the target array.
+	 * 
+	 * @param target
+	 *            the array to be updated
+	 * 
+	 * @param source
+	 *            the array to AND with
+	 */
+	static void and(BitArray target, BitArray source) {
+		checkCompatible(target, source);
+		
+		long numWords = numWords(target.bitSize());
+		long[] buffer = new long[(int) Math.min(WORD_BUFFER_SIZE, numWords)];
+		for(long word = 0; word < numWords; word += buffer.length) {
+			int length = (int) Math.min(buffer.length, numWords - word);
+			source.getWords(word, buffer, 0, length);
+			target.andWords(word, buffer, 0, length);
+		}
+	}
+	
+	/**
+	 * Clear stray bits past the end of the given array, left by an earlier
+	 * use of its storage. Only the last word is read, and it is written only
+	 * if it does hold stray bits.
+	 * 
+	 * @param bitArray
+	 *            the array to clear the stray bits of
+	 */
+	static void clearStrayBits(BitArray bitArray) {
+		long numBits = bitArray.bitSize();
+		if((numBits & 63) == 0) {
+			return;
+		}
+		
+		long[] last = new long[1];
+		long lastWord = numWords(numBits) - 1;
+		bitArray.getWords(lastWord, last, 0, 1);
+		
+		long valid = ~(-1L << numBits);
+		if((last[0] & ~valid) != 0) {
+			last[0] = valid;
+			bitArray.andWords(lastWord, last, 0, 1);
+		}
+	}
+	
+	/**
+	 * Count the bits set in the given array by reading all of its words, for
+	 * arrays that open existing storage and need to seed their count.
+	 * 
+	 * @param bitArray
+	 *            the array to count the bits of
+	 * 
+	 * @return the number of set bits
+	 */
+	static long countBits(BitArray bitArray) {
+		long numWords = numWords(bitArray.bitSize());
+		
+		long[] buffer = new long[(int) Math.min(WORD_BUFFER_SIZE, numWords)];
+		
+		long count = 0;
+		for(long word = 0; word < numWords; word += buffer.length) {
+			int length = (int) Math.min(buffer.length, numWords - word);
+			bitArray.getWords(word, buffer, 0, length);
+			for(int index = 0; index < length; index++) {
+				count += Long.bitCount(buffer[index]);
+			}
+		}
+		
+		return count;
+	}
+	
+	/**
+	 * Check that the two arrays can be combined.
+	 * 
+	 * @param target
+	 *            the array to be updated
+	 * 
+	 * @param source
+	 *            the array to combine with
+	 */
+	static void checkCompatible(BitArray target, BitArray source) {
+		if(source == null) {
+			throw new IllegalArgumentException("Array to be combined with cannot be null");
+		}
+		
+		if(target.bitSize() != source.bitSize()) {
+			throw new IllegalArgumentException("Array to be combined with must be of equal length");
+		}
+	}
+	
+	/**
+	 * Check that a run of words lies within both the array of the given
+	 * number of bits and the given buffer.
+	 * 
+	 * @param numBits
+	 *            the number of bits in the array
+	 * 
+	 * @param fromWord
+	 *            the index of the first word
+	 * 
+	 * @param words
+	 *            the buffer holding the words
+	 * 
+	 * @param offset
+	 *            the position of the first word in the buffer
+	 * 
+	 * @param length
+	 *            the number of words
+	 */
+	static void checkWords(long numBits, long fromWord, long[] words, int offset, int length) {
+		if(words == null) {
+			throw new IllegalArgumentException("Words cannot be null");
+		}
+		
+		if(offset < 0 || length < 0 || offset > words.length - length) {
+			throw new IndexOutOfBoundsException("Range is outside the buffer: " + offset + ", " + length);
+		}
+		
+		if(fromWord < 0 || fromWord > numWords(numBits) - length) {
+			throw new IndexOutOfBoundsException("Range is outside the bit array: " + fromWord + ", " + length);
+		}
+	}
+	
+	/**
+	 * The number of words needed to hold the given number of bits.
+	 * 
+	 * @param numBits
+	 *            the number of bits
+	 * 
+	 * @return the number of 64-bit words
+	 */
+	static long numWords(long numBits) {
+		return (numBits + 63) >>> 6;
+	}
+
+}
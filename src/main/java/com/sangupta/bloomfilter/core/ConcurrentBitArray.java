@@ -0,0 +1,345 @@
+/**
+ *
+ * bloomfilter - Bloom filters for Java
+ * Copyright (c) 2014-2015, Sandeep Gupta
+ * 
+ * http://sangupta.com/projects/bloomfilter
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+
+package com.sangupta.bloomfilter.core;
+
+import java.io.IOException;
+import java.math.RoundingMode;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A thread-safe, lock-free {@link BitArray} implementation backed by an
+ * {@link AtomicLongArray}. Bits are set and cleared using word-level
+ * compare-and-swap, and reads are simple loads of the containing word. Any
+ * number of threads may read and write concurrently without external
+ * synchronization.
+ * 
+ * Setting a bit that is already set does not issue a CAS at all, so that
+ * concurrent writers to a well-filled array do not keep invalidating each
+ * other's cache lines.
+ * 
+ * @author sangupta
+ * @since 1.0
+ */
+public class ConcurrentBitArray implements BitArray {
+	
+	/**
+	 * The number of counters the count of set bits is spread over
+	 */
+	private static final int COUNT_STRIPES = 64;
+	
+	/**
+	 * The distance between two counters, a cache line of longs
+	 */
+	private static final int COUNT_PADDING = 8;
+	
+	/**
+	 * The words holding the bits
+	 */
+	final AtomicLongArray data;
+	
+	/**
+	 * The number of bits this array can hold
+	 */
+	final long size;
+	
+	/**
+	 * The counts of set bits, striped by word with each stripe on its own
+	 * cache line, so that concurrent writers do not contend on one counter
+	 */
+	private final AtomicLongArray counts = new AtomicLongArray(COUNT_STRIPES * COUNT_PADDING);
+	
+	/**
+	 * Construct a {@link ConcurrentBitArray} that can hold the given number
+	 * of bits.
+	 * 
+	 * @param numBits
+	 *            the number of bits this instance can hold
+	 */
+	public ConcurrentBitArray(long numBits) {
+		if(numBits <= 0) {
+			throw new IllegalArgumentException("Number of bits cannot be less than or equal to zero");
+		}
+		
+		this.data = new AtomicLongArray(FastBitArray.checkedCast(FastBitArray.divide(numBits, Long.SIZE, RoundingMode.CEILING)));
+		this.size = numBits;
+	}
+
+	/**
+	 * @see BitArray#getBit(long)
+	 */
+	@Override
+	public boolean getBit(long index) {
+		return (this.data.get(wordIndex(index)) & (1L << index)) != 0;
+	}
+
+	/**
+	 * @see BitArray#setBit(long)
+	 */
+	@Override
+	public boolean setBit(long index) {
+		final int word = wordIndex(index);
+		final long mask = 1L << index;
+		
+		long current;
+		do {
+			current = this.data.get(word);
+			if((current & mask) != 0) {
+				return false;
+			}
+		} while(!this.data.compareAndSet(word, current, current | mask));
+		
+		addCount(word, 1);
+		return true;
+	}
+
+	/**
+	 * @see BitArray#clear()
+	 */
+	@Override
+	public void clear() {
+		for(int index = 0; index < this.data.length(); index++) {
+			addCount(index, -Long.bitCount(this.data.getAndSet(index, 0l)));
+		}
+	}
+
+	/**
+	 * @see BitArray#clearBit(long)
+	 */
+	@Override
+	public void clearBit(long index) {
+		final int word = wordIndex(index);
+		final long mask = 1L << index;
+		
+		long current;
+		do {
+			current = this.data.get(word);
+			if((current & mask) == 0) {
+				return;
+			}
+		} while(!this.data.compareAndSet(word, current, current & ~mask));
+		
+		addCount(word, -1);
+	}
+
+	/**
+	 * @see BitArray#setBitIfUnset(long)
+	 */
+	@Override
+	public boolean setBitIfUnset(long index) {
+		// setBit never writes a bit that is already set
+		return this.setBit(index);
+	}
+
+	/**
+	 * @see BitArray#or(BitArray)
+	 */
+	@Override
+	public void or(BitArray bitArray) {
+		checkCompatible(bitArray);
+		
+		if(bitArray instanceof ConcurrentBitArray) {
+			AtomicLongArray other = ((ConcurrentBitArray) bitArray).data;
+			for(int word = 0; word < this.data.length(); word++) {
+				orWord(word, other.get(word));
+			}
+			
+			return;
+		}
+		
+		BitArrays.or(this, bitArray);
+	}
+
+	/**
+	 * @see BitArray#and(BitArray)
+	 */
+	@Override
+	public void and(BitArray bitArray) {
+		checkCompatible(bitArray);
+		
+		if(bitArray instanceof ConcurrentBitArray) {
+			AtomicLongArray other = ((ConcurrentBitArray) bitArray).data;
+			for(int word = 0; word < this.data.length(); word++) {
+				andWord(word, other.get(word));
+			}
+			
+			return;
+		}
+		
+		BitArrays.and(this, bitArray);
+	}
+
+	/**
+	 * @see BitArray#getWords(long, long[], int, int)
+	 */
+	@Override
+	public void getWords(long fromWord, long[] words, int offset, int length) {
+		BitArrays.checkWords(this.size, fromWord, words, offset, length);
+		
+		int word = (int) fromWord;
+		for(int index = offset; index < offset + length; index++, word++) {
+			words[index] = this.data.get(word);
+		}
+	}
+
+	/**
+	 * Each word is updated atomically, the run as a whole is not.
+	 * 
+	 * @see BitArray#orWords(long, long[], int, int)
+	 */
+	@Override
+	public void orWords(long fromWord, long[] words, int offset, int length) {
+		BitArrays.checkWords(this.size, fromWord, words, offset, length);
+		
+		int word = (int) fromWord;
+		for(int index = offset; index < offset + length; index++, word++) {
+			orWord(word, words[index]);
+		}
+	}
+
+	/**
+	 * Each word is updated atomically, the run as a whole is not.
+	 * 
+	 * @see BitArray#andWords(long, long[], int, int)
+	 */
+	@Override
+	public void andWords(long fromWord, long[] words, int offset, int length) {
+		BitArrays.checkWords(this.size, fromWord, words, offset, length);
+		
+		int word = (int) fromWord;
+		for(int index = offset; index < offset + length; index++, word++) {
+			andWord(word, words[index]);
+		}
+	}
+
+	/**
+	 * @see BitArray#bitSize()
+	 */
+	@Override
+	public long bitSize() {
+		return this.size;
+	}
+
+	/**
+	 * The count is exact when no bits are being changed concurrently.
+	 * 
+	 * @see BitArray#bitCount()
+	 */
+	@Override
+	public long bitCount() {
+		long count = 0;
+		for(int stripe = 0; stripe < COUNT_STRIPES; stripe++) {
+			count += this.counts.get(stripe * COUNT_PADDING);
+		}
+		
+		return count;
+	}
+
+	@Override
+	public void close() throws IOException {
+		// do nothing
+	}
+	
+	/**
+	 * Atomically OR the given bits into a word.
+	 * 
+	 * @param word
+	 *            the index of the word
+	 * 
+	 * @param bits
+	 *            the bits to OR with
+	 */
+	private void orWord(int word, long bits) {
+		long current;
+		do {
+			current = this.data.get(word);
+		} while((current | bits) != current && !this.data.compareAndSet(word, current, current | bits));
+		
+		addCount(word, Long.bitCount(current | bits) - Long.bitCount(current));
+	}
+	
+	/**
+	 * Atomically AND the given bits into a word.
+	 * 
+	 * @param word
+	 *            the index of the word
+	 * 
+	 * @param bits
+	 *            the bits to AND with
+	 */
+	private void andWord(int word, long bits) {
+		long current;
+		do {
+			current = this.data.get(word);
+		} while((current & bits) != current && !this.data.compareAndSet(word, current, current & bits));
+		
+		addCount(word, Long.bitCount(current & bits) - Long.bitCount(current));
+	}
+	
+	/**
+	 * Add to the count of set bits, in the stripe of the given word.
+	 * 
+	 * @param word
+	 *            the index of the word whose bits changed
+	 * 
+	 * @param delta
+	 *            the change in the number of set bits
+	 */
+	private void addCount(int word, long delta) {
+		if(delta != 0) {
+			this.counts.addAndGet((word & (COUNT_STRIPES - 1)) * COUNT_PADDING, delta);
+		}
+	}
+	
+	/**
+	 * Find the word holding the bit at the given index.
+	 * 
+	 * @param index
+	 *            the index of the bit
+	 * 
+	 * @return the index of the word
+	 */
+	private int wordIndex(long index) {
+		if(index < 0 || index >= this.size) {
+			throw new IndexOutOfBoundsException("Index is outside the bit array: " + index);
+		}
+		
+		return (int) (index >>> 6);
+	}
+	
+	/**
+	 * Check that the given {@link BitArray} can be combined with this one.
+	 * 
+	 * @param bitArray
+	 *            the array to combine with
+	 */
+	private void checkCompatible(BitArray bitArray) {
+		if(bitArray == null) {
+			throw new IllegalArgumentException("BitArray to combine with cannot be null");
+		}
+		
+		if(this.size != bitArray.bitSize()) {
+			throw new IllegalArgumentException("BitArray to combine with is of different length");
+		}
+	}
+
+}
@@ -0,0 +1,130 @@
+/**
+ *
+ * bloomfilter - Bloom filters for Java
+ * Copyright (c) 2014-2015, Sandeep Gupta
+ * 
+ * http://sangupta.com/projects/bloomfilter
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+
+package com.sangupta.bloomfilter.core;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+
+/**
+ * Helper methods to work with direct {@link ByteBuffer}s, like releasing the
+ * native memory held by them without waiting for a garbage collection.
+ * 
+ * @author sangupta
+ * @since 1.0
+ */
+public final class DirectBuffers {
+	
+	private DirectBuffers() {
+		// no instances
+	}
+	
+	/**
+	 * Release the native memory, or the mapping, held by the given direct
+	 * {@link ByteBuffer}. The buffer must not be accessed after this call.
+	 * 
+	 * On Java 9 and above <code>sun.misc.Unsafe#invokeCleaner</code> is used,
+	 * and on older versions the <code>cleaner()</code> of the buffer is
+	 * invoked. If neither is available the memory is released when the buffer
+	 * is garbage-collected.
+	 * 
+	 * @param buffer
+	 *            the buffer to release
+	 * 
+	 * @return <code>true</code> if the memory was released,
+	 *         <code>false</code> otherwise
+	 */
+	public static boolean release(ByteBuffer buffer) {
+		if(buffer == null || !buffer.isDirect()) {
+			return false;
+		}
+		
+		// Java 9 and above
+		try {
+			Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+			Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+			
+			Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+			theUnsafe.setAccessible(true);
+			
+			invokeCleaner.invoke(theUnsafe.get(null), buffer);
+			return true;
+		} catch(Exception e) {
+			// fall through to the older mechanism
+		}
+		
+		// Java 8 and below
+		//
+		// we could use this type cast and call functions without reflection code,
+		// but static import from sun.* package is risky for non-SUN virtual machine.
+		//try { ((sun.nio.ch.DirectBuffer)cb).cleaner().clean(); } catch (Exception ex) { }
+		try {
+			Method cleaner = buffer.getClass().getMethod("cleaner");
+			cleaner.setAccessible(true);
+			Method clean = Class.forName("sun.misc.Cleaner").getMethod("clean");
+			clean.setAccessible(true);
+			clean.invoke(cleaner.invoke(buffer));
+			return true;
+		} catch(Exception e) {
+			// the buffer will be released when garbage-collected
+		}
+		
+		return false;
+	}
+	
+	/**
+	 * Return a slice of the given direct {@link ByteBuffer} whose starting
+	 * native address is aligned to the given number of bytes. This uses
+	 * <code>ByteBuffer#alignmentOffset(int, int)</code> when running on Java 9
+	 * and above; on older versions the buffer is returned as-is.
+	 * 
+	 * @param buffer
+	 *            the buffer to slice, which should have been allocated with
+	 *            <code>alignment - 1</code> bytes of slack
+	 * 
+	 * @param alignment
+	 *            the alignment in bytes, a power of two
+	 * 
+	 * @return the aligned slice, or the buffer itself if alignment is not
+	 *         possible
+	 */
+	static ByteBuffer alignedSlice(ByteBuffer buffer, int alignment) {
+		if(alignment <= 1) {
+			return buffer;
+		}
+		
+		int misalignment;
+		try {
+			Method alignmentOffset = ByteBuffer.class.getMethod("alignmentOffset", int.class, int.class);
+			misalignment = (Integer) alignmentOffset.invoke(buffer, 0, alignment);
+		} catch(Exception e) {
+			return buffer;
+		}
+		
+		ByteBuffer view = buffer.duplicate();
+		((Buffer) view).position((alignment - misalignment) & (alignment - 1));
+		return view.slice();
+	}
+	
+}
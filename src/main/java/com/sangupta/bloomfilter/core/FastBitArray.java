@@ -25,27 +25,35 @@ import static java.lang.Math.abs;
 import static java.math.RoundingMode.HALF_EVEN;
 import static java.math.RoundingMode.HALF_UP;
 
+import java.io.IOException;
 import java.math.RoundingMode;
 import java.util.Arrays;
 
 /**
  * A fast bit-set implementation that allows direct access to data
- * property so that it can be easily serialized.
+ * property so that it can be easily serialized. The bits are held in
+ * a <code>long[]</code> and thus up to <code>2^37</code> bits can be
+ * addressed. This class is not thread-safe.
  * 
  * @author sangupta
  * @since 1.0
  */
-public class FastBitArray {
+public class FastBitArray implements BitArray {
 
 	/**
 	 * The data-set
 	 */
 	final long[] data;
 	
+	/**
+	 * The number of bits this array holds
+	 */
+	final long numBits;
+	
 	/**
 	 * The current bit count
 	 */
-	private int bitCount;
+	private long bitCount;
 
 	/**
 	 * Construct an instance of the {@link FastBitArray} that can hold
@@ -54,17 +62,23 @@ public class FastBitArray {
 	 * @param bits the number of bits this instance can hold 
 	 */
 	public FastBitArray(long bits) {
-		this(new long[checkedCast(divide(bits, 64, RoundingMode.CEILING))]);
+		this(new long[checkedCast(divide(bits, 64, RoundingMode.CEILING))], bits);
 	}
 
 	// Used by serialization
 	public FastBitArray(long[] data) {
+		this(data, data == null ? 0 : (long) data.length * Long.SIZE);
+	}
+	
+	private FastBitArray(long[] data, long numBits) {
 		if(data == null || data.length == 0) {
 			throw new IllegalArgumentException("Data is either null or zero-length");
 		}
 		
 		this.data = data;
-		int bitCount = 0;
+		this.numBits = numBits;
+		
+		long bitCount = 0;
 		for (long value : data) {
 			bitCount += Long.bitCount(value);
 		}
@@ -72,10 +86,23 @@ public class FastBitArray {
 		this.bitCount = bitCount;
 	}
 
-	/** Returns true if the bit changed value. */
-	boolean set(int index) {
-		if (!get(index)) {
-			data[index >> 6] |= (1L << index);
+	/**
+	 * @see BitArray#getBit(long)
+	 */
+	@Override
+	public boolean getBit(long index) {
+		return (data[wordIndex(index)] & (1L << index)) != 0;
+	}
+
+	/**
+	 * @see BitArray#setBit(long)
+	 */
+	@Override
+	public boolean setBit(long index) {
+		int word = wordIndex(index);
+		long mask = 1L << index;
+		if ((data[word] & mask) == 0) {
+			data[word] |= mask;
 			bitCount++;
 			return true;
 		}
@@ -83,8 +110,108 @@ public class FastBitArray {
 		return false;
 	}
 
-	boolean get(int index) {
-		return (data[index >> 6] & (1L << index)) != 0;
+	/**
+	 * @see BitArray#clear()
+	 */
+	@Override
+	public void clear() {
+		Arrays.fill(data, 0l);
+		bitCount = 0;
+	}
+
+	/**
+	 * @see BitArray#clearBit(long)
+	 */
+	@Override
+	public void clearBit(long index) {
+		int word = wordIndex(index);
+		long mask = 1L << index;
+		if ((data[word] & mask) != 0) {
+			data[word] &= ~mask;
+			bitCount--;
+		}
+	}
+
+	/**
+	 * @see BitArray#setBitIfUnset(long)
+	 */
+	@Override
+	public boolean setBitIfUnset(long index) {
+		return setBit(index);
+	}
+
+	/**
+	 * @see BitArray#or(BitArray)
+	 */
+	@Override
+	public void or(BitArray bitArray) {
+		if(bitArray instanceof FastBitArray) {
+			putAll((FastBitArray) bitArray);
+			return;
+		}
+		
+		BitArrays.or(this, bitArray);
+	}
+
+	/**
+	 * @see BitArray#and(BitArray)
+	 */
+	@Override
+	public void and(BitArray bitArray) {
+		checkCompatible(bitArray);
+		
+		if(bitArray instanceof FastBitArray) {
+			long[] other = ((FastBitArray) bitArray).data;
+			
+			bitCount = 0;
+			for (int i = 0; i < data.length; i++) {
+				data[i] &= other[i];
+				bitCount += Long.bitCount(data[i]);
+			}
+			
+			return;
+		}
+		
+		BitArrays.and(this, bitArray);
+	}
+
+	/**
+	 * @see BitArray#getWords(long, long[], int, int)
+	 */
+	@Override
+	public void getWords(long fromWord, long[] words, int offset, int length) {
+		BitArrays.checkWords(this.numBits, fromWord, words, offset, length);
+		System.arraycopy(this.data, (int) fromWord, words, offset, length);
+	}
+
+	/**
+	 * @see BitArray#orWords(long, long[], int, int)
+	 */
+	@Override
+	public void orWords(long fromWord, long[] words, int offset, int length) {
+		BitArrays.checkWords(this.numBits, fromWord, words, offset, length);
+		
+		int word = (int) fromWord;
+		for(int index = offset; index < offset + length; index++, word++) {
+			long current = data[word];
+			data[word] = current | words[index];
+			bitCount += Long.bitCount(data[word]) - Long.bitCount(current);
+		}
+	}
+
+	/**
+	 * @see BitArray#andWords(long, long[], int, int)
+	 */
+	@Override
+	public void andWords(long fromWord, long[] words, int offset, int length) {
+		BitArrays.checkWords(this.numBits, fromWord, words, offset, length);
+		
+		int word = (int) fromWord;
+		for(int index = offset; index < offset + length; index++, word++) {
+			long current = data[word];
+			data[word] = current & words[index];
+			bitCount -= Long.bitCount(current) - Long.bitCount(data[word]);
+		}
 	}
 
 	/**
@@ -92,19 +219,52 @@ public class FastBitArray {
 	 * 
 	 * @return total number of bits allocated
 	 */
-	public int bitSize() {
-		return data.length * Long.SIZE;
+	@Override
+	public long bitSize() {
+		return this.numBits;
 	}
 
 	/**
-	 * Number of set bits (1s)
-	 * 
-	 * @return the number of set bits
+	 * @see BitArray#bitCount()
 	 */
-	public int bitCount() {
+	@Override
+	public long bitCount() {
 		return this.bitCount;
 	}
 
+	/**
+	 * Find the index of the first set bit at or after the given index.
+	 * 
+	 * @param fromIndex
+	 *            the index to start looking from
+	 * 
+	 * @return the index of the next set bit, or <code>-1</code> if there is
+	 *         no such bit
+	 */
+	public long nextSetBit(long fromIndex) {
+		if(fromIndex < 0) {
+			throw new IndexOutOfBoundsException("Index cannot be negative: " + fromIndex);
+		}
+		
+		if(fromIndex >= this.numBits) {
+			return -1;
+		}
+		
+		int word = (int) (fromIndex >>> 6);
+		long bits = data[word] & (-1L << fromIndex);
+		while(true) {
+			if(bits != 0) {
+				return ((long) word << 6) + Long.numberOfTrailingZeros(bits);
+			}
+			
+			if(++word == data.length) {
+				return -1;
+			}
+			
+			bits = data[word];
+		}
+	}
+
 	/**
 	 * Copy the bitset.
 	 * 
@@ -112,18 +272,12 @@ public class FastBitArray {
 	 *         this
 	 */
 	public FastBitArray copy() {
-		return new FastBitArray(data.clone());
+		return new FastBitArray(data.clone(), numBits);
 	}
 
 	/** Combines the two BitArrays using bitwise OR. */
 	void putAll(FastBitArray array) {
-		if(array == null) {
-			throw new IllegalArgumentException("Array to be combined with cannot be null");
-		}
-		
-		if(this.data.length != array.data.length) {
-			throw new IllegalArgumentException("Array to be combined with must be of equal length");
-		}
+		checkCompatible(array);
 		
 		bitCount = 0;
 		
@@ -133,6 +287,37 @@ public class FastBitArray {
 		}
 	}
 
+	@Override
+	public void close() throws IOException {
+		// do nothing
+	}
+	
+	/**
+	 * Find the word holding the bit at the given index.
+	 * 
+	 * @param index
+	 *            the index of the bit
+	 * 
+	 * @return the index of the word
+	 */
+	private int wordIndex(long index) {
+		if(index < 0 || index >= this.numBits) {
+			throw new IndexOutOfBoundsException("Index is outside the bit array: " + index);
+		}
+		
+		return (int) (index >>> 6);
+	}
+	
+	/**
+	 * Check that the given {@link BitArray} can be combined with this one.
+	 * 
+	 * @param bitArray
+	 *            the array to combine with
+	 */
+	private void checkCompatible(BitArray bitArray) {
+		BitArrays.checkCompatible(this, bitArray);
+	}
+
 	@Override
 	public boolean equals(Object o) {
 		if (o instanceof FastBitArray) {
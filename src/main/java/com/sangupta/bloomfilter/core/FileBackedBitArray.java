@@ -24,20 +24,47 @@ package com.sangupta.bloomfilter.core;
 import java.io.File;
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
 import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 /**
  * An implementation of {@link BitArray} that uses a normal random
- * file to persist all changes synchronously for the underlying bit
- * array. This is useful for stateful bit-arrays which are expensive
- * to construct yet need a good overall performance. This class is
- * not thread-safe.
+ * file to persist the underlying bit array. This is useful for stateful
+ * bit-arrays which are expensive to construct, or larger than the memory
+ * available, yet need a good overall performance.
+ * 
+ * The file is read and written in fixed-size pages held in an in-process
+ * cache of configurable size. When the cache is full the least recently
+ * used page is evicted, and written back to the file if it was modified.
+ * Modified pages that are still cached reach the file only when
+ * {@link #flush()} or {@link #close()} is called. This class is not
+ * thread-safe.
  * 
  * @author sangupta
  * @since 1.0
  */
 public class FileBackedBitArray implements BitArray {
 	
+	/**
+	 * Size of the buffer used when zero-filling the file
+	 */
+	protected static final int ZERO_FILL_BUFFER_SIZE = 64 * 1024;
+	
+	/**
+	 * Default size of a page in bytes, that of a typical disk block
+	 */
+	public static final int DEFAULT_PAGE_SIZE = 4 * 1024;
+	
+	/**
+	 * Default size of the page cache in bytes
+	 */
+	public static final long DEFAULT_CACHE_SIZE = 64L * 1024 * 1024;
+	
 	/**
 	 * Underlying file that represents the state of the
 	 * {@link BitArray}.
@@ -48,13 +75,79 @@ public class FileBackedBitArray implements BitArray {
 	/**
 	 * The maximum number of elements this file will store
 	 */
-	protected final int maxElements;
+	protected final long maxElements;
 	
 	/**
 	 * The number of bytes being used for this byte-array
 	 * 
 	 */
-	protected final int numBytes;
+	protected final long numBytes;
+	
+	/**
+	 * The number of bits that are set, valid once {@link #bitCountKnown}:
+	 * counting reads the whole file, so it is left for the first call to
+	 * {@link #bitCount()}
+	 */
+	protected long bitCount;
+	
+	/**
+	 * Whether the bits of the file have been counted
+	 */
+	protected boolean bitCountKnown;
+	
+	/**
+	 * The number of words in a page, a power of two
+	 */
+	protected final int pageWords;
+	
+	/**
+	 * The base 2 logarithm of the number of words in a page
+	 */
+	protected final int pageShift;
+	
+	/**
+	 * The largest number of pages held in the cache
+	 */
+	protected final int maxPages;
+	
+	/**
+	 * The cached pages by their index, in order of access
+	 */
+	protected final LinkedHashMap<Long, Page> pages;
+	
+	/**
+	 * Buffer holding the bytes of a page being read or written
+	 */
+	private final byte[] pageBytes;
+	
+	/**
+	 * Little-endian view of the page buffer
+	 */
+	private final LongBuffer pageView;
+	
+	/**
+	 * The page accessed last, which is the most likely to be accessed next
+	 */
+	private Page lastPage;
+	
+	/**
+	 * Construct a {@link BitArray} that is backed by the given file, using
+	 * pages of {@link #DEFAULT_PAGE_SIZE} and a cache of
+	 * {@link #DEFAULT_CACHE_SIZE}. Ensure that the file is a local file and
+	 * not on a network share for performance reasons.
+	 * 
+	 * @param backingFile
+	 *            the file to store the bits in
+	 * 
+	 * @param maxElements
+	 *            the number of bits the array holds
+	 * 
+	 * @throws IOException
+	 *             if the file cannot be opened or extended
+	 */
+	public FileBackedBitArray(File backingFile, long maxElements) throws IOException {
+		this(backingFile, maxElements, DEFAULT_PAGE_SIZE, DEFAULT_CACHE_SIZE);
+	}
 	
 	/**
 	 * Construct a {@link BitArray} that is backed by the given file. Ensure
@@ -62,9 +155,21 @@ public class FileBackedBitArray implements BitArray {
 	 * reasons.
 	 * 
 	 * @param backingFile
-	 * @throws IOException 
+	 *            the file to store the bits in
+	 * 
+	 * @param maxElements
+	 *            the number of bits the array holds
+	 * 
+	 * @param pageSize
+	 *            the size of a page in bytes, a power of two of at least 8
+	 * 
+	 * @param cacheSize
+	 *            the size of the page cache in bytes, at least one page
+	 * 
+	 * @throws IOException
+	 *             if the file cannot be opened or extended
 	 */
-	public FileBackedBitArray(File backingFile, int maxElements) throws IOException {
+	public FileBackedBitArray(File backingFile, long maxElements, int pageSize, long cacheSize) throws IOException {
 		if(backingFile == null) {
 			throw new IllegalArgumentException("Backing file cannot be empty/null");
 		}
@@ -77,60 +182,81 @@ public class FileBackedBitArray implements BitArray {
 			throw new IllegalArgumentException("Max elements in array cannot be less than or equal to zero");
 		}
 		
-		// we open in "rwd" mode, to save one i/o operation
-		// than in "rws" mode
-		this.backingFile = new RandomAccessFile(backingFile, "rwd");
+		if(pageSize < 8 || Integer.bitCount(pageSize) != 1) {
+			throw new IllegalArgumentException("Page size must be a power of two of at least 8 bytes");
+		}
+		
+		if(cacheSize < pageSize) {
+			throw new IllegalArgumentException("Cache size cannot be less than the page size");
+		}
+		
+		this.pageWords = pageSize >>> 3;
+		this.pageShift = Integer.numberOfTrailingZeros(this.pageWords);
+		this.maxPages = (int) Math.min(Integer.MAX_VALUE, cacheSize / pageSize);
+		this.pageBytes = new byte[pageSize];
+		this.pageView = ByteBuffer.wrap(this.pageBytes).order(ByteOrder.LITTLE_ENDIAN).asLongBuffer();
+		this.pages = new LinkedHashMap<Long, Page>(16, 0.75f, true) {
+			
+			private static final long serialVersionUID = 1L;
+			
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Long, Page> eldest) {
+				if(size() <= maxPages) {
+					return false;
+				}
+				
+				try {
+					writePage(eldest.getValue());
+				} catch(IOException e) {
+					throw new RuntimeException("Unable to write bitset to disk");
+				}
+				
+				return true;
+			}
+			
+		};
 		
-		this.numBytes = (maxElements >> 3) + 1;
+		// changes are written back by the cache, and made durable by flush
+		this.backingFile = new RandomAccessFile(backingFile, "rw");
+		
+		this.numBytes = (maxElements + 7) >>> 3;
 		extendFile(this.numBytes);
 		
 		// initialize the rest
 		this.maxElements = maxElements;
+		BitArrays.clearStrayBits(this);
 	}
 
 	/**
-	 * @see BitArray#getBit(int)
+	 * @see BitArray#getBit(long)
 	 */
 	@Override
-	public boolean getBit(int index) {
-		if(index > maxElements) {
-			throw new IndexOutOfBoundsException("Index is greater than max elements permitted");
-		}
+	public boolean getBit(long index) {
+		checkIndex(index);
 		
-		int pos = index >> 3; // div 8
-		int bit = 1 << (index & 0x7);
-		
-		try {
-			this.backingFile.seek(pos);
-			byte bite = this.backingFile.readByte();
-			return (bite & bit) != 0;
-		} catch(IOException e) {
-			throw new RuntimeException("Unable to read bitset from disk");
-		}
+		long word = index >>> 6;
+		return (page(word).words[pageOffset(word)] & (1L << index)) != 0;
 	}
 
 	/**
-	 * @see BitArray#setBit(int)
+	 * @see BitArray#setBit(long)
 	 */
 	@Override
-	public boolean setBit(int index) {
-		if(index > maxElements) {
-			throw new IndexOutOfBoundsException("Index is greater than max elements permitted");
-		}
+	public boolean setBit(long index) {
+		checkIndex(index);
 		
-		int pos = index >> 3; // div 8
-		int bit = 1 << (index & 0x7);
-		try {
-			this.backingFile.seek(pos);
-			byte bite = this.backingFile.readByte();
-			bite = (byte) (bite | bit);
-			
-			this.backingFile.seek(pos);
-			this.backingFile.writeByte(bite);
-			return true;
-		} catch(IOException e) {
-			throw new RuntimeException("Unable to read bitset from disk");
+		long word = index >>> 6;
+		Page page = page(word);
+		int offset = pageOffset(word);
+		long mask = 1L << index;
+		if((page.words[offset] & mask) != 0) {
+			return false;
 		}
+		
+		page.words[offset] |= mask;
+		page.dirty = true;
+		this.bitCount++;
+		return true;
 	}
 
 	/**
@@ -138,53 +264,46 @@ public class FileBackedBitArray implements BitArray {
 	 */
 	@Override
 	public void clear() {
-		byte[] bytes = new byte[this.numBytes];
-		Arrays.fill(bytes, (byte) 0);
+		// cached pages, dirty or not, are all zeros from now on
+		this.pages.clear();
+		this.lastPage = null;
 		
 		try {
-			this.backingFile.seek(0);
-			this.backingFile.write(bytes);
+			writeZeros(0, this.numBytes);
+			this.bitCount = 0;
+			this.bitCountKnown = true;
 		} catch(IOException e) {
-			throw new RuntimeException("Unable to read bitset from disk");
+			throw new RuntimeException("Unable to write bitset to disk");
 		}
 	}
 
 	/**
-	 * @see BitArray#clearBit(int)
+	 * @see BitArray#clearBit(long)
 	 */
 	@Override
-	public void clearBit(int index) {
-		if(index > maxElements) {
-			throw new IndexOutOfBoundsException("Index is greater than max elements permitted");
-		}
+	public void clearBit(long index) {
+		checkIndex(index);
 		
-		int pos = index >> 3; // div 8
-		int bit = 1 << (index & 0x7);
-		bit = ~bit;
-		
-		try {
-			this.backingFile.seek(pos);
-			byte bite = this.backingFile.readByte();
-			bite = (byte) (bite & bit);
-			
-			
-			this.backingFile.seek(pos);
-			this.backingFile.writeByte(bite);
-		} catch(IOException e) {
-			throw new RuntimeException("Unable to read bitset from disk");
+		long word = index >>> 6;
+		Page page = page(word);
+		int offset = pageOffset(word);
+		long mask = 1L << index;
+		if((page.words[offset] & mask) == 0) {
+			return;
 		}
+		
+		page.words[offset] &= ~mask;
+		page.dirty = true;
+		this.bitCount--;
 	}
 
 	/**
-	 * @see BitArray#setBitIfUnset(int)
+	 * @see BitArray#setBitIfUnset(long)
 	 */
 	@Override
-	public boolean setBitIfUnset(int index) {
-		if(this.getBit(index)) {
-			return this.setBit(index);
-		}
-		
-		return false;
+	public boolean setBitIfUnset(long index) {
+		// setBit does not modify pages whose bit is already set
+		return this.setBit(index);
 	}
 
 	/**
@@ -192,8 +311,7 @@ public class FileBackedBitArray implements BitArray {
 	 */
 	@Override
 	public void or(BitArray bitArray) {
-		// TODO Auto-generated method stub
-		
+		BitArrays.or(this, bitArray);
 	}
 
 	/**
@@ -201,40 +319,313 @@ public class FileBackedBitArray implements BitArray {
 	 */
 	@Override
 	public void and(BitArray bitArray) {
-		// TODO Auto-generated method stub
+		BitArrays.and(this, bitArray);
+	}
+
+	/**
+	 * @see BitArray#getWords(long, long[], int, int)
+	 */
+	@Override
+	public void getWords(long fromWord, long[] words, int offset, int length) {
+		BitArrays.checkWords(this.maxElements, fromWord, words, offset, length);
 		
+		while(length > 0) {
+			int pageOffset = pageOffset(fromWord);
+			int count = Math.min(length, this.pageWords - pageOffset);
+			System.arraycopy(page(fromWord).words, pageOffset, words, offset, count);
+			
+			fromWord += count;
+			offset += count;
+			length -= count;
+		}
+	}
+
+	/**
+	 * @see BitArray#orWords(long, long[], int, int)
+	 */
+	@Override
+	public void orWords(long fromWord, long[] words, int offset, int length) {
+		updateWords(fromWord, words, offset, length, false);
+	}
+
+	/**
+	 * @see BitArray#andWords(long, long[], int, int)
+	 */
+	@Override
+	public void andWords(long fromWord, long[] words, int offset, int length) {
+		updateWords(fromWord, words, offset, length, true);
+	}
+	
+	/**
+	 * Combine a run of words into the cached pages, a page at a time.
+	 * 
+	 * @param fromWord
+	 *            the index of the first word to combine with
+	 * 
+	 * @param words
+	 *            the words to combine with
+	 * 
+	 * @param offset
+	 *            the position in <code>words</code> of the first word
+	 * 
+	 * @param length
+	 *            the number of words to combine with
+	 * 
+	 * @param and
+	 *            <code>true</code> to AND the words, <code>false</code> to
+	 *            OR them
+	 */
+	protected void updateWords(long fromWord, long[] words, int offset, int length, boolean and) {
+		BitArrays.checkWords(this.maxElements, fromWord, words, offset, length);
+		
+		while(length > 0) {
+			Page page = page(fromWord);
+			int pageOffset = pageOffset(fromWord);
+			int count = Math.min(length, this.pageWords - pageOffset);
+			
+			for(int index = 0; index < count; index++) {
+				long current = page.words[pageOffset + index];
+				long word = and ? current & words[offset + index] : current | words[offset + index];
+				if(word != current) {
+					page.words[pageOffset + index] = word;
+					page.dirty = true;
+					this.bitCount += Long.bitCount(word) - Long.bitCount(current);
+				}
+			}
+			
+			fromWord += count;
+			offset += count;
+			length -= count;
+		}
+	}
+	
+	/**
+	 * Write all modified pages back to the file, and force the file to the
+	 * disk. The pages stay cached.
+	 * 
+	 * @throws IOException
+	 *             if the file cannot be written
+	 */
+	public void flush() throws IOException {
+		for(Page page : this.pages.values()) {
+			writePage(page);
+		}
+		
+		this.backingFile.getChannel().force(false);
+	}
+	
+	/**
+	 * Return the page holding the given word, reading it from the file, and
+	 * possibly evicting the least recently used page, if it is not cached.
+	 * 
+	 * @param word
+	 *            the index of the word
+	 * 
+	 * @return the page holding the word
+	 */
+	protected Page page(long word) {
+		long index = word >>> this.pageShift;
+		
+		Page page = this.lastPage;
+		if(page != null && page.index == index) {
+			return page;
+		}
+		
+		page = this.pages.get(index);
+		if(page == null) {
+			try {
+				page = readPage(index);
+			} catch(IOException e) {
+				throw new RuntimeException("Unable to read bitset from disk");
+			}
+			
+			this.pages.put(index, page);
+		}
+		
+		this.lastPage = page;
+		return page;
+	}
+	
+	/**
+	 * Return the position of the given word within its page.
+	 * 
+	 * @param word
+	 *            the index of the word
+	 * 
+	 * @return the position of the word in the page
+	 */
+	protected int pageOffset(long word) {
+		return (int) word & (this.pageWords - 1);
+	}
+	
+	/**
+	 * Read a page from the file. The last page of the file may be only
+	 * partially present, its missing bytes read as zero.
+	 * 
+	 * @param index
+	 *            the index of the page
+	 * 
+	 * @return the page
+	 * 
+	 * @throws IOException
+	 *             if the file cannot be read
+	 */
+	protected Page readPage(long index) throws IOException {
+		long pos = index << (this.pageShift + 3);
+		int numRead = (int) Math.min(this.pageBytes.length, this.numBytes - pos);
+		
+		this.backingFile.seek(pos);
+		this.backingFile.readFully(this.pageBytes, 0, numRead);
+		Arrays.fill(this.pageBytes, numRead, this.pageBytes.length, (byte) 0);
+		
+		Page page = new Page(index, this.pageWords);
+		((Buffer) this.pageView).clear();
+		this.pageView.get(page.words);
+		return page;
+	}
+	
+	/**
+	 * Write a page back to the file, if it was modified since it was read or
+	 * last written.
+	 * 
+	 * @param page
+	 *            the page to write
+	 * 
+	 * @throws IOException
+	 *             if the file cannot be written
+	 */
+	protected void writePage(Page page) throws IOException {
+		if(!page.dirty) {
+			return;
+		}
+		
+		long pos = page.index << (this.pageShift + 3);
+		int numWrite = (int) Math.min(this.pageBytes.length, this.numBytes - pos);
+		
+		((Buffer) this.pageView).clear();
+		this.pageView.put(page.words);
+		this.backingFile.seek(pos);
+		this.backingFile.write(this.pageBytes, 0, numWrite);
+		page.dirty = false;
 	}
 
 	/**
 	 * @see BitArray#bitSize()
 	 */
 	@Override
-	public int bitSize() {
-		return this.numBytes;
+	public long bitSize() {
+		return this.maxElements;
+	}
+
+	/**
+	 * @see BitArray#bitCount()
+	 */
+	@Override
+	public long bitCount() {
+		if(!this.bitCountKnown) {
+			this.bitCount = BitArrays.countBits(this);
+			this.bitCountKnown = true;
+		}
+		
+		return this.bitCount;
+	}
+	
+	/**
+	 * Check that the index lies within the array.
+	 * 
+	 * @param index
+	 *            the index to check
+	 */
+	protected void checkIndex(long index) {
+		if(index < 0 || index >= maxElements) {
+			throw new IndexOutOfBoundsException("Index is greater than max elements permitted");
+		}
 	}
 	
 	/**
+	 * Extend the file to the given length, filling the new bytes with zeros.
 	 * 
 	 * @param newLength
+	 *            the new length of the file in bytes
+	 * 
 	 * @throws IOException
+	 *             if the file cannot be written to
 	 */
 	protected void extendFile(final long newLength) throws IOException {
 		long current = this.backingFile.length();
-		int delta = (int) (newLength - current) + 1;
-		if(delta <= 0) {
+		if(current >= newLength) {
 			return;
 		}
 		
 		this.backingFile.setLength(newLength);
-		this.backingFile.seek(current);
-		byte[] bytes = new byte[delta];
-		Arrays.fill(bytes, (byte) 0);
-		this.backingFile.write(bytes);
+		writeZeros(current, newLength - current);
+	}
+	
+	/**
+	 * Write zeros to the given region of the file, using a small buffer so
+	 * that large files do not need large allocations.
+	 * 
+	 * @param position
+	 *            the position to start writing at
+	 * 
+	 * @param length
+	 *            the number of zero bytes to write
+	 * 
+	 * @throws IOException
+	 *             if the file cannot be written to
+	 */
+	protected void writeZeros(long position, long length) throws IOException {
+		byte[] zeros = new byte[(int) Math.min(ZERO_FILL_BUFFER_SIZE, length)];
+		
+		this.backingFile.seek(position);
+		while(length > 0) {
+			int chunk = (int) Math.min(zeros.length, length);
+			this.backingFile.write(zeros, 0, chunk);
+			length -= chunk;
+		}
 	}
 
+	/**
+	 * Write all modified pages back to the file, and close it.
+	 * 
+	 */
 	@Override
 	public void close() throws IOException {
-		this.backingFile.close();
+		try {
+			flush();
+		} finally {
+			this.pages.clear();
+			this.lastPage = null;
+			this.backingFile.close();
+		}
+	}
+	
+	/**
+	 * A cached page of the file.
+	 * 
+	 */
+	protected static final class Page {
+		
+		/**
+		 * The index of the page in the file
+		 */
+		public final long index;
+		
+		/**
+		 * The words of the page
+		 */
+		public final long[] words;
+		
+		/**
+		 * Whether the page was modified since it was read or last written
+		 */
+		public boolean dirty;
+		
+		Page(long index, int numWords) {
+			this.index = index;
+			this.words = new long[numWords];
+		}
+		
 	}
 	
-}
\ No newline at end of file
+}
@@ -0,0 +1,85 @@
+/**
+ *
+ * bloomfilter - Bloom filters for Java
+ * Copyright (c) 2014-2015, Sandeep Gupta
+ * 
+ * http://sangupta.com/projects/bloomfilter
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+
+package com.sangupta.bloomfilter.core;
+
+import java.io.Closeable;
+
+/**
+ * A contract for arrays of fixed-width fingerprints, as used by filters
+ * that store a short hash per element instead of setting bits, like cuckoo
+ * filters. A fingerprint of zero marks an empty slot.
+ * 
+ * Slots are addressed using <code>long</code> indexes so that arrays with
+ * more than <code>2^31</code> slots can be supported by the backends capable
+ * of it.
+ * 
+ * @author sangupta
+ * @since 1.0
+ */
+public interface FingerprintArray extends Closeable {
+	
+	/**
+	 * Get the fingerprint in the slot at index
+	 * 
+	 * @param index
+	 *            the index of the slot in the array
+	 * 
+	 * @return the fingerprint, or zero if the slot is empty
+	 */
+	public int get(long index);
+	
+	/**
+	 * Set the fingerprint in the slot at index
+	 * 
+	 * @param index
+	 *            the index of the slot in the array
+	 * 
+	 * @param fingerprint
+	 *            the fingerprint to store, which must fit in
+	 *            {@link #getBitsPerFingerprint()} bits, or zero to empty the
+	 *            slot
+	 */
+	public void set(long index, int fingerprint);
+	
+	/**
+	 * Empty all slots in the array.
+	 * 
+	 */
+	public void clear();
+	
+	/**
+	 * The number of slots this {@link FingerprintArray} holds. Valid indexes
+	 * are from zero up to, but excluding, this value.
+	 * 
+	 * @return the number of slots in the array
+	 */
+	public long size();
+	
+	/**
+	 * The number of bits in each fingerprint.
+	 * 
+	 * @return the number of bits per fingerprint
+	 */
+	public int getBitsPerFingerprint();
+
+}
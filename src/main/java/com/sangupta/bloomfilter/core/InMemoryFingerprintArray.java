@@ -0,0 +1,166 @@
+/**
+ *
+ * bloomfilter - Bloom filters for Java
+ * Copyright (c) 2014-2015, Sandeep Gupta
+ * 
+ * http://sangupta.com/projects/bloomfilter
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+
+package com.sangupta.bloomfilter.core;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * An in-memory {@link FingerprintArray} that packs the fingerprints into a
+ * <code>long[]</code>, one after the other, so that a fingerprint of any
+ * width between 2 and 32 bits takes exactly that many bits. A fingerprint
+ * may span two words. This class is not thread-safe.
+ * 
+ * @author sangupta
+ * @since 1.0
+ */
+public class InMemoryFingerprintArray implements FingerprintArray {
+	
+	/**
+	 * The packed fingerprints
+	 */
+	protected final long[] data;
+	
+	/**
+	 * The number of slots in the array
+	 */
+	protected final long numSlots;
+	
+	/**
+	 * The number of bits in each fingerprint
+	 */
+	protected final int bitsPerFingerprint;
+	
+	/**
+	 * Mask for one fingerprint
+	 */
+	private final long mask;
+	
+	/**
+	 * Construct an array of the given number of slots.
+	 * 
+	 * @param numSlots
+	 *            the number of slots
+	 * 
+	 * @param bitsPerFingerprint
+	 *            the number of bits per fingerprint, between 2 and 32
+	 */
+	public InMemoryFingerprintArray(long numSlots, int bitsPerFingerprint) {
+		if(numSlots <= 0) {
+			throw new IllegalArgumentException("Number of slots cannot be less than or equal to zero");
+		}
+		
+		if(bitsPerFingerprint < 2 || bitsPerFingerprint > 32) {
+			throw new IllegalArgumentException("Bits per fingerprint must be between 2 and 32");
+		}
+		
+		long numWords = (numSlots * bitsPerFingerprint + 63) >>> 6;
+		if(numWords > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("Too many slots: " + numSlots);
+		}
+		
+		this.data = new long[(int) numWords];
+		this.numSlots = numSlots;
+		this.bitsPerFingerprint = bitsPerFingerprint;
+		this.mask = (1L << bitsPerFingerprint) - 1;
+	}
+
+	/**
+	 * @see FingerprintArray#get(long)
+	 */
+	@Override
+	public int get(long index) {
+		long position = position(index);
+		int word = (int) (position >>> 6);
+		int shift = (int) (position & 63);
+		
+		long value = this.data[word] >>> shift;
+		if(shift + this.bitsPerFingerprint > 64) {
+			value |= this.data[word + 1] << (64 - shift);
+		}
+		
+		return (int) (value & this.mask);
+	}
+
+	/**
+	 * @see FingerprintArray#set(long, int)
+	 */
+	@Override
+	public void set(long index, int fingerprint) {
+		long value = fingerprint & 0xFFFFFFFFL;
+		if(value > this.mask) {
+			throw new IllegalArgumentException("Fingerprint does not fit in " + this.bitsPerFingerprint + " bits: " + fingerprint);
+		}
+		
+		long position = position(index);
+		int word = (int) (position >>> 6);
+		int shift = (int) (position & 63);
+		
+		this.data[word] = (this.data[word] & ~(this.mask << shift)) | (value << shift);
+		if(shift + this.bitsPerFingerprint > 64) {
+			int spill = 64 - shift;
+			this.data[word + 1] = (this.data[word + 1] & ~(this.mask >>> spill)) | (value >>> spill);
+		}
+	}
+
+	/**
+	 * @see FingerprintArray#clear()
+	 */
+	@Override
+	public void clear() {
+		Arrays.fill(this.data, 0);
+	}
+
+	/**
+	 * @see FingerprintArray#size()
+	 */
+	@Override
+	public long size() {
+		return this.numSlots;
+	}
+
+	/**
+	 * @see FingerprintArray#getBitsPerFingerprint()
+	 */
+	@Override
+	public int getBitsPerFingerprint() {
+		return this.bitsPerFingerprint;
+	}
+
+	@Override
+	public void close() throws IOException {
+		// nothing to do
+	}
+	
+	/**
+	 * Compute the bit position of the slot at the given index.
+	 */
+	private long position(long index) {
+		if(index < 0 || index >= this.numSlots) {
+			throw new IndexOutOfBoundsException("Slot index out of range: " + index);
+		}
+		
+		return index * this.bitsPerFingerprint;
+	}
+
+}
@@ -22,90 +22,183 @@
 package com.sangupta.bloomfilter.core;
 
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.BitSet;
 
 /**
- * A {@link BitArray} implementation that uses the standard Java {@link BitSet}
- * as the underlying implementation.
+ * A {@link BitArray} implementation laid out as the standard Java
+ * {@link BitSet}: bit <code>i</code> is bit <code>i % 64</code> of word
+ * <code>i / 64</code>, so that {@link BitSet#valueOf(long[])} reads it back.
+ * The words are held in a plain <code>long[]</code> rather than in a
+ * {@link BitSet}, which gives no access to them, so that ranges of words can
+ * be read, or-ed and and-ed a word at a time. As {@link BitSet} uses
+ * <code>int</code> indexes, this array can hold at most
+ * {@link Integer#MAX_VALUE} bits.
  * 
  * @author sangupta
  * @since 1.0
  */
 public class JavaBitSetArray implements BitArray {
 	
-	final BitSet bitSet;
+	final long[] words;
 	
 	final int size;
 	
-	public JavaBitSetArray(int numBits) {
-		this.bitSet = new BitSet(numBits);
-		this.size = this.bitSet.size();
+	/**
+	 * The number of bits that are set, as counting them scans all words
+	 */
+	private int bitCount;
+	
+	public JavaBitSetArray(long numBits) {
+		if(numBits <= 0 || numBits > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("Number of bits must be between 1 and " + Integer.MAX_VALUE + " for a BitSet");
+		}
+		
+		this.words = new long[(int) BitArrays.numWords(numBits)];
+		this.size = (int) numBits;
 	}
 
 	@Override
 	public void clear() {
-		this.bitSet.clear();
+		Arrays.fill(this.words, 0l);
+		this.bitCount = 0;
 	}
 
 	@Override
-	public boolean getBit(int index) {
-		return this.bitSet.get(index);
+	public boolean getBit(long index) {
+		int position = checkIndex(index);
+		return (this.words[position >>> 6] & (1L << position)) != 0;
 	}
 
 	@Override
-	public boolean setBit(int index) {
-		this.bitSet.set(index);
+	public boolean setBit(long index) {
+		int position = checkIndex(index);
+		long mask = 1L << position;
+		if((this.words[position >>> 6] & mask) != 0) {
+			return false;
+		}
+		
+		this.words[position >>> 6] |= mask;
+		this.bitCount++;
 		return true;
 	}
 
 	@Override
-	public void clearBit(int index) {
-		this.bitSet.clear(index);
+	public void clearBit(long index) {
+		int position = checkIndex(index);
+		long mask = 1L << position;
+		if((this.words[position >>> 6] & mask) != 0) {
+			this.words[position >>> 6] &= ~mask;
+			this.bitCount--;
+		}
 	}
 
 	@Override
-	public boolean setBitIfUnset(int index) {
-		if(!this.bitSet.get(index)) {
-			return this.setBit(index);
-		}
-		
-		return false;
+	public boolean setBitIfUnset(long index) {
+		return this.setBit(index);
 	}
 
 	@Override
 	public void or(BitArray bitArray) {
-		if(bitArray == null) {
-			throw new IllegalArgumentException("BitArray to OR with cannot be null");
+		if(bitArray instanceof JavaBitSetArray) {
+			BitArrays.checkCompatible(this, bitArray);
+			orWords(0, ((JavaBitSetArray) bitArray).words, 0, this.words.length);
+			return;
 		}
 		
-		if(this.size != bitArray.bitSize()) {
-			throw new IllegalArgumentException("BitArray to OR with is of different length");
-		}
-		
-		throw new RuntimeException("Operation not yet supported");
+		BitArrays.or(this, bitArray);
 	}
 
 	@Override
 	public void and(BitArray bitArray) {
-		if(bitArray == null) {
-			throw new IllegalArgumentException("BitArray to OR with cannot be null");
+		if(bitArray instanceof JavaBitSetArray) {
+			BitArrays.checkCompatible(this, bitArray);
+			andWords(0, ((JavaBitSetArray) bitArray).words, 0, this.words.length);
+			return;
 		}
 		
-		if(this.size != bitArray.bitSize()) {
-			throw new IllegalArgumentException("BitArray to OR with is of different length");
+		BitArrays.and(this, bitArray);
+	}
+
+	@Override
+	public void getWords(long fromWord, long[] words, int offset, int length) {
+		BitArrays.checkWords(this.size, fromWord, words, offset, length);
+		
+		System.arraycopy(this.words, (int) fromWord, words, offset, length);
+	}
+
+	@Override
+	public void orWords(long fromWord, long[] words, int offset, int length) {
+		BitArrays.checkWords(this.size, fromWord, words, offset, length);
+		
+		int word = (int) fromWord;
+		for(int index = offset; index < offset + length; index++, word++) {
+			long current = this.words[word];
+			long updated = current | (words[index] & validBits(word));
+			this.words[word] = updated;
+			this.bitCount += Long.bitCount(updated) - Long.bitCount(current);
 		}
+	}
+
+	@Override
+	public void andWords(long fromWord, long[] words, int offset, int length) {
+		BitArrays.checkWords(this.size, fromWord, words, offset, length);
 		
-		throw new RuntimeException("Operation not yet supported");
+		int word = (int) fromWord;
+		for(int index = offset; index < offset + length; index++, word++) {
+			long current = this.words[word];
+			long updated = current & words[index];
+			this.words[word] = updated;
+			this.bitCount -= Long.bitCount(current) - Long.bitCount(updated);
+		}
 	}
 
 	@Override
-	public int bitSize() {
+	public long bitSize() {
 		return this.size;
 	}
 
+	@Override
+	public long bitCount() {
+		return this.bitCount;
+	}
+
 	@Override
 	public void close() throws IOException {
 		// do nothing
 	}
+	
+	/**
+	 * Check that the index lies within the array.
+	 * 
+	 * @param index
+	 *            the index to check
+	 * 
+	 * @return the index as an <code>int</code>
+	 */
+	private int checkIndex(long index) {
+		if(index < 0 || index >= this.size) {
+			throw new IndexOutOfBoundsException("Index is outside the bit array: " + index);
+		}
+		
+		return (int) index;
+	}
+	
+	/**
+	 * The bits of the given word that lie within the array, so that bits
+	 * past the end are never set.
+	 * 
+	 * @param word
+	 *            the index of the word
+	 * 
+	 * @return the mask of valid bits
+	 */
+	private long validBits(int word) {
+		if(word < this.words.length - 1 || (this.size & 63) == 0) {
+			return -1L;
+		}
+		
+		return ~(-1L << this.size);
+	}
 
-}
\ No newline at end of file
+}
@@ -24,11 +24,13 @@ package com.sangupta.bloomfilter.core;
 import java.io.File;
 import java.io.IOException;
 import java.io.RandomAccessFile;
-import java.lang.reflect.Method;
+import java.nio.Buffer;
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
 import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.channels.FileChannel.MapMode;
-import java.util.Arrays;
 
 /**
  * An implementation of {@link BitArray} that uses a memory-mapped
@@ -36,11 +38,29 @@ import java.util.Arrays;
  * array. This is useful for stateful bit-arrays which are expensive
  * to construct yet need the best overall performance.
  * 
+ * As a single mapping cannot exceed 2GB, the file is mapped in chunks
+ * of 1GB so that arrays of tens of gigabytes can be addressed.
+ * 
  * @author sangupta
  * @since 1.0
  */
 public class MMapFileBackedBitArray implements BitArray {
 	
+	/**
+	 * Number of bits to shift a byte position by to get the chunk
+	 */
+	protected static final int CHUNK_SHIFT = 30;
+	
+	/**
+	 * The number of bytes mapped per chunk
+	 */
+	protected static final long CHUNK_SIZE = 1L << CHUNK_SHIFT;
+	
+	/**
+	 * Mask to get the position of a byte inside its chunk
+	 */
+	protected static final long CHUNK_MASK = CHUNK_SIZE - 1;
+	
 	/**
 	 * Underlying file that represents the state of the
 	 * {@link BitArray}.
@@ -51,18 +71,30 @@ public class MMapFileBackedBitArray implements BitArray {
 	/**
 	 * The maximum number of elements this file will store
 	 */
-	protected final int maxElements;
+	protected final long maxElements;
 	
 	/**
 	 * The number of bytes being used for this byte-array
 	 * 
 	 */
-	protected final int numBytes;
+	protected final long numBytes;
+	
+	/**
+	 * The memory-mapped byte-buffers, one per chunk of the file
+	 */
+	protected final MappedByteBuffer[] buffers;
 	
 	/**
-	 * The memory-mapped byte-buffer
+	 * The number of bits that are set, valid once {@link #bitCountKnown}:
+	 * counting reads the whole file, so it is left for the first call to
+	 * {@link #bitCount()}
 	 */
-	protected final MappedByteBuffer buffer;
+	protected long bitCount;
+	
+	/**
+	 * Whether the bits of the file have been counted
+	 */
+	protected boolean bitCountKnown;
 	
 	/**
 	 * Construct a {@link BitArray} that is backed by the given file. Ensure
@@ -70,9 +102,15 @@ public class MMapFileBackedBitArray implements BitArray {
 	 * reasons.
 	 * 
 	 * @param backingFile
-	 * @throws IOException 
+	 *            the file to store the bits in
+	 * 
+	 * @param maxElements
+	 *            the number of bits the array holds
+	 * 
+	 * @throws IOException
+	 *             if the file cannot be opened, extended or mapped
 	 */
-	public MMapFileBackedBitArray(File backingFile, int maxElements) throws IOException {
+	public MMapFileBackedBitArray(File backingFile, long maxElements) throws IOException {
 		if(backingFile == null) {
 			throw new IllegalArgumentException("Backing file cannot be empty/null");
 		}
@@ -89,43 +127,57 @@ public class MMapFileBackedBitArray implements BitArray {
 		// than in "rws" mode
 		this.backingFile = new RandomAccessFile(backingFile, "rwd");
 		
-		this.numBytes = (maxElements >> 3) + 1;
+		this.numBytes = (maxElements + 7) >>> 3;
 		extendFile(this.numBytes);
 		
 		// initialize the rest
 		this.maxElements = maxElements;
-		this.buffer = this.backingFile.getChannel().map(MapMode.READ_WRITE, 0, this.backingFile.length());
+		
+		FileChannel channel = this.backingFile.getChannel();
+		int numChunks = (int) ((this.numBytes + CHUNK_MASK) >>> CHUNK_SHIFT);
+		this.buffers = new MappedByteBuffer[numChunks];
+		for(int chunk = 0; chunk < numChunks; chunk++) {
+			long start = chunk * CHUNK_SIZE;
+			this.buffers[chunk] = channel.map(MapMode.READ_WRITE, start, Math.min(CHUNK_SIZE, this.numBytes - start));
+		}
+		
+		BitArrays.clearStrayBits(this);
 	}
 
 	/**
-	 * @see BitArray#getBit(int)
+	 * @see BitArray#getBit(long)
 	 */
 	@Override
-	public boolean getBit(int index) {
-		if(index > maxElements) {
-			throw new IndexOutOfBoundsException("Index is greater than max elements permitted");
-		}
+	public boolean getBit(long index) {
+		checkIndex(index);
 		
-		int pos = index >> 3; // div 8
+		long pos = index >>> 3; // div 8
 		int bit = 1 << (index & 0x7);
-		byte bite = this.buffer.get(pos);
+		byte bite = this.buffers[(int) (pos >>> CHUNK_SHIFT)].get((int) (pos & CHUNK_MASK));
 		return (bite & bit) != 0;
 	}
 
 	/**
-	 * @see BitArray#setBit(int)
+	 * @see BitArray#setBit(long)
 	 */
 	@Override
-	public boolean setBit(int index) {
-		if(index > maxElements) {
-			throw new IndexOutOfBoundsException("Index is greater than max elements permitted");
-		}
+	public boolean setBit(long index) {
+		checkIndex(index);
 		
-		int pos = index >> 3; // div 8
+		long pos = index >>> 3; // div 8
 		int bit = 1 << (index & 0x7);
-		byte bite = this.buffer.get(pos);
+		
+		MappedByteBuffer buffer = this.buffers[(int) (pos >>> CHUNK_SHIFT)];
+		int offset = (int) (pos & CHUNK_MASK);
+		
+		byte bite = buffer.get(offset);
+		if((bite & bit) != 0) {
+			return false;
+		}
+		
 		bite = (byte) (bite | bit);
-		this.buffer.put(pos, bite);
+		buffer.put(offset, bite);
+		this.bitCount++;
 		return true;
 	}
 
@@ -134,39 +186,48 @@ public class MMapFileBackedBitArray implements BitArray {
 	 */
 	@Override
 	public void clear() {
-		byte bite = 0;
-		for(int index = 0; index < this.numBytes; index++) {
-			this.buffer.put(index, bite);
+		byte[] zeros = new byte[(int) Math.min(FileBackedBitArray.ZERO_FILL_BUFFER_SIZE, this.numBytes)];
+		for(MappedByteBuffer buffer : this.buffers) {
+			ByteBuffer view = buffer.duplicate();
+			while(view.hasRemaining()) {
+				view.put(zeros, 0, Math.min(zeros.length, view.remaining()));
+			}
 		}
+		
+		this.bitCount = 0;
+		this.bitCountKnown = true;
 	}
 
 	/**
-	 * @see BitArray#clearBit(int)
+	 * @see BitArray#clearBit(long)
 	 */
 	@Override
-	public void clearBit(int index) {
-		if(index > maxElements) {
-			throw new IndexOutOfBoundsException("Index is greater than max elements permitted");
-		}
+	public void clearBit(long index) {
+		checkIndex(index);
 		
-		int pos = index >> 3; // div 8
+		long pos = index >>> 3; // div 8
 		int bit = 1 << (index & 0x7);
-		bit = ~bit;
-		byte bite = this.buffer.get(pos);
-		bite = (byte) (bite & bit);
-		this.buffer.put(pos, bite);
+		
+		MappedByteBuffer buffer = this.buffers[(int) (pos >>> CHUNK_SHIFT)];
+		int offset = (int) (pos & CHUNK_MASK);
+		
+		byte bite = buffer.get(offset);
+		if((bite & bit) == 0) {
+			return;
+		}
+		
+		bite = (byte) (bite & ~bit);
+		buffer.put(offset, bite);
+		this.bitCount--;
 	}
 
 	/**
-	 * @see BitArray#setBitIfUnset(int)
+	 * @see BitArray#setBitIfUnset(long)
 	 */
 	@Override
-	public boolean setBitIfUnset(int index) {
-		if(this.getBit(index)) {
-			return this.setBit(index);
-		}
-		
-		return false;
+	public boolean setBitIfUnset(long index) {
+		// setBit does not write bits that are already set
+		return this.setBit(index);
 	}
 
 	/**
@@ -174,8 +235,7 @@ public class MMapFileBackedBitArray implements BitArray {
 	 */
 	@Override
 	public void or(BitArray bitArray) {
-		// TODO Auto-generated method stub
-		
+		BitArrays.or(this, bitArray);
 	}
 
 	/**
@@ -183,40 +243,219 @@ public class MMapFileBackedBitArray implements BitArray {
 	 */
 	@Override
 	public void and(BitArray bitArray) {
-		// TODO Auto-generated method stub
+		BitArrays.and(this, bitArray);
+	}
+
+	/**
+	 * @see BitArray#getWords(long, long[], int, int)
+	 */
+	@Override
+	public void getWords(long fromWord, long[] words, int offset, int length) {
+		BitArrays.checkWords(this.maxElements, fromWord, words, offset, length);
 		
+		while(length > 0) {
+			LongBuffer view = wordView(fromWord);
+			int count = Math.min(length, view.remaining());
+			if(count > 0) {
+				view.get(words, offset, count);
+			} else {
+				words[offset] = getPartialWord(fromWord);
+				count = 1;
+			}
+			
+			fromWord += count;
+			offset += count;
+			length -= count;
+		}
+	}
+
+	/**
+	 * @see BitArray#orWords(long, long[], int, int)
+	 */
+	@Override
+	public void orWords(long fromWord, long[] words, int offset, int length) {
+		BitArrays.checkWords(this.maxElements, fromWord, words, offset, length);
+		
+		while(length > 0) {
+			LongBuffer view = wordView(fromWord);
+			int count = Math.min(length, view.remaining());
+			if(count > 0) {
+				for(int index = 0; index < count; index++) {
+					long current = view.get(index);
+					long word = current | words[offset + index];
+					view.put(index, word);
+					this.bitCount += Long.bitCount(word) - Long.bitCount(current);
+				}
+			} else {
+				long current = getPartialWord(fromWord);
+				long word = current | words[offset];
+				putPartialWord(fromWord, word);
+				this.bitCount += Long.bitCount(word) - Long.bitCount(current);
+				count = 1;
+			}
+			
+			fromWord += count;
+			offset += count;
+			length -= count;
+		}
+	}
+
+	/**
+	 * @see BitArray#andWords(long, long[], int, int)
+	 */
+	@Override
+	public void andWords(long fromWord, long[] words, int offset, int length) {
+		BitArrays.checkWords(this.maxElements, fromWord, words, offset, length);
+		
+		while(length > 0) {
+			LongBuffer view = wordView(fromWord);
+			int count = Math.min(length, view.remaining());
+			if(count > 0) {
+				for(int index = 0; index < count; index++) {
+					long current = view.get(index);
+					long word = current & words[offset + index];
+					view.put(index, word);
+					this.bitCount -= Long.bitCount(current) - Long.bitCount(word);
+				}
+			} else {
+				long current = getPartialWord(fromWord);
+				long word = current & words[offset];
+				putPartialWord(fromWord, word);
+				this.bitCount -= Long.bitCount(current) - Long.bitCount(word);
+				count = 1;
+			}
+			
+			fromWord += count;
+			offset += count;
+			length -= count;
+		}
 	}
 
 	/**
 	 * @see BitArray#bitSize()
 	 */
 	@Override
-	public int bitSize() {
-		return this.numBytes;
+	public long bitSize() {
+		return this.maxElements;
+	}
+
+	/**
+	 * @see BitArray#bitCount()
+	 */
+	@Override
+	public long bitCount() {
+		if(!this.bitCountKnown) {
+			this.bitCount = BitArrays.countBits(this);
+			this.bitCountKnown = true;
+		}
+		
+		return this.bitCount;
 	}
 	
 	/**
+	 * Check that the index lies within the array.
+	 * 
+	 * @param index
+	 *            the index to check
+	 */
+	protected void checkIndex(long index) {
+		if(index < 0 || index >= maxElements) {
+			throw new IndexOutOfBoundsException("Index is greater than max elements permitted");
+		}
+	}
+	
+	/**
+	 * Get a view of the whole words from the given word up to the end of its
+	 * chunk. Bit <code>i</code> of a byte is bit <code>i</code> of its
+	 * position in the word, so the bytes are read little-endian.
+	 * 
+	 * @param word
+	 *            the index of the first word of the view
+	 * 
+	 * @return the view over the chunk holding the word, without the last
+	 *         word of the file if it is only partially present
+	 */
+	protected LongBuffer wordView(long word) {
+		long pos = word << 3;
+		ByteBuffer view = this.buffers[(int) (pos >>> CHUNK_SHIFT)].duplicate().order(ByteOrder.LITTLE_ENDIAN);
+		((Buffer) view).position((int) (pos & CHUNK_MASK));
+		return view.asLongBuffer();
+	}
+	
+	/**
+	 * Read the last word of the file when the file does not hold all of its
+	 * eight bytes.
+	 * 
+	 * @param word
+	 *            the index of the word
+	 * 
+	 * @return the word, with the missing bytes read as zero
+	 */
+	protected long getPartialWord(long word) {
+		long pos = word << 3;
+		MappedByteBuffer buffer = this.buffers[(int) (pos >>> CHUNK_SHIFT)];
+		
+		long value = 0;
+		for(int index = 0; pos + index < this.numBytes; index++) {
+			value |= (buffer.get((int) ((pos + index) & CHUNK_MASK)) & 0xFFL) << (index << 3);
+		}
+		
+		return value;
+	}
+	
+	/**
+	 * Write the last word of the file when the file does not hold all of its
+	 * eight bytes.
+	 * 
+	 * @param word
+	 *            the index of the word
+	 * 
+	 * @param value
+	 *            the word, of which the missing bytes are dropped
+	 */
+	protected void putPartialWord(long word, long value) {
+		long pos = word << 3;
+		MappedByteBuffer buffer = this.buffers[(int) (pos >>> CHUNK_SHIFT)];
+		
+		for(int index = 0; pos + index < this.numBytes; index++) {
+			buffer.put((int) ((pos + index) & CHUNK_MASK), (byte) (value >>> (index << 3)));
+		}
+	}
+	
+	/**
+	 * Extend the file to the given length, filling the new bytes with zeros.
 	 * 
 	 * @param newLength
+	 *            the new length of the file in bytes
+	 * 
 	 * @throws IOException
+	 *             if the file cannot be written to
 	 */
 	protected void extendFile(final long newLength) throws IOException {
 		long current = this.backingFile.length();
-		int delta = (int) (newLength - current) + 1;
-		if(delta <= 0) {
+		if(current >= newLength) {
 			return;
 		}
 		
 		this.backingFile.setLength(newLength);
 		this.backingFile.seek(current);
-		byte[] bytes = new byte[delta];
-		Arrays.fill(bytes, (byte) 0);
-		this.backingFile.write(bytes);
+		
+		byte[] zeros = new byte[(int) Math.min(FileBackedBitArray.ZERO_FILL_BUFFER_SIZE, newLength - current)];
+		long remaining = newLength - current;
+		while(remaining > 0) {
+			int chunk = (int) Math.min(zeros.length, remaining);
+			this.backingFile.write(zeros, 0, chunk);
+			remaining -= chunk;
+		}
 	}
 
 	@Override
 	public void close() throws IOException {
-		this.closeDirectBuffer(this.buffer);
+		for(int chunk = 0; chunk < this.buffers.length; chunk++) {
+			this.closeDirectBuffer(this.buffers[chunk]);
+			this.buffers[chunk] = null;
+		}
+		
 		this.backingFile.close();
 	}
 	
@@ -227,24 +466,7 @@ public class MMapFileBackedBitArray implements BitArray {
 	 * @param cb
 	 */
 	protected void closeDirectBuffer(ByteBuffer cb) {
-	    if (!cb.isDirect()) {
-	    	return;
-	    }
-
-	    // we could use this type cast and call functions without reflection code,
-	    // but static import from sun.* package is risky for non-SUN virtual machine.
-	    //try { ((sun.nio.ch.DirectBuffer)cb).cleaner().clean(); } catch (Exception ex) { }
-	    try {
-	        Method cleaner = cb.getClass().getMethod("cleaner");
-	        cleaner.setAccessible(true);
-	        Method clean = Class.forName("sun.misc.Cleaner").getMethod("clean");
-	        clean.setAccessible(true);
-	        clean.invoke(cleaner.invoke(cb));
-	    } catch(Exception ex) { 
-	    	
-	    }
-	    
-	    cb = null;
+		DirectBuffers.release(cb);
 	}
 
 }
\ No newline at end of file
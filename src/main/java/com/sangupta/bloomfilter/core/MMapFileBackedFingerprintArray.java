@@ -0,0 +1,297 @@
+/**
+ *
+ * bloomfilter - Bloom filters for Java
+ * Copyright (c) 2014-2015, Sandeep Gupta
+ * 
+ * http://sangupta.com/projects/bloomfilter
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+
+package com.sangupta.bloomfilter.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+
+/**
+ * An implementation of {@link FingerprintArray} that uses a memory-mapped
+ * file to persist all changes for the underlying fingerprints, so that a
+ * filter can be reopened later without being rebuilt. Fingerprints are
+ * packed one slot after the other, least significant bit first, so that a
+ * fingerprint of any width between 2 and 32 bits takes exactly that many
+ * bits of the file.
+ * 
+ * As with {@link MMapFileBackedBitArray} the file is mapped in chunks of
+ * 1GB so that arrays of tens of gigabytes can be addressed.
+ * 
+ * @author sangupta
+ * @since 1.0
+ */
+public class MMapFileBackedFingerprintArray implements FingerprintArray {
+	
+	/**
+	 * Number of bits to shift a byte position by to get the chunk
+	 */
+	protected static final int CHUNK_SHIFT = MMapFileBackedBitArray.CHUNK_SHIFT;
+	
+	/**
+	 * The number of bytes mapped per chunk
+	 */
+	protected static final long CHUNK_SIZE = 1L << CHUNK_SHIFT;
+	
+	/**
+	 * Mask to get the position of a byte inside its chunk
+	 */
+	protected static final long CHUNK_MASK = CHUNK_SIZE - 1;
+	
+	/**
+	 * Underlying file that holds the fingerprints
+	 */
+	protected final RandomAccessFile backingFile;
+	
+	/**
+	 * The number of slots in the array
+	 */
+	protected final long numSlots;
+	
+	/**
+	 * The number of bits in each fingerprint
+	 */
+	protected final int bitsPerFingerprint;
+	
+	/**
+	 * Mask for one fingerprint
+	 */
+	private final long mask;
+	
+	/**
+	 * The memory-mapped byte-buffers, one per chunk of the file
+	 */
+	protected final MappedByteBuffer[] buffers;
+	
+	/**
+	 * Construct a {@link FingerprintArray} that is backed by the given file,
+	 * which is created or extended as needed. Ensure that the file is a
+	 * local file and not on a network share for performance reasons.
+	 * 
+	 * @param backingFile
+	 *            the file to store the fingerprints in
+	 * 
+	 * @param numSlots
+	 *            the number of slots the array holds
+	 * 
+	 * @param bitsPerFingerprint
+	 *            the number of bits per fingerprint, between 2 and 32
+	 * 
+	 * @throws IOException
+	 *             if the file cannot be opened, extended or mapped
+	 */
+	public MMapFileBackedFingerprintArray(File backingFile, long numSlots, int bitsPerFingerprint) throws IOException {
+		if(backingFile == null) {
+			throw new IllegalArgumentException("Backing file cannot be empty/null");
+		}
+		
+		if(backingFile.exists() && !backingFile.isFile()) {
+			throw new IllegalArgumentException("Backing file does not represent a valid file");
+		}
+		
+		if(numSlots <= 0) {
+			throw new IllegalArgumentException("Number of slots cannot be less than or equal to zero");
+		}
+		
+		if(bitsPerFingerprint < 2 || bitsPerFingerprint > 32) {
+			throw new IllegalArgumentException("Bits per fingerprint must be between 2 and 32");
+		}
+		
+		this.numSlots = numSlots;
+		this.bitsPerFingerprint = bitsPerFingerprint;
+		this.mask = (1L << bitsPerFingerprint) - 1;
+		
+		this.backingFile = new RandomAccessFile(backingFile, "rw");
+		
+		long numBytes = (numSlots * bitsPerFingerprint + 7) >>> 3;
+		extendFile(numBytes);
+		
+		FileChannel channel = this.backingFile.getChannel();
+		int numChunks = (int) ((numBytes + CHUNK_MASK) >>> CHUNK_SHIFT);
+		this.buffers = new MappedByteBuffer[numChunks];
+		for(int chunk = 0; chunk < numChunks; chunk++) {
+			long start = chunk * CHUNK_SIZE;
+			this.buffers[chunk] = channel.map(MapMode.READ_WRITE, start, Math.min(CHUNK_SIZE, numBytes - start));
+		}
+	}
+
+	/**
+	 * @see FingerprintArray#get(long)
+	 */
+	@Override
+	public int get(long index) {
+		long position = position(index);
+		int shift = (int) (position & 7);
+		
+		return (int) ((readBytes(position >>> 3, numBytes(shift)) >>> shift) & this.mask);
+	}
+
+	/**
+	 * @see FingerprintArray#set(long, int)
+	 */
+	@Override
+	public void set(long index, int fingerprint) {
+		long value = fingerprint & 0xFFFFFFFFL;
+		if(value > this.mask) {
+			throw new IllegalArgumentException("Fingerprint does not fit in " + this.bitsPerFingerprint + " bits: " + fingerprint);
+		}
+		
+		long position = position(index);
+		int shift = (int) (position & 7);
+		int numBytes = numBytes(shift);
+		long start = position >>> 3;
+		
+		long bytes = readBytes(start, numBytes);
+		bytes = (bytes & ~(this.mask << shift)) | (value << shift);
+		for(int b = 0; b < numBytes; b++) {
+			long pos = start + b;
+			this.buffers[(int) (pos >>> CHUNK_SHIFT)].put((int) (pos & CHUNK_MASK), (byte) (bytes >>> (b << 3)));
+		}
+	}
+
+	/**
+	 * @see FingerprintArray#clear()
+	 */
+	@Override
+	public void clear() {
+		byte[] zeros = new byte[FileBackedBitArray.ZERO_FILL_BUFFER_SIZE];
+		for(MappedByteBuffer buffer : this.buffers) {
+			ByteBuffer view = buffer.duplicate();
+			while(view.hasRemaining()) {
+				view.put(zeros, 0, Math.min(zeros.length, view.remaining()));
+			}
+		}
+	}
+
+	/**
+	 * @see FingerprintArray#size()
+	 */
+	@Override
+	public long size() {
+		return this.numSlots;
+	}
+
+	/**
+	 * @see FingerprintArray#getBitsPerFingerprint()
+	 */
+	@Override
+	public int getBitsPerFingerprint() {
+		return this.bitsPerFingerprint;
+	}
+	
+	/**
+	 * Flush all changes to the disk.
+	 * 
+	 */
+	public void flush() {
+		for(MappedByteBuffer buffer : this.buffers) {
+			buffer.force();
+		}
+	}
+	
+	/**
+	 * Compute the bit position of the slot at the given index.
+	 * 
+	 * @param index
+	 *            the index of the slot
+	 * 
+	 * @return the position of the first bit of the slot in the file
+	 */
+	private long position(long index) {
+		if(index < 0 || index >= this.numSlots) {
+			throw new IndexOutOfBoundsException("Slot index out of range: " + index);
+		}
+		
+		return index * this.bitsPerFingerprint;
+	}
+	
+	/**
+	 * The number of bytes a fingerprint starting at the given bit of its
+	 * first byte spans, at most five.
+	 */
+	private int numBytes(int shift) {
+		return (shift + this.bitsPerFingerprint + 7) >>> 3;
+	}
+	
+	/**
+	 * Read the given number of bytes, least significant first, which may
+	 * cross from one chunk into the next.
+	 */
+	private long readBytes(long start, int numBytes) {
+		long bytes = 0;
+		for(int b = 0; b < numBytes; b++) {
+			long pos = start + b;
+			bytes |= (this.buffers[(int) (pos >>> CHUNK_SHIFT)].get((int) (pos & CHUNK_MASK)) & 0xFFL) << (b << 3);
+		}
+		
+		return bytes;
+	}
+	
+	/**
+	 * Extend the file to the given length, filling the new bytes with zeros.
+	 * 
+	 * @param newLength
+	 *            the new length of the file in bytes
+	 * 
+	 * @throws IOException
+	 *             if the file cannot be written to
+	 */
+	protected void extendFile(final long newLength) throws IOException {
+		long current = this.backingFile.length();
+		if(current >= newLength) {
+			return;
+		}
+		
+		this.backingFile.setLength(newLength);
+		this.backingFile.seek(current);
+		
+		byte[] zeros = new byte[(int) Math.min(FileBackedBitArray.ZERO_FILL_BUFFER_SIZE, newLength - current)];
+		long remaining = newLength - current;
+		while(remaining > 0) {
+			int chunk = (int) Math.min(zeros.length, remaining);
+			this.backingFile.write(zeros, 0, chunk);
+			remaining -= chunk;
+		}
+	}
+
+	/**
+	 * Flush all changes, unmap the file and close it.
+	 * 
+	 */
+	@Override
+	public void close() throws IOException {
+		for(int chunk = 0; chunk < this.buffers.length; chunk++) {
+			if(this.buffers[chunk] != null) {
+				this.buffers[chunk].force();
+				DirectBuffers.release(this.buffers[chunk]);
+				this.buffers[chunk] = null;
+			}
+		}
+		
+		this.backingFile.close();
+	}
+
+}
@@ -0,0 +1,464 @@
+/**
+ *
+ * bloomfilter - Bloom filters for Java
+ * Copyright (c) 2014-2015, Sandeep Gupta
+ * 
+ * http://sangupta.com/projects/bloomfilter
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+
+package com.sangupta.bloomfilter.core;
+
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+
+/**
+ * An implementation of {@link BitArray} that holds the bits outside of the
+ * Java heap in direct {@link ByteBuffer}s. As the garbage collector never
+ * scans or copies native memory, filters of many gigabytes can be held
+ * without growing the heap or the GC pause times. The native memory counts
+ * against <code>-XX:MaxDirectMemorySize</code>.
+ * 
+ * The memory is released eagerly when {@link #close()} is called; the array
+ * must not be used after that. As a single buffer cannot exceed 2GB, the
+ * bits are held in chunks of 1GB.
+ * 
+ * Each chunk can optionally be aligned to a given number of bytes, say
+ * 2MB, so that transparent huge pages can back the array when the operating
+ * system is configured for it. Alignment needs Java 9 or above and is
+ * silently skipped on older versions.
+ * 
+ * This class is not thread-safe.
+ * 
+ * @author sangupta
+ * @since 1.0
+ */
+public class OffHeapBitArray implements BitArray {
+	
+	/**
+	 * Number of bits to shift a byte position by to get the chunk
+	 */
+	protected static final int CHUNK_SHIFT = 30;
+	
+	/**
+	 * The number of bytes allocated per chunk
+	 */
+	protected static final long CHUNK_SIZE = 1L << CHUNK_SHIFT;
+	
+	/**
+	 * Mask to get the position of a byte inside its chunk
+	 */
+	protected static final long CHUNK_MASK = CHUNK_SIZE - 1;
+	
+	/**
+	 * The number of bits this array holds
+	 */
+	protected final long numBits;
+	
+	/**
+	 * The number of bytes being used, always a multiple of 8
+	 */
+	protected final long numBytes;
+	
+	/**
+	 * The buffers as allocated, needed to release the memory
+	 */
+	private final ByteBuffer[] allocated;
+	
+	/**
+	 * The buffers used to read and write words, one per chunk;
+	 * <code>null</code> once the array has been closed
+	 */
+	private ByteBuffer[] buffers;
+	
+	/**
+	 * The number of bits that are set
+	 */
+	private long bitCount;
+	
+	/**
+	 * Construct an off-heap {@link BitArray} that can hold the given number of
+	 * bits, without any specific alignment.
+	 * 
+	 * @param numBits
+	 *            the number of bits the array holds
+	 */
+	public OffHeapBitArray(long numBits) {
+		this(numBits, 0);
+	}
+	
+	/**
+	 * Construct an off-heap {@link BitArray} that can hold the given number of
+	 * bits, with each chunk aligned to the given number of bytes.
+	 * 
+	 * @param numBits
+	 *            the number of bits the array holds
+	 * 
+	 * @param alignment
+	 *            the alignment in bytes, a power of two; use <code>0</code>
+	 *            for no alignment, <code>64</code> for cache-line or
+	 *            <code>2 * 1024 * 1024</code> for huge-page alignment
+	 */
+	public OffHeapBitArray(long numBits, int alignment) {
+		if(numBits <= 0) {
+			throw new IllegalArgumentException("Number of bits cannot be less than or equal to zero");
+		}
+		
+		if(alignment < 0 || (alignment & (alignment - 1)) != 0) {
+			throw new IllegalArgumentException("Alignment must be zero or a power of two");
+		}
+		
+		this.numBits = numBits;
+		this.numBytes = ((numBits + 63) >>> 6) << 3;
+		
+		int numChunks = (int) ((this.numBytes + CHUNK_MASK) >>> CHUNK_SHIFT);
+		this.allocated = new ByteBuffer[numChunks];
+		this.buffers = new ByteBuffer[numChunks];
+		
+		try {
+			for(int chunk = 0; chunk < numChunks; chunk++) {
+				int chunkBytes = (int) Math.min(CHUNK_SIZE, this.numBytes - chunk * CHUNK_SIZE);
+				int slack = alignment > 1 ? alignment - 1 : 0;
+				
+				ByteBuffer buffer = ByteBuffer.allocateDirect(chunkBytes + slack);
+				this.allocated[chunk] = buffer;
+				
+				ByteBuffer aligned = DirectBuffers.alignedSlice(buffer, alignment);
+				((Buffer) aligned).limit(chunkBytes);
+				this.buffers[chunk] = aligned.order(ByteOrder.nativeOrder());
+			}
+		} catch(OutOfMemoryError e) {
+			// do not leak the chunks allocated so far
+			releaseAll();
+			throw e;
+		}
+	}
+
+	/**
+	 * @see BitArray#getBit(long)
+	 */
+	@Override
+	public boolean getBit(long index) {
+		long byteIndex = byteIndex(index);
+		long word = chunk(byteIndex).getLong((int) (byteIndex & CHUNK_MASK));
+		return (word & (1L << index)) != 0;
+	}
+
+	/**
+	 * @see BitArray#setBit(long)
+	 */
+	@Override
+	public boolean setBit(long index) {
+		long byteIndex = byteIndex(index);
+		ByteBuffer buffer = chunk(byteIndex);
+		int offset = (int) (byteIndex & CHUNK_MASK);
+		
+		long word = buffer.getLong(offset);
+		long mask = 1L << index;
+		if((word & mask) != 0) {
+			return false;
+		}
+		
+		buffer.putLong(offset, word | mask);
+		this.bitCount++;
+		return true;
+	}
+
+	/**
+	 * @see BitArray#clear()
+	 */
+	@Override
+	public void clear() {
+		checkOpen();
+		
+		byte[] zeros = new byte[(int) Math.min(FileBackedBitArray.ZERO_FILL_BUFFER_SIZE, this.numBytes)];
+		for(ByteBuffer buffer : this.buffers) {
+			ByteBuffer view = buffer.duplicate();
+			while(view.hasRemaining()) {
+				view.put(zeros, 0, Math.min(zeros.length, view.remaining()));
+			}
+		}
+		
+		this.bitCount = 0;
+	}
+
+	/**
+	 * @see BitArray#clearBit(long)
+	 */
+	@Override
+	public void clearBit(long index) {
+		long byteIndex = byteIndex(index);
+		ByteBuffer buffer = chunk(byteIndex);
+		int offset = (int) (byteIndex & CHUNK_MASK);
+		
+		long word = buffer.getLong(offset);
+		long mask = 1L << index;
+		if((word & mask) != 0) {
+			buffer.putLong(offset, word & ~mask);
+			this.bitCount--;
+		}
+	}
+
+	/**
+	 * @see BitArray#setBitIfUnset(long)
+	 */
+	@Override
+	public boolean setBitIfUnset(long index) {
+		return setBit(index);
+	}
+
+	/**
+	 * @see BitArray#or(BitArray)
+	 */
+	@Override
+	public void or(BitArray bitArray) {
+		checkCompatible(bitArray);
+		
+		if(bitArray instanceof OffHeapBitArray) {
+			OffHeapBitArray other = (OffHeapBitArray) bitArray;
+			other.checkOpen();
+			
+			for(int chunk = 0; chunk < this.buffers.length; chunk++) {
+				ByteBuffer mine = this.buffers[chunk];
+				ByteBuffer theirs = other.buffers[chunk];
+				for(int offset = 0; offset < mine.limit(); offset += 8) {
+					long current = mine.getLong(offset);
+					long word = current | theirs.getLong(offset);
+					mine.putLong(offset, word);
+					this.bitCount += Long.bitCount(word) - Long.bitCount(current);
+				}
+			}
+			
+			return;
+		}
+		
+		BitArrays.or(this, bitArray);
+	}
+
+	/**
+	 * @see BitArray#and(BitArray)
+	 */
+	@Override
+	public void and(BitArray bitArray) {
+		checkCompatible(bitArray);
+		
+		if(bitArray instanceof OffHeapBitArray) {
+			OffHeapBitArray other = (OffHeapBitArray) bitArray;
+			other.checkOpen();
+			
+			for(int chunk = 0; chunk < this.buffers.length; chunk++) {
+				ByteBuffer mine = this.buffers[chunk];
+				ByteBuffer theirs = other.buffers[chunk];
+				for(int offset = 0; offset < mine.limit(); offset += 8) {
+					long current = mine.getLong(offset);
+					long word = current & theirs.getLong(offset);
+					mine.putLong(offset, word);
+					this.bitCount -= Long.bitCount(current) - Long.bitCount(word);
+				}
+			}
+			
+			return;
+		}
+		
+		BitArrays.and(this, bitArray);
+	}
+
+	/**
+	 * @see BitArray#getWords(long, long[], int, int)
+	 */
+	@Override
+	public void getWords(long fromWord, long[] words, int offset, int length) {
+		BitArrays.checkWords(this.numBits, fromWord, words, offset, length);
+		
+		while(length > 0) {
+			LongBuffer view = wordView(fromWord);
+			int count = Math.min(length, view.remaining());
+			view.get(words, offset, count);
+			
+			fromWord += count;
+			offset += count;
+			length -= count;
+		}
+	}
+
+	/**
+	 * @see BitArray#orWords(long, long[], int, int)
+	 */
+	@Override
+	public void orWords(long fromWord, long[] words, int offset, int length) {
+		BitArrays.checkWords(this.numBits, fromWord, words, offset, length);
+		
+		while(length > 0) {
+			LongBuffer view = wordView(fromWord);
+			int count = Math.min(length, view.remaining());
+			for(int index = 0; index < count; index++) {
+				long current = view.get(index);
+				long word = current | words[offset + index];
+				view.put(index, word);
+				this.bitCount += Long.bitCount(word) - Long.bitCount(current);
+			}
+			
+			fromWord += count;
+			offset += count;
+			length -= count;
+		}
+	}
+
+	/**
+	 * @see BitArray#andWords(long, long[], int, int)
+	 */
+	@Override
+	public void andWords(long fromWord, long[] words, int offset, int length) {
+		BitArrays.checkWords(this.numBits, fromWord, words, offset, length);
+		
+		while(length > 0) {
+			LongBuffer view = wordView(fromWord);
+			int count = Math.min(length, view.remaining());
+			for(int index = 0; index < count; index++) {
+				long current = view.get(index);
+				long word = current & words[offset + index];
+				view.put(index, word);
+				this.bitCount -= Long.bitCount(current) - Long.bitCount(word);
+			}
+			
+			fromWord += count;
+			offset += count;
+			length -= count;
+		}
+	}
+
+	/**
+	 * @see BitArray#bitSize()
+	 */
+	@Override
+	public long bitSize() {
+		return this.numBits;
+	}
+
+	/**
+	 * @see BitArray#bitCount()
+	 */
+	@Override
+	public long bitCount() {
+		return this.bitCount;
+	}
+
+	/**
+	 * Release the native memory held by this array. Calling this method more
+	 * than once has no effect.
+	 * 
+	 */
+	@Override
+	public void close() throws IOException {
+		if(this.buffers == null) {
+			return;
+		}
+		
+		this.buffers = null;
+		releaseAll();
+	}
+	
+	/**
+	 * Release all the chunks allocated so far.
+	 * 
+	 */
+	private void releaseAll() {
+		for(int chunk = 0; chunk < this.allocated.length; chunk++) {
+			DirectBuffers.release(this.allocated[chunk]);
+			this.allocated[chunk] = null;
+		}
+	}
+	
+	/**
+	 * Find the byte offset of the word holding the bit at the given index.
+	 * 
+	 * @param index
+	 *            the index of the bit
+	 * 
+	 * @return the offset in bytes of the word from the start of the array
+	 */
+	private long byteIndex(long index) {
+		if(index < 0 || index >= this.numBits) {
+			throw new IndexOutOfBoundsException("Index is outside the bit array: " + index);
+		}
+		
+		return (index >>> 6) << 3;
+	}
+	
+	/**
+	 * Find the chunk holding the byte at the given offset.
+	 * 
+	 * @param byteIndex
+	 *            the offset in bytes from the start of the array
+	 * 
+	 * @return the buffer for the chunk
+	 */
+	private ByteBuffer chunk(long byteIndex) {
+		ByteBuffer[] buffers = this.buffers;
+		if(buffers == null) {
+			throw new IllegalStateException("BitArray has already been closed");
+		}
+		
+		return buffers[(int) (byteIndex >>> CHUNK_SHIFT)];
+	}
+	
+	/**
+	 * Get a view of the words from the given word up to the end of its chunk.
+	 * 
+	 * @param word
+	 *            the index of the first word of the view
+	 * 
+	 * @return the view over the chunk holding the word
+	 */
+	private LongBuffer wordView(long word) {
+		long byteIndex = word << 3;
+		ByteBuffer view = chunk(byteIndex).duplicate().order(ByteOrder.nativeOrder());
+		((Buffer) view).position((int) (byteIndex & CHUNK_MASK));
+		return view.asLongBuffer();
+	}
+	
+	/**
+	 * Check that the array has not been closed.
+	 * 
+	 */
+	private void checkOpen() {
+		if(this.buffers == null) {
+			throw new IllegalStateException("BitArray has already been closed");
+		}
+	}
+	
+	/**
+	 * Check that the given {@link BitArray} can be combined with this one.
+	 * 
+	 * @param bitArray
+	 *            the array to combine with
+	 */
+	private void checkCompatible(BitArray bitArray) {
+		checkOpen();
+		
+		if(bitArray == null) {
+			throw new IllegalArgumentException("Array to be combined with cannot be null");
+		}
+		
+		if(this.numBits != bitArray.bitSize()) {
+			throw new IllegalArgumentException("Array to be combined with must be of equal length");
+		}
+	}
+
+}
@@ -0,0 +1,217 @@
+/**
+ *
+ * bloomfilter - Bloom filters for Java
+ * Copyright (c) 2014-2015, Sandeep Gupta
+ * 
+ * http://sangupta.com/projects/bloomfilter
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+
+package com.sangupta.bloomfilter.core;
+
+import java.util.Arrays;
+
+/**
+ * An array of small saturating counters packed into a <code>long[]</code>.
+ * Each counter takes a power-of-two number of bits, so that no counter
+ * spans two words. A counter that reaches its maximum value is saturated:
+ * it is neither incremented nor decremented any further, as its true value
+ * is no longer known. This class is not thread-safe.
+ * 
+ * @author sangupta
+ * @since 1.0
+ */
+public class PackedCounterArray {
+	
+	/**
+	 * The packed counters
+	 */
+	final long[] data;
+	
+	/**
+	 * The number of counters this array holds
+	 */
+	final long numCounters;
+	
+	/**
+	 * The number of bits in each counter
+	 */
+	final int bitsPerCounter;
+	
+	/**
+	 * Log base 2 of the number of counters in a word
+	 */
+	private final int countersPerWordShift;
+	
+	/**
+	 * The maximum value of a counter, also the mask for one counter
+	 */
+	private final long maxValue;
+	
+	/**
+	 * Construct an array of the given number of counters, each using the
+	 * given number of bits.
+	 * 
+	 * @param numCounters
+	 *            the number of counters
+	 * 
+	 * @param bitsPerCounter
+	 *            the number of bits per counter, one of 2, 4, 8, 16 or 32
+	 */
+	public PackedCounterArray(long numCounters, int bitsPerCounter) {
+		if(numCounters <= 0) {
+			throw new IllegalArgumentException("Number of counters cannot be less than or equal to zero");
+		}
+		
+		if(bitsPerCounter < 2 || bitsPerCounter > 32 || Integer.bitCount(bitsPerCounter) != 1) {
+			throw new IllegalArgumentException("Bits per counter must be a power of two between 2 and 32");
+		}
+		
+		this.countersPerWordShift = 6 - Integer.numberOfTrailingZeros(bitsPerCounter);
+		
+		long numWords = ((numCounters - 1) >>> this.countersPerWordShift) + 1;
+		if(numWords > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("Too many counters: " + numCounters);
+		}
+		
+		this.data = new long[(int) numWords];
+		this.numCounters = numCounters;
+		this.bitsPerCounter = bitsPerCounter;
+		this.maxValue = (1L << bitsPerCounter) - 1;
+	}
+	
+	/**
+	 * Get the value of the counter at the given index.
+	 * 
+	 * @param index
+	 *            the index of the counter
+	 * 
+	 * @return the value of the counter
+	 */
+	public long get(long index) {
+		return (this.data[word(index)] >>> shift(index)) & this.maxValue;
+	}
+	
+	/**
+	 * Set the counter at the given index to the given value.
+	 * 
+	 * @param index
+	 *            the index of the counter
+	 * 
+	 * @param value
+	 *            the value, between zero and {@link #getMaxValue()}
+	 */
+	public void set(long index, long value) {
+		if(value < 0 || value > this.maxValue) {
+			throw new IllegalArgumentException("Counter value out of range: " + value);
+		}
+		
+		final int word = word(index);
+		final int shift = shift(index);
+		this.data[word] = (this.data[word] & ~(this.maxValue << shift)) | (value << shift);
+	}
+	
+	/**
+	 * Increment the counter at the given index, unless it is saturated.
+	 * 
+	 * @param index
+	 *            the index of the counter
+	 * 
+	 * @return the value of the counter after incrementing
+	 */
+	public long increment(long index) {
+		final int word = word(index);
+		final int shift = shift(index);
+		
+		long value = (this.data[word] >>> shift) & this.maxValue;
+		if(value == this.maxValue) {
+			return value;
+		}
+		
+		this.data[word] += 1L << shift;
+		return value + 1;
+	}
+	
+	/**
+	 * Decrement the counter at the given index, unless it is zero or
+	 * saturated.
+	 * 
+	 * @param index
+	 *            the index of the counter
+	 * 
+	 * @return the value of the counter after decrementing
+	 */
+	public long decrement(long index) {
+		final int word = word(index);
+		final int shift = shift(index);
+		
+		long value = (this.data[word] >>> shift) & this.maxValue;
+		if(value == 0 || value == this.maxValue) {
+			return value;
+		}
+		
+		this.data[word] -= 1L << shift;
+		return value - 1;
+	}
+	
+	/**
+	 * Reset all counters to zero.
+	 * 
+	 */
+	public void clear() {
+		Arrays.fill(this.data, 0);
+	}
+	
+	/**
+	 * Return the number of counters in this array.
+	 * 
+	 * @return the number of counters
+	 */
+	public long size() {
+		return this.numCounters;
+	}
+	
+	/**
+	 * Return the number of bits used by each counter.
+	 * 
+	 * @return the number of bits per counter
+	 */
+	public int getBitsPerCounter() {
+		return this.bitsPerCounter;
+	}
+	
+	/**
+	 * Return the value at which counters saturate.
+	 * 
+	 * @return the maximum value of a counter
+	 */
+	public long getMaxValue() {
+		return this.maxValue;
+	}
+	
+	private int word(long index) {
+		if(index < 0 || index >= this.numCounters) {
+			throw new IndexOutOfBoundsException("Counter index out of range: " + index);
+		}
+		
+		return (int) (index >>> this.countersPerWordShift);
+	}
+	
+	private int shift(long index) {
+		return ((int) index & ((1 << this.countersPerWordShift) - 1)) * this.bitsPerCounter;
+	}
+
+}
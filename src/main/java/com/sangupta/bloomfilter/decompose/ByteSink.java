@@ -21,13 +21,19 @@
 
 package com.sangupta.bloomfilter.decompose;
 
-import java.io.ByteArrayOutputStream;
-import java.io.DataOutputStream;
-import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 
 /**
- * An in-memory sink that uses a {@link ByteArrayOutputStream} to store
- * the incoming bytes.
+ * An in-memory sink that stores the incoming bytes in a growable byte array.
+ * Primitives are written in big-endian order, exactly as a
+ * {@link java.io.DataOutputStream} would write them.
+ * 
+ * A sink may be reused across elements by calling {@link #reset()}, which
+ * keeps the underlying buffer. The bytes written so far can then be read in
+ * place using {@link #getBuffer()} and {@link #size()} without any copying.
+ * This class is not thread-safe.
  * 
  * @author sangupta
  * @since 1.0
@@ -35,22 +41,81 @@ import java.io.IOException;
 public class ByteSink {
 	
 	/**
-	 * The actual storage stream
+	 * The default initial capacity of the sink
+	 */
+	public static final int DEFAULT_CAPACITY = 64;
+	
+	/**
+	 * The actual storage buffer
 	 */
-	protected ByteArrayOutputStream stream = new ByteArrayOutputStream();
+	protected byte[] buffer;
 	
 	/**
-	 * Wrapper over the byte stream
+	 * The number of valid bytes in the buffer
 	 */
-	protected DataOutputStream dataStream = new DataOutputStream(stream);
+	protected int count;
 	
 	/**
-	 * Get the byte-array of bytes currently stored
+	 * Create a sink with the default initial capacity.
 	 * 
-	 * @return
+	 */
+	public ByteSink() {
+		this(DEFAULT_CAPACITY);
+	}
+	
+	/**
+	 * Create a sink with the given initial capacity.
+	 * 
+	 * @param initialCapacity
+	 *            the initial size of the buffer in bytes
+	 */
+	public ByteSink(int initialCapacity) {
+		if(initialCapacity < 0) {
+			throw new IllegalArgumentException("Initial capacity cannot be negative");
+		}
+		
+		this.buffer = new byte[initialCapacity];
+	}
+	
+	/**
+	 * Get the byte-array of bytes currently stored. This returns a copy; use
+	 * {@link #getBuffer()} to avoid the copy.
+	 * 
+	 * @return a new array with the bytes stored in this sink
 	 */
 	public byte[] getByteArray() {
-		return stream.toByteArray();
+		return Arrays.copyOf(this.buffer, this.count);
+	}
+	
+	/**
+	 * Get the internal buffer of this sink. Only the first {@link #size()}
+	 * bytes are valid. The buffer is overwritten when the sink is reused and
+	 * replaced when the sink grows.
+	 * 
+	 * @return the internal buffer
+	 */
+	public byte[] getBuffer() {
+		return this.buffer;
+	}
+	
+	/**
+	 * Get the number of bytes stored in this sink.
+	 * 
+	 * @return the number of bytes stored
+	 */
+	public int size() {
+		return this.count;
+	}
+	
+	/**
+	 * Discard all bytes stored so that the sink can be reused. The internal
+	 * buffer is retained.
+	 * 
+	 * @return this sink
+	 */
+	public ByteSink reset() {
+		this.count = 0;
+		return this;
 	}
 	
 	/**
@@ -60,7 +125,8 @@ public class ByteSink {
 	 * @return
 	 */
 	public ByteSink putByte(byte b) {
-		this.stream.write(b);
+		ensureCapacity(1);
+		this.buffer[this.count++] = b;
 		return this;
 	}
 	
@@ -71,13 +137,7 @@ public class ByteSink {
 	 * @return
 	 */
 	public ByteSink putBytes(byte[] bytes) {
-		try {
-			stream.write(bytes);
-		} catch (IOException e) {
-			throw new RuntimeException("Unable to store bytes inside the sink", e);
-		}
-		
-		return this;
+		return putBytes(bytes, 0, bytes.length);
 	}
 	
 	/**
@@ -88,88 +148,190 @@ public class ByteSink {
 	 * @return
 	 */
 	public ByteSink putBytes(byte[] bytes, int offset, int length) {
-		this.stream.write(bytes, offset, length);
+		if(offset < 0 || length < 0 || offset > bytes.length - length) {
+			throw new IndexOutOfBoundsException("Offset/length are outside the byte array");
+		}
+		
+		ensureCapacity(length);
+		System.arraycopy(bytes, offset, this.buffer, this.count, length);
+		this.count += length;
 		return this;
 	}
 	
 	public ByteSink putChar(char c) {
-		try {
-			this.dataStream.writeChar(c);
-		} catch (IOException e) {
-			throw new RuntimeException("Unable to store char inside the sink", e);
-		}
-		
+		ensureCapacity(2);
+		this.buffer[this.count++] = (byte) (c >>> 8);
+		this.buffer[this.count++] = (byte) c;
 		return this;
 	}
 	
 	public ByteSink putShort(short s) {
-		try {
-			this.dataStream.writeShort(s);
-		} catch (IOException e) {
-			throw new RuntimeException("Unable to store short inside the sink", e);
-		}
-		
+		ensureCapacity(2);
+		this.buffer[this.count++] = (byte) (s >>> 8);
+		this.buffer[this.count++] = (byte) s;
 		return this;
 	}
 	
 	public ByteSink putInt(int i) {
-		try {
-			this.dataStream.writeInt(i);
-		} catch (IOException e) {
-			throw new RuntimeException("Unable to store int inside the sink", e);
-		}
-		
+		ensureCapacity(4);
+		this.buffer[this.count++] = (byte) (i >>> 24);
+		this.buffer[this.count++] = (byte) (i >>> 16);
+		this.buffer[this.count++] = (byte) (i >>> 8);
+		this.buffer[this.count++] = (byte) i;
 		return this;
 	}
 	
 	public ByteSink putLong(long l) {
-		try {
-			this.dataStream.writeLong(l);
-		} catch (IOException e) {
-			throw new RuntimeException("Unable to store long inside the sink", e);
-		}
-		
+		ensureCapacity(8);
+		this.buffer[this.count++] = (byte) (l >>> 56);
+		this.buffer[this.count++] = (byte) (l >>> 48);
+		this.buffer[this.count++] = (byte) (l >>> 40);
+		this.buffer[this.count++] = (byte) (l >>> 32);
+		this.buffer[this.count++] = (byte) (l >>> 24);
+		this.buffer[this.count++] = (byte) (l >>> 16);
+		this.buffer[this.count++] = (byte) (l >>> 8);
+		this.buffer[this.count++] = (byte) l;
 		return this;
 	}
 	
 	public ByteSink putFloat(float f) {
-		try {
-			this.dataStream.writeFloat(f);
-		} catch (IOException e) {
-			throw new RuntimeException("Unable to store float  inside the sink", e);
+		return putInt(Float.floatToIntBits(f));
+	}
+	
+	public ByteSink putDouble(double d) {
+		return putLong(Double.doubleToLongBits(d));
+	}
+
+	public ByteSink putBoolean(boolean b) {
+		return putByte((byte) (b ? 1 : 0));
+	}
+	
+	/**
+	 * Store the low byte of every character of the given sequence, same as
+	 * {@link java.io.DataOutputStream#writeBytes(String)}.
+	 * 
+	 * @param charSequence
+	 * @return
+	 */
+	public ByteSink putChars(CharSequence charSequence) {
+		final int length = charSequence.length();
+		ensureCapacity(length);
+		for(int index = 0; index < length; index++) {
+			this.buffer[this.count++] = (byte) charSequence.charAt(index);
 		}
 		
 		return this;
 	}
 	
-	public ByteSink putDouble(double d) {
-		try {
-			this.dataStream.writeDouble(d);
-		} catch (IOException e) {
-			throw new RuntimeException("Unable to store double inside the sink", e);
+	/**
+	 * Store the given sequence encoded in the given {@link Charset}. The bytes
+	 * stored are the same as those returned by {@link String#getBytes(Charset)}.
+	 * UTF-8 is encoded directly into the sink without allocating; other
+	 * charsets go through {@link String#getBytes(Charset)}.
+	 * 
+	 * @param charSequence
+	 *            the characters to store
+	 * 
+	 * @param charset
+	 *            the charset to encode the characters in
+	 * 
+	 * @return this sink
+	 */
+	public ByteSink putString(CharSequence charSequence, Charset charset) {
+		if(StandardCharsets.UTF_8.equals(charset)) {
+			return putUTF8(charSequence);
 		}
 		
-		return this;
+		return putBytes(charSequence.toString().getBytes(charset));
 	}
-
-	public ByteSink putBoolean(boolean b) {
-		try {
-			this.dataStream.writeBoolean(b);
-		} catch (IOException e) {
-			throw new RuntimeException("Unable to store boolean inside the sink", e);
+	
+	/**
+	 * Store the given sequence encoded as UTF-8. Unpaired surrogates are
+	 * replaced with <code>'?'</code>, as done by the JDK encoder.
+	 * 
+	 * @param charSequence
+	 *            the characters to store
+	 * 
+	 * @return this sink
+	 */
+	protected ByteSink putUTF8(CharSequence charSequence) {
+		final int length = charSequence.length();
+		
+		// worst case is three bytes per char, as a surrogate pair
+		// takes four bytes for two chars
+		ensureCapacity((int) Math.min(Integer.MAX_VALUE, length * 3L));
+		
+		for(int index = 0; index < length; ) {
+			index += encodeUTF8(charSequence, index, length);
 		}
 		
 		return this;
 	}
 	
-	public ByteSink putChars(CharSequence charSequence) {
-		try {
-			this.dataStream.writeBytes(charSequence.toString());
-		} catch (IOException e) {
-			throw new RuntimeException("Unable to store charSequence inside the sink", e);
+	/**
+	 * Encode the character at the given index as UTF-8 into the buffer, along
+	 * with the next one if the two form a surrogate pair. There must be room
+	 * for four more bytes in the buffer.
+	 * 
+	 * @param charSequence
+	 *            the characters being stored
+	 * 
+	 * @param index
+	 *            the index of the character to encode
+	 * 
+	 * @param length
+	 *            the number of characters in the sequence
+	 * 
+	 * @return the number of characters encoded, one or two
+	 */
+	protected final int encodeUTF8(CharSequence charSequence, int index, int length) {
+		final byte[] buffer = this.buffer;
+		char c = charSequence.charAt(index);
+		if(c < 0x80) {
+			buffer[this.count++] = (byte) c;
+		} else if(c < 0x800) {
+			buffer[this.count++] = (byte) (0xC0 | (c >>> 6));
+			buffer[this.count++] = (byte) (0x80 | (c & 0x3F));
+		} else if(Character.isSurrogate(c)) {
+			char low = index + 1 < length ? charSequence.charAt(index + 1) : 0;
+			if(Character.isHighSurrogate(c) && Character.isLowSurrogate(low)) {
+				int codePoint = Character.toCodePoint(c, low);
+				buffer[this.count++] = (byte) (0xF0 | (codePoint >>> 18));
+				buffer[this.count++] = (byte) (0x80 | ((codePoint >>> 12) & 0x3F));
+				buffer[this.count++] = (byte) (0x80 | ((codePoint >>> 6) & 0x3F));
+				buffer[this.count++] = (byte) (0x80 | (codePoint & 0x3F));
+				return 2;
+			}
+			
+			buffer[this.count++] = '?';
+		} else {
+			buffer[this.count++] = (byte) (0xE0 | (c >>> 12));
+			buffer[this.count++] = (byte) (0x80 | ((c >>> 6) & 0x3F));
+			buffer[this.count++] = (byte) (0x80 | (c & 0x3F));
 		}
 		
-		return this;
+		return 1;
+	}
+	
+	/**
+	 * Make sure that the given number of bytes can be written to the buffer,
+	 * growing it if needed.
+	 * 
+	 * @param extra
+	 *            the number of bytes about to be written
+	 */
+	protected void ensureCapacity(int extra) {
+		long required = (long) this.count + extra;
+		if(required <= this.buffer.length) {
+			return;
+		}
+		
+		if(required > Integer.MAX_VALUE - 8) {
+			throw new IllegalStateException("Sink cannot grow beyond 2GB");
+		}
+		
+		long grown = Math.max(required, Math.max(DEFAULT_CAPACITY, (long) this.buffer.length << 1));
+		this.buffer = Arrays.copyOf(this.buffer, (int) Math.min(grown, Integer.MAX_VALUE - 8));
 	}
 	
-}
\ No newline at end of file
+}
@@ -50,12 +50,12 @@ public class DefaultDecomposer implements Decomposer<Object> {
 			return;
 		}
 		
-		if(object instanceof String) {
-			sink.putBytes(((String) object).getBytes(DEFAULT_CHARSET));
+		if(object instanceof CharSequence) {
+			sink.putString((CharSequence) object, DEFAULT_CHARSET);
 			return;
 		}
 		
-		sink.putBytes(object.toString().getBytes(DEFAULT_CHARSET));
+		sink.putString(object.toString(), DEFAULT_CHARSET);
 	}
 
 }
\ No newline at end of file
@@ -24,28 +24,63 @@ package com.sangupta.bloomfilter.hash;
 import java.util.zip.CRC32;
 
 /**
- * A CRC32 hash function.
+ * A CRC32 hash function. The {@link CRC32} instances are reused per thread,
+ * so hashing does not allocate.
  * 
  * @author sangupta
  * @since 1.0
  */
 public class CRC32HashFunction implements HashFunction {
+	
+	/**
+	 * The identifier of this hash function in persisted filters
+	 */
+	public static final int ID = 3;
+	
+	/**
+	 * The checksum instance to use for every thread
+	 */
+	private static final ThreadLocal<CRC32> CRC32_HOLDER = new ThreadLocal<CRC32>() {
+		
+		@Override
+		protected CRC32 initialValue() {
+			return new CRC32();
+		}
+		
+	};
 
 	@Override
 	public boolean isSingleValued() {
 		return true;
 	}
 
+	@Override
+	public int getId() {
+		return ID;
+	}
+
 	@Override
 	public long hash(byte[] bytes) {
-		CRC32 crc32 = new CRC32();
-		crc32.update(bytes);
-		return crc32.getValue();
+		return hash64(bytes, 0, bytes.length);
 	}
 
 	@Override
 	public long[] hashMultiple(byte[] bytes) {
 		return null;
 	}
+	
+	@Override
+	public long hash64(byte[] bytes, int offset, int length) {
+		CRC32 crc32 = CRC32_HOLDER.get();
+		crc32.reset();
+		crc32.update(bytes, offset, length);
+		return crc32.getValue();
+	}
+	
+	@Override
+	public int hashMultiple(byte[] bytes, int offset, int length, long[] result) {
+		result[0] = hash64(bytes, offset, length);
+		return 1;
+	}
 
 }
\ No newline at end of file
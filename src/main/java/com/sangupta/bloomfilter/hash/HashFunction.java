@@ -25,6 +25,11 @@ package com.sangupta.bloomfilter.hash;
  * A contract for all implementation that want to provide a hash
  * function for use inside the bloom filters.
  * 
+ * The {@link #hash64(byte[], int, int)} and
+ * {@link #hashMultiple(byte[], int, int, long[])} methods work over a slice
+ * of a byte array and must not allocate, as they are invoked for every
+ * element added to or tested against a filter.
+ * 
  * @author sangupta
  * @since 1.0
  */
@@ -58,5 +63,56 @@ public interface HashFunction {
 	 * @return the generated hash value
 	 */
 	public long[] hashMultiple(byte[] bytes);
+	
+	/**
+	 * Return a 64-bit hash of the given slice of bytes without allocating any
+	 * memory. For single valued hash functions this is the same as
+	 * {@link #hash(byte[])}, otherwise it is the first value of
+	 * {@link #hashMultiple(byte[])}, when computed over the same bytes.
+	 * 
+	 * @param bytes
+	 *            the bytes to be hashed
+	 * 
+	 * @param offset
+	 *            the offset of the first byte to hash
+	 * 
+	 * @param length
+	 *            the number of bytes to hash
+	 * 
+	 * @return the generated hash value
+	 */
+	public long hash64(byte[] bytes, int offset, int length);
+	
+	/**
+	 * Compute the hash of the given slice of bytes into the given array
+	 * without allocating any memory.
+	 * 
+	 * @param bytes
+	 *            the bytes to be hashed
+	 * 
+	 * @param offset
+	 *            the offset of the first byte to hash
+	 * 
+	 * @param length
+	 *            the number of bytes to hash
+	 * 
+	 * @param result
+	 *            the array to write the hash values to, starting at index
+	 *            zero; must be large enough to hold all values
+	 * 
+	 * @return the number of values written to the result array
+	 */
+	public int hashMultiple(byte[] bytes, int offset, int length, long[] result);
+	
+	/**
+	 * Return a number that identifies the hash function, recorded along with
+	 * a persisted filter and checked when it is read back. It must never
+	 * change once filters have been persisted, and must differ between hash
+	 * functions that hash differently. Identifiers below 1024 are reserved
+	 * for the hash functions of this library.
+	 * 
+	 * @return the identifier of the hash function
+	 */
+	public int getId();
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,352 @@
+/**
+ *
+ * bloomfilter - Bloom filters for Java
+ * Copyright (c) 2014-2015, Sandeep Gupta
+ * 
+ * http://sangupta.com/projects/bloomfilter
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+
+package com.sangupta.bloomfilter.hash;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+
+import com.sangupta.bloomfilter.decompose.ByteSink;
+
+/**
+ * A {@link ByteSink} that does not store the bytes written to it, but feeds
+ * them into an incremental Murmur3 128-bit (x64 variant) hash state as they
+ * arrive. Only a small staging buffer is used, so objects of any size can be
+ * hashed while being decomposed, without an intermediate byte array: long
+ * byte arrays are mixed straight from the source, and strings are encoded
+ * into the staging buffer a few characters at a time.
+ * 
+ * The hash produced is the same as that of
+ * {@link Murmur3HashFunction#hash_x64_128(byte[], int, int, long, long[])}
+ * over the same bytes. The sink can be reused by calling {@link #reset()}.
+ * This class is not thread-safe.
+ * 
+ * @author sangupta
+ * @since 1.0
+ */
+public class HashingSink extends ByteSink {
+	
+	/**
+	 * The size of the staging buffer, a multiple of the 16-byte block size
+	 */
+	private static final int STAGING_SIZE = 64;
+	
+	/**
+	 * The seed of the hash
+	 */
+	private final long seed;
+	
+	/**
+	 * The first half of the hash state
+	 */
+	private long h1;
+	
+	/**
+	 * The second half of the hash state
+	 */
+	private long h2;
+	
+	/**
+	 * The number of bytes already mixed into the hash state
+	 */
+	private long processed;
+	
+	/**
+	 * The encoder of the last charset other than UTF-8 used, kept for reuse
+	 */
+	private CharsetEncoder encoder;
+	
+	/**
+	 * Create a sink computing the hash with the given seed.
+	 * 
+	 * @param seed
+	 *            the seed of the hash
+	 */
+	public HashingSink(long seed) {
+		super(STAGING_SIZE);
+		
+		this.seed = seed;
+		this.h1 = seed;
+		this.h2 = seed;
+	}
+	
+	/**
+	 * Discard all bytes written so far and start a new hash.
+	 * 
+	 */
+	@Override
+	public HashingSink reset() {
+		super.reset();
+		
+		this.h1 = this.seed;
+		this.h2 = this.seed;
+		this.processed = 0;
+		return this;
+	}
+	
+	/**
+	 * Compute the first 64-bit half of the hash of all the bytes written so
+	 * far. More bytes may be written afterwards.
+	 * 
+	 * @return the first 64-bit half of the hash
+	 */
+	public long hash64() {
+		flushBlocks();
+		return Murmur3HashFunction.finish(this.h1, this.h2, this.buffer, 0, this.count, null);
+	}
+	
+	/**
+	 * Compute the 128-bit hash of all the bytes written so far. More bytes may
+	 * be written afterwards.
+	 * 
+	 * @param result
+	 *            the array to write the two 64-bit halves of the hash to
+	 */
+	public void hash128(long[] result) {
+		flushBlocks();
+		Murmur3HashFunction.finish(this.h1, this.h2, this.buffer, 0, this.count, result);
+	}
+	
+	/**
+	 * Get the number of bytes written to this sink since the last reset.
+	 * 
+	 * @return the number of bytes written
+	 */
+	@Override
+	public int size() {
+		return (int) (this.processed + this.count);
+	}
+	
+	/**
+	 * Not supported, as the bytes are not retained.
+	 * 
+	 * @throws UnsupportedOperationException
+	 *             always
+	 */
+	@Override
+	public byte[] getByteArray() {
+		throw new UnsupportedOperationException("HashingSink does not retain the bytes written to it");
+	}
+	
+	/**
+	 * Not supported, as the bytes are not retained.
+	 * 
+	 * @throws UnsupportedOperationException
+	 *             always
+	 */
+	@Override
+	public byte[] getBuffer() {
+		throw new UnsupportedOperationException("HashingSink does not retain the bytes written to it");
+	}
+	
+	/**
+	 * Hash the given bytes, mixing whole blocks straight from the source array.
+	 * 
+	 */
+	@Override
+	public HashingSink putBytes(byte[] bytes, int offset, int length) {
+		if(offset < 0 || length < 0 || offset > bytes.length - length) {
+			throw new IndexOutOfBoundsException("Offset/length are outside the byte array");
+		}
+		
+		if(this.count + length <= this.buffer.length) {
+			System.arraycopy(bytes, offset, this.buffer, this.count, length);
+			this.count += length;
+			return this;
+		}
+		
+		flushBlocks();
+		
+		// complete the partially staged block
+		if(this.count > 0) {
+			int fill = Math.min(16 - this.count, length);
+			System.arraycopy(bytes, offset, this.buffer, this.count, fill);
+			this.count += fill;
+			offset += fill;
+			length -= fill;
+			
+			if(this.count < 16) {
+				return this;
+			}
+			
+			mixBlock(this.buffer, 0);
+			this.count = 0;
+		}
+		
+		while(length >= 16) {
+			mixBlock(bytes, offset);
+			offset += 16;
+			length -= 16;
+		}
+		
+		System.arraycopy(bytes, offset, this.buffer, 0, length);
+		this.count = length;
+		return this;
+	}
+	
+	/**
+	 * Hash the low byte of every character, staging a buffer full at a time.
+	 * 
+	 */
+	@Override
+	public HashingSink putChars(CharSequence charSequence) {
+		final int length = charSequence.length();
+		for(int index = 0; index < length; index++) {
+			if(this.count == this.buffer.length) {
+				flushBlocks();
+			}
+			
+			this.buffer[this.count++] = (byte) charSequence.charAt(index);
+		}
+		
+		return this;
+	}
+	
+	/**
+	 * Hash the characters encoded in the given {@link Charset}, encoding them
+	 * into the staging buffer and mixing whole blocks whenever it fills up.
+	 * Charsets other than UTF-8 use a {@link CharsetEncoder} that is kept for
+	 * the next string, replacing malformed and unmappable input just as
+	 * {@link String#getBytes(Charset)} does.
+	 * 
+	 */
+	@Override
+	public HashingSink putString(CharSequence charSequence, Charset charset) {
+		if(StandardCharsets.UTF_8.equals(charset)) {
+			return putUTF8(charSequence);
+		}
+		
+		if(this.encoder == null || !this.encoder.charset().equals(charset)) {
+			this.encoder = charset.newEncoder().onMalformedInput(CodingErrorAction.REPLACE).onUnmappableCharacter(CodingErrorAction.REPLACE);
+		}
+		
+		CharsetEncoder encoder = this.encoder.reset();
+		CharBuffer in = CharBuffer.wrap(charSequence);
+		ByteBuffer out = ByteBuffer.wrap(this.buffer);
+		
+		boolean flushed = false;
+		while(true) {
+			((Buffer) out).position(this.count);
+			CoderResult result = flushed ? encoder.flush(out) : encoder.encode(in, out, true);
+			this.count = out.position();
+			
+			if(result.isOverflow()) {
+				flushBlocks();
+			} else if(!flushed) {
+				flushed = true;
+			} else {
+				return this;
+			}
+		}
+	}
+	
+	/**
+	 * Hash the characters encoded as UTF-8, mixing whole blocks whenever the
+	 * staging buffer fills up.
+	 * 
+	 */
+	@Override
+	protected HashingSink putUTF8(CharSequence charSequence) {
+		final int length = charSequence.length();
+		for(int index = 0; index < length; ) {
+			// a surrogate pair takes four bytes
+			if(this.count > this.buffer.length - 4) {
+				flushBlocks();
+			}
+			
+			index += encodeUTF8(charSequence, index, length);
+		}
+		
+		return this;
+	}
+	
+	/**
+	 * Make room in the staging buffer by mixing the whole blocks staged so far.
+	 * The buffer only grows if a single write needs more room than it has.
+	 * 
+	 */
+	@Override
+	protected void ensureCapacity(int extra) {
+		if(this.count + extra <= this.buffer.length) {
+			return;
+		}
+		
+		flushBlocks();
+		super.ensureCapacity(extra);
+	}
+	
+	/**
+	 * Mix all whole blocks in the staging buffer into the hash state, and move
+	 * the remaining bytes to the start of the buffer.
+	 * 
+	 */
+	private void flushBlocks() {
+		int position = 0;
+		while(position + 16 <= this.count) {
+			mixBlock(this.buffer, position);
+			position += 16;
+		}
+		
+		if(position > 0) {
+			this.count -= position;
+			System.arraycopy(this.buffer, position, this.buffer, 0, this.count);
+		}
+	}
+	
+	/**
+	 * Mix one block of 16 bytes into the hash state.
+	 * 
+	 * @param bytes
+	 *            the bytes holding the block
+	 * 
+	 * @param offset
+	 *            the offset of the block in the bytes
+	 */
+	private void mixBlock(byte[] bytes, int offset) {
+		long k1 = Murmur3HashFunction.getLong(bytes, offset);
+		long k2 = Murmur3HashFunction.getLong(bytes, offset + 8);
+		
+		long h1 = this.h1;
+		long h2 = this.h2;
+		
+		h1 ^= Murmur3HashFunction.mixK1(k1);
+		h1 = Long.rotateLeft(h1, 27);
+		h1 += h2;
+		h1 = h1 * 5 + 0x52dce729;
+		
+		h2 ^= Murmur3HashFunction.mixK2(k2);
+		h2 = Long.rotateLeft(h2, 31);
+		h2 += h1;
+		h2 = h2 * 5 + 0x38495ab5;
+		
+		this.h1 = h1;
+		this.h2 = h2;
+		this.processed += 16;
+	}
+
+}
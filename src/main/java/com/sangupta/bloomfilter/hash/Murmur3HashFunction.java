@@ -26,26 +26,232 @@ import com.sangupta.murmur.Murmur3;
 /**
  * A Murmur3 hash function.
  * 
+ * The 128-bit hashes are computed by an allocation-free implementation that
+ * produces exactly the values of <code>Murmur3.hash_x64_128(bytes, 0, seed)</code>
+ * from the murmur library, so that filters built earlier remain valid. Note
+ * that, as with that call, the length of the input is not mixed into the
+ * hash during finalization.
+ * 
  * @author sangupta
  * @since 1.0
  */
-public class Murmur3HashFunction implements HashFunction {
+public class Murmur3HashFunction implements StreamingHashFunction, SeededHashFunction {
+	
+	/**
+	 * The identifier of this hash function in persisted filters
+	 */
+	public static final int ID = 1;
 	
 	private static final long SEED = 0x7f3a21eal;
 	
+	private static final long C1 = 0x87c37b91114253d5L;
+	
+	private static final long C2 = 0x4cf5ad432745937fL;
+	
+	@Override
+	public long getSeed() {
+		return SEED;
+	}
+	
 	@Override
 	public boolean isSingleValued() {
 		return false;
 	}
-
+	
+	@Override
+	public int getId() {
+		return ID;
+	}
+	
 	@Override
 	public long hash(byte[] bytes) {
 		return Murmur3.hash_x86_32(bytes, 0, SEED);
 	}
-
+	
 	@Override
 	public long[] hashMultiple(byte[] bytes) {
-		return Murmur3.hash_x64_128(bytes, 0, SEED);
+		long[] result = new long[2];
+		hash_x64_128(bytes, 0, bytes.length, SEED, result);
+		return result;
+	}
+	
+	@Override
+	public long hash64(byte[] bytes, int offset, int length) {
+		return hash_x64_128(bytes, offset, length, SEED, null);
+	}
+	
+	@Override
+	public int hashMultiple(byte[] bytes, int offset, int length, long[] result) {
+		hash_x64_128(bytes, offset, length, SEED, result);
+		return 2;
+	}
+	
+	/**
+	 * Create a {@link HashingSink} that computes the same hash as
+	 * {@link #hashMultiple(byte[])} over the bytes written to it.
+	 * 
+	 */
+	@Override
+	public HashingSink newHashingSink() {
+		return new HashingSink(SEED);
+	}
+	
+	/**
+	 * Compute the 128-bit Murmur3 hash (x64 variant) of the given slice of
+	 * bytes.
+	 * 
+	 * @param bytes
+	 *            the bytes to hash
+	 * 
+	 * @param offset
+	 *            the offset of the first byte to hash
+	 * 
+	 * @param length
+	 *            the number of bytes to hash
+	 * 
+	 * @param seed
+	 *            the seed to use
+	 * 
+	 * @param result
+	 *            the array to write the two 64-bit halves of the hash to, may
+	 *            be <code>null</code> if only the first half is needed
+	 * 
+	 * @return the first 64-bit half of the hash
+	 */
+	public static long hash_x64_128(byte[] bytes, int offset, int length, long seed, long[] result) {
+		long h1 = seed;
+		long h2 = seed;
+		
+		final int end = offset + length;
+		int position = offset;
+		
+		// body
+		while(position + 16 <= end) {
+			long k1 = getLong(bytes, position);
+			long k2 = getLong(bytes, position + 8);
+			position += 16;
+			
+			h1 ^= mixK1(k1);
+			h1 = Long.rotateLeft(h1, 27);
+			h1 += h2;
+			h1 = h1 * 5 + 0x52dce729;
+			
+			h2 ^= mixK2(k2);
+			h2 = Long.rotateLeft(h2, 31);
+			h2 += h1;
+			h2 = h2 * 5 + 0x38495ab5;
+		}
+		
+		return finish(h1, h2, bytes, position, end - position, result);
+	}
+	
+	/**
+	 * Mix the remaining tail of fewer than 16 bytes into the hash state and
+	 * finalize the hash.
+	 * 
+	 * @param h1
+	 *            the first half of the hash state
+	 * 
+	 * @param h2
+	 *            the second half of the hash state
+	 * 
+	 * @param bytes
+	 *            the bytes holding the tail
+	 * 
+	 * @param position
+	 *            the offset of the tail in the bytes
+	 * 
+	 * @param remaining
+	 *            the length of the tail, less than 16
+	 * 
+	 * @param result
+	 *            the array to write the two 64-bit halves of the hash to, may
+	 *            be <code>null</code> if only the first half is needed
+	 * 
+	 * @return the first 64-bit half of the hash
+	 */
+	static long finish(long h1, long h2, byte[] bytes, int position, int remaining, long[] result) {
+		if(remaining > 0) {
+			long k1 = 0;
+			long k2 = 0;
+			
+			switch(remaining) {
+				case 15: k2 ^= (bytes[position + 14] & 0xFFL) << 48;
+				case 14: k2 ^= (bytes[position + 13] & 0xFFL) << 40;
+				case 13: k2 ^= (bytes[position + 12] & 0xFFL) << 32;
+				case 12: k2 ^= (bytes[position + 11] & 0xFFL) << 24;
+				case 11: k2 ^= (bytes[position + 10] & 0xFFL) << 16;
+				case 10: k2 ^= (bytes[position + 9] & 0xFFL) << 8;
+				case 9: k2 ^= (bytes[position + 8] & 0xFFL);
+				case 8: k1 ^= (bytes[position + 7] & 0xFFL) << 56;
+				case 7: k1 ^= (bytes[position + 6] & 0xFFL) << 48;
+				case 6: k1 ^= (bytes[position + 5] & 0xFFL) << 40;
+				case 5: k1 ^= (bytes[position + 4] & 0xFFL) << 32;
+				case 4: k1 ^= (bytes[position + 3] & 0xFFL) << 24;
+				case 3: k1 ^= (bytes[position + 2] & 0xFFL) << 16;
+				case 2: k1 ^= (bytes[position + 1] & 0xFFL) << 8;
+				case 1: k1 ^= (bytes[position] & 0xFFL);
+					break;
+					
+				default:
+					throw new AssertionError("Code should not reach here!");
+			}
+			
+			h1 ^= mixK1(k1);
+			h2 ^= mixK2(k2);
+		}
+		
+		// finalization, the length is deliberately not mixed in
+		h1 += h2;
+		h2 += h1;
+		
+		h1 = fmix64(h1);
+		h2 = fmix64(h2);
+		
+		h1 += h2;
+		h2 += h1;
+		
+		if(result != null) {
+			result[0] = h1;
+			result[1] = h2;
+		}
+		
+		return h1;
+	}
+	
+	static long mixK1(long k1) {
+		k1 *= C1;
+		k1 = Long.rotateLeft(k1, 31);
+		return k1 * C2;
+	}
+	
+	static long mixK2(long k2) {
+		k2 *= C2;
+		k2 = Long.rotateLeft(k2, 33);
+		return k2 * C1;
+	}
+	
+	private static long fmix64(long k) {
+		k ^= k >>> 33;
+		k *= 0xff51afd7ed558ccdL;
+		k ^= k >>> 33;
+		k *= 0xc4ceb9fe1a85ec53L;
+		k ^= k >>> 33;
+		return k;
+	}
+	
+	/**
+	 * Read a little-endian long from the byte array.
+	 */
+	static long getLong(byte[] bytes, int offset) {
+		return (bytes[offset] & 0xFFL)
+				| (bytes[offset + 1] & 0xFFL) << 8
+				| (bytes[offset + 2] & 0xFFL) << 16
+				| (bytes[offset + 3] & 0xFFL) << 24
+				| (bytes[offset + 4] & 0xFFL) << 32
+				| (bytes[offset + 5] & 0xFFL) << 40
+				| (bytes[offset + 6] & 0xFFL) << 48
+				| (bytes[offset + 7] & 0xFFL) << 56;
 	}
 
-}
\ No newline at end of file
+}
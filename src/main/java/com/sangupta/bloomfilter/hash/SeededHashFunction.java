@@ -0,0 +1,42 @@
+/**
+ *
+ * bloomfilter - Bloom filters for Java
+ * Copyright (c) 2014-2015, Sandeep Gupta
+ * 
+ * http://sangupta.com/projects/bloomfilter
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+
+package com.sangupta.bloomfilter.hash;
+
+/**
+ * A {@link HashFunction} whose values depend on a seed, so that the seed can
+ * be recorded along with a persisted filter and checked when it is read
+ * back.
+ * 
+ * @author sangupta
+ * @since 1.0
+ */
+public interface SeededHashFunction extends HashFunction {
+	
+	/**
+	 * Return the seed the hash function uses.
+	 * 
+	 * @return the seed
+	 */
+	public long getSeed();
+
+}
@@ -0,0 +1,45 @@
+/**
+ *
+ * bloomfilter - Bloom filters for Java
+ * Copyright (c) 2014-2015, Sandeep Gupta
+ * 
+ * http://sangupta.com/projects/bloomfilter
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+
+package com.sangupta.bloomfilter.hash;
+
+/**
+ * A {@link HashFunction} that can also compute its hash incrementally while
+ * the bytes are being written to a {@link HashingSink}, so that objects can
+ * be hashed as they are decomposed without materializing their bytes.
+ * 
+ * @author sangupta
+ * @since 1.0
+ */
+public interface StreamingHashFunction extends HashFunction {
+	
+	/**
+	 * Create a new {@link HashingSink} that computes the hash of this function
+	 * over all the bytes written to it. The value of
+	 * {@link HashingSink#hash64()} must be the same as that of
+	 * {@link #hash64(byte[], int, int)} over the same bytes.
+	 * 
+	 * @return a new sink, which is not thread-safe
+	 */
+	public HashingSink newHashingSink();
+
+}
@@ -0,0 +1,219 @@
+/**
+ *
+ * bloomfilter - Bloom filters for Java
+ * Copyright (c) 2014-2015, Sandeep Gupta
+ * 
+ * http://sangupta.com/projects/bloomfilter
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+
+package com.sangupta.bloomfilter.hash;
+
+/**
+ * A 64-bit xxHash (XXH64) hash function. This is the hash function used by
+ * the Apache Parquet split block bloom filters, and using it with the same
+ * seed makes filters built by this library interchangeable with theirs.
+ * 
+ * @author sangupta
+ * @since 1.0
+ */
+public class XXHash64HashFunction implements SeededHashFunction {
+	
+	/**
+	 * The identifier of this hash function in persisted filters
+	 */
+	public static final int ID = 2;
+	
+	private static final long PRIME64_1 = 0x9E3779B185EBCA87L;
+	
+	private static final long PRIME64_2 = 0xC2B2AE3D27D4EB4FL;
+	
+	private static final long PRIME64_3 = 0x165667B19E3779F9L;
+	
+	private static final long PRIME64_4 = 0x85EBCA77C2B2AE63L;
+	
+	private static final long PRIME64_5 = 0x27D4EB2F165667C5L;
+	
+	/**
+	 * The seed to use
+	 */
+	private final long seed;
+	
+	/**
+	 * Create a hash function with seed zero, as used by Apache Parquet.
+	 */
+	public XXHash64HashFunction() {
+		this(0);
+	}
+	
+	/**
+	 * Create a hash function with the given seed.
+	 * 
+	 * @param seed
+	 *            the seed to use
+	 */
+	public XXHash64HashFunction(long seed) {
+		this.seed = seed;
+	}
+
+	@Override
+	public long getSeed() {
+		return this.seed;
+	}
+	
+	@Override
+	public boolean isSingleValued() {
+		return true;
+	}
+
+	@Override
+	public int getId() {
+		return ID;
+	}
+
+	@Override
+	public long hash(byte[] bytes) {
+		return hash(bytes, 0, bytes.length, this.seed);
+	}
+
+	@Override
+	public long[] hashMultiple(byte[] bytes) {
+		return null;
+	}
+	
+	@Override
+	public long hash64(byte[] bytes, int offset, int length) {
+		return hash(bytes, offset, length, this.seed);
+	}
+	
+	@Override
+	public int hashMultiple(byte[] bytes, int offset, int length, long[] result) {
+		result[0] = hash(bytes, offset, length, this.seed);
+		return 1;
+	}
+	
+	/**
+	 * Compute the XXH64 hash of the given bytes.
+	 * 
+	 * @param bytes
+	 *            the bytes to hash
+	 * 
+	 * @param offset
+	 *            the offset of the first byte to hash
+	 * 
+	 * @param length
+	 *            the number of bytes to hash
+	 * 
+	 * @param seed
+	 *            the seed to use
+	 * 
+	 * @return the 64-bit hash
+	 */
+	public static long hash(byte[] bytes, int offset, int length, long seed) {
+		final int end = offset + length;
+		int position = offset;
+		long hash;
+		
+		if(length >= 32) {
+			long v1 = seed + PRIME64_1 + PRIME64_2;
+			long v2 = seed + PRIME64_2;
+			long v3 = seed;
+			long v4 = seed - PRIME64_1;
+			
+			final int limit = end - 32;
+			do {
+				v1 = round(v1, getLong(bytes, position));
+				v2 = round(v2, getLong(bytes, position + 8));
+				v3 = round(v3, getLong(bytes, position + 16));
+				v4 = round(v4, getLong(bytes, position + 24));
+				position += 32;
+			} while(position <= limit);
+			
+			hash = Long.rotateLeft(v1, 1) + Long.rotateLeft(v2, 7) + Long.rotateLeft(v3, 12) + Long.rotateLeft(v4, 18);
+			hash = mergeRound(hash, v1);
+			hash = mergeRound(hash, v2);
+			hash = mergeRound(hash, v3);
+			hash = mergeRound(hash, v4);
+		} else {
+			hash = seed + PRIME64_5;
+		}
+		
+		hash += length;
+		
+		while(position + 8 <= end) {
+			hash ^= round(0, getLong(bytes, position));
+			hash = Long.rotateLeft(hash, 27) * PRIME64_1 + PRIME64_4;
+			position += 8;
+		}
+		
+		if(position + 4 <= end) {
+			hash ^= (getInt(bytes, position) & 0xFFFFFFFFL) * PRIME64_1;
+			hash = Long.rotateLeft(hash, 23) * PRIME64_2 + PRIME64_3;
+			position += 4;
+		}
+		
+		while(position < end) {
+			hash ^= (bytes[position] & 0xFF) * PRIME64_5;
+			hash = Long.rotateLeft(hash, 11) * PRIME64_1;
+			position++;
+		}
+		
+		// avalanche
+		hash ^= hash >>> 33;
+		hash *= PRIME64_2;
+		hash ^= hash >>> 29;
+		hash *= PRIME64_3;
+		hash ^= hash >>> 32;
+		
+		return hash;
+	}
+	
+	private static long round(long accumulator, long input) {
+		accumulator += input * PRIME64_2;
+		accumulator = Long.rotateLeft(accumulator, 31);
+		return accumulator * PRIME64_1;
+	}
+	
+	private static long mergeRound(long accumulator, long value) {
+		accumulator ^= round(0, value);
+		return accumulator * PRIME64_1 + PRIME64_4;
+	}
+	
+	/**
+	 * Read a little-endian long from the byte array.
+	 */
+	private static long getLong(byte[] bytes, int offset) {
+		return (bytes[offset] & 0xFFL)
+				| (bytes[offset + 1] & 0xFFL) << 8
+				| (bytes[offset + 2] & 0xFFL) << 16
+				| (bytes[offset + 3] & 0xFFL) << 24
+				| (bytes[offset + 4] & 0xFFL) << 32
+				| (bytes[offset + 5] & 0xFFL) << 40
+				| (bytes[offset + 6] & 0xFFL) << 48
+				| (bytes[offset + 7] & 0xFFL) << 56;
+	}
+	
+	/**
+	 * Read a little-endian int from the byte array.
+	 */
+	private static int getInt(byte[] bytes, int offset) {
+		return (bytes[offset] & 0xFF)
+				| (bytes[offset + 1] & 0xFF) << 8
+				| (bytes[offset + 2] & 0xFF) << 16
+				| (bytes[offset + 3] & 0xFF) << 24;
+	}
+
+}
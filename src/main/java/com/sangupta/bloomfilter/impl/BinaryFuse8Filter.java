@@ -0,0 +1,784 @@
+/**
+ *
+ * bloomfilter - Bloom filters for Java
+ * Copyright (c) 2014-2015, Sandeep Gupta
+ * 
+ * http://sangupta.com/projects/bloomfilter
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+
+package com.sangupta.bloomfilter.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+
+import com.sangupta.bloomfilter.AbstractHashingFilter;
+import com.sangupta.bloomfilter.core.DirectBuffers;
+import com.sangupta.bloomfilter.decompose.Decomposer;
+import com.sangupta.bloomfilter.hash.HashFunction;
+
+/**
+ * An immutable binary fuse filter with 8-bit fingerprints, after <i>Binary
+ * Fuse Filters: Fast and Smaller Than Xor Filters</i> by Graf and Lemire.
+ * The filter is built once from the complete set of values and cannot be
+ * added to later. It needs about 9 bits per value for a false positive rate
+ * of <code>1/256</code>, about 0.4%, and a lookup reads exactly three bytes.
+ * 
+ * A built filter can be written to a compact file using
+ * {@link #writeTo(File)} and opened again with
+ * {@link #BinaryFuse8Filter(File, Decomposer, HashFunction)}, which maps the
+ * file into memory instead of reading it. Strings are always encoded as
+ * UTF-8 so that files can be shared between platforms.
+ * 
+ * Lookups are thread-safe. Up to about 1.8 billion values are supported.
+ * 
+ * @author sangupta
+ * @since 1.0
+ * 
+ * @param <T> the type of objects to be stored in the filter
+ */
+public class BinaryFuse8Filter<T> extends AbstractHashingFilter<T> {
+	
+	/**
+	 * Magic number at the start of the file, <code>BFU8</code>
+	 */
+	public static final int FILE_MAGIC = 0x42465538;
+	
+	/**
+	 * Version of the file format
+	 */
+	public static final int FILE_VERSION = 1;
+	
+	/**
+	 * Size of the file header in bytes
+	 */
+	private static final int HEADER_SIZE = 28;
+	
+	/**
+	 * Number of hashes, and thus bytes read, per value
+	 */
+	private static final int ARITY = 3;
+	
+	/**
+	 * Largest segment length, beyond which larger segments do not help
+	 */
+	private static final int MAX_SEGMENT_LENGTH = 1 << 18;
+	
+	/**
+	 * Number of seeds to try before the construction is given up
+	 */
+	private static final int MAX_ITERATIONS = 100;
+	
+	/**
+	 * The seed mixed into the hashes of all values
+	 */
+	protected final long seed;
+	
+	/**
+	 * The length of a segment, a power of two
+	 */
+	protected final int segmentLength;
+	
+	/**
+	 * The number of segments the first hash can start in
+	 */
+	protected final int segmentCount;
+	
+	/**
+	 * The number of fingerprints
+	 */
+	protected final int arrayLength;
+	
+	/**
+	 * The fingerprints
+	 */
+	protected final ByteBuffer fingerprints;
+	
+	/**
+	 * The number of distinct values the filter was built from, estimated
+	 * from the size of the filter when opened from a file
+	 */
+	protected final int numValues;
+	
+	private final int segmentLengthMask;
+	
+	private final long segmentCountLength;
+	
+	/**
+	 * The mapped file, if the filter was opened from one
+	 */
+	private final MappedByteBuffer mapped;
+	
+	/**
+	 * Build a filter holding the given values.
+	 * 
+	 * @param values
+	 *            the values, none of which can be <code>null</code>
+	 */
+	public BinaryFuse8Filter(Collection<? extends T> values) {
+		this(values, null, null);
+	}
+	
+	/**
+	 * Build a filter holding the given values.
+	 * 
+	 * @param values
+	 *            the values, none of which can be <code>null</code>
+	 * 
+	 * @param decomposer
+	 *            a {@link Decomposer} that helps decompose the given object
+	 * 
+	 * @param hasher
+	 *            the hash function to use. If <code>null</code> is specified
+	 *            the default hash function will be used
+	 */
+	public BinaryFuse8Filter(Collection<? extends T> values, Decomposer<T> decomposer, HashFunction hasher) {
+		super(decomposer, hasher);
+		this.currentCharset = Charset.forName("UTF-8");
+		
+		if(values == null) {
+			throw new IllegalArgumentException("Values to build the filter from cannot be null");
+		}
+		
+		long[] hashes = new long[values.size()];
+		int count = 0;
+		for(T value : values) {
+			if(value == null) {
+				throw new IllegalArgumentException("Values to build the filter from cannot contain null");
+			}
+			
+			hashes[count++] = decomposedHash64(value);
+		}
+		
+		count = unique(hashes, count);
+		
+		this.segmentLength = segmentLength(count);
+		this.segmentLengthMask = this.segmentLength - 1;
+		this.segmentCount = segmentCount(count, this.segmentLength);
+		this.arrayLength = (this.segmentCount + ARITY - 1) * this.segmentLength;
+		this.segmentCountLength = (long) this.segmentCount * this.segmentLength;
+		
+		byte[] data = new byte[this.arrayLength];
+		this.seed = populate(hashes, count, data);
+		this.fingerprints = ByteBuffer.wrap(data);
+		this.numValues = count;
+		this.mapped = null;
+	}
+	
+	/**
+	 * Build a filter holding the given byte arrays.
+	 * 
+	 * @param keys
+	 *            the byte arrays, none of which can be <code>null</code>
+	 * 
+	 * @param decomposer
+	 *            a {@link Decomposer} for later lookups of objects
+	 * 
+	 * @param hasher
+	 *            the hash function to use. If <code>null</code> is specified
+	 *            the default hash function will be used
+	 */
+	public BinaryFuse8Filter(byte[][] keys, Decomposer<T> decomposer, HashFunction hasher) {
+		super(decomposer, hasher);
+		this.currentCharset = Charset.forName("UTF-8");
+		
+		if(keys == null) {
+			throw new IllegalArgumentException("Keys to build the filter from cannot be null");
+		}
+		
+		long[] hashes = new long[keys.length];
+		for(int index = 0; index < keys.length; index++) {
+			hashes[index] = getLongHash64(keys[index]);
+		}
+		
+		int count = unique(hashes, keys.length);
+		
+		this.segmentLength = segmentLength(count);
+		this.segmentLengthMask = this.segmentLength - 1;
+		this.segmentCount = segmentCount(count, this.segmentLength);
+		this.arrayLength = (this.segmentCount + ARITY - 1) * this.segmentLength;
+		this.segmentCountLength = (long) this.segmentCount * this.segmentLength;
+		
+		byte[] data = new byte[this.arrayLength];
+		this.seed = populate(hashes, count, data);
+		this.fingerprints = ByteBuffer.wrap(data);
+		this.numValues = count;
+		this.mapped = null;
+	}
+	
+	/**
+	 * Open a filter from a file written by {@link #writeTo(File)}. The file is
+	 * mapped into memory, read-only, until the filter is closed. The
+	 * {@link Decomposer} and hash function must be the ones the filter was
+	 * built with.
+	 * 
+	 * @param file
+	 *            the file to open
+	 * 
+	 * @param decomposer
+	 *            a {@link Decomposer} that helps decompose the given object
+	 * 
+	 * @param hasher
+	 *            the hash function to use. If <code>null</code> is specified
+	 *            the default hash function will be used
+	 * 
+	 * @throws IOException
+	 *             if the file cannot be read, or is not a valid filter file
+	 */
+	public BinaryFuse8Filter(File file, Decomposer<T> decomposer, HashFunction hasher) throws IOException {
+		super(decomposer, hasher);
+		this.currentCharset = Charset.forName("UTF-8");
+		
+		if(file == null) {
+			throw new IllegalArgumentException("File cannot be null");
+		}
+		
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			FileChannel channel = raf.getChannel();
+			if(channel.size() < HEADER_SIZE) {
+				throw new IOException("File is too short for a binary fuse filter: " + file);
+			}
+			
+			this.mapped = channel.map(MapMode.READ_ONLY, 0, channel.size());
+		} finally {
+			raf.close();
+		}
+		
+		if(this.mapped.getInt(0) != FILE_MAGIC || this.mapped.getInt(4) != FILE_VERSION) {
+			close();
+			throw new IOException("Not a binary fuse filter file: " + file);
+		}
+		
+		this.seed = this.mapped.getLong(8);
+		this.segmentLength = this.mapped.getInt(16);
+		this.segmentCount = this.mapped.getInt(20);
+		this.arrayLength = this.mapped.getInt(24);
+		this.segmentLengthMask = this.segmentLength - 1;
+		this.segmentCountLength = (long) this.segmentCount * this.segmentLength;
+		
+		if(Integer.bitCount(this.segmentLength) != 1 || this.arrayLength != (this.segmentCount + ARITY - 1) * this.segmentLength || this.mapped.capacity() != HEADER_SIZE + this.arrayLength) {
+			close();
+			throw new IOException("Corrupt binary fuse filter file: " + file);
+		}
+		
+		ByteBuffer view = this.mapped.duplicate();
+		((Buffer) view).position(HEADER_SIZE);
+		this.fingerprints = view.slice();
+		this.numValues = estimateSize(this.arrayLength);
+	}
+	
+	/**
+	 * Write the filter to the given file, replacing its contents. The file
+	 * holds a header of 28 bytes followed by one byte per
+	 * fingerprint.
+	 * 
+	 * @param file
+	 *            the file to write to
+	 * 
+	 * @throws IOException
+	 *             if the file cannot be written
+	 */
+	public void writeTo(File file) throws IOException {
+		if(file == null) {
+			throw new IllegalArgumentException("File cannot be null");
+		}
+		
+		ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+		header.putInt(FILE_MAGIC).putInt(FILE_VERSION).putLong(this.seed);
+		header.putInt(this.segmentLength).putInt(this.segmentCount).putInt(this.arrayLength);
+		((Buffer) header).flip();
+		
+		ByteBuffer body = this.fingerprints.duplicate();
+		((Buffer) body).clear();
+		
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try {
+			raf.setLength(0);
+			
+			FileChannel channel = raf.getChannel();
+			while(header.hasRemaining()) {
+				channel.write(header);
+			}
+			while(body.hasRemaining()) {
+				channel.write(body);
+			}
+			
+			channel.force(true);
+		} finally {
+			raf.close();
+		}
+	}
+	
+	/**
+	 * Always throws, as the filter is immutable.
+	 * 
+	 * @throws UnsupportedOperationException
+	 *             always
+	 */
+	@Override
+	public boolean add(byte[] bytes) {
+		throw new UnsupportedOperationException("Binary fuse filters are immutable");
+	}
+	
+	/**
+	 * Always throws, as the filter is immutable.
+	 * 
+	 * @throws UnsupportedOperationException
+	 *             always
+	 */
+	@Override
+	public boolean add(T value) {
+		throw new UnsupportedOperationException("Binary fuse filters are immutable");
+	}
+	
+	/**
+	 * Always throws, as the filter is immutable.
+	 * 
+	 * @throws UnsupportedOperationException
+	 *             always
+	 */
+	@Override
+	public boolean addAll(Collection<T> values) {
+		throw new UnsupportedOperationException("Binary fuse filters are immutable");
+	}
+	
+	/**
+	 * Always throws, as the filter is immutable.
+	 * 
+	 * @throws UnsupportedOperationException
+	 *             always
+	 */
+	@Override
+	public BitSet addBatch(byte[][] keys) {
+		throw new UnsupportedOperationException("Binary fuse filters are immutable");
+	}
+	
+	/**
+	 * @see com.sangupta.bloomfilter.BloomFilter#contains(byte[])
+	 */
+	@Override
+	public boolean contains(byte[] bytes) {
+		return containsHash(getLongHash64(bytes));
+	}
+	
+	/**
+	 * @see com.sangupta.bloomfilter.BloomFilter#contains(java.lang.Object)
+	 */
+	@Override
+	public boolean contains(T value) {
+		if(value == null) {
+			return false;
+		}
+		
+		return containsHash(decomposedHash64(value));
+	}
+	
+	/**
+	 * @see com.sangupta.bloomfilter.BloomFilter#containsAll(java.util.Collection)
+	 */
+	@Override
+	public boolean containsAll(Collection<T> values) {
+		if(values == null || values.isEmpty()) {
+			return false;
+		}
+		
+		for(T value : values) {
+			if(!contains(value)) {
+				return false;
+			}
+		}
+		
+		return true;
+	}
+	
+	/**
+	 * @see com.sangupta.bloomfilter.BloomFilter#containsBatch(byte[][])
+	 */
+	@Override
+	public BitSet containsBatch(byte[][] keys) {
+		if(keys == null) {
+			throw new IllegalArgumentException("Keys to test in filter cannot be null");
+		}
+		
+		BitSet present = new BitSet(keys.length);
+		for(int index = 0; index < keys.length; index++) {
+			if(containsHash(getLongHash64(keys[index]))) {
+				present.set(index);
+			}
+		}
+		
+		return present;
+	}
+	
+	/**
+	 * Always throws, as strings are always encoded as UTF-8.
+	 * 
+	 * @throws UnsupportedOperationException
+	 *             always
+	 */
+	@Override
+	public void setCharset(Charset charset) {
+		throw new UnsupportedOperationException("Binary fuse filters always use UTF-8");
+	}
+	
+	/**
+	 * Return the number of bits used by the fingerprints.
+	 * 
+	 * @see com.sangupta.bloomfilter.BloomFilter#getNumberOfBits()
+	 */
+	@Override
+	public long getNumberOfBits() {
+		return 8L * this.arrayLength;
+	}
+	
+	/**
+	 * The false positive rate is <code>1/256</code> whatever the number of
+	 * elements.
+	 * 
+	 * @see com.sangupta.bloomfilter.BloomFilter#getFalsePositiveProbability(long)
+	 */
+	@Override
+	public double getFalsePositiveProbability(long numInsertedElements) {
+		return 1 / 256d;
+	}
+	
+	/**
+	 * Return the number of distinct values the filter was built from. A
+	 * filter opened from a file returns the largest number of values that
+	 * would give a filter of its size, as the file does not record it.
+	 * 
+	 * @see com.sangupta.bloomfilter.BloomFilter#getApproximateElementCount()
+	 */
+	@Override
+	public long getApproximateElementCount() {
+		return this.numValues;
+	}
+	
+	/**
+	 * Return the number of values per fingerprint, a little under
+	 * <code>1 / 1.125</code> for large filters.
+	 * 
+	 * @see com.sangupta.bloomfilter.BloomFilter#getFillRatio()
+	 */
+	@Override
+	public double getFillRatio() {
+		return (double) this.numValues / this.arrayLength;
+	}
+	
+	/**
+	 * @see com.sangupta.bloomfilter.BloomFilter#getCurrentFalsePositiveProbability()
+	 */
+	@Override
+	public double getCurrentFalsePositiveProbability() {
+		return getFalsePositiveProbability(this.numValues);
+	}
+	
+	/**
+	 * Unmap the file, if the filter was opened from one.
+	 * 
+	 * @see com.sangupta.bloomfilter.BloomFilter#close()
+	 */
+	@Override
+	public void close() {
+		if(this.mapped != null) {
+			DirectBuffers.release(this.mapped);
+		}
+	}
+	
+	/**
+	 * Check the three fingerprints of the value with the given hash.
+	 * 
+	 * @param hash64
+	 *            the 64-bit hash of the value
+	 * 
+	 * @return <code>true</code> if the value may be present
+	 */
+	protected boolean containsHash(long hash64) {
+		long hash = mix(hash64 + this.seed);
+		
+		int h0 = (int) mulhi(hash, this.segmentCountLength);
+		int h1 = h0 + this.segmentLength;
+		int h2 = h1 + this.segmentLength;
+		h1 ^= (int) (hash >>> 18) & this.segmentLengthMask;
+		h2 ^= (int) hash & this.segmentLengthMask;
+		
+		int fingerprint = (int) (hash ^ (hash >>> 32));
+		fingerprint ^= this.fingerprints.get(h0) ^ this.fingerprints.get(h1) ^ this.fingerprints.get(h2);
+		return (fingerprint & 0xFF) == 0;
+	}
+	
+	/**
+	 * Assign the fingerprints for the given hashes by peeling the 3-uniform
+	 * hypergraph of their positions, retrying with another seed if it cannot
+	 * be peeled. The hashes must be distinct.
+	 * 
+	 * @return the seed used
+	 */
+	private long populate(long[] keys, int size, byte[] data) {
+		final int capacity = this.arrayLength;
+		
+		long[] reverseOrder = new long[size + 1];
+		byte[] reverseH = new byte[size];
+		int[] alone = new int[capacity];
+		byte[] t2count = new byte[capacity];
+		long[] t2hash = new long[capacity];
+		int[] h012 = new int[5];
+		
+		int blockBits = 1;
+		while((1 << blockBits) < this.segmentCount) {
+			blockBits++;
+		}
+		final int block = 1 << blockBits;
+		int[] startPos = new int[block];
+		
+		long[] rng = new long[] { 0x726b2b9d438b9d4dL };
+		long seed = splitMix64(rng);
+		
+		int stackSize = 0;
+		for(int loop = 0; ; loop++) {
+			if(loop >= MAX_ITERATIONS) {
+				throw new IllegalStateException("Unable to build binary fuse filter");
+			}
+			
+			if(loop > 0) {
+				Arrays.fill(reverseOrder, 0, size, 0);
+				Arrays.fill(t2count, (byte) 0);
+				Arrays.fill(t2hash, 0);
+				seed = splitMix64(rng);
+			}
+			reverseOrder[size] = 1;
+			
+			// sort the hashes by their high bits, for locality
+			for(int i = 0; i < block; i++) {
+				startPos[i] = (int) (((long) i * size) >>> blockBits);
+			}
+			
+			for(int i = 0; i < size; i++) {
+				long hash = mix(keys[i] + seed);
+				int segment = (int) (hash >>> (64 - blockBits));
+				while(reverseOrder[startPos[segment]] != 0) {
+					segment = (segment + 1) & (block - 1);
+				}
+				
+				reverseOrder[startPos[segment]] = hash;
+				startPos[segment]++;
+			}
+			
+			boolean error = false;
+			for(int i = 0; i < size; i++) {
+				long hash = reverseOrder[i];
+				int h0 = hash(0, hash);
+				int h1 = hash(1, hash);
+				int h2 = hash(2, hash);
+				
+				t2count[h0] += 4;
+				t2hash[h0] ^= hash;
+				t2count[h1] += 4;
+				t2count[h1] ^= 1;
+				t2hash[h1] ^= hash;
+				t2count[h2] += 4;
+				t2count[h2] ^= 2;
+				t2hash[h2] ^= hash;
+				
+				// counts wrapped around
+				error |= (t2count[h0] & 0xFF) < 4 || (t2count[h1] & 0xFF) < 4 || (t2count[h2] & 0xFF) < 4;
+			}
+			
+			if(error) {
+				continue;
+			}
+			
+			// peel the positions holding a single hash
+			int queueSize = 0;
+			for(int i = 0; i < capacity; i++) {
+				alone[queueSize] = i;
+				queueSize += ((t2count[i] & 0xFF) >>> 2) == 1 ? 1 : 0;
+			}
+			
+			stackSize = 0;
+			while(queueSize > 0) {
+				int index = alone[--queueSize];
+				if(((t2count[index] & 0xFF) >>> 2) != 1) {
+					continue;
+				}
+				
+				long hash = t2hash[index];
+				h012[1] = hash(1, hash);
+				h012[2] = hash(2, hash);
+				h012[3] = hash(0, hash);
+				h012[4] = h012[1];
+				
+				int found = t2count[index] & 3;
+				reverseH[stackSize] = (byte) found;
+				reverseOrder[stackSize] = hash;
+				stackSize++;
+				
+				int other1 = h012[found + 1];
+				alone[queueSize] = other1;
+				queueSize += ((t2count[other1] & 0xFF) >>> 2) == 2 ? 1 : 0;
+				t2count[other1] -= 4;
+				t2count[other1] ^= mod3(found + 1);
+				t2hash[other1] ^= hash;
+				
+				int other2 = h012[found + 2];
+				alone[queueSize] = other2;
+				queueSize += ((t2count[other2] & 0xFF) >>> 2) == 2 ? 1 : 0;
+				t2count[other2] -= 4;
+				t2count[other2] ^= mod3(found + 2);
+				t2hash[other2] ^= hash;
+			}
+			
+			if(stackSize == size) {
+				break;
+			}
+		}
+		
+		// assign the fingerprints in the reverse order of peeling
+		for(int i = stackSize - 1; i >= 0; i--) {
+			long hash = reverseOrder[i];
+			int found = reverseH[i];
+			h012[0] = hash(0, hash);
+			h012[1] = hash(1, hash);
+			h012[2] = hash(2, hash);
+			h012[3] = h012[0];
+			h012[4] = h012[1];
+			data[h012[found]] = (byte) ((hash ^ (hash >>> 32)) ^ data[h012[found + 1]] ^ data[h012[found + 2]]);
+		}
+		
+		return seed;
+	}
+	
+	/**
+	 * Sort the hashes and move the distinct ones to the front, as equal
+	 * hashes cannot be told apart when peeling.
+	 * 
+	 * @return the number of distinct hashes
+	 */
+	private static int unique(long[] hashes, int count) {
+		if(count == 0) {
+			return 0;
+		}
+		
+		Arrays.sort(hashes, 0, count);
+		
+		int distinct = 1;
+		for(int index = 1; index < count; index++) {
+			if(hashes[index] != hashes[distinct - 1]) {
+				hashes[distinct++] = hashes[index];
+			}
+		}
+		
+		return distinct;
+	}
+	
+	/**
+	 * The position of the given hash in the segment at the given offset.
+	 */
+	private int hash(int index, long hash) {
+		long h = mulhi(hash, this.segmentCountLength);
+		h += index * this.segmentLength;
+		
+		long hh = hash & ((1L << 36) - 1);
+		h ^= (hh >>> (36 - 18 * index)) & this.segmentLengthMask;
+		return (int) h;
+	}
+	
+	/**
+	 * The high 64 bits of the unsigned product of the hash and a
+	 * non-negative value below <code>2^32</code>.
+	 */
+	private static long mulhi(long hash, long value) {
+		long low = ((hash & 0xFFFFFFFFL) * value) >>> 32;
+		return ((hash >>> 32) * value + low) >>> 32;
+	}
+	
+	private static int mod3(int value) {
+		return value > 2 ? value - 3 : value;
+	}
+	
+	/**
+	 * The 64-bit finalization mix of Murmur3.
+	 */
+	private static long mix(long hash) {
+		hash ^= hash >>> 33;
+		hash *= 0xff51afd7ed558ccdL;
+		hash ^= hash >>> 33;
+		hash *= 0xc4ceb9fe1a85ec53L;
+		hash ^= hash >>> 33;
+		return hash;
+	}
+	
+	private static long splitMix64(long[] state) {
+		long z = (state[0] += 0x9E3779B97F4A7C15L);
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+	
+	/**
+	 * Find the largest number of values for which a filter of at most the
+	 * given number of fingerprints is built.
+	 */
+	private static int estimateSize(int arrayLength) {
+		int low = 0;
+		int high = (int) (arrayLength / 1.125);
+		while(low < high) {
+			int size = (int) (((long) low + high + 1) >>> 1);
+			int segmentLength = segmentLength(size);
+			if((segmentCount(size, segmentLength) + ARITY - 1L) * segmentLength <= arrayLength) {
+				low = size;
+			} else {
+				high = size - 1;
+			}
+		}
+		
+		return low;
+	}
+	
+	private static int segmentLength(int size) {
+		if(size == 0) {
+			return 4;
+		}
+		
+		int length = 1 << (int) Math.floor(Math.log(size) / Math.log(3.33) + 2.25);
+		return Math.min(length, MAX_SEGMENT_LENGTH);
+	}
+	
+	private static int segmentCount(int size, int segmentLength) {
+		double sizeFactor = size <= 1 ? 0 : Math.max(1.125, 0.875 + 0.25 * Math.log(1000000) / Math.log(size));
+		long capacity = Math.round(size * sizeFactor);
+		if(capacity + (ARITY + 1L) * segmentLength > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("Too many values for a binary fuse filter: " + size);
+		}
+		
+		int initSegmentCount = (int) ((capacity + segmentLength - 1) / segmentLength) - (ARITY - 1);
+		int arrayLength = (initSegmentCount + ARITY - 1) * segmentLength;
+		int segmentCount = (arrayLength + segmentLength - 1) / segmentLength;
+		return segmentCount <= ARITY - 1 ? 1 : segmentCount - (ARITY - 1);
+	}
+	
+}
@@ -0,0 +1,259 @@
+/**
+ *
+ * bloomfilter - Bloom filters for Java
+ * Copyright (c) 2014-2015, Sandeep Gupta
+ * 
+ * http://sangupta.com/projects/bloomfilter
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+
+package com.sangupta.bloomfilter.impl;
+
+import java.util.BitSet;
+
+import com.sangupta.bloomfilter.AbstractBloomFilter;
+import com.sangupta.bloomfilter.core.BitArray;
+import com.sangupta.bloomfilter.core.FastBitArray;
+
+/**
+ * A cache-line blocked bloom filter. The bit array is divided into blocks of
+ * 512 bits (64 bytes, the size of a cache line) and all <code>k</code> bits
+ * of an element are placed in a single block chosen by the upper half of the
+ * hash. A lookup thus touches one cache line instead of up to <code>k</code>
+ * of them, at the cost of a slightly higher false positive rate for the same
+ * number of bits, as some blocks get more than their share of elements.
+ * 
+ * The block layout only aligns with cache lines if the underlying
+ * {@link BitArray} storage does - for heap arrays this is up to the JVM.
+ * 
+ * By default the bits are held in memory using a {@link FastBitArray};
+ * override {@link #createBitArray(long)} to use a different storage. Blocks
+ * are selected using the upper 32 bits of the hash, which limits the filter
+ * to <code>2^32</code> blocks, or <code>2^41</code> bits.
+ * 
+ * @author sangupta
+ * @since 1.0
+ * 
+ * @param <T> the type of object to be stored in the filter
+ */
+public class BlockedBloomFilter<T> extends AbstractBloomFilter<T> {
+	
+	/**
+	 * Number of bits in one block
+	 */
+	public static final int BLOCK_BITS = 512;
+	
+	/**
+	 * Mask to compute the position of a bit inside a block
+	 */
+	private static final int BLOCK_MASK = BLOCK_BITS - 1;
+	
+	/**
+	 * Constructor
+	 * 
+	 * @param n
+	 *            the number of elements expected to be inserted in the bloom
+	 *            filter
+	 * 
+	 * @param fpp
+	 *            the expected max false positive rate
+	 */
+	public BlockedBloomFilter(long n, double fpp) {
+		super(n, fpp);
+	}
+
+	/**
+	 * Uses a {@link FastBitArray}, rounded up to a whole number of blocks.
+	 * 
+	 */
+	@Override
+	protected BitArray createBitArray(long numBits) {
+		return new FastBitArray(roundToBlocks(numBits));
+	}
+	
+	/**
+	 * @see com.sangupta.bloomfilter.AbstractBloomFilter#getProbeLayoutId()
+	 */
+	@Override
+	protected int getProbeLayoutId() {
+		return PROBE_LAYOUT_BLOCKED;
+	}
+	
+	/**
+	 * Set all <code>k</code> bits of the element inside the one block chosen
+	 * by the upper 32 bits of the hash. The lower 32 bits provide the start
+	 * and the (odd) stride of the probes inside the block, so that all probes
+	 * of an element hit distinct bits.
+	 * 
+	 */
+	@Override
+	protected boolean setBits(BitArray bits, long hash64) {
+		long base = blockOffset(bits, hash64);
+		
+		int hash = (int) hash64;
+		int position = hash & BLOCK_MASK;
+		int stride = (hash >>> 16) | 1;
+		
+		boolean bitsChanged = false;
+		for(int i = 0; i < this.kOrNumberOfHashFunctions; i++) {
+			bitsChanged |= bits.setBit(base + position);
+			position = (position + stride) & BLOCK_MASK;
+		}
+		
+		return bitsChanged;
+	}
+	
+	/**
+	 * @see #setBits(BitArray, long)
+	 */
+	@Override
+	protected boolean testBits(BitArray bits, long hash64) {
+		long base = blockOffset(bits, hash64);
+		
+		int hash = (int) hash64;
+		int position = hash & BLOCK_MASK;
+		int stride = (hash >>> 16) | 1;
+		
+		for(int i = 0; i < this.kOrNumberOfHashFunctions; i++) {
+			if(!bits.getBit(base + position)) {
+				return false;
+			}
+			
+			position = (position + stride) & BLOCK_MASK;
+		}
+		
+		return true;
+	}
+	
+	/**
+	 * All probes of an element fall in one cache line, so the elements are simply
+	 * probed one after the other once the whole batch has been hashed.
+	 * 
+	 */
+	@Override
+	protected void setBitsBatch(BitArray bits, long[] hashes, int count, BitSet changed, int resultOffset) {
+		for(int index = 0; index < count; index++) {
+			if(setBits(bits, hashes[index])) {
+				changed.set(resultOffset + index);
+			}
+		}
+	}
+	
+	/**
+	 * All probes of an element fall in one cache line, so the elements are simply
+	 * probed one after the other once the whole batch has been hashed.
+	 * 
+	 */
+	@Override
+	protected void testBitsBatch(BitArray bits, long[] hashes, int count, BitSet present, int resultOffset) {
+		for(int index = 0; index < count; index++) {
+			if(testBits(bits, hashes[index])) {
+				present.set(resultOffset + index);
+			}
+		}
+	}
+	
+	/**
+	 * Estimate the false positive rate of the blocked filter. The number of
+	 * elements landing in one block follows a Poisson distribution, and the
+	 * rate is the classic bloom filter rate of a single block weighted by the
+	 * probability of the block holding that many elements.
+	 * 
+	 * @param numInsertedElements
+	 *            the number of elements inserted into the filter
+	 * 
+	 * @return the approximated false positive rate
+	 */
+	@Override
+	public double getFalsePositiveProbability(long numInsertedElements) {
+		double numBlocks = this.bitArray.bitSize() / BLOCK_BITS;
+		int k = this.kOrNumberOfHashFunctions;
+		return blockedFalsePositiveProbability(numInsertedElements / numBlocks, BLOCK_BITS, k, k);
+	}
+	
+	/**
+	 * Compute the false positive rate of a blocked filter, given the average
+	 * number of elements per block. Each block is made of one or more lanes of
+	 * bits, and every element sets a fixed number of bits in every lane.
+	 * 
+	 * @param lambda
+	 *            the average number of elements per block
+	 * 
+	 * @param laneBits
+	 *            the number of bits in one lane
+	 * 
+	 * @param bitsPerLane
+	 *            the number of bits each element sets in one lane
+	 * 
+	 * @param numProbes
+	 *            the total number of bits tested for one element
+	 * 
+	 * @return the approximated false positive rate
+	 */
+	static double blockedFalsePositiveProbability(double lambda, int laneBits, int bitsPerLane, int numProbes) {
+		double logLambda = Math.log(lambda);
+		double logMiss = Math.log1p(-1d / laneBits);
+		
+		// iterate the poisson terms well past the mode
+		long last = (long) Math.ceil(lambda + 10 * Math.sqrt(lambda) + 10);
+		
+		double fpp = 0;
+		double logPoisson = -lambda;
+		for(long i = 0; i <= last; i++) {
+			if(i > 0) {
+				logPoisson += logLambda - Math.log(i);
+			}
+			
+			double blockFpp = Math.pow(1 - Math.exp(bitsPerLane * i * logMiss), numProbes);
+			fpp += Math.exp(logPoisson) * blockFpp;
+		}
+		
+		return Math.min(1d, fpp);
+	}
+	
+	/**
+	 * Round the given number of bits up to a whole number of blocks.
+	 * 
+	 * @param numBits
+	 *            the number of bits needed
+	 * 
+	 * @return the number of bits in whole blocks
+	 */
+	protected static long roundToBlocks(long numBits) {
+		long blocks = Math.max(1, (numBits + BLOCK_MASK) / BLOCK_BITS);
+		return blocks * BLOCK_BITS;
+	}
+	
+	/**
+	 * Find the offset of the first bit of the block for the given hash.
+	 * 
+	 * @param bits
+	 *            the bit array in use
+	 * 
+	 * @param hash64
+	 *            the 64-bit hash of the element
+	 * 
+	 * @return the index of the first bit in the block
+	 */
+	private static long blockOffset(BitArray bits, long hash64) {
+		long numBlocks = bits.bitSize() / BLOCK_BITS;
+		
+		// map the upper 32 bits onto [0, numBlocks) without a division
+		long block = ((hash64 >>> 32) * numBlocks) >>> 32;
+		return block * BLOCK_BITS;
+	}
+	
+}
@@ -0,0 +1,340 @@
+/**
+ *
+ * bloomfilter - Bloom filters for Java
+ * Copyright (c) 2014-2015, Sandeep Gupta
+ * 
+ * http://sangupta.com/projects/bloomfilter
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+
+package com.sangupta.bloomfilter.impl;
+
+import java.io.IOException;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.BitSet;
+
+import com.sangupta.bloomfilter.AbstractBloomFilter;
+import com.sangupta.bloomfilter.core.BitArray;
+import com.sangupta.bloomfilter.core.BitArrayCodec;
+import com.sangupta.bloomfilter.core.FastBitArray;
+import com.sangupta.bloomfilter.core.PackedCounterArray;
+import com.sangupta.bloomfilter.decompose.Decomposer;
+import com.sangupta.bloomfilter.hash.HashFunction;
+
+/**
+ * An in-memory counting bloom filter that supports removal of elements.
+ * Every bit of the filter is backed by a small saturating counter held in a
+ * {@link PackedCounterArray}; adding an element increments its counters and
+ * removing it decrements them. A {@link FastBitArray} mirrors which counters
+ * are non-zero, so that lookups cost the same as in an
+ * {@link InMemoryBloomFilter}.
+ * 
+ * Counters that saturate are never decremented again, so elements sharing
+ * them may not be removable, but false negatives are never introduced by
+ * removing elements that were added. Removing an element that was never
+ * added may, however, remove other elements. The filter cannot be built
+ * with a {@link com.sangupta.bloomfilter.ParallelBloomFilterLoader}, which
+ * only sets bits. This class is not thread-safe.
+ * 
+ * @author sangupta
+ * @since 1.0
+ * 
+ * @param <T> the type of object to be stored in the filter
+ */
+public class CountingBloomFilter<T> extends AbstractBloomFilter<T> {
+	
+	/**
+	 * The default number of bits per counter
+	 */
+	public static final int DEFAULT_BITS_PER_COUNTER = 4;
+	
+	/**
+	 * The counters backing each bit of the filter
+	 */
+	protected final PackedCounterArray counters;
+	
+	/**
+	 * Constructor
+	 * 
+	 * @param n
+	 *            the number of elements expected to be inserted in the bloom
+	 *            filter
+	 * 
+	 * @param fpp
+	 *            the expected max false positive rate
+	 */
+	public CountingBloomFilter(long n, double fpp) {
+		this(n, fpp, DEFAULT_BITS_PER_COUNTER, null, null);
+	}
+	
+	/**
+	 * Constructor
+	 * 
+	 * @param n
+	 *            the number of elements expected to be inserted in the bloom
+	 *            filter
+	 * 
+	 * @param fpp
+	 *            the expected max false positive rate
+	 * 
+	 * @param bitsPerCounter
+	 *            the number of bits per counter, one of 2, 4, 8, 16 or 32
+	 */
+	public CountingBloomFilter(long n, double fpp, int bitsPerCounter) {
+		this(n, fpp, bitsPerCounter, null, null);
+	}
+	
+	/**
+	 * Constructor
+	 * 
+	 * @param n
+	 *            the number of elements expected to be inserted in the bloom
+	 *            filter
+	 * 
+	 * @param fpp
+	 *            the expected max false positive rate
+	 * 
+	 * @param bitsPerCounter
+	 *            the number of bits per counter, one of 2, 4, 8, 16 or 32
+	 * 
+	 * @param decomposer
+	 *            a {@link Decomposer} that helps decompose the given object
+	 * 
+	 * @param hasher
+	 *            the hash function to use. If <code>null</code> is specified
+	 *            the default hash function will be used
+	 */
+	public CountingBloomFilter(long n, double fpp, int bitsPerCounter, Decomposer<T> decomposer, HashFunction hasher) {
+		this(n, checkedBitSize(n, fpp), bitsPerCounter, decomposer, hasher);
+	}
+	
+	/**
+	 * Create the filter once the number of bits is known.
+	 */
+	private CountingBloomFilter(long n, long numBits, int bitsPerCounter, Decomposer<T> decomposer, HashFunction hasher) {
+		super(new FastBitArray(numBits), optimalNumberofHashFunctionsOrK(n, numBits), decomposer, hasher);
+		
+		this.counters = new PackedCounterArray(this.bitArray.bitSize(), bitsPerCounter);
+	}
+	
+	/**
+	 * Uses a {@link FastBitArray} as the mirror of the counters.
+	 * 
+	 */
+	@Override
+	protected BitArray createBitArray(long numBits) {
+		return new FastBitArray(numBits);
+	}
+	
+	/**
+	 * Remove the given byte array from the bloom filter.
+	 * 
+	 * @param bytes
+	 *            the byte array to be removed, cannot be null
+	 * 
+	 * @return <code>true</code> if the value was present in the filter and
+	 *         has been removed, <code>false</code> otherwise
+	 * 
+	 * @throws IllegalArgumentException
+	 *             if the byte array is <code>null</code>
+	 */
+	public boolean remove(byte[] bytes) {
+		return clearBits(getLongHash64(bytes));
+	}
+	
+	/**
+	 * Remove the given value from the bloom filter.
+	 * 
+	 * @param value
+	 *            the value to be removed
+	 * 
+	 * @return <code>true</code> if the value was present in the filter and
+	 *         has been removed, <code>false</code> otherwise
+	 */
+	public boolean remove(T value) {
+		if(value == null) {
+			return false;
+		}
+		
+		return clearBits(decomposedHash64(value));
+	}
+	
+	/**
+	 * Not supported, as the bits of the other filter do not tell how often
+	 * each counter was incremented, so that removals would go wrong.
+	 * 
+	 * @throws UnsupportedOperationException
+	 *             always
+	 */
+	@Override
+	public void union(AbstractBloomFilter<T> other) {
+		throw new UnsupportedOperationException("Counting filters cannot be combined bit-wise");
+	}
+	
+	/**
+	 * Not supported, as clearing bits would leave their counters set.
+	 * 
+	 * @throws UnsupportedOperationException
+	 *             always
+	 */
+	@Override
+	public void intersect(AbstractBloomFilter<T> other) {
+		throw new UnsupportedOperationException("Counting filters cannot be combined bit-wise");
+	}
+	
+	/**
+	 * Clear the counters along with the bits.
+	 * 
+	 * @see com.sangupta.bloomfilter.AbstractBloomFilter#clear()
+	 */
+	@Override
+	public void clear() {
+		super.clear();
+		this.counters.clear();
+	}
+	
+	/**
+	 * Not supported, as the bits do not hold the counters.
+	 * 
+	 * @throws UnsupportedOperationException
+	 *             always
+	 */
+	@Override
+	public void writeTo(WritableByteChannel channel, BitArrayCodec codec) throws IOException {
+		throw new UnsupportedOperationException("Counting filters cannot be persisted as bits");
+	}
+	
+	/**
+	 * Not supported, as the bits do not hold the counters.
+	 * 
+	 * @throws UnsupportedOperationException
+	 *             always
+	 */
+	@Override
+	public void readFrom(ReadableByteChannel channel) throws IOException {
+		throw new UnsupportedOperationException("Counting filters cannot be persisted as bits");
+	}
+	
+	/**
+	 * Return the number of bits used by each counter.
+	 * 
+	 * @return the number of bits per counter
+	 */
+	public int getBitsPerCounter() {
+		return this.counters.getBitsPerCounter();
+	}
+	
+	/**
+	 * Not supported, as bits set outside the mirror would have no counters,
+	 * and removals would clear them.
+	 * 
+	 * @return <code>false</code> always
+	 */
+	@Override
+	protected boolean isBitwiseMergeable() {
+		return false;
+	}
+	
+	/**
+	 * Increment the counters of the element and set the mirrored bits of the
+	 * counters that become non-zero.
+	 * 
+	 * @throws UnsupportedOperationException
+	 *             if the array is not the mirror of this filter
+	 */
+	@Override
+	protected boolean setBits(BitArray bits, long hash64) {
+		checkMirror(bits);
+		
+		final long numBits = bits.bitSize();
+		
+		long combinedHash = hash64;
+		final long hash2 = secondHash(hash64);
+		
+		boolean bitsChanged = false;
+		for (int i = 0; i < this.kOrNumberOfHashFunctions; i++) {
+			long index = (combinedHash & Long.MAX_VALUE) % numBits;
+			if(this.counters.increment(index) == 1) {
+				bits.setBit(index);
+				bitsChanged = true;
+			}
+			combinedHash += hash2;
+		}
+		
+		return bitsChanged;
+	}
+	
+	/**
+	 * Adds the elements one at a time, so that the counters are updated.
+	 * 
+	 */
+	@Override
+	protected void setBitsBatch(BitArray bits, long[] hashes, int count, BitSet changed, int resultOffset) {
+		checkMirror(bits);
+		
+		for(int index = 0; index < count; index++) {
+			if(setBits(bits, hashes[index])) {
+				changed.set(resultOffset + index);
+			}
+		}
+	}
+	
+	/**
+	 * Decrement the counters of the element with the given hash, if all of
+	 * them are non-zero, and clear the mirrored bits of the counters that
+	 * drop to zero.
+	 * 
+	 * @param hash64
+	 *            the 64-bit hash of the element
+	 * 
+	 * @return <code>true</code> if the counters were decremented,
+	 *         <code>false</code> if the element was not present
+	 */
+	protected boolean clearBits(long hash64) {
+		if(!testBits(this.bitArray, hash64)) {
+			return false;
+		}
+		
+		final long numBits = this.bitArray.bitSize();
+		
+		long combinedHash = hash64;
+		final long hash2 = secondHash(hash64);
+		
+		for (int i = 0; i < this.kOrNumberOfHashFunctions; i++) {
+			long index = (combinedHash & Long.MAX_VALUE) % numBits;
+			if(this.counters.decrement(index) == 0) {
+				this.bitArray.clearBit(index);
+			}
+			combinedHash += hash2;
+		}
+		
+		return true;
+	}
+	
+	/**
+	 * Check that bits are only set in the mirror of the counters.
+	 * 
+	 * @param bits
+	 *            the array to set bits in
+	 */
+	private void checkMirror(BitArray bits) {
+		if(bits != this.bitArray) {
+			throw new UnsupportedOperationException("Counting filters can only set bits along with their counters");
+		}
+	}
+	
+}
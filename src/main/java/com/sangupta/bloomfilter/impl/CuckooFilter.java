@@ -0,0 +1,682 @@
+/**
+ *
+ * bloomfilter - Bloom filters for Java
+ * Copyright (c) 2014-2015, Sandeep Gupta
+ * 
+ * http://sangupta.com/projects/bloomfilter
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+
+package com.sangupta.bloomfilter.impl;
+
+import java.io.IOException;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.sangupta.bloomfilter.AbstractHashingFilter;
+import com.sangupta.bloomfilter.core.FingerprintArray;
+import com.sangupta.bloomfilter.core.InMemoryFingerprintArray;
+import com.sangupta.bloomfilter.core.MMapFileBackedFingerprintArray;
+import com.sangupta.bloomfilter.decompose.Decomposer;
+import com.sangupta.bloomfilter.hash.HashFunction;
+
+/**
+ * A cuckoo filter, after <i>Cuckoo Filter: Practically Better Than Bloom</i>
+ * by Fan et al. Every element is stored as a short fingerprint in one of two
+ * candidate buckets of four slots each. The second bucket is derived from
+ * the first and the fingerprint alone (partial-key cuckoo hashing), so that
+ * fingerprints can be moved between their buckets to make room, and
+ * elements can be removed again.
+ * 
+ * Fingerprints take <code>ceil(log2(2b / p))</code> bits and the buckets are
+ * sized from {@link #MAX_LOAD_FACTOR} alone, so for false positive rates
+ * below about 0.3% a cuckoo filter needs less space than a bloom filter.
+ * An element added <code>k</code> times must be removed <code>k</code>
+ * times, and at most eight copies of an element can be held. Removing an
+ * element that was never added may remove another element.
+ * 
+ * The fingerprints are held in a {@link FingerprintArray}, in memory by
+ * default, or in a file using a {@link MMapFileBackedFingerprintArray}. This
+ * class is not thread-safe.
+ * 
+ * @author sangupta
+ * @since 1.0
+ * 
+ * @param <T> the type of objects to be stored in the filter
+ */
+public class CuckooFilter<T> extends AbstractHashingFilter<T> {
+	
+	/**
+	 * The number of slots per bucket
+	 */
+	public static final int BUCKET_SIZE = 4;
+	
+	/**
+	 * The fraction of slots that can be filled reliably with buckets of
+	 * {@link #BUCKET_SIZE} slots
+	 */
+	public static final double MAX_LOAD_FACTOR = 0.95;
+	
+	/**
+	 * The number of fingerprints moved around before an insertion is given
+	 * up
+	 */
+	public static final int MAX_KICKS = 500;
+	
+	/**
+	 * The most buckets that can be addressed, as the bucket index is taken
+	 * from 32 bits of the hash
+	 */
+	public static final long MAX_BUCKETS = 1L << 32;
+	
+	/**
+	 * The fingerprints, {@link #BUCKET_SIZE} slots per bucket
+	 */
+	protected final FingerprintArray fingerprints;
+	
+	/**
+	 * The number of buckets
+	 */
+	protected final long numBuckets;
+	
+	/**
+	 * The number of bits in each fingerprint
+	 */
+	protected final int fingerprintBits;
+	
+	/**
+	 * The buckets visited by the insertion in progress, to undo it on failure
+	 */
+	private final long[] kickBuckets = new long[MAX_KICKS];
+	
+	/**
+	 * The slots visited by the insertion in progress
+	 */
+	private final int[] kickSlots = new int[MAX_KICKS];
+	
+	/**
+	 * Spreads the seeds of filters created at the same instant
+	 */
+	private static final AtomicLong SEED_UNIQUIFIER = new AtomicLong();
+	
+	/**
+	 * State of the generator choosing the fingerprints to move, seeded per
+	 * instance so that filters walk different paths
+	 */
+	private long random = newSeed();
+	
+	/**
+	 * The number of fingerprints stored, counted once when the filter is
+	 * created over existing fingerprints
+	 */
+	protected long count;
+	
+	/**
+	 * Constructor
+	 * 
+	 * @param n
+	 *            the number of elements expected to be inserted in the filter
+	 * 
+	 * @param fpp
+	 *            the expected max false positive rate
+	 */
+	public CuckooFilter(long n, double fpp) {
+		this(n, fpp, null, null);
+	}
+	
+	/**
+	 * Constructor
+	 * 
+	 * @param n
+	 *            the number of elements expected to be inserted in the filter
+	 * 
+	 * @param fpp
+	 *            the expected max false positive rate
+	 * 
+	 * @param decomposer
+	 *            a {@link Decomposer} that helps decompose the given object
+	 * 
+	 * @param hasher
+	 *            the hash function to use. If <code>null</code> is specified
+	 *            the default hash function will be used
+	 */
+	public CuckooFilter(long n, double fpp, Decomposer<T> decomposer, HashFunction hasher) {
+		this(new InMemoryFingerprintArray(optimalNumberOfBuckets(n) * BUCKET_SIZE, optimalFingerprintBits(fpp)), decomposer, hasher);
+	}
+	
+	/**
+	 * Create a cuckoo filter over the given {@link FingerprintArray}, say one
+	 * backed by a file that was written earlier. Use
+	 * {@link #optimalNumberOfBuckets(long)} and
+	 * {@link #optimalFingerprintBits(double)} to size a new array.
+	 * 
+	 * @param fingerprints
+	 *            the array to hold the fingerprints, a whole number of
+	 *            buckets of {@link #BUCKET_SIZE} slots
+	 * 
+	 * @param decomposer
+	 *            a {@link Decomposer} that helps decompose the given object
+	 * 
+	 * @param hasher
+	 *            the hash function to use. If <code>null</code> is specified
+	 *            the default hash function will be used
+	 */
+	public CuckooFilter(FingerprintArray fingerprints, Decomposer<T> decomposer, HashFunction hasher) {
+		super(decomposer, hasher);
+		
+		if(fingerprints == null) {
+			throw new IllegalArgumentException("FingerprintArray cannot be null");
+		}
+		
+		long numBuckets = fingerprints.size() / BUCKET_SIZE;
+		if(numBuckets == 0 || numBuckets * BUCKET_SIZE != fingerprints.size()) {
+			throw new IllegalArgumentException("Number of slots must be a multiple of " + BUCKET_SIZE + ": " + fingerprints.size());
+		}
+		
+		if(numBuckets > MAX_BUCKETS) {
+			throw new IllegalArgumentException("Number of buckets cannot be more than " + MAX_BUCKETS + ": " + numBuckets);
+		}
+		
+		this.fingerprints = fingerprints;
+		this.numBuckets = numBuckets;
+		this.fingerprintBits = fingerprints.getBitsPerFingerprint();
+		
+		for(long index = 0; index < fingerprints.size(); index++) {
+			if(fingerprints.get(index) != 0) {
+				this.count++;
+			}
+		}
+	}
+	
+	/**
+	 * Compute the number of buckets needed to hold the given number of
+	 * elements within {@link #MAX_LOAD_FACTOR}.
+	 * 
+	 * @param n
+	 *            the number of expected insertions
+	 * 
+	 * @return the number of buckets
+	 */
+	public static long optimalNumberOfBuckets(long n) {
+		if(n <= 0) {
+			throw new IllegalArgumentException("Expected insertions cannot be less than or equal to zero");
+		}
+		
+		long buckets = (long) Math.ceil(n / (BUCKET_SIZE * MAX_LOAD_FACTOR));
+		if(buckets > MAX_BUCKETS) {
+			throw new IllegalArgumentException("Too many expected insertions for a cuckoo filter: " + n);
+		}
+		
+		return Math.max(1, buckets);
+	}
+	
+	/**
+	 * Compute the number of bits per fingerprint needed for the given false
+	 * positive rate, <code>log2(2 * b / p)</code> for buckets of
+	 * <code>b</code> slots, rounded up to a whole number of bits.
+	 * 
+	 * @param fpp
+	 *            the expected max false positive rate
+	 * 
+	 * @return the number of bits per fingerprint
+	 */
+	public static int optimalFingerprintBits(double fpp) {
+		if(fpp <= 0 || fpp >= 1) {
+			throw new IllegalArgumentException("False positive probability must be between zero and one");
+		}
+		
+		int bits = (int) Math.ceil(Math.log(2 * BUCKET_SIZE / fpp) / Math.log(2));
+		return Math.min(32, bits);
+	}
+	
+	/**
+	 * Add the given byte array to the filter.
+	 * 
+	 * @return <code>true</code> as the value is always added
+	 * 
+	 * @throws IllegalStateException
+	 *             if the filter is too full to add the value, in which case
+	 *             the filter is left unchanged
+	 */
+	@Override
+	public boolean add(byte[] bytes) {
+		return addHash(getLongHash64(bytes));
+	}
+	
+	/**
+	 * Add the given value to the filter.
+	 * 
+	 * @return <code>true</code> if the value was added, <code>false</code> if
+	 *         it is <code>null</code>
+	 * 
+	 * @throws IllegalStateException
+	 *             if the filter is too full to add the value, in which case
+	 *             the filter is left unchanged
+	 */
+	@Override
+	public boolean add(T value) {
+		if(value == null) {
+			return false;
+		}
+		
+		return addHash(decomposedHash64(value));
+	}
+	
+	/**
+	 * @see com.sangupta.bloomfilter.BloomFilter#addAll(java.util.Collection)
+	 */
+	@Override
+	public boolean addAll(Collection<T> values) {
+		if(values == null || values.isEmpty()) {
+			return false;
+		}
+		
+		boolean success = true;
+		for(T value : values) {
+			success = add(value) && success;
+		}
+		
+		return success;
+	}
+	
+	/**
+	 * @see com.sangupta.bloomfilter.BloomFilter#addBatch(byte[][])
+	 */
+	@Override
+	public BitSet addBatch(byte[][] keys) {
+		if(keys == null) {
+			throw new IllegalArgumentException("Keys to add to filter cannot be null");
+		}
+		
+		BitSet changed = new BitSet(keys.length);
+		for(int index = 0; index < keys.length; index++) {
+			if(add(keys[index])) {
+				changed.set(index);
+			}
+		}
+		
+		return changed;
+	}
+	
+	/**
+	 * @see com.sangupta.bloomfilter.BloomFilter#contains(byte[])
+	 */
+	@Override
+	public boolean contains(byte[] bytes) {
+		return containsHash(getLongHash64(bytes));
+	}
+	
+	/**
+	 * @see com.sangupta.bloomfilter.BloomFilter#contains(java.lang.Object)
+	 */
+	@Override
+	public boolean contains(T value) {
+		if(value == null) {
+			return false;
+		}
+		
+		return containsHash(decomposedHash64(value));
+	}
+	
+	/**
+	 * @see com.sangupta.bloomfilter.BloomFilter#containsAll(java.util.Collection)
+	 */
+	@Override
+	public boolean containsAll(Collection<T> values) {
+		if(values == null || values.isEmpty()) {
+			return false;
+		}
+		
+		for(T value : values) {
+			if(!contains(value)) {
+				return false;
+			}
+		}
+		
+		return true;
+	}
+	
+	/**
+	 * @see com.sangupta.bloomfilter.BloomFilter#containsBatch(byte[][])
+	 */
+	@Override
+	public BitSet containsBatch(byte[][] keys) {
+		if(keys == null) {
+			throw new IllegalArgumentException("Keys to test in filter cannot be null");
+		}
+		
+		BitSet present = new BitSet(keys.length);
+		for(int index = 0; index < keys.length; index++) {
+			if(contains(keys[index])) {
+				present.set(index);
+			}
+		}
+		
+		return present;
+	}
+	
+	/**
+	 * Remove one copy of the given byte array from the filter.
+	 * 
+	 * @param bytes
+	 *            the byte array to be removed, cannot be null
+	 * 
+	 * @return <code>true</code> if the value was found and removed,
+	 *         <code>false</code> otherwise
+	 */
+	public boolean remove(byte[] bytes) {
+		return removeHash(getLongHash64(bytes));
+	}
+	
+	/**
+	 * Remove one copy of the given value from the filter.
+	 * 
+	 * @param value
+	 *            the value to be removed
+	 * 
+	 * @return <code>true</code> if the value was found and removed,
+	 *         <code>false</code> otherwise
+	 */
+	public boolean remove(T value) {
+		if(value == null) {
+			return false;
+		}
+		
+		return removeHash(decomposedHash64(value));
+	}
+	
+	/**
+	 * Return the number of bits used by the fingerprints.
+	 * 
+	 * @see com.sangupta.bloomfilter.BloomFilter#getNumberOfBits()
+	 */
+	@Override
+	public long getNumberOfBits() {
+		return this.fingerprints.size() * this.fingerprintBits;
+	}
+	
+	/**
+	 * Estimate the false positive rate when the given number of elements
+	 * have been inserted: a lookup compares against the fingerprints in two
+	 * buckets, each of which matches with probability
+	 * <code>1 / (2^f - 1)</code>.
+	 * 
+	 * @see com.sangupta.bloomfilter.BloomFilter#getFalsePositiveProbability(long)
+	 */
+	@Override
+	public double getFalsePositiveProbability(long numInsertedElements) {
+		double load = Math.min(1, (double) numInsertedElements / this.fingerprints.size());
+		double match = 1 / (Math.pow(2, this.fingerprintBits) - 1);
+		return 1 - Math.pow(1 - match, 2 * BUCKET_SIZE * load);
+	}
+	
+	/**
+	 * Return the number of fingerprints stored, which counts an element added
+	 * twice two times.
+	 * 
+	 * @see com.sangupta.bloomfilter.BloomFilter#getApproximateElementCount()
+	 */
+	@Override
+	public long getApproximateElementCount() {
+		return this.count;
+	}
+	
+	/**
+	 * Return the fraction of slots holding a fingerprint.
+	 * 
+	 * @see com.sangupta.bloomfilter.BloomFilter#getFillRatio()
+	 */
+	@Override
+	public double getFillRatio() {
+		return (double) this.count / this.fingerprints.size();
+	}
+	
+	/**
+	 * @see com.sangupta.bloomfilter.BloomFilter#getCurrentFalsePositiveProbability()
+	 */
+	@Override
+	public double getCurrentFalsePositiveProbability() {
+		return getFalsePositiveProbability(this.count);
+	}
+	
+	/**
+	 * Return the number of buckets in the filter.
+	 * 
+	 * @return the number of buckets
+	 */
+	public long getNumberOfBuckets() {
+		return this.numBuckets;
+	}
+	
+	/**
+	 * Return the number of bits in each fingerprint.
+	 * 
+	 * @return the number of bits per fingerprint
+	 */
+	public int getBitsPerFingerprint() {
+		return this.fingerprintBits;
+	}
+	
+	/**
+	 * @see com.sangupta.bloomfilter.BloomFilter#close()
+	 */
+	@Override
+	public void close() {
+		try {
+			this.fingerprints.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+	
+	/**
+	 * Insert the fingerprint of the element with the given hash into one of
+	 * its buckets, moving other fingerprints to their alternate buckets if
+	 * both are full.
+	 * 
+	 * @param hash64
+	 *            the 64-bit hash of the element
+	 * 
+	 * @return <code>true</code> always
+	 * 
+	 * @throws IllegalStateException
+	 *             if no room could be made
+	 */
+	protected boolean addHash(long hash64) {
+		long hash = mix(hash64);
+		int fingerprint = fingerprint(hash);
+		long bucket = index(hash);
+		long alternate = alternateBucket(bucket, fingerprint);
+		
+		if(insert(bucket, fingerprint) || insert(alternate, fingerprint)) {
+			return true;
+		}
+		
+		// evict fingerprints along a random walk
+		if((nextRandom() & 1) == 0) {
+			bucket = alternate;
+		}
+		
+		for(int kick = 0; kick < MAX_KICKS; kick++) {
+			int slot = (int) (nextRandom() >>> 62);
+			long index = bucket * BUCKET_SIZE + slot;
+			
+			this.kickBuckets[kick] = bucket;
+			this.kickSlots[kick] = slot;
+			
+			int evicted = this.fingerprints.get(index);
+			this.fingerprints.set(index, fingerprint);
+			fingerprint = evicted;
+			
+			bucket = alternateBucket(bucket, fingerprint);
+			if(insert(bucket, fingerprint)) {
+				return true;
+			}
+		}
+		
+		// put every moved fingerprint back, so that nothing is lost
+		for(int kick = MAX_KICKS - 1; kick >= 0; kick--) {
+			long index = this.kickBuckets[kick] * BUCKET_SIZE + this.kickSlots[kick];
+			int current = this.fingerprints.get(index);
+			this.fingerprints.set(index, fingerprint);
+			fingerprint = current;
+		}
+		
+		throw new IllegalStateException("Cuckoo filter is full");
+	}
+	
+	/**
+	 * Check whether the fingerprint of the element with the given hash is in
+	 * either of its buckets.
+	 * 
+	 * @param hash64
+	 *            the 64-bit hash of the element
+	 * 
+	 * @return <code>true</code> if the element may be present
+	 */
+	protected boolean containsHash(long hash64) {
+		long hash = mix(hash64);
+		int fingerprint = fingerprint(hash);
+		long bucket = index(hash);
+		
+		return find(bucket, fingerprint) >= 0 || find(alternateBucket(bucket, fingerprint), fingerprint) >= 0;
+	}
+	
+	/**
+	 * Remove the fingerprint of the element with the given hash from either
+	 * of its buckets.
+	 * 
+	 * @param hash64
+	 *            the 64-bit hash of the element
+	 * 
+	 * @return <code>true</code> if a fingerprint was removed
+	 */
+	protected boolean removeHash(long hash64) {
+		long hash = mix(hash64);
+		int fingerprint = fingerprint(hash);
+		long bucket = index(hash);
+		
+		long index = find(bucket, fingerprint);
+		if(index < 0) {
+			index = find(alternateBucket(bucket, fingerprint), fingerprint);
+		}
+		
+		if(index < 0) {
+			return false;
+		}
+		
+		this.fingerprints.set(index, 0);
+		this.count--;
+		return true;
+	}
+	
+	/**
+	 * Derive the non-zero fingerprint from the high bits of the mixed hash,
+	 * which are not used for the bucket index.
+	 */
+	private int fingerprint(long hash64) {
+		int fingerprint = (int) (hash64 >>> (64 - this.fingerprintBits));
+		return fingerprint == 0 ? 1 : fingerprint;
+	}
+	
+	/**
+	 * Map the low 32 bits of the mixed hash onto the buckets with a multiply and
+	 * shift, which needs no power of two number of buckets.
+	 */
+	private long index(long hash64) {
+		return ((hash64 & 0xFFFFFFFFL) * this.numBuckets) >>> 32;
+	}
+	
+	/**
+	 * The other bucket of a fingerprint in the given bucket,
+	 * <code>h(f) - bucket</code> modulo the number of buckets, so that it
+	 * stays in range. Applying this twice gives back the original bucket.
+	 */
+	private long alternateBucket(long bucket, int fingerprint) {
+		long alternate = (((fingerprint & 0xFFFFFFFFL) * 0xc4ceb9fe1a85ec53L) >>> 32) % this.numBuckets - bucket;
+		return alternate < 0 ? alternate + this.numBuckets : alternate;
+	}
+	
+	/**
+	 * Store the fingerprint in an empty slot of the bucket, if any.
+	 */
+	private boolean insert(long bucket, int fingerprint) {
+		long base = bucket * BUCKET_SIZE;
+		for(int slot = 0; slot < BUCKET_SIZE; slot++) {
+			if(this.fingerprints.get(base + slot) == 0) {
+				this.fingerprints.set(base + slot, fingerprint);
+				this.count++;
+				return true;
+			}
+		}
+		
+		return false;
+	}
+	
+	/**
+	 * Find the index of the slot holding the fingerprint in the bucket.
+	 * 
+	 * @return the index of the slot, or <code>-1</code> if the fingerprint is
+	 *         not in the bucket
+	 */
+	private long find(long bucket, int fingerprint) {
+		long base = bucket * BUCKET_SIZE;
+		for(int slot = 0; slot < BUCKET_SIZE; slot++) {
+			if(this.fingerprints.get(base + slot) == fingerprint) {
+				return base + slot;
+			}
+		}
+		
+		return -1;
+	}
+	
+	/**
+	 * The 64-bit finalization mix of Murmur3, applied to every hash before it
+	 * is split into fingerprint and bucket index, so that hash functions
+	 * filling fewer than 64 bits, like CRC32, still give useful fingerprints.
+	 */
+	private static long mix(long hash) {
+		hash ^= hash >>> 33;
+		hash *= 0xff51afd7ed558ccdL;
+		hash ^= hash >>> 33;
+		hash *= 0xc4ceb9fe1a85ec53L;
+		hash ^= hash >>> 33;
+		return hash;
+	}
+	
+	/**
+	 * Create a seed for the xorshift generator from the current time, which
+	 * must not be zero.
+	 */
+	private static long newSeed() {
+		long seed = mix(System.nanoTime() + SEED_UNIQUIFIER.addAndGet(0x9e3779b97f4a7c15L));
+		return seed != 0 ? seed : 0x2545f4914f6cdd1dL;
+	}
+	
+	/**
+	 * Advance the xorshift generator used to choose the fingerprints to move.
+	 */
+	private long nextRandom() {
+		long x = this.random;
+		x ^= x << 13;
+		x ^= x >>> 7;
+		x ^= x << 17;
+		this.random = x;
+		return x;
+	}
+	
+}
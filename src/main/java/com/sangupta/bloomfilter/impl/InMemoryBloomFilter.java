@@ -23,7 +23,7 @@ package com.sangupta.bloomfilter.impl;
 
 import com.sangupta.bloomfilter.AbstractBloomFilter;
 import com.sangupta.bloomfilter.core.BitArray;
-import com.sangupta.bloomfilter.core.JavaBitSetArray;
+import com.sangupta.bloomfilter.core.FastBitArray;
 
 /**
  * An in-memory implementation of the bloom filter. Not suitable for
@@ -46,17 +46,18 @@ public class InMemoryBloomFilter<T> extends AbstractBloomFilter<T> {
 	 * @param fpp
 	 *            the expected max false positivity rate
 	 */
-	public InMemoryBloomFilter(int n, double fpp) {
+	public InMemoryBloomFilter(long n, double fpp) {
 		super(n, fpp);
 	}
 
 	/**
-	 * Used a normal {@link JavaBitSetArray}.
+	 * Uses a {@link FastBitArray}, which can hold more than
+	 * <code>2^31</code> bits.
 	 * 
 	 */
 	@Override
-	protected BitArray createBitArray(int numBits) {
-		return new JavaBitSetArray(numBits);
+	protected BitArray createBitArray(long numBits) {
+		return new FastBitArray(numBits);
 	}
 	
 }
\ No newline at end of file
@@ -0,0 +1,120 @@
+/**
+ *
+ * bloomfilter - Bloom filters for Java
+ * Copyright (c) 2014-2015, Sandeep Gupta
+ * 
+ * http://sangupta.com/projects/bloomfilter
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+
+package com.sangupta.bloomfilter.impl;
+
+import com.sangupta.bloomfilter.AbstractBloomFilter;
+import com.sangupta.bloomfilter.core.BitArray;
+import com.sangupta.bloomfilter.core.OffHeapBitArray;
+import com.sangupta.bloomfilter.decompose.Decomposer;
+import com.sangupta.bloomfilter.hash.HashFunction;
+
+/**
+ * An in-memory implementation of the bloom filter that keeps its bits
+ * outside the Java heap using an {@link OffHeapBitArray}. Large filters thus
+ * do not add to the heap size or the garbage collection pause times. Not
+ * suitable for persistence.
+ * 
+ * The native memory is released when {@link #close()} is called, after which
+ * the filter must not be used.
+ * 
+ * @author sangupta
+ * @since 1.0
+ * 
+ * @param <T> the type of object to be stored in the filter
+ */
+public class OffHeapBloomFilter<T> extends AbstractBloomFilter<T> {
+	
+	/**
+	 * Constructor
+	 * 
+	 * @param n
+	 *            the number of elements expected to be inserted in the bloom
+	 *            filter
+	 * 
+	 * @param fpp
+	 *            the expected max false positive rate
+	 */
+	public OffHeapBloomFilter(long n, double fpp) {
+		this(n, fpp, 0, null, null);
+	}
+	
+	/**
+	 * Constructor
+	 * 
+	 * @param n
+	 *            the number of elements expected to be inserted in the bloom
+	 *            filter
+	 * 
+	 * @param fpp
+	 *            the expected max false positive rate
+	 * 
+	 * @param alignment
+	 *            the alignment in bytes of the native memory, a power of two,
+	 *            or <code>0</code> for no alignment
+	 */
+	public OffHeapBloomFilter(long n, double fpp, int alignment) {
+		this(n, fpp, alignment, null, null);
+	}
+	
+	/**
+	 * Constructor
+	 * 
+	 * @param n
+	 *            the number of elements expected to be inserted in the bloom
+	 *            filter
+	 * 
+	 * @param fpp
+	 *            the expected max false positive rate
+	 * 
+	 * @param alignment
+	 *            the alignment in bytes of the native memory, a power of two,
+	 *            or <code>0</code> for no alignment
+	 * 
+	 * @param decomposer
+	 *            a {@link Decomposer} that helps decompose the given object
+	 * 
+	 * @param hasher
+	 *            the hash function to use. If <code>null</code> is specified
+	 *            the default hash function will be used
+	 */
+	public OffHeapBloomFilter(long n, double fpp, int alignment, Decomposer<T> decomposer, HashFunction hasher) {
+		this(n, checkedBitSize(n, fpp), alignment, decomposer, hasher);
+	}
+	
+	/**
+	 * Create the filter once the number of bits is known.
+	 */
+	private OffHeapBloomFilter(long n, long numBits, int alignment, Decomposer<T> decomposer, HashFunction hasher) {
+		super(new OffHeapBitArray(numBits, alignment), optimalNumberofHashFunctionsOrK(n, numBits), decomposer, hasher);
+	}
+
+	/**
+	 * Uses an {@link OffHeapBitArray} without any alignment.
+	 * 
+	 */
+	@Override
+	protected BitArray createBitArray(long numBits) {
+		return new OffHeapBitArray(numBits);
+	}
+	
+}
@@ -0,0 +1,933 @@
+/**
+ *
+ * bloomfilter - Bloom filters for Java
+ * Copyright (c) 2014-2015, Sandeep Gupta
+ * 
+ * http://sangupta.com/projects/bloomfilter
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+
+package com.sangupta.bloomfilter.impl;
+
+import java.math.RoundingMode;
+import java.util.BitSet;
+import java.util.Collection;
+
+import com.sangupta.bloomfilter.AbstractHashingFilter;
+import com.sangupta.bloomfilter.core.FastBitArray;
+import com.sangupta.bloomfilter.decompose.Decomposer;
+import com.sangupta.bloomfilter.hash.HashFunction;
+
+/**
+ * A quotient filter, after <i>Don't Thrash: How to Cache Your Hash on
+ * Flash</i> by Bender et al. Every element is reduced to a fingerprint of
+ * <code>p = q + r</code> bits. The high <code>q</code> bits, the quotient,
+ * select a slot of the table, and the low <code>r</code> bits, the
+ * remainder, are stored there along with three metadata bits. Remainders
+ * sharing a quotient are kept sorted in a run, and runs that do not fit in
+ * their own slot are shifted into the following slots, so that a lookup
+ * scans a few adjacent slots of a single <code>long[]</code>.
+ * 
+ * Unlike a bloom filter, the fingerprints can be recovered from the table.
+ * This lets the filter double its size, by moving one bit of each
+ * fingerprint from the remainder to the quotient, and merge with another
+ * filter, without access to the original elements. Both take time linear in
+ * the size of the table. The filter doubles itself when more than
+ * {@link #MAX_LOAD_FACTOR} of its slots are used; as the fingerprints keep
+ * their size, each doubling doubles the false positive rate for the same
+ * load.
+ * 
+ * An element added <code>k</code> times must be removed <code>k</code>
+ * times. Removing an element that was never added may remove another
+ * element. This class is not thread-safe.
+ * 
+ * @author sangupta
+ * @since 1.0
+ * 
+ * @param <T> the type of objects to be stored in the filter
+ */
+public class QuotientFilter<T> extends AbstractHashingFilter<T> {
+	
+	/**
+	 * The fraction of slots that can be used before the filter doubles
+	 * itself, beyond which runs get long and lookups slow
+	 */
+	public static final double MAX_LOAD_FACTOR = 0.75;
+	
+	/**
+	 * The largest number of quotient bits
+	 */
+	public static final int MAX_QUOTIENT_BITS = 32;
+	
+	/**
+	 * The slots of the table
+	 */
+	protected Slots slots;
+	
+	/**
+	 * Constructor
+	 * 
+	 * @param n
+	 *            the number of elements expected to be inserted in the filter
+	 * 
+	 * @param fpp
+	 *            the expected max false positive rate
+	 */
+	public QuotientFilter(long n, double fpp) {
+		this(n, fpp, null, null);
+	}
+	
+	/**
+	 * Constructor
+	 * 
+	 * @param n
+	 *            the number of elements expected to be inserted in the filter
+	 * 
+	 * @param fpp
+	 *            the expected max false positive rate
+	 * 
+	 * @param decomposer
+	 *            a {@link Decomposer} that helps decompose the given object
+	 * 
+	 * @param hasher
+	 *            the hash function to use. If <code>null</code> is specified
+	 *            the default hash function will be used
+	 */
+	public QuotientFilter(long n, double fpp, Decomposer<T> decomposer, HashFunction hasher) {
+		this(optimalQuotientBits(n), optimalRemainderBits(fpp), decomposer, hasher);
+	}
+	
+	/**
+	 * Create a filter with <code>2^quotientBits</code> slots.
+	 * 
+	 * @param quotientBits
+	 *            the number of quotient bits, between 1 and
+	 *            {@link #MAX_QUOTIENT_BITS}
+	 * 
+	 * @param remainderBits
+	 *            the number of remainder bits, between 1 and 61, which with
+	 *            the quotient bits can be at most 64
+	 * 
+	 * @param decomposer
+	 *            a {@link Decomposer} that helps decompose the given object
+	 * 
+	 * @param hasher
+	 *            the hash function to use. If <code>null</code> is specified
+	 *            the default hash function will be used
+	 */
+	public QuotientFilter(int quotientBits, int remainderBits, Decomposer<T> decomposer, HashFunction hasher) {
+		super(decomposer, hasher);
+		
+		if(quotientBits < 1 || quotientBits > MAX_QUOTIENT_BITS) {
+			throw new IllegalArgumentException("Quotient bits must be between 1 and " + MAX_QUOTIENT_BITS);
+		}
+		
+		if(remainderBits < 1 || remainderBits > 61 || quotientBits + remainderBits > 64) {
+			throw new IllegalArgumentException("Remainder bits must be between 1 and 61, and at most 64 with the quotient bits");
+		}
+		
+		this.slots = new Slots(quotientBits, remainderBits);
+	}
+	
+	/**
+	 * Compute the number of quotient bits needed to hold the given number of
+	 * elements within {@link #MAX_LOAD_FACTOR}.
+	 * 
+	 * @param n
+	 *            the number of expected insertions
+	 * 
+	 * @return the number of quotient bits
+	 */
+	public static int optimalQuotientBits(long n) {
+		if(n <= 0) {
+			throw new IllegalArgumentException("Expected insertions cannot be less than or equal to zero");
+		}
+		
+		long slots = (long) Math.ceil(n / MAX_LOAD_FACTOR);
+		return Math.max(1, 64 - Long.numberOfLeadingZeros(slots - 1));
+	}
+	
+	/**
+	 * Compute the number of remainder bits needed for the given false
+	 * positive rate at full load, <code>log2(1 / p)</code> rounded up.
+	 * 
+	 * @param fpp
+	 *            the expected max false positive rate
+	 * 
+	 * @return the number of remainder bits
+	 */
+	public static int optimalRemainderBits(double fpp) {
+		if(fpp <= 0 || fpp >= 1) {
+			throw new IllegalArgumentException("False positive probability must be between zero and one");
+		}
+		
+		return Math.min(61, Math.max(1, (int) Math.ceil(-Math.log(fpp) / Math.log(2))));
+	}
+	
+	/**
+	 * Add the given byte array to the filter.
+	 * 
+	 * @return <code>true</code> as the value is always added
+	 * 
+	 * @throws IllegalStateException
+	 *             if every slot is used and the filter cannot double its
+	 *             size
+	 */
+	@Override
+	public boolean add(byte[] bytes) {
+		return addHash(getLongHash64(bytes));
+	}
+	
+	/**
+	 * Add the given value to the filter.
+	 * 
+	 * @return <code>true</code> if the value was added, <code>false</code> if
+	 *         it is <code>null</code>
+	 * 
+	 * @throws IllegalStateException
+	 *             if every slot is used and the filter cannot double its
+	 *             size
+	 */
+	@Override
+	public boolean add(T value) {
+		if(value == null) {
+			return false;
+		}
+		
+		return addHash(decomposedHash64(value));
+	}
+	
+	/**
+	 * @see com.sangupta.bloomfilter.BloomFilter#addAll(java.util.Collection)
+	 */
+	@Override
+	public boolean addAll(Collection<T> values) {
+		if(values == null || values.isEmpty()) {
+			return false;
+		}
+		
+		boolean success = true;
+		for(T value : values) {
+			success = add(value) && success;
+		}
+		
+		return success;
+	}
+	
+	/**
+	 * @see com.sangupta.bloomfilter.BloomFilter#addBatch(byte[][])
+	 */
+	@Override
+	public BitSet addBatch(byte[][] keys) {
+		if(keys == null) {
+			throw new IllegalArgumentException("Keys to add to filter cannot be null");
+		}
+		
+		BitSet changed = new BitSet(keys.length);
+		for(int index = 0; index < keys.length; index++) {
+			if(add(keys[index])) {
+				changed.set(index);
+			}
+		}
+		
+		return changed;
+	}
+	
+	/**
+	 * @see com.sangupta.bloomfilter.BloomFilter#contains(byte[])
+	 */
+	@Override
+	public boolean contains(byte[] bytes) {
+		return containsHash(getLongHash64(bytes));
+	}
+	
+	/**
+	 * @see com.sangupta.bloomfilter.BloomFilter#contains(java.lang.Object)
+	 */
+	@Override
+	public boolean contains(T value) {
+		if(value == null) {
+			return false;
+		}
+		
+		return containsHash(decomposedHash64(value));
+	}
+	
+	/**
+	 * @see com.sangupta.bloomfilter.BloomFilter#containsAll(java.util.Collection)
+	 */
+	@Override
+	public boolean containsAll(Collection<T> values) {
+		if(values == null || values.isEmpty()) {
+			return false;
+		}
+		
+		for(T value : values) {
+			if(!contains(value)) {
+				return false;
+			}
+		}
+		
+		return true;
+	}
+	
+	/**
+	 * @see com.sangupta.bloomfilter.BloomFilter#containsBatch(byte[][])
+	 */
+	@Override
+	public BitSet containsBatch(byte[][] keys) {
+		if(keys == null) {
+			throw new IllegalArgumentException("Keys to test in filter cannot be null");
+		}
+		
+		BitSet present = new BitSet(keys.length);
+		for(int index = 0; index < keys.length; index++) {
+			if(contains(keys[index])) {
+				present.set(index);
+			}
+		}
+		
+		return present;
+	}
+	
+	/**
+	 * Remove one copy of the given byte array from the filter.
+	 * 
+	 * @param bytes
+	 *            the byte array to be removed, cannot be null
+	 * 
+	 * @return <code>true</code> if the value was found and removed,
+	 *         <code>false</code> otherwise
+	 */
+	public boolean remove(byte[] bytes) {
+		return removeHash(getLongHash64(bytes));
+	}
+	
+	/**
+	 * Remove one copy of the given value from the filter.
+	 * 
+	 * @param value
+	 *            the value to be removed
+	 * 
+	 * @return <code>true</code> if the value was found and removed,
+	 *         <code>false</code> otherwise
+	 */
+	public boolean remove(T value) {
+		if(value == null) {
+			return false;
+		}
+		
+		return removeHash(decomposedHash64(value));
+	}
+	
+	/**
+	 * Double the number of slots, moving one bit of every fingerprint from
+	 * the remainder to the quotient. The false positive rate at a given load
+	 * doubles.
+	 * 
+	 * @throws IllegalStateException
+	 *             if the remainders have a single bit left, or the quotient
+	 *             already has {@link #MAX_QUOTIENT_BITS} bits
+	 */
+	public void resize() {
+		Slots current = this.slots;
+		if(!canResize()) {
+			throw new IllegalStateException("Unable to resize quotient filter any further");
+		}
+		
+		Slots resized = new Slots(current.quotientBits + 1, current.remainderBits - 1);
+		current.copyTo(resized);
+		this.slots = resized;
+	}
+	
+	/**
+	 * Check whether the filter can double its size.
+	 * 
+	 * @return <code>true</code> if a remainder bit can be moved to the
+	 *         quotient
+	 */
+	public boolean canResize() {
+		return this.slots.remainderBits > 1 && this.slots.quotientBits < MAX_QUOTIENT_BITS;
+	}
+	
+	/**
+	 * Add every element of the given filter to this one, doubling this
+	 * filter as many times as needed to hold them all. The fingerprints of
+	 * both filters are read in slot order and inserted in the same order,
+	 * which takes time linear in the size of the tables.
+	 * 
+	 * @param other
+	 *            the filter to merge, which must use the same hash function
+	 *            and fingerprint size
+	 * 
+	 * @throws IllegalArgumentException
+	 *             if the filters are not compatible
+	 * 
+	 * @throws IllegalStateException
+	 *             if this filter cannot be made large enough, in which case
+	 *             it is left unchanged
+	 */
+	public void merge(QuotientFilter<T> other) {
+		if(other == null) {
+			throw new IllegalArgumentException("Filter to merge cannot be null");
+		}
+		
+		if(other == this) {
+			throw new IllegalArgumentException("Filter cannot be merged with itself");
+		}
+		
+		if(getFingerprintBits() != other.getFingerprintBits() || this.hasher.getClass() != other.hasher.getClass()) {
+			throw new IllegalArgumentException("Filters must use the same hash function and fingerprint size");
+		}
+		
+		Slots current = this.slots;
+		int fingerprintBits = getFingerprintBits();
+		long entries = current.entries + other.slots.entries;
+		
+		int quotientBits = current.quotientBits;
+		while(entries > MAX_LOAD_FACTOR * (1L << quotientBits) && quotientBits < MAX_QUOTIENT_BITS && fingerprintBits - quotientBits > 1) {
+			quotientBits++;
+		}
+		
+		if(entries > (1L << quotientBits)) {
+			throw new IllegalStateException("Quotient filter is full");
+		}
+		
+		Slots merged = new Slots(quotientBits, fingerprintBits - quotientBits);
+		current.copyTo(merged);
+		other.slots.copyTo(merged);
+		this.slots = merged;
+	}
+	
+	/**
+	 * Return the number of elements in the filter, counting every copy.
+	 * 
+	 * @return the number of elements
+	 */
+	public long size() {
+		return this.slots.entries;
+	}
+	
+	/**
+	 * Return the number of slots in the table.
+	 * 
+	 * @return the number of slots
+	 */
+	public long getNumberOfSlots() {
+		return this.slots.numSlots;
+	}
+	
+	/**
+	 * Return the number of bits in each fingerprint, which stays the same
+	 * as the filter doubles.
+	 * 
+	 * @return the number of quotient and remainder bits
+	 */
+	public int getFingerprintBits() {
+		return this.slots.quotientBits + this.slots.remainderBits;
+	}
+	
+	/**
+	 * Return the number of bits stored in each slot.
+	 * 
+	 * @return the number of remainder bits
+	 */
+	public int getRemainderBits() {
+		return this.slots.remainderBits;
+	}
+	
+	/**
+	 * Return the number of bits used by the slots, including the three
+	 * metadata bits of each.
+	 * 
+	 * @see com.sangupta.bloomfilter.BloomFilter#getNumberOfBits()
+	 */
+	@Override
+	public long getNumberOfBits() {
+		return this.slots.numSlots * this.slots.slotBits;
+	}
+	
+	/**
+	 * Estimate the false positive rate when the given number of elements
+	 * have been inserted: the probability that one of them shares the
+	 * fingerprint of a given element, <code>1 - e^(-n / 2^p)</code>.
+	 * 
+	 * @see com.sangupta.bloomfilter.BloomFilter#getFalsePositiveProbability(long)
+	 */
+	@Override
+	public double getFalsePositiveProbability(long numInsertedElements) {
+		return -Math.expm1(-numInsertedElements / Math.pow(2, getFingerprintBits()));
+	}
+	
+	/**
+	 * Return the number of fingerprints stored, as given by {@link #size()}.
+	 * 
+	 * @see com.sangupta.bloomfilter.BloomFilter#getApproximateElementCount()
+	 */
+	@Override
+	public long getApproximateElementCount() {
+		return this.slots.entries;
+	}
+	
+	/**
+	 * Return the fraction of slots in use, which is kept below
+	 * {@link #MAX_LOAD_FACTOR} as long as the filter can double.
+	 * 
+	 * @see com.sangupta.bloomfilter.BloomFilter#getFillRatio()
+	 */
+	@Override
+	public double getFillRatio() {
+		return (double) this.slots.entries / this.slots.numSlots;
+	}
+	
+	/**
+	 * @see com.sangupta.bloomfilter.BloomFilter#getCurrentFalsePositiveProbability()
+	 */
+	@Override
+	public double getCurrentFalsePositiveProbability() {
+		return getFalsePositiveProbability(this.slots.entries);
+	}
+	
+	/**
+	 * Nothing to release.
+	 * 
+	 * @see com.sangupta.bloomfilter.BloomFilter#close()
+	 */
+	@Override
+	public void close() {
+		// nothing to do
+	}
+	
+	/**
+	 * Insert the fingerprint of the element with the given hash, doubling
+	 * the table first if it is too full and can still double.
+	 * 
+	 * @param hash64
+	 *            the 64-bit hash of the element
+	 * 
+	 * @return <code>true</code> always
+	 */
+	protected boolean addHash(long hash64) {
+		if(this.slots.entries + 1 > MAX_LOAD_FACTOR * this.slots.numSlots && canResize()) {
+			resize();
+		}
+		
+		this.slots.insert(fingerprint(hash64));
+		return true;
+	}
+	
+	/**
+	 * Check whether the fingerprint of the element with the given hash is in
+	 * the table.
+	 * 
+	 * @param hash64
+	 *            the 64-bit hash of the element
+	 * 
+	 * @return <code>true</code> if the element may be present
+	 */
+	protected boolean containsHash(long hash64) {
+		return this.slots.contains(fingerprint(hash64));
+	}
+	
+	/**
+	 * Remove one copy of the fingerprint of the element with the given hash.
+	 * 
+	 * @param hash64
+	 *            the 64-bit hash of the element
+	 * 
+	 * @return <code>true</code> if a fingerprint was removed
+	 */
+	protected boolean removeHash(long hash64) {
+		return this.slots.remove(fingerprint(hash64));
+	}
+	
+	/**
+	 * The fingerprint is made of the high bits of the mixed hash, so that
+	 * hash functions filling fewer than 64 bits, like CRC32, still spread
+	 * the elements over the whole table.
+	 */
+	private long fingerprint(long hash64) {
+		return mix(hash64) >>> (64 - getFingerprintBits());
+	}
+	
+	/**
+	 * The 64-bit finalization mix of Murmur3.
+	 */
+	private static long mix(long hash) {
+		hash ^= hash >>> 33;
+		hash *= 0xff51afd7ed558ccdL;
+		hash ^= hash >>> 33;
+		hash *= 0xc4ceb9fe1a85ec53L;
+		hash ^= hash >>> 33;
+		return hash;
+	}
+	
+	/**
+	 * The table of a quotient filter: <code>2^q</code> slots, used as a
+	 * ring, each holding a remainder above three metadata bits, packed into
+	 * a <code>long[]</code>. The metadata bits of a slot tell whether the
+	 * slot is the canonical slot of some run (occupied), whether the
+	 * remainder in the slot continues the run of the previous slot
+	 * (continuation), and whether the remainder is not in its canonical slot
+	 * (shifted).
+	 * 
+	 * @author sangupta
+	 * @since 1.0
+	 */
+	protected static final class Slots {
+		
+		private static final long OCCUPIED = 1;
+		
+		private static final long CONTINUATION = 2;
+		
+		private static final long SHIFTED = 4;
+		
+		private static final long METADATA = 7;
+		
+		final int quotientBits;
+		
+		final int remainderBits;
+		
+		final int slotBits;
+		
+		final long numSlots;
+		
+		final long[] data;
+		
+		long entries;
+		
+		private final long slotMask;
+		
+		private final long indexMask;
+		
+		private final long remainderMask;
+		
+		Slots(int quotientBits, int remainderBits) {
+			this.quotientBits = quotientBits;
+			this.remainderBits = remainderBits;
+			this.slotBits = remainderBits + 3;
+			this.numSlots = 1L << quotientBits;
+			this.data = new long[FastBitArray.checkedCast(FastBitArray.divide(this.numSlots * this.slotBits, 64, RoundingMode.CEILING))];
+			
+			this.slotMask = this.slotBits == 64 ? -1L : (1L << this.slotBits) - 1;
+			this.indexMask = this.numSlots - 1;
+			this.remainderMask = (1L << remainderBits) - 1;
+		}
+		
+		/**
+		 * Insert a fingerprint, after any equal ones, shifting the
+		 * following remainders of the cluster one slot to the right.
+		 */
+		void insert(long fingerprint) {
+			if(this.entries == this.numSlots) {
+				throw new IllegalStateException("Quotient filter is full");
+			}
+			
+			long quotient = (fingerprint >>> this.remainderBits) & this.indexMask;
+			long remainder = fingerprint & this.remainderMask;
+			long canonical = get(quotient);
+			long entry = remainder << 3;
+			
+			if(isEmpty(canonical)) {
+				set(quotient, entry | OCCUPIED);
+				this.entries++;
+				return;
+			}
+			
+			if((canonical & OCCUPIED) == 0) {
+				set(quotient, canonical | OCCUPIED);
+			}
+			
+			long start = findRun(quotient);
+			long slot = start;
+			if((canonical & OCCUPIED) != 0) {
+				// find the place of the remainder in the sorted run
+				do {
+					if((get(slot) >>> 3) > remainder) {
+						break;
+					}
+					
+					slot = next(slot);
+				} while((get(slot) & CONTINUATION) != 0);
+				
+				if(slot == start) {
+					// the old head of the run becomes its second remainder
+					set(start, get(start) | CONTINUATION);
+				} else {
+					entry |= CONTINUATION;
+				}
+			}
+			
+			if(slot != quotient) {
+				entry |= SHIFTED;
+			}
+			
+			shiftIn(slot, entry);
+			this.entries++;
+		}
+		
+		/**
+		 * Check whether the run of the quotient holds the remainder.
+		 */
+		boolean contains(long fingerprint) {
+			long quotient = (fingerprint >>> this.remainderBits) & this.indexMask;
+			long remainder = fingerprint & this.remainderMask;
+			if((get(quotient) & OCCUPIED) == 0) {
+				return false;
+			}
+			
+			long slot = findRun(quotient);
+			do {
+				long stored = get(slot) >>> 3;
+				if(stored == remainder) {
+					return true;
+				}
+				
+				if(stored > remainder) {
+					return false;
+				}
+				
+				slot = next(slot);
+			} while((get(slot) & CONTINUATION) != 0);
+			
+			return false;
+		}
+		
+		/**
+		 * Remove one copy of a fingerprint, shifting the following
+		 * remainders of the cluster one slot to the left.
+		 */
+		boolean remove(long fingerprint) {
+			long quotient = (fingerprint >>> this.remainderBits) & this.indexMask;
+			long remainder = fingerprint & this.remainderMask;
+			long canonical = get(quotient);
+			if((canonical & OCCUPIED) == 0) {
+				return false;
+			}
+			
+			long slot = findRun(quotient);
+			long stored;
+			do {
+				stored = get(slot) >>> 3;
+				if(stored >= remainder) {
+					break;
+				}
+				
+				slot = next(slot);
+			} while((get(slot) & CONTINUATION) != 0);
+			
+			if(stored != remainder) {
+				return false;
+			}
+			
+			long removed = slot == quotient ? canonical : get(slot);
+			boolean runStart = isRunStart(removed);
+			if(runStart && (get(next(slot)) & CONTINUATION) == 0) {
+				// the run is now empty
+				set(quotient, get(quotient) & ~OCCUPIED);
+			}
+			
+			shiftOut(slot, quotient);
+			
+			if(runStart) {
+				// the next remainder of the run, now in this slot, heads it
+				long head = get(slot);
+				long updated = head;
+				if((head & CONTINUATION) != 0) {
+					updated &= ~CONTINUATION;
+				}
+				
+				if(slot == quotient && isRunStart(updated)) {
+					updated &= ~SHIFTED;
+				}
+				
+				if(updated != head) {
+					set(slot, updated);
+				}
+			}
+			
+			this.entries--;
+			return true;
+		}
+		
+		/**
+		 * Insert every fingerprint into the given table, in slot order,
+		 * which is close to the order of the fingerprints.
+		 */
+		void copyTo(Slots target) {
+			if(this.entries == 0) {
+				return;
+			}
+			
+			long slot = 0;
+			while(!isClusterStart(get(slot))) {
+				slot++;
+			}
+			
+			long quotient = slot;
+			long visited = 0;
+			while(visited < this.entries) {
+				long element = get(slot);
+				if(isClusterStart(element)) {
+					quotient = slot;
+				} else if(isRunStart(element)) {
+					do {
+						quotient = next(quotient);
+					} while((get(quotient) & OCCUPIED) == 0);
+				}
+				
+				slot = next(slot);
+				if(!isEmpty(element)) {
+					target.insert((quotient << this.remainderBits) | (element >>> 3));
+					visited++;
+				}
+			}
+		}
+		
+		/**
+		 * Find the slot where the run of the given occupied quotient
+		 * starts, by walking back to the start of the cluster and then
+		 * forward over the runs of the quotients in between.
+		 */
+		private long findRun(long quotient) {
+			long bucket = quotient;
+			while((get(bucket) & SHIFTED) != 0) {
+				bucket = previous(bucket);
+			}
+			
+			long slot = bucket;
+			while(bucket != quotient) {
+				do {
+					slot = next(slot);
+				} while((get(slot) & CONTINUATION) != 0);
+				
+				do {
+					bucket = next(bucket);
+				} while((get(bucket) & OCCUPIED) == 0);
+			}
+			
+			return slot;
+		}
+		
+		/**
+		 * Put the entry into the slot, moving the contents of the following
+		 * slots one to the right up to the first empty slot. The occupied
+		 * bits stay with the slots.
+		 */
+		private void shiftIn(long slot, long entry) {
+			long current = entry;
+			boolean empty;
+			do {
+				long previous = get(slot);
+				empty = isEmpty(previous);
+				if(!empty) {
+					previous |= SHIFTED;
+					if((previous & OCCUPIED) != 0) {
+						current |= OCCUPIED;
+						previous &= ~OCCUPIED;
+					}
+				}
+				
+				set(slot, current);
+				current = previous;
+				slot = next(slot);
+			} while(!empty);
+		}
+		
+		/**
+		 * Remove the contents of the slot, moving the contents of the
+		 * following slots of the cluster one to the left. Remainders that
+		 * reach their canonical slot are no longer shifted.
+		 */
+		private void shiftOut(long slot, long quotient) {
+			long current = get(slot);
+			long following = next(slot);
+			long original = slot;
+			
+			while(true) {
+				long element = get(following);
+				boolean occupied = (current & OCCUPIED) != 0;
+				if(isEmpty(element) || isClusterStart(element) || following == original) {
+					set(slot, 0);
+					return;
+				}
+				
+				long updated = element;
+				if(isRunStart(element)) {
+					do {
+						quotient = next(quotient);
+					} while((get(quotient) & OCCUPIED) == 0);
+					
+					if(occupied && quotient == slot) {
+						updated &= ~SHIFTED;
+					}
+				}
+				
+				set(slot, occupied ? updated | OCCUPIED : updated & ~OCCUPIED);
+				slot = following;
+				following = next(following);
+				current = element;
+			}
+		}
+		
+		private long next(long slot) {
+			return (slot + 1) & this.indexMask;
+		}
+		
+		private long previous(long slot) {
+			return (slot - 1) & this.indexMask;
+		}
+		
+		private long get(long slot) {
+			long bit = slot * this.slotBits;
+			int word = (int) (bit >>> 6);
+			int offset = (int) (bit & 63);
+			
+			long value = this.data[word] >>> offset;
+			if(offset + this.slotBits > 64) {
+				value |= this.data[word + 1] << (64 - offset);
+			}
+			
+			return value & this.slotMask;
+		}
+		
+		private void set(long slot, long value) {
+			long bit = slot * this.slotBits;
+			int word = (int) (bit >>> 6);
+			int offset = (int) (bit & 63);
+			
+			this.data[word] = (this.data[word] & ~(this.slotMask << offset)) | (value << offset);
+			if(offset + this.slotBits > 64) {
+				int spill = 64 - offset;
+				this.data[word + 1] = (this.data[word + 1] & ~(this.slotMask >>> spill)) | (value >>> spill);
+			}
+		}
+		
+		private static boolean isEmpty(long element) {
+			return (element & METADATA) == 0;
+		}
+		
+		private static boolean isRunStart(long element) {
+			return (element & CONTINUATION) == 0 && (element & (OCCUPIED | SHIFTED)) != 0;
+		}
+		
+		private static boolean isClusterStart(long element) {
+			return (element & METADATA) == OCCUPIED;
+		}
+		
+	}
+	
+}
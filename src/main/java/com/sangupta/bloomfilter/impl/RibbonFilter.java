@@ -0,0 +1,632 @@
+/**
+ *
+ * bloomfilter - Bloom filters for Java
+ * Copyright (c) 2014-2015, Sandeep Gupta
+ * 
+ * http://sangupta.com/projects/bloomfilter
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+
+package com.sangupta.bloomfilter.impl;
+
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Iterator;
+
+import com.sangupta.bloomfilter.AbstractHashingFilter;
+import com.sangupta.bloomfilter.decompose.Decomposer;
+import com.sangupta.bloomfilter.hash.HashFunction;
+
+/**
+ * An immutable standard ribbon filter, after <i>Ribbon filter: practically
+ * smaller than Bloom and Xor</i> by Dillinger and Walzer, using a band of 64
+ * coefficients. Every value selects a start row, 64 random coefficients and
+ * an <code>r</code>-bit fingerprint, and the filter holds a solution
+ * <code>Z</code>, of <code>r</code> bits per row, to the system of
+ * equations <code>c(x) . Z = f(x)</code> over all values. A value whose
+ * equation does not hold is certainly absent; any other value is reported
+ * present, with a probability of <code>2^-r</code> for values not in the
+ * set.
+ * 
+ * The filter uses about <code>(1 + e) * r</code> bits per value for a false
+ * positive rate of <code>2^-r</code>, where <code>e</code> is the
+ * {@link #OVERHEAD}, against <code>1.44 * r</code> bits for a bloom filter
+ * and <code>9</code> bits for a {@link BinaryFuse8Filter} at
+ * <code>2^-8</code>. With so few spare rows the system cannot always be
+ * solved, so the rows are split into shards of about
+ * {@link #SHARD_SIZE} values, each solved on its own and retried with a new
+ * seed, kept per shard, until it succeeds.
+ * 
+ * The values are read more than once: once to count them per shard, and
+ * then once per {@link #BUILD_BATCH_SIZE} values, holding only the hashes of
+ * the values of the shards being solved. The memory needed while building
+ * is thus bounded, at the cost of more passes over large inputs. The values
+ * must be the same on every pass.
+ * 
+ * The filter cannot be added to after it is built. Strings are always
+ * encoded as UTF-8. Lookups are thread-safe. Up to about 2 billion rows are
+ * supported.
+ * 
+ * @author sangupta
+ * @since 1.0
+ * 
+ * @param <T> the type of objects to be stored in the filter
+ */
+public class RibbonFilter<T> extends AbstractHashingFilter<T> {
+	
+	/**
+	 * The fraction of rows added beyond one per value. Fewer spare rows make
+	 * more seeds fail before a shard is solved
+	 */
+	public static final double OVERHEAD = 0.04;
+	
+	/**
+	 * The number of values per shard
+	 */
+	public static final int SHARD_SIZE = 8 * 1024;
+	
+	/**
+	 * The most values whose hashes are held at a time while building
+	 */
+	public static final int BUILD_BATCH_SIZE = 4 * 1024 * 1024;
+	
+	/**
+	 * The number of coefficients per value
+	 */
+	private static final int BAND_WIDTH = 64;
+	
+	/**
+	 * The number of seeds tried for a shard before building is given up
+	 */
+	private static final int MAX_SEEDS = 256;
+	
+	/**
+	 * The number of rows of the solution, a multiple of 64
+	 */
+	protected final long numRows;
+	
+	/**
+	 * The number of result bits per row, or <code>r</code>
+	 */
+	protected final int resultBits;
+	
+	/**
+	 * The number of values the filter was built from
+	 */
+	protected final long numValues;
+	
+	/**
+	 * The solution, stored column-wise in blocks of 64 rows: word
+	 * <code>block * r + j</code> holds bit <code>j</code> of the rows of the
+	 * block
+	 */
+	protected final long[] solution;
+	
+	/**
+	 * The first row of every shard, a multiple of 64, followed by the total
+	 * number of rows
+	 */
+	protected final int[] shardRows;
+	
+	/**
+	 * The seed that solved every shard
+	 */
+	protected final byte[] shardSeeds;
+	
+	/**
+	 * Build a filter holding the given values.
+	 * 
+	 * @param values
+	 *            the values, none of which can be <code>null</code>
+	 * 
+	 * @param bitsPerKey
+	 *            the number of result bits per row, between 1 and 32; the
+	 *            false positive rate is <code>2^-bitsPerKey</code>
+	 */
+	public RibbonFilter(Iterable<? extends T> values, int bitsPerKey) {
+		this(values, bitsPerKey, null, null);
+	}
+	
+	/**
+	 * Build a filter holding the given values. The values are iterated over
+	 * a few times, so they can be streamed from a file by an
+	 * {@link Iterable} that reopens it, as long as every pass returns the same
+	 * values.
+	 * 
+	 * @param values
+	 *            the values, none of which can be <code>null</code>
+	 * 
+	 * @param bitsPerKey
+	 *            the number of result bits per row, between 1 and 32; the
+	 *            false positive rate is <code>2^-bitsPerKey</code>
+	 * 
+	 * @param decomposer
+	 *            a {@link Decomposer} that helps decompose the given object
+	 * 
+	 * @param hasher
+	 *            the hash function to use. If <code>null</code> is specified
+	 *            the default hash function will be used
+	 * 
+	 * @throws IllegalStateException
+	 *             if the values change between passes, or, with a vanishing
+	 *             probability, a shard cannot be solved with any seed
+	 */
+	public RibbonFilter(Iterable<? extends T> values, int bitsPerKey, Decomposer<T> decomposer, HashFunction hasher) {
+		super(decomposer, hasher);
+		this.currentCharset = Charset.forName("UTF-8");
+		
+		if(values == null) {
+			throw new IllegalArgumentException("Values to build the filter from cannot be null");
+		}
+		
+		if(bitsPerKey < 1 || bitsPerKey > 32) {
+			throw new IllegalArgumentException("Bits per key must be between 1 and 32");
+		}
+		
+		this.resultBits = bitsPerKey;
+		
+		// first pass: count the values of every shard
+		long numValues = 0;
+		if(values instanceof Collection) {
+			numValues = ((Collection<?>) values).size();
+		} else {
+			for(Iterator<? extends T> iterator = values.iterator(); iterator.hasNext(); iterator.next()) {
+				numValues++;
+			}
+		}
+		
+		int numShards = (int) Math.min(Integer.MAX_VALUE - 1, Math.max(1, (numValues + SHARD_SIZE - 1) / SHARD_SIZE));
+		int[] shardCounts = new int[numShards];
+		long counted = 0;
+		for(T value : values) {
+			shardCounts[shard(hash(value), numShards)]++;
+			counted++;
+		}
+		
+		if(counted != numValues) {
+			throw new IllegalStateException("Values changed while building the filter");
+		}
+		
+		// size every shard from its own count
+		this.shardRows = new int[numShards + 1];
+		long rows = 0;
+		int maxShardRows = 0;
+		for(int shard = 0; shard < numShards; shard++) {
+			this.shardRows[shard] = (int) rows;
+			
+			long shardRows = (long) Math.ceil(shardCounts[shard] * (1 + OVERHEAD));
+			shardRows = Math.max(BAND_WIDTH, (shardRows + BAND_WIDTH - 1) & -BAND_WIDTH);
+			maxShardRows = (int) Math.max(maxShardRows, shardRows);
+			
+			rows += shardRows;
+			if(rows > Integer.MAX_VALUE - BAND_WIDTH) {
+				throw new IllegalArgumentException("Too many values for a ribbon filter: " + numValues);
+			}
+		}
+		this.shardRows[numShards] = (int) rows;
+		
+		this.numRows = rows;
+		this.numValues = numValues;
+		this.solution = new long[(int) (rows >>> 6) * bitsPerKey];
+		this.shardSeeds = new byte[numShards];
+		
+		// then solve as many shards at a time as their hashes fit in a batch
+		long[] coefficientRows = new long[maxShardRows];
+		int[] resultRows = new int[maxShardRows];
+		int firstShard = 0;
+		while(firstShard < numShards) {
+			int lastShard = firstShard;
+			long batchSize = 0;
+			do {
+				batchSize += shardCounts[lastShard++];
+			} while(lastShard < numShards && batchSize + shardCounts[lastShard] <= BUILD_BATCH_SIZE);
+			
+			long[] hashes = new long[(int) batchSize];
+			int count = 0;
+			for(T value : values) {
+				long hash = hash(value);
+				int shard = shard(hash, numShards);
+				if(shard >= firstShard && shard < lastShard) {
+					if(count == hashes.length) {
+						throw new IllegalStateException("Values changed while building the filter");
+					}
+					
+					// flip the sign bit so that a signed sort is an unsigned one
+					hashes[count++] = hash ^ Long.MIN_VALUE;
+				}
+			}
+			
+			if(count != hashes.length) {
+				throw new IllegalStateException("Values changed while building the filter");
+			}
+			
+			// shards are ranges of hashes, so sorting groups them
+			Arrays.sort(hashes);
+			
+			int from = 0;
+			for(int shard = firstShard; shard < lastShard; shard++) {
+				int to = from + shardCounts[shard];
+				solveShard(shard, hashes, from, to, coefficientRows, resultRows);
+				from = to;
+			}
+			
+			firstShard = lastShard;
+		}
+	}
+	
+	/**
+	 * Always throws, as the filter is immutable.
+	 * 
+	 * @throws UnsupportedOperationException
+	 *             always
+	 */
+	@Override
+	public boolean add(byte[] bytes) {
+		throw new UnsupportedOperationException("Ribbon filters are immutable");
+	}
+	
+	/**
+	 * Always throws, as the filter is immutable.
+	 * 
+	 * @throws UnsupportedOperationException
+	 *             always
+	 */
+	@Override
+	public boolean add(T value) {
+		throw new UnsupportedOperationException("Ribbon filters are immutable");
+	}
+	
+	/**
+	 * Always throws, as the filter is immutable.
+	 * 
+	 * @throws UnsupportedOperationException
+	 *             always
+	 */
+	@Override
+	public boolean addAll(Collection<T> values) {
+		throw new UnsupportedOperationException("Ribbon filters are immutable");
+	}
+	
+	/**
+	 * Always throws, as the filter is immutable.
+	 * 
+	 * @throws UnsupportedOperationException
+	 *             always
+	 */
+	@Override
+	public BitSet addBatch(byte[][] keys) {
+		throw new UnsupportedOperationException("Ribbon filters are immutable");
+	}
+	
+	/**
+	 * @see com.sangupta.bloomfilter.BloomFilter#contains(byte[])
+	 */
+	@Override
+	public boolean contains(byte[] bytes) {
+		return containsHash(getLongHash64(bytes));
+	}
+	
+	/**
+	 * @see com.sangupta.bloomfilter.BloomFilter#contains(java.lang.Object)
+	 */
+	@Override
+	public boolean contains(T value) {
+		if(value == null) {
+			return false;
+		}
+		
+		return containsHash(decomposedHash64(value));
+	}
+	
+	/**
+	 * @see com.sangupta.bloomfilter.BloomFilter#containsAll(java.util.Collection)
+	 */
+	@Override
+	public boolean containsAll(Collection<T> values) {
+		if(values == null || values.isEmpty()) {
+			return false;
+		}
+		
+		for(T value : values) {
+			if(!contains(value)) {
+				return false;
+			}
+		}
+		
+		return true;
+	}
+	
+	/**
+	 * @see com.sangupta.bloomfilter.BloomFilter#containsBatch(byte[][])
+	 */
+	@Override
+	public BitSet containsBatch(byte[][] keys) {
+		if(keys == null) {
+			throw new IllegalArgumentException("Keys to test in filter cannot be null");
+		}
+		
+		BitSet present = new BitSet(keys.length);
+		for(int index = 0; index < keys.length; index++) {
+			if(containsHash(getLongHash64(keys[index]))) {
+				present.set(index);
+			}
+		}
+		
+		return present;
+	}
+	
+	/**
+	 * Always throws, as strings are always encoded as UTF-8.
+	 * 
+	 * @throws UnsupportedOperationException
+	 *             always
+	 */
+	@Override
+	public void setCharset(Charset charset) {
+		throw new UnsupportedOperationException("Ribbon filters always use UTF-8");
+	}
+	
+	/**
+	 * Return the number of bits used by the solution and the first row and
+	 * seed of every shard.
+	 * 
+	 * @see com.sangupta.bloomfilter.BloomFilter#getNumberOfBits()
+	 */
+	@Override
+	public long getNumberOfBits() {
+		return this.numRows * this.resultBits + 32L * this.shardRows.length + 8L * this.shardSeeds.length;
+	}
+	
+	/**
+	 * Return the false positive rate of <code>2^-r</code>.
+	 * 
+	 * @see com.sangupta.bloomfilter.BloomFilter#getFalsePositiveProbability(long)
+	 */
+	@Override
+	public double getFalsePositiveProbability(long numInsertedElements) {
+		return Math.pow(2, -this.resultBits);
+	}
+	
+	/**
+	 * Return the number of values the filter was built from, including any
+	 * duplicates.
+	 * 
+	 * @see com.sangupta.bloomfilter.BloomFilter#getApproximateElementCount()
+	 */
+	@Override
+	public long getApproximateElementCount() {
+		return this.numValues;
+	}
+	
+	/**
+	 * Return the number of values per row of the solution, which is a little
+	 * under one by construction.
+	 * 
+	 * @see com.sangupta.bloomfilter.BloomFilter#getFillRatio()
+	 */
+	@Override
+	public double getFillRatio() {
+		return (double) this.numValues / this.numRows;
+	}
+	
+	/**
+	 * @see com.sangupta.bloomfilter.BloomFilter#getCurrentFalsePositiveProbability()
+	 */
+	@Override
+	public double getCurrentFalsePositiveProbability() {
+		return getFalsePositiveProbability(this.numValues);
+	}
+	
+	/**
+	 * Nothing to release.
+	 * 
+	 * @see com.sangupta.bloomfilter.BloomFilter#close()
+	 */
+	@Override
+	public void close() {
+		// nothing to do
+	}
+	
+	/**
+	 * Check that the equation of the value with the given hash holds for
+	 * every result bit.
+	 * 
+	 * @param hash64
+	 *            the 64-bit hash of the value
+	 * 
+	 * @return <code>true</code> if the value may be present
+	 */
+	protected boolean containsHash(long hash64) {
+		long hash = mix(hash64);
+		int shard = shard(hash, this.shardSeeds.length);
+		int firstRow = this.shardRows[shard];
+		
+		hash = rehash(hash, this.shardSeeds[shard]);
+		long start = firstRow + start(hash, this.shardRows[shard + 1] - firstRow - BAND_WIDTH + 1);
+		long coefficients = coefficients(hash);
+		int fingerprint = fingerprint(hash, this.resultBits);
+		
+		int base = (int) (start >>> 6) * this.resultBits;
+		int offset = (int) start & 63;
+		for(int bit = 0; bit < this.resultBits; bit++) {
+			long window = this.solution[base + bit] >>> offset;
+			if(offset != 0) {
+				window |= this.solution[base + this.resultBits + bit] << (64 - offset);
+			}
+			
+			if(((Long.bitCount(coefficients & window) ^ (fingerprint >>> bit)) & 1) != 0) {
+				return false;
+			}
+		}
+		
+		return true;
+	}
+	
+	/**
+	 * Hash the value as a lookup would.
+	 */
+	private long hash(T value) {
+		if(value == null) {
+			throw new IllegalArgumentException("Values to build the filter from cannot contain null");
+		}
+		
+		return mix(decomposedHash64(value));
+	}
+	
+	/**
+	 * Band and back-substitute the equations of one shard, whose hashes are
+	 * in the given range of the sorted array, trying seeds until the bands
+	 * are consistent.
+	 */
+	private void solveShard(int shard, long[] hashes, int from, int to, long[] coefficientRows, int[] resultRows) {
+		int firstRow = this.shardRows[shard];
+		int rows = this.shardRows[shard + 1] - firstRow;
+		
+		for(int seed = 0; seed < MAX_SEEDS; seed++) {
+			if(band(hashes, from, to, (byte) seed, coefficientRows, resultRows, rows)) {
+				this.shardSeeds[shard] = (byte) seed;
+				backSubstitute(coefficientRows, resultRows, firstRow, rows);
+				return;
+			}
+		}
+		
+		throw new IllegalStateException("Unable to solve ribbon filter shard " + shard + " with " + (to - from) + " values");
+	}
+	
+	/**
+	 * Reduce the equations to an upper triangular band, returning
+	 * <code>false</code> if two of them contradict each other.
+	 */
+	private boolean band(long[] hashes, int from, int to, byte seed, long[] coefficientRows, int[] resultRows, int rows) {
+		Arrays.fill(coefficientRows, 0, rows, 0);
+		Arrays.fill(resultRows, 0, rows, 0);
+		
+		long numStarts = rows - BAND_WIDTH + 1;
+		for(int index = from; index < to; index++) {
+			long hash = rehash(hashes[index] ^ Long.MIN_VALUE, seed);
+			
+			int row = (int) start(hash, numStarts);
+			long coefficients = coefficients(hash);
+			int result = fingerprint(hash, this.resultBits);
+			while(true) {
+				long existing = coefficientRows[row];
+				if(existing == 0) {
+					coefficientRows[row] = coefficients;
+					resultRows[row] = result;
+					break;
+				}
+				
+				coefficients ^= existing;
+				result ^= resultRows[row];
+				if(coefficients == 0) {
+					if(result != 0) {
+						return false;
+					}
+					
+					// implied by the equations already added
+					break;
+				}
+				
+				int shift = Long.numberOfTrailingZeros(coefficients);
+				row += shift;
+				coefficients >>>= shift;
+			}
+		}
+		
+		return true;
+	}
+	
+	/**
+	 * Back-substitute the banded equations of a shard from its last row to
+	 * its first. Rows without an equation are left zero.
+	 */
+	private void backSubstitute(long[] coefficientRows, int[] resultRows, int firstRow, int rows) {
+		for(int row = rows - 1; row >= 0; row--) {
+			long coefficients = coefficientRows[row];
+			if(coefficients == 0) {
+				continue;
+			}
+			
+			int globalRow = firstRow + row;
+			int base = (globalRow >>> 6) * this.resultBits;
+			int offset = globalRow & 63;
+			
+			// the bit of this row is still zero in the solution
+			int result = resultRows[row];
+			for(int bit = 0; bit < this.resultBits; bit++) {
+				long window = this.solution[base + bit] >>> offset;
+				if(offset != 0 && base + this.resultBits < this.solution.length) {
+					window |= this.solution[base + this.resultBits + bit] << (64 - offset);
+				}
+				
+				long value = (Long.bitCount(coefficients & window) ^ (result >>> bit)) & 1L;
+				this.solution[base + bit] |= value << offset;
+			}
+		}
+	}
+	
+	/**
+	 * The shard of a value, from the high bits of its hash so that shards
+	 * are ranges of hashes.
+	 */
+	private static int shard(long hash, int numShards) {
+		return (int) (((hash >>> 32) * numShards) >>> 32);
+	}
+	
+	/**
+	 * Derive the hash used within a shard for the given seed.
+	 */
+	private static long rehash(long hash, byte seed) {
+		return mix(hash + ((seed & 0xFFL) + 1) * 0x9E3779B97F4A7C15L);
+	}
+	
+	/**
+	 * The start row of the equation, uniform over the possible starts.
+	 */
+	private static long start(long hash, long numStarts) {
+		long low = ((hash & 0xFFFFFFFFL) * numStarts) >>> 32;
+		return ((hash >>> 32) * numStarts + low) >>> 32;
+	}
+	
+	/**
+	 * The coefficients of the equation; the first is always one.
+	 */
+	private static long coefficients(long hash) {
+		return (hash * 0x9E3779B97F4A7C15L) | 1;
+	}
+	
+	/**
+	 * The result the equation must have, the fingerprint of the value.
+	 */
+	private static int fingerprint(long hash, int resultBits) {
+		return (int) ((hash * 0xc4ceb9fe1a85ec53L) >>> (64 - resultBits));
+	}
+	
+	/**
+	 * The 64-bit finalization mix of Murmur3.
+	 */
+	private static long mix(long hash) {
+		hash ^= hash >>> 33;
+		hash *= 0xff51afd7ed558ccdL;
+		hash ^= hash >>> 33;
+		hash *= 0xc4ceb9fe1a85ec53L;
+		hash ^= hash >>> 33;
+		return hash;
+	}
+	
+}
@@ -0,0 +1,536 @@
+/**
+ *
+ * bloomfilter - Bloom filters for Java
+ * Copyright (c) 2014-2015, Sandeep Gupta
+ * 
+ * http://sangupta.com/projects/bloomfilter
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+
+package com.sangupta.bloomfilter.impl;
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.List;
+
+import com.sangupta.bloomfilter.AbstractBloomFilter;
+import com.sangupta.bloomfilter.BloomFilter;
+import com.sangupta.bloomfilter.decompose.Decomposer;
+
+/**
+ * A bloom filter that grows with the number of elements added to it, after
+ * <i>Scalable Bloom Filters</i> by Almeida et al. The filter is a chain of
+ * {@link AbstractBloomFilter} slices. Elements are added to the last slice
+ * only; once the fraction of its bits that are set reaches a threshold a new
+ * slice is started, with a capacity larger by the growth factor and a false
+ * positive probability smaller by the tightening ratio. A value is present
+ * if any slice contains it.
+ * 
+ * Slice <code>i</code> is created for a false positive probability of
+ * <code>p * (1 - r) * r^i</code>, where <code>p</code> is the requested
+ * probability and <code>r</code> the tightening ratio, so that the compound
+ * false positive probability never exceeds <code>p</code> however many
+ * slices are added.
+ * 
+ * Values are hashed once and probed in every slice, so all slices must use
+ * the same {@link Decomposer} and hash function. This class is not
+ * thread-safe.
+ * 
+ * @author sangupta
+ * @since 1.0
+ * 
+ * @param <T> the type of objects to be stored in the filter
+ */
+public class ScalableBloomFilter<T> implements BloomFilter<T> {
+	
+	/**
+	 * The default factor by which the capacity of each slice grows
+	 */
+	public static final int DEFAULT_GROWTH_FACTOR = 2;
+	
+	/**
+	 * The default ratio by which the false positive probability of each
+	 * slice tightens
+	 */
+	public static final double DEFAULT_TIGHTENING_RATIO = 0.85;
+	
+	/**
+	 * The default fill ratio at which a new slice is added, the fill ratio
+	 * of a filter with an optimal number of hash functions at its capacity
+	 */
+	public static final double DEFAULT_FILL_RATIO = 0.5;
+	
+	/**
+	 * The capacity of the first slice
+	 */
+	protected final long initialCapacity;
+	
+	/**
+	 * The compound false positive probability to stay within
+	 */
+	protected final double falsePositiveProbability;
+	
+	/**
+	 * The factor by which the capacity of each slice grows
+	 */
+	protected final int growthFactor;
+	
+	/**
+	 * The ratio by which the false positive probability of each slice
+	 * tightens
+	 */
+	protected final double tighteningRatio;
+	
+	/**
+	 * The fill ratio at which a new slice is added
+	 */
+	protected final double fillRatio;
+	
+	/**
+	 * The slices of this filter, in order of creation
+	 */
+	protected final List<AbstractBloomFilter<T>> slices = new ArrayList<AbstractBloomFilter<T>>();
+	
+	/**
+	 * The number of elements added to each slice
+	 */
+	private long[] insertions = new long[4];
+	
+	/**
+	 * The {@link Charset} set on all slices, <code>null</code> to leave the
+	 * default of the slices
+	 */
+	private Charset charset;
+	
+	/**
+	 * Constructor
+	 * 
+	 * @param initialCapacity
+	 *            the number of elements expected to be inserted in the first
+	 *            slice
+	 * 
+	 * @param fpp
+	 *            the expected max false positive rate of the whole filter
+	 */
+	public ScalableBloomFilter(long initialCapacity, double fpp) {
+		this(initialCapacity, fpp, DEFAULT_GROWTH_FACTOR, DEFAULT_TIGHTENING_RATIO, DEFAULT_FILL_RATIO);
+	}
+	
+	/**
+	 * Constructor
+	 * 
+	 * @param initialCapacity
+	 *            the number of elements expected to be inserted in the first
+	 *            slice
+	 * 
+	 * @param fpp
+	 *            the expected max false positive rate of the whole filter
+	 * 
+	 * @param growthFactor
+	 *            the factor by which the capacity of each slice grows
+	 * 
+	 * @param tighteningRatio
+	 *            the ratio by which the false positive probability of each
+	 *            slice tightens, between zero and one
+	 * 
+	 * @param fillRatio
+	 *            the fraction of bits set at which a new slice is added,
+	 *            between zero and one
+	 */
+	public ScalableBloomFilter(long initialCapacity, double fpp, int growthFactor, double tighteningRatio, double fillRatio) {
+		if(initialCapacity <= 0) {
+			throw new IllegalArgumentException("Initial capacity cannot be less than or equal to zero");
+		}
+		
+		if(fpp <= 0 || fpp >= 1) {
+			throw new IllegalArgumentException("False positive probability must be between zero and one");
+		}
+		
+		if(growthFactor < 1) {
+			throw new IllegalArgumentException("Growth factor cannot be less than one");
+		}
+		
+		if(tighteningRatio <= 0 || tighteningRatio >= 1) {
+			throw new IllegalArgumentException("Tightening ratio must be between zero and one");
+		}
+		
+		if(fillRatio <= 0 || fillRatio >= 1) {
+			throw new IllegalArgumentException("Fill ratio must be between zero and one");
+		}
+		
+		this.initialCapacity = initialCapacity;
+		this.falsePositiveProbability = fpp;
+		this.growthFactor = growthFactor;
+		this.tighteningRatio = tighteningRatio;
+		this.fillRatio = fillRatio;
+		
+		addSlice();
+	}
+	
+	/**
+	 * Create a new slice. The default implementation uses an
+	 * {@link InMemoryBloomFilter}; override to use another implementation,
+	 * a custom {@link Decomposer} or hash function.
+	 * 
+	 * @param capacity
+	 *            the number of elements expected to be inserted in the slice
+	 * 
+	 * @param fpp
+	 *            the expected max false positive rate of the slice
+	 * 
+	 * @return the new slice
+	 */
+	protected AbstractBloomFilter<T> createSlice(long capacity, double fpp) {
+		return new InMemoryBloomFilter<T>(capacity, fpp);
+	}
+	
+	/**
+	 * Return the number of slices in this filter.
+	 * 
+	 * @return the number of slices
+	 */
+	public int getNumberOfSlices() {
+		return this.slices.size();
+	}
+	
+	/**
+	 * @see com.sangupta.bloomfilter.BloomFilter#add(byte[])
+	 */
+	@Override
+	public boolean add(byte[] bytes) {
+		return addHash(current().hash64(bytes));
+	}
+	
+	/**
+	 * @see com.sangupta.bloomfilter.BloomFilter#add(java.lang.Object)
+	 */
+	@Override
+	public boolean add(T value) {
+		if(value == null) {
+			return false;
+		}
+		
+		return addHash(current().hash64(value));
+	}
+	
+	/**
+	 * @see com.sangupta.bloomfilter.BloomFilter#addAll(java.util.Collection)
+	 */
+	@Override
+	public boolean addAll(Collection<T> values) {
+		if(values == null || values.isEmpty()) {
+			return false;
+		}
+		
+		boolean success = true;
+		for(T value : values) {
+			success = add(value) && success;
+		}
+		
+		return success;
+	}
+	
+	/**
+	 * @see com.sangupta.bloomfilter.BloomFilter#addBatch(byte[][])
+	 */
+	@Override
+	public BitSet addBatch(byte[][] keys) {
+		if(keys == null) {
+			throw new IllegalArgumentException("Keys to add to bloom filter cannot be null");
+		}
+		
+		BitSet changed = new BitSet(keys.length);
+		for(int index = 0; index < keys.length; index++) {
+			if(add(keys[index])) {
+				changed.set(index);
+			}
+		}
+		
+		return changed;
+	}
+	
+	/**
+	 * @see com.sangupta.bloomfilter.BloomFilter#contains(byte[])
+	 */
+	@Override
+	public boolean contains(byte[] bytes) {
+		return containsHash(current().hash64(bytes));
+	}
+	
+	/**
+	 * @see com.sangupta.bloomfilter.BloomFilter#contains(java.lang.Object)
+	 */
+	@Override
+	public boolean contains(T value) {
+		if(value == null) {
+			return false;
+		}
+		
+		return containsHash(current().hash64(value));
+	}
+	
+	/**
+	 * @see com.sangupta.bloomfilter.BloomFilter#containsAll(java.util.Collection)
+	 */
+	@Override
+	public boolean containsAll(Collection<T> values) {
+		if(values == null || values.isEmpty()) {
+			return false;
+		}
+		
+		for(T value : values) {
+			if(!contains(value)) {
+				return false;
+			}
+		}
+		
+		return true;
+	}
+	
+	/**
+	 * @see com.sangupta.bloomfilter.BloomFilter#containsBatch(byte[][])
+	 */
+	@Override
+	public BitSet containsBatch(byte[][] keys) {
+		if(keys == null) {
+			throw new IllegalArgumentException("Keys to test in bloom filter cannot be null");
+		}
+		
+		BitSet present = new BitSet(keys.length);
+		for(int index = 0; index < keys.length; index++) {
+			if(contains(keys[index])) {
+				present.set(index);
+			}
+		}
+		
+		return present;
+	}
+	
+	/**
+	 * @see com.sangupta.bloomfilter.BloomFilter#setCharset(java.lang.String)
+	 */
+	@Override
+	public void setCharset(String charsetName) {
+		if(charsetName == null) {
+			throw new IllegalArgumentException("Charset to be changed to cannot be null");
+		}
+		
+		setCharset(Charset.forName(charsetName));
+	}
+	
+	/**
+	 * Set the {@link Charset} on all slices, including those yet to be
+	 * created.
+	 * 
+	 * @see com.sangupta.bloomfilter.BloomFilter#setCharset(java.nio.charset.Charset)
+	 */
+	@Override
+	public void setCharset(Charset charset) {
+		if(charset == null) {
+			throw new IllegalArgumentException("Charset to be changed to cannot be null");
+		}
+		
+		this.charset = charset;
+		for(AbstractBloomFilter<T> slice : this.slices) {
+			slice.setCharset(charset);
+		}
+	}
+	
+	/**
+	 * @see com.sangupta.bloomfilter.BloomFilter#getObjectDecomposer()
+	 */
+	@Override
+	public Decomposer<T> getObjectDecomposer() {
+		return current().getObjectDecomposer();
+	}
+	
+	/**
+	 * Return the number of bits used by all slices together.
+	 * 
+	 * @see com.sangupta.bloomfilter.BloomFilter#getNumberOfBits()
+	 */
+	@Override
+	public long getNumberOfBits() {
+		long bits = 0;
+		for(AbstractBloomFilter<T> slice : this.slices) {
+			bits += slice.getNumberOfBits();
+		}
+		
+		return bits;
+	}
+	
+	/**
+	 * Estimate the compound false positive rate when the given number of
+	 * elements have been inserted, filling the existing slices in order. The
+	 * last slice takes all elements beyond the capacity of the others.
+	 * 
+	 * @see com.sangupta.bloomfilter.BloomFilter#getFalsePositiveProbability(long)
+	 */
+	@Override
+	public double getFalsePositiveProbability(long numInsertedElements) {
+		double negative = 1;
+		long remaining = numInsertedElements;
+		for(int index = 0; index < this.slices.size(); index++) {
+			long elements = remaining;
+			if(index < this.slices.size() - 1) {
+				elements = Math.min(remaining, capacity(index));
+			}
+			
+			negative *= 1 - this.slices.get(index).getFalsePositiveProbability(elements);
+			remaining -= elements;
+		}
+		
+		return 1 - negative;
+	}
+	
+	/**
+	 * Return the number of elements added, which is exact as elements already
+	 * present are never added again.
+	 * 
+	 * @see com.sangupta.bloomfilter.BloomFilter#getApproximateElementCount()
+	 */
+	@Override
+	public long getApproximateElementCount() {
+		long count = 0;
+		for(int index = 0; index < this.slices.size(); index++) {
+			count += this.insertions[index];
+		}
+		
+		return count;
+	}
+	
+	/**
+	 * Return the fill ratio of the current slice, the only one still being
+	 * added to.
+	 * 
+	 * @see com.sangupta.bloomfilter.BloomFilter#getFillRatio()
+	 */
+	@Override
+	public double getFillRatio() {
+		return current().getFillRatio();
+	}
+	
+	/**
+	 * Estimate the compound false positive rate given the number of elements
+	 * actually added to each slice.
+	 * 
+	 * @see com.sangupta.bloomfilter.BloomFilter#getCurrentFalsePositiveProbability()
+	 */
+	@Override
+	public double getCurrentFalsePositiveProbability() {
+		double negative = 1;
+		for(int index = 0; index < this.slices.size(); index++) {
+			negative *= 1 - this.slices.get(index).getFalsePositiveProbability(this.insertions[index]);
+		}
+		
+		return 1 - negative;
+	}
+	
+	/**
+	 * Close all slices.
+	 * 
+	 * @see com.sangupta.bloomfilter.BloomFilter#close()
+	 */
+	@Override
+	public void close() {
+		for(AbstractBloomFilter<T> slice : this.slices) {
+			slice.close();
+		}
+	}
+	
+	/**
+	 * Add the element with the given hash to the current slice, unless some
+	 * slice already contains it, and start a new slice when the current one
+	 * is full.
+	 * 
+	 * @param hash64
+	 *            the 64-bit hash of the element
+	 * 
+	 * @return <code>true</code> if the element was added,
+	 *         <code>false</code> if it was already present
+	 */
+	private boolean addHash(long hash64) {
+		if(containsHash(hash64)) {
+			return false;
+		}
+		
+		AbstractBloomFilter<T> current = current();
+		current.addHash(hash64);
+		
+		int index = this.slices.size() - 1;
+		this.insertions[index]++;
+		if(current.getFillRatio() >= this.fillRatio) {
+			addSlice();
+		}
+		
+		return true;
+	}
+	
+	/**
+	 * Check whether any slice contains the element with the given hash. The
+	 * newest slices, holding the most elements, are checked first.
+	 * 
+	 * @param hash64
+	 *            the 64-bit hash of the element
+	 * 
+	 * @return <code>true</code> if some slice contains the element
+	 */
+	private boolean containsHash(long hash64) {
+		for(int index = this.slices.size() - 1; index >= 0; index--) {
+			AbstractBloomFilter<T> slice = this.slices.get(index);
+			if(slice.containsHash(hash64)) {
+				return true;
+			}
+		}
+		
+		return false;
+	}
+	
+	private AbstractBloomFilter<T> current() {
+		return this.slices.get(this.slices.size() - 1);
+	}
+	
+	/**
+	 * Start a new slice, larger and tighter than the last one.
+	 */
+	private void addSlice() {
+		int index = this.slices.size();
+		double fpp = this.falsePositiveProbability * (1 - this.tighteningRatio) * Math.pow(this.tighteningRatio, index);
+		
+		AbstractBloomFilter<T> slice = createSlice(capacity(index), fpp);
+		if(this.charset != null) {
+			slice.setCharset(this.charset);
+		}
+		
+		this.slices.add(slice);
+		if(index == this.insertions.length) {
+			long[] grown = new long[index * 2];
+			System.arraycopy(this.insertions, 0, grown, 0, index);
+			this.insertions = grown;
+		}
+	}
+	
+	/**
+	 * The capacity of the slice at the given index.
+	 */
+	private long capacity(int index) {
+		double capacity = this.initialCapacity * Math.pow(this.growthFactor, index);
+		return capacity >= Long.MAX_VALUE ? Long.MAX_VALUE : (long) capacity;
+	}
+
+}
@@ -0,0 +1,731 @@
+/**
+ *
+ * bloomfilter - Bloom filters for Java
+ * Copyright (c) 2014-2015, Sandeep Gupta
+ * 
+ * http://sangupta.com/projects/bloomfilter
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+
+package com.sangupta.bloomfilter.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.Charset;
+import java.util.BitSet;
+import java.util.Collection;
+
+import com.sangupta.bloomfilter.AbstractBloomFilter;
+import com.sangupta.bloomfilter.BloomFilter;
+import com.sangupta.bloomfilter.core.BitArray;
+import com.sangupta.bloomfilter.core.MMapFileBackedBitArray;
+import com.sangupta.bloomfilter.decompose.Decomposer;
+import com.sangupta.bloomfilter.hash.HashFunction;
+
+/**
+ * A bloom filter that remembers elements for a sliding window of time, for
+ * time-bounded deduplication. The window is split into a number of
+ * generations, each an {@link AbstractBloomFilter}. Elements are added to
+ * the generation of the current period of time, and a value is present if
+ * any generation contains it. When a period ends, the generation holding
+ * the oldest period is cleared in place and reused for the new one, so the
+ * filter never has a moment where it has forgotten everything, and never
+ * allocates after it is created.
+ * 
+ * With a window of <code>w</code> milliseconds and <code>g</code>
+ * generations, each generation covers <code>w / g</code> milliseconds, and
+ * an element is remembered for at least <code>w - w / g</code> and at most
+ * <code>w</code> milliseconds. More generations make the window more exact
+ * at the cost of more probes per lookup.
+ * 
+ * Values are hashed once and probed in every generation. The generations
+ * are held in memory by default. When a directory is given they are kept in
+ * memory-mapped files, along with the time of the current generation, so
+ * that the window survives a restart; generations that expired while the
+ * filter was closed are cleared when it is next used.
+ * 
+ * This class is not thread-safe.
+ * 
+ * @author sangupta
+ * @since 1.0
+ * 
+ * @param <T> the type of objects to be stored in the filter
+ */
+public class SlidingWindowBloomFilter<T> implements BloomFilter<T> {
+	
+	/**
+	 * The default number of generations
+	 */
+	public static final int DEFAULT_GENERATIONS = 4;
+	
+	/**
+	 * The name of the file holding the state of the window, inside the
+	 * directory of a persistent filter
+	 */
+	public static final String STATE_FILE_NAME = "window.state";
+	
+	/**
+	 * Magic number at the start of the state file, "BFSW"
+	 */
+	private static final int MAGIC = 0x42465357;
+	
+	/**
+	 * Version of the state file format
+	 */
+	private static final int VERSION = 1;
+	
+	/**
+	 * Offset of the current period in the state file, after the magic,
+	 * version, number of generations, generation length, number of bits and
+	 * number of hash functions
+	 */
+	private static final long PERIOD_OFFSET = 4 + 4 + 4 + 8 + 8 + 4;
+	
+	/**
+	 * Marks a filter that has not been used yet
+	 */
+	private static final long NO_PERIOD = Long.MIN_VALUE;
+	
+	/**
+	 * The number of milliseconds covered by each generation
+	 */
+	protected final long generationMillis;
+	
+	/**
+	 * The generations; period <code>p</code> is held by generation
+	 * <code>p % generations.length</code>
+	 */
+	protected final AbstractBloomFilter<T>[] generations;
+	
+	/**
+	 * The file holding the current period, or <code>null</code> when the
+	 * filter is held in memory
+	 */
+	private RandomAccessFile stateFile;
+	
+	/**
+	 * The period of the current generation, counted in generations since
+	 * the epoch
+	 */
+	private long period = NO_PERIOD;
+	
+	/**
+	 * Constructor
+	 * 
+	 * @param n
+	 *            the number of elements expected to be inserted in each
+	 *            generation
+	 * 
+	 * @param fpp
+	 *            the expected max false positive rate of the whole filter
+	 * 
+	 * @param windowMillis
+	 *            the length of the window in milliseconds
+	 */
+	public SlidingWindowBloomFilter(long n, double fpp, long windowMillis) {
+		this(n, fpp, windowMillis, DEFAULT_GENERATIONS);
+	}
+	
+	/**
+	 * Create a filter with its generations in memory, created using
+	 * {@link #createGeneration(int, long, double)}.
+	 * 
+	 * @param n
+	 *            the number of elements expected to be inserted in each
+	 *            generation
+	 * 
+	 * @param fpp
+	 *            the expected max false positive rate of the whole filter
+	 * 
+	 * @param windowMillis
+	 *            the length of the window in milliseconds
+	 * 
+	 * @param generations
+	 *            the number of generations, at least two
+	 */
+	public SlidingWindowBloomFilter(long n, double fpp, long windowMillis, int generations) {
+		this(windowMillis, generations, n, fpp);
+		
+		double generationFpp = generationFpp(fpp, generations);
+		for(int index = 0; index < generations; index++) {
+			this.generations[index] = createGeneration(index, n, generationFpp);
+		}
+	}
+	
+	/**
+	 * Create a filter with its generations in memory-mapped files in the
+	 * given directory, using the default {@link Decomposer} and hash
+	 * function.
+	 * 
+	 * @see #SlidingWindowBloomFilter(long, double, long, int, File,
+	 *      Decomposer, HashFunction)
+	 */
+	public SlidingWindowBloomFilter(long n, double fpp, long windowMillis, int generations, File directory) throws IOException {
+		this(n, fpp, windowMillis, generations, directory, null, null);
+	}
+	
+	/**
+	 * Create a filter with its generations in memory-mapped files in the
+	 * given directory, or reopen the filter kept there. A filter must be
+	 * reopened with the same arguments it was created with.
+	 * 
+	 * @param n
+	 *            the number of elements expected to be inserted in each
+	 *            generation
+	 * 
+	 * @param fpp
+	 *            the expected max false positive rate of the whole filter
+	 * 
+	 * @param windowMillis
+	 *            the length of the window in milliseconds
+	 * 
+	 * @param generations
+	 *            the number of generations, at least two
+	 * 
+	 * @param directory
+	 *            the directory to keep the files in, created if needed
+	 * 
+	 * @param decomposer
+	 *            a {@link Decomposer} that helps decompose the given object
+	 * 
+	 * @param hasher
+	 *            the hash function to use. If <code>null</code> is specified
+	 *            the default hash function will be used
+	 * 
+	 * @throws IOException
+	 *             if the files cannot be created or read, or the state file is
+	 *             not valid
+	 * 
+	 * @throws IllegalArgumentException
+	 *             if the filter in the directory was created with different
+	 *             arguments
+	 */
+	public SlidingWindowBloomFilter(long n, double fpp, long windowMillis, int generations, File directory, Decomposer<T> decomposer, HashFunction hasher) throws IOException {
+		this(windowMillis, generations, n, fpp);
+		
+		if(directory == null) {
+			throw new IllegalArgumentException("Directory cannot be null");
+		}
+		
+		if(!directory.isDirectory() && !directory.mkdirs()) {
+			throw new IOException("Unable to create directory: " + directory);
+		}
+		
+		double generationFpp = generationFpp(fpp, generations);
+		long numBits = AbstractBloomFilter.optimalBitSizeOrM(n, generationFpp);
+		int numHashFunctions = AbstractBloomFilter.optimalNumberofHashFunctionsOrK(n, numBits);
+		
+		File file = new File(directory, STATE_FILE_NAME);
+		boolean exists = file.length() > 0;
+		
+		RandomAccessFile state = new RandomAccessFile(file, "rwd");
+		try {
+			if(exists) {
+				if(state.length() < PERIOD_OFFSET + 8 || state.readInt() != MAGIC) {
+					throw new IOException("Not a sliding window state file: " + file);
+				}
+				
+				int version = state.readInt();
+				if(version != VERSION) {
+					throw new IOException("Unsupported sliding window state version: " + version);
+				}
+				
+				if(state.readInt() != generations || state.readLong() != this.generationMillis || state.readLong() != numBits || state.readInt() != numHashFunctions) {
+					throw new IllegalArgumentException("Filter in " + directory + " was created with different arguments");
+				}
+				
+				this.period = state.readLong();
+			} else {
+				state.writeInt(MAGIC);
+				state.writeInt(VERSION);
+				state.writeInt(generations);
+				state.writeLong(this.generationMillis);
+				state.writeLong(numBits);
+				state.writeInt(numHashFunctions);
+				state.writeLong(NO_PERIOD);
+			}
+			
+			for(int index = 0; index < generations; index++) {
+				BitArray bits = new MMapFileBackedBitArray(new File(directory, "generation-" + index + ".bits"), numBits);
+				this.generations[index] = new MMapGeneration<T>(bits, numHashFunctions, decomposer, hasher);
+				if(!exists) {
+					// left over from an earlier filter
+					bits.clear();
+				}
+			}
+		} catch(IOException e) {
+			closeGenerations();
+			state.close();
+			throw e;
+		} catch(RuntimeException e) {
+			closeGenerations();
+			state.close();
+			throw e;
+		}
+		
+		this.stateFile = state;
+	}
+	
+	/**
+	 * Validate the arguments common to all filters. The arguments are in a
+	 * different order only to keep apart the signatures of the constructors.
+	 */
+	@SuppressWarnings("unchecked")
+	private SlidingWindowBloomFilter(long windowMillis, int generations, long n, double fpp) {
+		if(n <= 0) {
+			throw new IllegalArgumentException("Expected insertions cannot be less than or equal to zero");
+		}
+		
+		if(fpp <= 0 || fpp >= 1) {
+			throw new IllegalArgumentException("False positive probability must be between zero and one");
+		}
+		
+		if(generations < 2) {
+			throw new IllegalArgumentException("Number of generations cannot be less than two");
+		}
+		
+		if(windowMillis < generations) {
+			throw new IllegalArgumentException("Window must be at least one millisecond per generation");
+		}
+		
+		this.generationMillis = windowMillis / generations;
+		this.generations = newGenerations(generations);
+	}
+	
+	/**
+	 * Create a new generation of a filter held in memory. The default
+	 * implementation uses an {@link InMemoryBloomFilter}; override to use
+	 * another implementation, a custom {@link Decomposer} or hash function.
+	 * All generations must use the same {@link Decomposer} and hash
+	 * function.
+	 * 
+	 * @param index
+	 *            the index of the generation
+	 * 
+	 * @param capacity
+	 *            the number of elements expected to be inserted in the
+	 *            generation
+	 * 
+	 * @param fpp
+	 *            the expected max false positive rate of the generation
+	 * 
+	 * @return the new generation
+	 */
+	protected AbstractBloomFilter<T> createGeneration(int index, long capacity, double fpp) {
+		return new InMemoryBloomFilter<T>(capacity, fpp);
+	}
+	
+	/**
+	 * Return the current time, used to decide when a generation ends.
+	 * Override to use another clock.
+	 * 
+	 * @return the current time in milliseconds
+	 */
+	protected long currentTimeMillis() {
+		return System.currentTimeMillis();
+	}
+	
+	/**
+	 * Return the number of generations in this filter.
+	 * 
+	 * @return the number of generations
+	 */
+	public int getNumberOfGenerations() {
+		return this.generations.length;
+	}
+	
+	/**
+	 * Return the number of milliseconds covered by each generation.
+	 * 
+	 * @return the length of a generation
+	 */
+	public long getGenerationMillis() {
+		return this.generationMillis;
+	}
+	
+	/**
+	 * Add the given byte array to the current generation.
+	 * 
+	 * @return <code>true</code> if any bit of the current generation was
+	 *         modified
+	 */
+	@Override
+	public boolean add(byte[] bytes) {
+		return addHash(this.generations[0].hash64(bytes));
+	}
+	
+	/**
+	 * Add the given value to the current generation.
+	 * 
+	 * @return <code>true</code> if any bit of the current generation was
+	 *         modified
+	 */
+	@Override
+	public boolean add(T value) {
+		if(value == null) {
+			return false;
+		}
+		
+		return addHash(this.generations[0].hash64(value));
+	}
+	
+	/**
+	 * @see com.sangupta.bloomfilter.BloomFilter#addAll(java.util.Collection)
+	 */
+	@Override
+	public boolean addAll(Collection<T> values) {
+		if(values == null || values.isEmpty()) {
+			return false;
+		}
+		
+		boolean success = true;
+		for(T value : values) {
+			success = add(value) && success;
+		}
+		
+		return success;
+	}
+	
+	/**
+	 * @see com.sangupta.bloomfilter.BloomFilter#addBatch(byte[][])
+	 */
+	@Override
+	public BitSet addBatch(byte[][] keys) {
+		if(keys == null) {
+			throw new IllegalArgumentException("Keys to add to bloom filter cannot be null");
+		}
+		
+		BitSet changed = new BitSet(keys.length);
+		for(int index = 0; index < keys.length; index++) {
+			if(add(keys[index])) {
+				changed.set(index);
+			}
+		}
+		
+		return changed;
+	}
+	
+	/**
+	 * @see com.sangupta.bloomfilter.BloomFilter#contains(byte[])
+	 */
+	@Override
+	public boolean contains(byte[] bytes) {
+		return containsHash(this.generations[0].hash64(bytes));
+	}
+	
+	/**
+	 * @see com.sangupta.bloomfilter.BloomFilter#contains(java.lang.Object)
+	 */
+	@Override
+	public boolean contains(T value) {
+		if(value == null) {
+			return false;
+		}
+		
+		return containsHash(this.generations[0].hash64(value));
+	}
+	
+	/**
+	 * @see com.sangupta.bloomfilter.BloomFilter#containsAll(java.util.Collection)
+	 */
+	@Override
+	public boolean containsAll(Collection<T> values) {
+		if(values == null || values.isEmpty()) {
+			return false;
+		}
+		
+		for(T value : values) {
+			if(!contains(value)) {
+				return false;
+			}
+		}
+		
+		return true;
+	}
+	
+	/**
+	 * @see com.sangupta.bloomfilter.BloomFilter#containsBatch(byte[][])
+	 */
+	@Override
+	public BitSet containsBatch(byte[][] keys) {
+		if(keys == null) {
+			throw new IllegalArgumentException("Keys to test in bloom filter cannot be null");
+		}
+		
+		BitSet present = new BitSet(keys.length);
+		for(int index = 0; index < keys.length; index++) {
+			if(contains(keys[index])) {
+				present.set(index);
+			}
+		}
+		
+		return present;
+	}
+	
+	/**
+	 * @see com.sangupta.bloomfilter.BloomFilter#setCharset(java.lang.String)
+	 */
+	@Override
+	public void setCharset(String charsetName) {
+		if(charsetName == null) {
+			throw new IllegalArgumentException("Charset to be changed to cannot be null");
+		}
+		
+		setCharset(Charset.forName(charsetName));
+	}
+	
+	/**
+	 * Set the {@link Charset} on all generations.
+	 * 
+	 * @see com.sangupta.bloomfilter.BloomFilter#setCharset(java.nio.charset.Charset)
+	 */
+	@Override
+	public void setCharset(Charset charset) {
+		if(charset == null) {
+			throw new IllegalArgumentException("Charset to be changed to cannot be null");
+		}
+		
+		for(AbstractBloomFilter<T> generation : this.generations) {
+			generation.setCharset(charset);
+		}
+	}
+	
+	/**
+	 * @see com.sangupta.bloomfilter.BloomFilter#getObjectDecomposer()
+	 */
+	@Override
+	public Decomposer<T> getObjectDecomposer() {
+		return this.generations[0].getObjectDecomposer();
+	}
+	
+	/**
+	 * Return the number of bits used by all generations together.
+	 * 
+	 * @see com.sangupta.bloomfilter.BloomFilter#getNumberOfBits()
+	 */
+	@Override
+	public long getNumberOfBits() {
+		long bits = 0;
+		for(AbstractBloomFilter<T> generation : this.generations) {
+			bits += generation.getNumberOfBits();
+		}
+		
+		return bits;
+	}
+	
+	/**
+	 * Estimate the false positive rate when the given number of elements
+	 * have been inserted in each generation.
+	 * 
+	 * @see com.sangupta.bloomfilter.BloomFilter#getFalsePositiveProbability(long)
+	 */
+	@Override
+	public double getFalsePositiveProbability(long numInsertedElements) {
+		double negative = 1;
+		for(AbstractBloomFilter<T> generation : this.generations) {
+			negative *= 1 - generation.getFalsePositiveProbability(numInsertedElements);
+		}
+		
+		return 1 - negative;
+	}
+	
+	/**
+	 * Sum the estimates of the generations still in the window. An element
+	 * added again in a later generation is counted once per generation.
+	 * 
+	 * @see com.sangupta.bloomfilter.BloomFilter#getApproximateElementCount()
+	 */
+	@Override
+	public long getApproximateElementCount() {
+		rotate();
+		
+		long count = 0;
+		for(AbstractBloomFilter<T> generation : this.generations) {
+			count += generation.getApproximateElementCount();
+		}
+		
+		return count;
+	}
+	
+	/**
+	 * Return the fill ratio of the current generation, the only one being
+	 * added to.
+	 * 
+	 * @see com.sangupta.bloomfilter.BloomFilter#getFillRatio()
+	 */
+	@Override
+	public double getFillRatio() {
+		return rotate().getFillRatio();
+	}
+	
+	/**
+	 * Estimate the rate of the window from the current rate of each of its
+	 * generations.
+	 * 
+	 * @see com.sangupta.bloomfilter.BloomFilter#getCurrentFalsePositiveProbability()
+	 */
+	@Override
+	public double getCurrentFalsePositiveProbability() {
+		rotate();
+		
+		double negative = 1;
+		for(AbstractBloomFilter<T> generation : this.generations) {
+			negative *= 1 - generation.getCurrentFalsePositiveProbability();
+		}
+		
+		return 1 - negative;
+	}
+	
+	/**
+	 * Close all generations, and the state file of a persistent filter.
+	 * 
+	 * @see com.sangupta.bloomfilter.BloomFilter#close()
+	 */
+	@Override
+	public void close() {
+		closeGenerations();
+		
+		if(this.stateFile != null) {
+			try {
+				this.stateFile.close();
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+	}
+	
+	/**
+	 * Add the element with the given hash to the current generation.
+	 * 
+	 * @param hash64
+	 *            the 64-bit hash of the element
+	 * 
+	 * @return <code>true</code> if any bit was modified
+	 */
+	private boolean addHash(long hash64) {
+		AbstractBloomFilter<T> current = rotate();
+		return current.addHash(hash64);
+	}
+	
+	/**
+	 * Check whether any generation contains the element with the given hash,
+	 * newest first.
+	 * 
+	 * @param hash64
+	 *            the 64-bit hash of the element
+	 * 
+	 * @return <code>true</code> if some generation contains the element
+	 */
+	private boolean containsHash(long hash64) {
+		rotate();
+		
+		int count = this.generations.length;
+		int current = (int) (this.period % count);
+		for(int age = 0; age < count; age++) {
+			AbstractBloomFilter<T> generation = this.generations[(current - age + count) % count];
+			if(generation.containsHash(hash64)) {
+				return true;
+			}
+		}
+		
+		return false;
+	}
+	
+	/**
+	 * Move to the period of the current time, clearing the generations of
+	 * the periods that have ended. A clock that goes back in time leaves the
+	 * current generation in place.
+	 * 
+	 * @return the current generation
+	 */
+	private AbstractBloomFilter<T> rotate() {
+		long now = currentTimeMillis() / this.generationMillis;
+		int count = this.generations.length;
+		
+		if(this.period == NO_PERIOD) {
+			savePeriod(now);
+		} else if(now > this.period) {
+			long first = Math.max(this.period + 1, now - count + 1);
+			for(long period = first; period <= now; period++) {
+				this.generations[(int) (period % count)].clear();
+			}
+			
+			savePeriod(now);
+		}
+		
+		return this.generations[(int) (this.period % count)];
+	}
+	
+	/**
+	 * Set the current period, and write it to the state file of a
+	 * persistent filter once the generations have been cleared.
+	 */
+	private void savePeriod(long period) {
+		this.period = period;
+		if(this.stateFile == null) {
+			return;
+		}
+		
+		try {
+			this.stateFile.seek(PERIOD_OFFSET);
+			this.stateFile.writeLong(period);
+		} catch(IOException e) {
+			throw new RuntimeException("Unable to write sliding window state", e);
+		}
+	}
+	
+	private void closeGenerations() {
+		for(AbstractBloomFilter<T> generation : this.generations) {
+			if(generation != null) {
+				generation.close();
+			}
+		}
+	}
+	
+	/**
+	 * Create the array holding the given number of generations.
+	 */
+	@SuppressWarnings("unchecked")
+	private static <T> AbstractBloomFilter<T>[] newGenerations(int count) {
+		return (AbstractBloomFilter<T>[]) new AbstractBloomFilter<?>[count];
+	}
+	
+	/**
+	 * The probability for each of the given number of generations such that
+	 * the compound probability is the given one.
+	 */
+	private static double generationFpp(double fpp, int generations) {
+		return -Math.expm1(Math.log1p(-fpp) / generations);
+	}
+	
+	/**
+	 * A generation kept in a memory-mapped file.
+	 */
+	private static final class MMapGeneration<T> extends AbstractBloomFilter<T> {
+		
+		MMapGeneration(BitArray bitArray, int numHashFunctions, Decomposer<T> decomposer, HashFunction hasher) {
+			super(bitArray, numHashFunctions, decomposer, hasher);
+		}
+		
+		@Override
+		protected BitArray createBitArray(long numBits) {
+			throw new UnsupportedOperationException("Generations are created over an existing array");
+		}
+		
+	}
+	
+}
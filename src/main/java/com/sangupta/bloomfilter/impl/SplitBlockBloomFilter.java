@@ -0,0 +1,338 @@
+/**
+ *
+ * bloomfilter - Bloom filters for Java
+ * Copyright (c) 2014-2015, Sandeep Gupta
+ * 
+ * http://sangupta.com/projects/bloomfilter
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+
+package com.sangupta.bloomfilter.impl;
+
+import java.util.BitSet;
+
+import com.sangupta.bloomfilter.AbstractBloomFilter;
+import com.sangupta.bloomfilter.core.BitArray;
+import com.sangupta.bloomfilter.core.JavaBitSetArray;
+import com.sangupta.bloomfilter.decompose.Decomposer;
+import com.sangupta.bloomfilter.hash.HashFunction;
+import com.sangupta.bloomfilter.hash.XXHash64HashFunction;
+
+/**
+ * A split block bloom filter as specified by Apache Parquet. The bit array is
+ * divided into blocks of 256 bits, each block being eight 32-bit lanes. An
+ * element selects one block using the upper 32 bits of its hash, and sets
+ * exactly one bit in each of the eight lanes of the block, derived from the
+ * lower 32 bits of the hash.
+ * 
+ * The bits are laid out exactly as in the Parquet bitset: lanes are
+ * little-endian 32-bit words, so bit <code>j</code> of lane <code>i</code> of
+ * block <code>b</code> is bit <code>256 * b + 32 * i + j</code> of the
+ * {@link BitArray}. Combined with the default {@link XXHash64HashFunction}
+ * (seed zero) filters can be exchanged with other Parquet implementations
+ * using {@link #fromBitset(byte[])} and {@link #toBitset()}, or by pointing a
+ * memory-mapped {@link BitArray} at the bitset. For this to work the elements
+ * must be added as their Parquet plain-encoded bytes.
+ * 
+ * @author sangupta
+ * @since 1.0
+ * 
+ * @param <T> the type of object to be stored in the filter
+ */
+public class SplitBlockBloomFilter<T> extends AbstractBloomFilter<T> {
+	
+	/**
+	 * Number of bits in one block
+	 */
+	public static final int BLOCK_BITS = 256;
+	
+	/**
+	 * Number of 32-bit lanes in a block, and also the number of bits set
+	 * for every element
+	 */
+	public static final int LANES = 8;
+	
+	/**
+	 * The minimum size of the bitset in bytes
+	 */
+	public static final int MINIMUM_BYTES = BLOCK_BITS / 8;
+	
+	/**
+	 * The maximum size of the bitset in bytes
+	 */
+	public static final int MAXIMUM_BYTES = 128 * 1024 * 1024;
+	
+	/**
+	 * The hash function used by Parquet
+	 */
+	protected static final HashFunction PARQUET_HASHER = new XXHash64HashFunction();
+	
+	/**
+	 * Odd constants used to derive the bit in each lane from the hash
+	 */
+	private static final int[] SALT = {
+		0x47b6137b, 0x44974d91, 0x8824ad5b, 0xa2b7289d,
+		0x705495c7, 0x2df1424b, 0x9efc4947, 0x5c6bfb31
+	};
+	
+	/**
+	 * Constructor
+	 * 
+	 * @param n
+	 *            the number of elements expected to be inserted in the bloom
+	 *            filter
+	 * 
+	 * @param fpp
+	 *            the expected max false positive rate
+	 */
+	public SplitBlockBloomFilter(long n, double fpp) {
+		this(n, fpp, null, null);
+	}
+	
+	/**
+	 * Constructor
+	 * 
+	 * @param n
+	 *            the number of elements expected to be inserted in the bloom
+	 *            filter
+	 * 
+	 * @param fpp
+	 *            the expected max false positive rate
+	 * 
+	 * @param decomposer
+	 *            a {@link Decomposer} that helps decompose the given object
+	 * 
+	 * @param hasher
+	 *            the hash function to use. If <code>null</code> is specified
+	 *            the {@link XXHash64HashFunction} used by Parquet is used
+	 */
+	public SplitBlockBloomFilter(long n, double fpp, Decomposer<T> decomposer, HashFunction hasher) {
+		this(new JavaBitSetArray(optimalNumBytes(n, fpp) * 8), decomposer, hasher);
+	}
+	
+	/**
+	 * Create a filter over an existing {@link BitArray} holding a split block
+	 * bitset, say a memory-mapped Parquet bitset.
+	 * 
+	 * @param bitArray
+	 *            the bit array, must be a whole number of blocks
+	 * 
+	 * @param decomposer
+	 *            a {@link Decomposer} that helps decompose the given object
+	 * 
+	 * @param hasher
+	 *            the hash function to use. If <code>null</code> is specified
+	 *            the {@link XXHash64HashFunction} used by Parquet is used
+	 */
+	public SplitBlockBloomFilter(BitArray bitArray, Decomposer<T> decomposer, HashFunction hasher) {
+		super(bitArray, LANES, decomposer, hasher != null ? hasher : PARQUET_HASHER);
+		
+		if(bitArray.bitSize() < BLOCK_BITS) {
+			throw new IllegalArgumentException("BitArray must hold at least one block");
+		}
+	}
+	
+	/**
+	 * Create a filter from a Parquet split block bitset.
+	 * 
+	 * @param bitset
+	 *            the bitset bytes, must be a whole number of blocks
+	 * 
+	 * @return the filter, backed by a {@link JavaBitSetArray}
+	 */
+	public static <T> SplitBlockBloomFilter<T> fromBitset(byte[] bitset) {
+		if(bitset == null || bitset.length < MINIMUM_BYTES || bitset.length % MINIMUM_BYTES != 0) {
+			throw new IllegalArgumentException("Bitset must be a whole number of 32-byte blocks");
+		}
+		
+		JavaBitSetArray bits = new JavaBitSetArray(bitset.length * 8);
+		for(int index = 0; index < bitset.length; index++) {
+			int bite = bitset[index] & 0xFF;
+			while(bite != 0) {
+				int bit = Integer.numberOfTrailingZeros(bite);
+				bits.setBit(index * 8L + bit);
+				bite &= bite - 1;
+			}
+		}
+		
+		return new SplitBlockBloomFilter<T>(bits, null, null);
+	}
+	
+	/**
+	 * Return the filter as a Parquet split block bitset.
+	 * 
+	 * @return the bitset bytes
+	 */
+	public byte[] toBitset() {
+		byte[] bitset = new byte[(int) (this.numBitsRequired / 8)];
+		for(int index = 0; index < bitset.length; index++) {
+			int bite = 0;
+			for(int bit = 0; bit < 8; bit++) {
+				if(this.bitArray.getBit(index * 8L + bit)) {
+					bite |= 1 << bit;
+				}
+			}
+			
+			bitset[index] = (byte) bite;
+		}
+		
+		return bitset;
+	}
+	
+	/**
+	 * Compute the size of the bitset in bytes, the same way Parquet does: the
+	 * optimal number of bits for the split block layout, rounded up to a power
+	 * of two number of bytes.
+	 * 
+	 * @param n
+	 *            the number of expected insertions
+	 * 
+	 * @param fpp
+	 *            the maximum false positive rate expected
+	 * 
+	 * @return the number of bytes in the bitset
+	 */
+	public static int optimalNumBytes(long n, double fpp) {
+		double bits = -LANES * n / Math.log(1 - Math.pow(fpp, 1d / LANES));
+		if(bits <= 0 || bits / 8 >= MAXIMUM_BYTES) {
+			return MAXIMUM_BYTES;
+		}
+		
+		int bytes = Math.max(MINIMUM_BYTES, (int) Math.ceil(bits / 8));
+		if((bytes & (bytes - 1)) != 0) {
+			bytes = Integer.highestOneBit(bytes) << 1;
+		}
+		
+		return Math.min(bytes, MAXIMUM_BYTES);
+	}
+	
+	/**
+	 * All constructors supply the {@link BitArray}, so this is only a default
+	 * for subclasses that use the sizing constructors of
+	 * {@link AbstractBloomFilter}.
+	 * 
+	 */
+	@Override
+	protected BitArray createBitArray(long numBits) {
+		return new JavaBitSetArray(numBits);
+	}
+	
+	/**
+	 * @see com.sangupta.bloomfilter.AbstractBloomFilter#getProbeLayoutId()
+	 */
+	@Override
+	protected int getProbeLayoutId() {
+		return PROBE_LAYOUT_SPLIT_BLOCK;
+	}
+	
+	/**
+	 * Set one bit in each lane of the block chosen by the hash. The lanes are
+	 * handled one at a time - the Java Vector API that would let us do all
+	 * eight at once is not available on the Java versions we support.
+	 * 
+	 */
+	@Override
+	protected boolean setBits(BitArray bits, long hash64) {
+		long base = blockOffset(bits, hash64);
+		int key = (int) hash64;
+		
+		boolean bitsChanged = false;
+		for(int lane = 0; lane < LANES; lane++) {
+			bitsChanged |= bits.setBit(base + lane * Integer.SIZE + ((key * SALT[lane]) >>> 27));
+		}
+		
+		return bitsChanged;
+	}
+	
+	/**
+	 * @see #setBits(BitArray, long)
+	 */
+	@Override
+	protected boolean testBits(BitArray bits, long hash64) {
+		long base = blockOffset(bits, hash64);
+		int key = (int) hash64;
+		
+		for(int lane = 0; lane < LANES; lane++) {
+			if(!bits.getBit(base + lane * Integer.SIZE + ((key * SALT[lane]) >>> 27))) {
+				return false;
+			}
+		}
+		
+		return true;
+	}
+	
+	/**
+	 * All probes of an element fall in one block, so the elements are simply
+	 * probed one after the other once the whole batch has been hashed.
+	 * 
+	 */
+	@Override
+	protected void setBitsBatch(BitArray bits, long[] hashes, int count, BitSet changed, int resultOffset) {
+		for(int index = 0; index < count; index++) {
+			if(setBits(bits, hashes[index])) {
+				changed.set(resultOffset + index);
+			}
+		}
+	}
+	
+	/**
+	 * All probes of an element fall in one block, so the elements are simply
+	 * probed one after the other once the whole batch has been hashed.
+	 * 
+	 */
+	@Override
+	protected void testBitsBatch(BitArray bits, long[] hashes, int count, BitSet present, int resultOffset) {
+		for(int index = 0; index < count; index++) {
+			if(testBits(bits, hashes[index])) {
+				present.set(resultOffset + index);
+			}
+		}
+	}
+	
+	/**
+	 * Estimate the false positive rate: an element sets one bit in each of
+	 * the eight 32-bit lanes of its block, and the number of elements per
+	 * block follows a Poisson distribution.
+	 * 
+	 * @param numInsertedElements
+	 *            the number of elements inserted into the filter
+	 * 
+	 * @return the approximated false positive rate
+	 */
+	@Override
+	public double getFalsePositiveProbability(long numInsertedElements) {
+		double numBlocks = this.bitArray.bitSize() / BLOCK_BITS;
+		return BlockedBloomFilter.blockedFalsePositiveProbability(numInsertedElements / numBlocks, Integer.SIZE, 1, LANES);
+	}
+	
+	/**
+	 * Find the offset of the first bit of the block for the given hash.
+	 * 
+	 * @param bits
+	 *            the bit array in use
+	 * 
+	 * @param hash64
+	 *            the 64-bit hash of the element
+	 * 
+	 * @return the index of the first bit in the block
+	 */
+	private static long blockOffset(BitArray bits, long hash64) {
+		long numBlocks = bits.bitSize() / BLOCK_BITS;
+		long block = ((hash64 >>> 32) * numBlocks) >>> 32;
+		return block * BLOCK_BITS;
+	}
+
+}
@@ -0,0 +1,419 @@
+/**
+ *
+ * bloomfilter - Bloom filters for Java
+ * Copyright (c) 2014-2015, Sandeep Gupta
+ * 
+ * http://sangupta.com/projects/bloomfilter
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+
+package com.sangupta.bloomfilter.impl;
+
+import java.io.IOException;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.BitSet;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.sangupta.bloomfilter.AbstractBloomFilter;
+import com.sangupta.bloomfilter.core.BitArray;
+import com.sangupta.bloomfilter.core.BitArrayCodec;
+import com.sangupta.bloomfilter.core.FastBitArray;
+import com.sangupta.bloomfilter.core.PackedCounterArray;
+import com.sangupta.bloomfilter.decompose.Decomposer;
+import com.sangupta.bloomfilter.hash.HashFunction;
+
+/**
+ * A stable bloom filter, after <i>Approximately Detecting Duplicates for
+ * Streaming Data using Stable Bloom Filters</i> by Deng and Rafiei, for
+ * duplicate detection on unbounded streams in fixed memory. Every bit of
+ * the filter is backed by a small cell held in a {@link PackedCounterArray}.
+ * Adding an element first decrements <code>P</code> randomly chosen cells,
+ * then sets the cells of the element to their maximum value. A
+ * {@link FastBitArray} mirrors which cells are non-zero, so that lookups
+ * cost the same as in an {@link InMemoryBloomFilter}.
+ * 
+ * Old elements thus fade out at the rate new ones come in, and the
+ * fraction of non-zero cells converges to a fixed point however many
+ * elements are added, instead of growing until every element is reported
+ * as present. <code>P</code> is chosen so that the false positive rate at
+ * that point is the requested one. In exchange, the filter has false
+ * negatives: an element added long enough ago may be reported as absent.
+ * Larger cells remember elements for longer.
+ * 
+ * The filter cannot be built with a
+ * {@link com.sangupta.bloomfilter.ParallelBloomFilterLoader}, which only
+ * sets bits. This class is not thread-safe.
+ * 
+ * @author sangupta
+ * @since 1.0
+ * 
+ * @param <T> the type of object to be stored in the filter
+ */
+public class StableBloomFilter<T> extends AbstractBloomFilter<T> {
+	
+	/**
+	 * The default number of bits per cell, for a maximum value of three
+	 */
+	public static final int DEFAULT_BITS_PER_CELL = 2;
+	
+	/**
+	 * The cells backing each bit of the filter
+	 */
+	protected final PackedCounterArray cells;
+	
+	/**
+	 * The number of cells decremented for every element added, or
+	 * <code>P</code>
+	 */
+	protected final int decrementsPerInsertion;
+	
+	/**
+	 * Spreads the seeds of filters created at the same instant
+	 */
+	private static final AtomicLong SEED_UNIQUIFIER = new AtomicLong();
+	
+	/**
+	 * State of the generator choosing the cells to decrement, seeded per
+	 * instance so that filters decrement different cells
+	 */
+	private long random = newSeed();
+	
+	/**
+	 * Constructor
+	 * 
+	 * @param numCells
+	 *            the number of cells in the filter
+	 * 
+	 * @param fpp
+	 *            the false positive rate once the filter is stable
+	 */
+	public StableBloomFilter(long numCells, double fpp) {
+		this(numCells, fpp, DEFAULT_BITS_PER_CELL, optimalNumberOfHashFunctions(fpp), null, null);
+	}
+	
+	/**
+	 * Constructor
+	 * 
+	 * @param numCells
+	 *            the number of cells in the filter
+	 * 
+	 * @param fpp
+	 *            the false positive rate once the filter is stable
+	 * 
+	 * @param bitsPerCell
+	 *            the number of bits per cell, one of 2, 4, 8, 16 or 32
+	 * 
+	 * @param numHashFunctions
+	 *            the number of cells set for each element, or <code>K</code>
+	 * 
+	 * @param decomposer
+	 *            a {@link Decomposer} that helps decompose the given object
+	 * 
+	 * @param hasher
+	 *            the hash function to use. If <code>null</code> is specified
+	 *            the default hash function will be used
+	 */
+	public StableBloomFilter(long numCells, double fpp, int bitsPerCell, int numHashFunctions, Decomposer<T> decomposer, HashFunction hasher) {
+		super(new FastBitArray(numCells(numCells, numHashFunctions)), numHashFunctions, decomposer, hasher);
+		
+		this.cells = new PackedCounterArray(numCells, bitsPerCell);
+		this.decrementsPerInsertion = optimalDecrements(numCells, fpp, this.cells.getMaxValue(), numHashFunctions);
+	}
+	
+	/**
+	 * Compute the number of cells to set for each element, the
+	 * <code>log2(1 / p)</code> that is optimal for a bloom filter with the
+	 * given false positive rate.
+	 * 
+	 * @param fpp
+	 *            the expected false positive rate
+	 * 
+	 * @return the number of hash functions
+	 */
+	public static int optimalNumberOfHashFunctions(double fpp) {
+		if(fpp <= 0 || fpp >= 1) {
+			throw new IllegalArgumentException("False positive probability must be between zero and one");
+		}
+		
+		return Math.max(1, (int) Math.round(-Math.log(fpp) / LOG_2));
+	}
+	
+	/**
+	 * Compute the number of cells to decrement for each element added so
+	 * that the false positive rate at the fixed point is the given one.
+	 * With <code>K</code> cells set per element, <code>m</code> cells and a
+	 * maximum cell value of <code>Max</code>, the fraction of zero cells at
+	 * the fixed point is
+	 * <code>(1 / (1 + 1 / (P * (1 / K - 1 / m))))^Max</code>, and the false
+	 * positive rate is one minus that fraction, to the power <code>K</code>.
+	 * 
+	 * @param numCells
+	 *            the number of cells, or <code>m</code>
+	 * 
+	 * @param fpp
+	 *            the false positive rate once the filter is stable
+	 * 
+	 * @param maxValue
+	 *            the maximum value of a cell, or <code>Max</code>
+	 * 
+	 * @param numHashFunctions
+	 *            the number of cells set for each element, or <code>K</code>
+	 * 
+	 * @return the number of cells to decrement, or <code>P</code>, rounded
+	 *         up so that the stable rate does not exceed the given one
+	 */
+	public static int optimalDecrements(long numCells, double fpp, long maxValue, int numHashFunctions) {
+		if(fpp <= 0 || fpp >= 1) {
+			throw new IllegalArgumentException("False positive probability must be between zero and one");
+		}
+		
+		double zeros = 1 - Math.pow(fpp, 1.0 / numHashFunctions);
+		double decrements = 1 / ((Math.pow(zeros, -1.0 / maxValue) - 1) * (1.0 / numHashFunctions - 1.0 / numCells));
+		
+		return (int) Math.max(1, Math.min(numCells, Math.ceil(decrements)));
+	}
+	
+	/**
+	 * Uses a {@link FastBitArray} as the mirror of the cells.
+	 * 
+	 */
+	@Override
+	protected BitArray createBitArray(long numBits) {
+		return new FastBitArray(numBits);
+	}
+	
+	/**
+	 * Return the number of bits used by each cell.
+	 * 
+	 * @return the number of bits per cell
+	 */
+	public int getBitsPerCell() {
+		return this.cells.getBitsPerCounter();
+	}
+	
+	/**
+	 * Return the number of cells decremented for every element added.
+	 * 
+	 * @return the number of decrements, or <code>P</code>
+	 */
+	public int getDecrementsPerInsertion() {
+		return this.decrementsPerInsertion;
+	}
+	
+	/**
+	 * Return the false positive rate the filter converges to as elements are
+	 * added, as given by the fixed point of the fraction of zero cells.
+	 * 
+	 * @return the false positive rate once the filter is stable
+	 */
+	public double getStableFalsePositiveProbability() {
+		double perCell = this.decrementsPerInsertion * (1.0 / this.kOrNumberOfHashFunctions - 1.0 / this.cells.size());
+		double zeros = Math.pow(1 / (1 + 1 / perCell), this.cells.getMaxValue());
+		return Math.pow(1 - zeros, this.kOrNumberOfHashFunctions);
+	}
+	
+	/**
+	 * Estimate the false positive rate when the given number of elements
+	 * have been added: the rate of a bloom filter of the same size while
+	 * that is lower, and the stable rate after that.
+	 * 
+	 * @see com.sangupta.bloomfilter.BloomFilter#getFalsePositiveProbability(long)
+	 */
+	@Override
+	public double getFalsePositiveProbability(long numInsertedElements) {
+		return Math.min(super.getFalsePositiveProbability(numInsertedElements), getStableFalsePositiveProbability());
+	}
+	
+	/**
+	 * Not supported, as the bits of the other filter do not tell the age of
+	 * its cells.
+	 * 
+	 * @throws UnsupportedOperationException
+	 *             always
+	 */
+	@Override
+	public void union(AbstractBloomFilter<T> other) {
+		throw new UnsupportedOperationException("Stable filters cannot be combined bit-wise");
+	}
+	
+	/**
+	 * Not supported, as clearing bits would leave their cells set.
+	 * 
+	 * @throws UnsupportedOperationException
+	 *             always
+	 */
+	@Override
+	public void intersect(AbstractBloomFilter<T> other) {
+		throw new UnsupportedOperationException("Stable filters cannot be combined bit-wise");
+	}
+	
+	/**
+	 * Clear the cells along with the bits.
+	 * 
+	 * @see com.sangupta.bloomfilter.AbstractBloomFilter#clear()
+	 */
+	@Override
+	public void clear() {
+		super.clear();
+		this.cells.clear();
+	}
+	
+	/**
+	 * Not supported, as the bits do not hold the cells.
+	 * 
+	 * @throws UnsupportedOperationException
+	 *             always
+	 */
+	@Override
+	public void writeTo(WritableByteChannel channel, BitArrayCodec codec) throws IOException {
+		throw new UnsupportedOperationException("Stable filters cannot be persisted as bits");
+	}
+	
+	/**
+	 * Not supported, as the bits do not hold the cells.
+	 * 
+	 * @throws UnsupportedOperationException
+	 *             always
+	 */
+	@Override
+	public void readFrom(ReadableByteChannel channel) throws IOException {
+		throw new UnsupportedOperationException("Stable filters cannot be persisted as bits");
+	}
+	
+	/**
+	 * Not supported, as bits set outside the mirror would have no cells,
+	 * and would never decay.
+	 * 
+	 * @return <code>false</code> always
+	 */
+	@Override
+	protected boolean isBitwiseMergeable() {
+		return false;
+	}
+	
+	/**
+	 * Decrement {@link #decrementsPerInsertion} random cells, then set the
+	 * cells of the element to their maximum value and the mirrored bits.
+	 * 
+	 * @throws UnsupportedOperationException
+	 *             if the array is not the mirror of this filter
+	 */
+	@Override
+	protected boolean setBits(BitArray bits, long hash64) {
+		checkMirror(bits);
+		
+		final long numBits = bits.bitSize();
+		
+		for(int i = 0; i < this.decrementsPerInsertion; i++) {
+			long index = (nextRandom() >>> 1) % numBits;
+			long value = this.cells.get(index);
+			if(value > 0) {
+				this.cells.set(index, value - 1);
+				if(value == 1) {
+					bits.clearBit(index);
+				}
+			}
+		}
+		
+		final long maxValue = this.cells.getMaxValue();
+		
+		long combinedHash = hash64;
+		final long hash2 = secondHash(hash64);
+		
+		boolean bitsChanged = false;
+		for (int i = 0; i < this.kOrNumberOfHashFunctions; i++) {
+			long index = (combinedHash & Long.MAX_VALUE) % numBits;
+			this.cells.set(index, maxValue);
+			bitsChanged |= bits.setBit(index);
+			combinedHash += hash2;
+		}
+		
+		return bitsChanged;
+	}
+	
+	/**
+	 * Adds the elements one at a time, so that the cells are updated.
+	 * 
+	 */
+	@Override
+	protected void setBitsBatch(BitArray bits, long[] hashes, int count, BitSet changed, int resultOffset) {
+		checkMirror(bits);
+		
+		for(int index = 0; index < count; index++) {
+			if(setBits(bits, hashes[index])) {
+				changed.set(resultOffset + index);
+			}
+		}
+	}
+	
+	/**
+	 * Check that bits are only set in the mirror of the cells.
+	 * 
+	 * @param bits
+	 *            the array to set bits in
+	 */
+	private void checkMirror(BitArray bits) {
+		if(bits != this.bitArray) {
+			throw new UnsupportedOperationException("Stable filters can only set bits along with their cells");
+		}
+	}
+	
+	/**
+	 * Create a seed for the xorshift generator from the current time, which
+	 * must not be zero.
+	 */
+	private static long newSeed() {
+		long seed = secondHash(System.nanoTime() + SEED_UNIQUIFIER.addAndGet(0x9e3779b97f4a7c15L));
+		return seed != 0 ? seed : 0x2545f4914f6cdd1dL;
+	}
+	
+	/**
+	 * Advance the xorshift generator used to choose the cells to decrement.
+	 */
+	private long nextRandom() {
+		long x = this.random;
+		x ^= x << 13;
+		x ^= x >>> 7;
+		x ^= x << 17;
+		this.random = x;
+		return x;
+	}
+	
+	/**
+	 * Validate the arguments and return the number of cells.
+	 * 
+	 * @param numCells
+	 *            the number of cells in the filter
+	 * 
+	 * @param numHashFunctions
+	 *            the number of cells set for each element
+	 * 
+	 * @return the number of bits in the mirror of the cells
+	 */
+	private static long numCells(long numCells, int numHashFunctions) {
+		if(numCells <= 0) {
+			throw new IllegalArgumentException("Number of cells cannot be less than or equal to zero");
+		}
+		
+		if(numHashFunctions <= 0 || numHashFunctions >= numCells) {
+			throw new IllegalArgumentException("Number of hash functions must be between zero and the number of cells");
+		}
+		
+		return numCells;
+	}
+	
+}
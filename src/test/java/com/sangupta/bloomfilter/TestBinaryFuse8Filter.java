@@ -0,0 +1,148 @@
+/**
+ *
+ * bloomfilter - Bloom filters for Java
+ * Copyright (c) 2014-2015, Sandeep Gupta
+ * 
+ * http://sangupta.com/projects/bloomfilter
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+
+package com.sangupta.bloomfilter;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+import com.sangupta.bloomfilter.impl.BinaryFuse8Filter;
+
+/**
+ * JUnit tests for {@link BinaryFuse8Filter}
+ * 
+ * @author sangupta
+ *
+ */
+public class TestBinaryFuse8Filter {
+	
+	private static final int MAX = 200 * 1000;
+	
+	@Test
+	public void testContains() {
+		List<String> contained = new ArrayList<String>();
+		for(int index = 0; index < MAX; index++) {
+			contained.add(UUID.randomUUID().toString());
+		}
+		
+		// duplicates are allowed
+		contained.addAll(contained.subList(0, 1000));
+		
+		BinaryFuse8Filter<String> filter = new BinaryFuse8Filter<String>(contained);
+		testFilter(filter, contained);
+		
+		// about 9 bits per value
+		double bitsPerValue = (double) filter.getNumberOfBits() / MAX;
+		Assert.assertTrue("Bits per value " + bitsPerValue, bitsPerValue < 9.5);
+	}
+	
+	@Test
+	public void testByteKeys() {
+		byte[][] keys = new byte[MAX][];
+		for(int index = 0; index < MAX; index++) {
+			keys[index] = UUID.randomUUID().toString().getBytes();
+		}
+		
+		BinaryFuse8Filter<String> filter = new BinaryFuse8Filter<String>(keys, null, null);
+		Assert.assertEquals(MAX, filter.containsBatch(keys).cardinality());
+	}
+	
+	@Test
+	public void testPersistence() throws IOException {
+		List<String> contained = new ArrayList<String>();
+		for(int index = 0; index < MAX; index++) {
+			contained.add(UUID.randomUUID().toString());
+		}
+		
+		File file = File.createTempFile("fuse", ".filter");
+		file.deleteOnExit();
+		new BinaryFuse8Filter<String>(contained).writeTo(file);
+		Assert.assertTrue(file.length() < MAX * 9.5 / 8 + 100);
+		
+		BinaryFuse8Filter<String> filter = new BinaryFuse8Filter<String>(file, null, null);
+		try {
+			testFilter(filter, contained);
+			
+			// the number of values is estimated from the size of the file
+			long estimate = filter.getApproximateElementCount();
+			Assert.assertTrue("Estimate " + estimate, estimate >= MAX && estimate < MAX * 1.05);
+		} finally {
+			filter.close();
+		}
+	}
+	
+	@Test(expected = IOException.class)
+	public void testInvalidFile() throws IOException {
+		File file = File.createTempFile("fuse", ".filter");
+		file.deleteOnExit();
+		
+		new BinaryFuse8Filter<String>(file, null, null);
+	}
+	
+	@Test
+	public void testSmallSets() {
+		for(int size = 0; size < 10; size++) {
+			List<String> contained = new ArrayList<String>();
+			for(int index = 0; index < size; index++) {
+				contained.add("value-" + index);
+			}
+			
+			BinaryFuse8Filter<String> filter = new BinaryFuse8Filter<String>(contained);
+			for(String value : contained) {
+				Assert.assertTrue(filter.contains(value));
+			}
+		}
+	}
+	
+	@Test(expected = UnsupportedOperationException.class)
+	public void testImmutable() {
+		new BinaryFuse8Filter<String>(Collections.singletonList("value")).add("another");
+	}
+	
+	private void testFilter(BinaryFuse8Filter<String> filter, List<String> contained) {
+		// no false negatives
+		for(String value : contained) {
+			Assert.assertTrue(filter.contains(value));
+		}
+		
+		// false positives close to 1/256
+		int falsePositives = 0;
+		for(int index = 0; index < MAX; index++) {
+			if(filter.contains(UUID.randomUUID().toString())) {
+				falsePositives++;
+			}
+		}
+		
+		double observed = (double) falsePositives / MAX;
+		Assert.assertTrue("Observed " + observed, observed < 0.0055);
+		Assert.assertTrue("Observed " + observed, observed > 0.0025);
+	}
+
+}
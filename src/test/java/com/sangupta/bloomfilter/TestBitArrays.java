@@ -21,22 +21,34 @@
 
 package com.sangupta.bloomfilter;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.util.BitSet;
+import java.util.Random;
 
 import junit.framework.Assert;
 
 import org.junit.Test;
 
 import com.sangupta.bloomfilter.core.BitArray;
+import com.sangupta.bloomfilter.core.BitArrayCodec;
+import com.sangupta.bloomfilter.core.ConcurrentBitArray;
 import com.sangupta.bloomfilter.core.FastBitArray;
 import com.sangupta.bloomfilter.core.FileBackedBitArray;
 import com.sangupta.bloomfilter.core.JavaBitSetArray;
 import com.sangupta.bloomfilter.core.MMapFileBackedBitArray;
+import com.sangupta.bloomfilter.core.OffHeapBitArray;
 
 /**
  * JUnit tests for various implementations of {@link BitArray}s like 
- * {@link FileBackedBitArray}, {@link JavaBitSetArray} and {@link FastBitArray}
+ * {@link FileBackedBitArray}, {@link JavaBitSetArray}, {@link ConcurrentBitArray},
+ * {@link OffHeapBitArray} and {@link FastBitArray}
  * 
  * @author sangupta
  * @since 1.0
@@ -45,12 +57,146 @@ public class TestBitArrays {
 	
 	private static final int MILLION_ELEMENTS = 1 * 1000 * 1000;
 	
+	private static final int NUM_BACKENDS = 6;
+	
 	@Test
 	public void testJavaBitArray() {
 		BitArray bitArray = new JavaBitSetArray(MILLION_ELEMENTS);
 		testArray(bitArray, MILLION_ELEMENTS);
 	}
 	
+	@Test
+	public void testFastBitArray() {
+		BitArray bitArray = new FastBitArray(MILLION_ELEMENTS);
+		testArray(bitArray, MILLION_ELEMENTS);
+	}
+	
+	@Test
+	public void testFastBitArrayBeyondIntRange() {
+		long numBits = 3L * Integer.MAX_VALUE;
+		BitArray bitArray = new FastBitArray(numBits);
+		Assert.assertEquals(numBits, bitArray.bitSize());
+		
+		long[] indexes = new long[] { 0, Integer.MAX_VALUE, Integer.MAX_VALUE + 1L, 4L * 1024 * 1024 * 1024 + 12345, numBits - 1 };
+		for(long index : indexes) {
+			Assert.assertFalse(bitArray.getBit(index));
+			Assert.assertTrue(bitArray.setBit(index));
+			Assert.assertFalse(bitArray.setBit(index));
+			Assert.assertTrue(bitArray.getBit(index));
+		}
+		
+		// must not alias onto bits below 2^31
+		Assert.assertFalse(bitArray.getBit(12345));
+	}
+	
+	@Test
+	public void testFastBitArrayNextSetBit() {
+		FastBitArray bitArray = new FastBitArray(MILLION_ELEMENTS);
+		Assert.assertEquals(-1, bitArray.nextSetBit(0));
+		
+		long[] indexes = new long[] { 0, 63, 64, 1000, 65536, MILLION_ELEMENTS - 1 };
+		for(long index : indexes) {
+			bitArray.setBit(index);
+		}
+		
+		int found = 0;
+		for(long index = bitArray.nextSetBit(0); index >= 0; index = bitArray.nextSetBit(index + 1)) {
+			Assert.assertEquals(indexes[found++], index);
+		}
+		Assert.assertEquals(indexes.length, found);
+		Assert.assertEquals(-1, bitArray.nextSetBit(MILLION_ELEMENTS));
+	}
+	
+	@Test
+	public void testOptimalBitSizeBeyondIntRange() {
+		long bits = AbstractBloomFilter.optimalBitSizeOrM(1000L * 1000 * 1000, 0.001);
+		Assert.assertTrue(bits > Integer.MAX_VALUE);
+		Assert.assertEquals(10, AbstractBloomFilter.optimalNumberofHashFunctionsOrK(1000L * 1000 * 1000, bits));
+	}
+	
+	@Test
+	public void testConcurrentBitArray() {
+		BitArray bitArray = new ConcurrentBitArray(MILLION_ELEMENTS);
+		testArray(bitArray, MILLION_ELEMENTS);
+	}
+	
+	@Test
+	public void testOffHeapBitArray() throws IOException {
+		BitArray bitArray = new OffHeapBitArray(MILLION_ELEMENTS);
+		try {
+			testArray(bitArray, MILLION_ELEMENTS);
+		} finally {
+			bitArray.close();
+		}
+	}
+	
+	@Test
+	public void testCodecs() throws IOException {
+		// four containers, the last one partial
+		final int numBits = 3 * 65536 + 12345;
+		Random random = new Random(42);
+		
+		FastBitArray[] patterns = new FastBitArray[5];
+		for(int index = 0; index < patterns.length; index++) {
+			patterns[index] = new FastBitArray(numBits);
+		}
+		for(int bit = 0; bit < numBits; bit++) {
+			// sparse, dense, runs and full; the first stays empty
+			if(random.nextInt(1000) == 0) {
+				patterns[1].setBit(bit);
+			}
+			if(random.nextBoolean()) {
+				patterns[2].setBit(bit);
+			}
+			if(bit % 5000 < 1000) {
+				patterns[3].setBit(bit);
+			}
+			patterns[4].setBit(bit);
+		}
+		
+		for(FastBitArray pattern : patterns) {
+			byte[] raw = encode(BitArrayCodec.RAW, pattern);
+			for(BitArrayCodec codec : BitArrayCodec.values()) {
+				byte[] encoded = encode(codec, pattern);
+				
+				// never more than a byte per container over raw
+				Assert.assertTrue(encoded.length <= raw.length + 4);
+				
+				BitArray[] targets = new BitArray[] { new FastBitArray(numBits), new ConcurrentBitArray(numBits) };
+				for(BitArray target : targets) {
+					// decoding stops at the end of the encoding
+					byte[] padded = new byte[encoded.length + 3];
+					System.arraycopy(encoded, 0, padded, 0, encoded.length);
+					InputStream stream = new ByteArrayInputStream(padded);
+					
+					codec.decode(Channels.newChannel(stream), null, target);
+					Assert.assertEquals(3, stream.available());
+					Assert.assertEquals(pattern.bitCount(), target.bitCount());
+					for(int bit = 0; bit < numBits; bit++) {
+						Assert.assertEquals(pattern.getBit(bit), target.getBit(bit));
+					}
+				}
+			}
+		}
+		
+		// sparse and clustered bits shrink
+		Assert.assertTrue(encode(BitArrayCodec.ROARING, patterns[0]).length < 20);
+		Assert.assertTrue(encode(BitArrayCodec.ROARING, patterns[1]).length < numBits / 8 / 10);
+		Assert.assertTrue(encode(BitArrayCodec.ROARING, patterns[3]).length < numBits / 8 / 10);
+		Assert.assertTrue(encode(BitArrayCodec.ROARING, patterns[4]).length < 40);
+		
+		// a truncated encoding fails
+		byte[] encoded = encode(BitArrayCodec.ROARING, patterns[1]);
+		byte[] truncated = new byte[encoded.length - 1];
+		System.arraycopy(encoded, 0, truncated, 0, truncated.length);
+		try {
+			BitArrayCodec.ROARING.decode(Channels.newChannel(new ByteArrayInputStream(truncated)), null, new FastBitArray(numBits));
+			Assert.fail();
+		} catch(IOException e) {
+			// expected
+		}
+	}
+	
 	@Test
 	public void testFileBackedBitArray() {
 		FileBackedBitArray bitArray = null;
@@ -99,15 +245,246 @@ public class TestBitArrays {
 		}
 	}
 	
+	@Test
+	public void testCombineAcrossBackends() throws IOException {
+		// not a multiple of 8 or of 64 bits
+		final int numBits = 10007;
+		
+		for(int target = 0; target < NUM_BACKENDS; target++) {
+			for(int source = 0; source < NUM_BACKENDS; source++) {
+				testCombine(createArray(target, numBits), createArray(source, numBits), numBits, 3, target * NUM_BACKENDS + source);
+			}
+		}
+	}
+	
+	@Test
+	public void testCombineLargeArrays() throws IOException {
+		// spans more than one chunk of words, sparse to keep the files fast
+		for(int backend = 0; backend < NUM_BACKENDS; backend++) {
+			testCombine(createArray(backend, MILLION_ELEMENTS), new FastBitArray(MILLION_ELEMENTS), MILLION_ELEMENTS, 1000, backend);
+			testCombine(new OffHeapBitArray(MILLION_ELEMENTS), createArray(backend, MILLION_ELEMENTS), MILLION_ELEMENTS, 1000, backend);
+		}
+	}
+	
+	@Test
+	public void testCombineIncompatible() throws IOException {
+		for(int backend = 0; backend < NUM_BACKENDS; backend++) {
+			BitArray bitArray = createArray(backend, 1000);
+			try {
+				bitArray.or(new FastBitArray(1001));
+				Assert.fail();
+			} catch(IllegalArgumentException e) {
+				// expected
+			}
+			
+			try {
+				bitArray.and(null);
+				Assert.fail();
+			} catch(IllegalArgumentException e) {
+				// expected
+			}
+			
+			bitArray.close();
+		}
+	}
+	
+	private BitArray createArray(int backend, long numBits) throws IOException {
+		switch(backend) {
+			case 0:
+				return new FastBitArray(numBits);
+				
+			case 1:
+				return new JavaBitSetArray(numBits);
+				
+			case 2:
+				return new ConcurrentBitArray(numBits);
+				
+			case 3:
+				return new OffHeapBitArray(numBits);
+				
+			case 4:
+				File file = File.createTempFile("bitarray", ".bits");
+				file.deleteOnExit();
+				return new FileBackedBitArray(file, numBits);
+				
+			default:
+				File mapped = File.createTempFile("bitarray", ".bits");
+				mapped.deleteOnExit();
+				return new MMapFileBackedBitArray(mapped, numBits);
+		}
+	}
+	
+	private void testCombine(BitArray target, BitArray source, int numBits, int density, long seed) throws IOException {
+		Random random = new Random(seed);
+		BitSet first = new BitSet(numBits);
+		BitSet second = new BitSet(numBits);
+		for(int index = 0; index < numBits; index++) {
+			first.set(index, random.nextInt(density) == 0);
+			second.set(index, random.nextInt(density) == 0);
+		}
+		
+		// the last bit is always exercised
+		first.set(numBits - 1);
+		second.set(numBits - 1);
+		
+		try {
+			setBits(target, first);
+			setBits(source, second);
+			
+			target.or(source);
+			first.or(second);
+			assertBits(first, target, numBits);
+			
+			// keep about half of the bits that are set
+			BitSet third = new BitSet(numBits);
+			for(int index = first.nextSetBit(0); index >= 0; index = first.nextSetBit(index + 1)) {
+				third.set(index, random.nextBoolean());
+			}
+			third.set(random.nextInt(numBits));
+			
+			source.clear();
+			setBits(source, third);
+			
+			target.and(source);
+			first.and(third);
+			assertBits(first, target, numBits);
+			
+			// the source is left untouched
+			assertBits(third, source, numBits);
+		} finally {
+			target.close();
+			source.close();
+		}
+	}
+	
+	private void setBits(BitArray bitArray, BitSet bits) {
+		for(int index = bits.nextSetBit(0); index >= 0; index = bits.nextSetBit(index + 1)) {
+			bitArray.setBit(index);
+		}
+	}
+	
+	private void assertBits(BitSet expected, BitArray bitArray, int numBits) {
+		for(int index = 0; index < numBits; index++) {
+			Assert.assertEquals(expected.get(index), bitArray.getBit(index));
+		}
+		
+		Assert.assertEquals(expected.cardinality(), bitArray.bitCount());
+	}
+	
+	@Test
+	public void testFileBackedBitArrayPageCache() throws IOException {
+		File file = File.createTempFile("bitarray", ".bits");
+		file.deleteOnExit();
+		
+		// a cache of four pages of 512 bits each, far smaller than the array
+		final int numBits = 100003;
+		FileBackedBitArray bitArray = new FileBackedBitArray(file, numBits, 64, 256);
+		
+		BitSet expected = new BitSet(numBits);
+		Random random = new Random(42);
+		for(int operation = 0; operation < 200000; operation++) {
+			int index = random.nextInt(numBits);
+			switch(random.nextInt(3)) {
+				case 0:
+					Assert.assertEquals(!expected.get(index), bitArray.setBit(index));
+					expected.set(index);
+					break;
+					
+				case 1:
+					bitArray.clearBit(index);
+					expected.clear(index);
+					break;
+					
+				default:
+					Assert.assertEquals(expected.get(index), bitArray.getBit(index));
+			}
+		}
+		assertBits(expected, bitArray, numBits);
+		
+		// flushed pages are visible in the file
+		bitArray.flush();
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			for(int index = 0; index < numBits; index += 97) {
+				raf.seek(index >>> 3);
+				Assert.assertEquals(expected.get(index), (raf.read() & (1 << (index & 7))) != 0);
+			}
+		} finally {
+			raf.close();
+		}
+		
+		// pages still cached at close are written back
+		bitArray.setBit(numBits - 1);
+		expected.set(numBits - 1);
+		bitArray.close();
+		
+		bitArray = new FileBackedBitArray(file, numBits);
+		assertBits(expected, bitArray, numBits);
+		bitArray.close();
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void testFileBackedBitArrayInvalidPageSize() throws IOException {
+		File file = File.createTempFile("bitarray", ".bits");
+		file.deleteOnExit();
+		
+		new FileBackedBitArray(file, 1000, 100, 1000);
+	}
+	
+	@Test
+	public void testBitCountOfReopenedFiles() throws IOException {
+		File file = File.createTempFile("bitarray", ".bits");
+		file.deleteOnExit();
+		
+		// a larger array leaves a stray bit in the last byte of the smaller one
+		BitArray bitArray = new MMapFileBackedBitArray(file, 1005);
+		bitArray.setBit(3);
+		bitArray.setBit(999);
+		bitArray.setBit(1004);
+		bitArray.close();
+		
+		// bits are counted lazily, including changes made before
+		bitArray = new FileBackedBitArray(file, 1000);
+		bitArray.setBit(998);
+		Assert.assertEquals(3, bitArray.bitCount());
+		bitArray.close();
+		
+		bitArray = new MMapFileBackedBitArray(file, 1000);
+		Assert.assertEquals(3, bitArray.bitCount());
+		bitArray.close();
+		
+		// without stray bits opening a file does not write to it
+		Assert.assertTrue(file.setLastModified(1000000000000L));
+		new FileBackedBitArray(file, 1000).close();
+		new MMapFileBackedBitArray(file, 1000).close();
+		Assert.assertEquals(1000000000000L, file.lastModified());
+		
+		bitArray = new MMapFileBackedBitArray(file, 1000);
+		bitArray.clear();
+		Assert.assertEquals(0, bitArray.bitCount());
+		bitArray.close();
+	}
+	
 	private void testArray(BitArray bitArray, int maxElements) {
 		// start iterating
 		for(int index = 0; index < maxElements; index++) {
 			Assert.assertFalse(bitArray.getBit(index));
 			bitArray.setBit(index);
 			Assert.assertTrue(bitArray.getBit(index));
+			Assert.assertEquals(1, bitArray.bitCount());
 			bitArray.clearBit(index);
 			Assert.assertFalse(bitArray.getBit(index));
+			bitArray.clearBit(index);
+			Assert.assertEquals(0, bitArray.bitCount());
 		}
 	}
+	
+	private static byte[] encode(BitArrayCodec codec, BitArray bitArray) throws IOException {
+		ByteArrayOutputStream stream = new ByteArrayOutputStream();
+		WritableByteChannel channel = Channels.newChannel(stream);
+		codec.encode(bitArray, channel, null);
+		channel.close();
+		return stream.toByteArray();
+	}
 
-}
\ No newline at end of file
+}
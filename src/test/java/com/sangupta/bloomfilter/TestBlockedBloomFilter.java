@@ -0,0 +1,92 @@
+/**
+ *
+ * bloomfilter - Bloom filters for Java
+ * Copyright (c) 2014-2015, Sandeep Gupta
+ * 
+ * http://sangupta.com/projects/bloomfilter
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+
+package com.sangupta.bloomfilter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+import com.sangupta.bloomfilter.impl.BlockedBloomFilter;
+import com.sangupta.bloomfilter.impl.InMemoryBloomFilter;
+
+/**
+ * JUnit tests for {@link BlockedBloomFilter}
+ * 
+ * @author sangupta
+ *
+ */
+public class TestBlockedBloomFilter {
+	
+	private static final int MAX = 200 * 1000;
+	
+	private static final double FPP = 0.01;
+	
+	@Test
+	public void testBlockedFilter() {
+		BlockedBloomFilter<String> filter = new BlockedBloomFilter<String>(MAX, FPP);
+		
+		List<String> contained = new ArrayList<String>();
+		for(int index = 0; index < MAX; index++) {
+			String uuid = UUID.randomUUID().toString();
+			contained.add(uuid);
+			filter.add(uuid);
+		}
+		
+		// no false negatives
+		for(String uuid : contained) {
+			Assert.assertTrue(filter.contains(uuid));
+		}
+		
+		// observed false positives should be close to the estimate
+		int falsePositives = 0;
+		for(int index = 0; index < MAX; index++) {
+			if(filter.contains(UUID.randomUUID().toString())) {
+				falsePositives++;
+			}
+		}
+		
+		double expected = filter.getFalsePositiveProbability(MAX);
+		double observed = (double) falsePositives / MAX;
+		Assert.assertTrue("Observed " + observed + ", expected " + expected, observed < expected * 1.5);
+		Assert.assertTrue("Observed " + observed + ", expected " + expected, observed > expected / 1.5);
+	}
+	
+	@Test
+	public void testFalsePositiveEstimate() {
+		BlockedBloomFilter<String> blocked = new BlockedBloomFilter<String>(MAX, FPP);
+		InMemoryBloomFilter<String> standard = new InMemoryBloomFilter<String>(MAX, FPP);
+		
+		Assert.assertEquals(0d, blocked.getFalsePositiveProbability(0), 0d);
+		
+		// blocking trades a somewhat higher rate for fewer cache misses
+		double blockedFpp = blocked.getFalsePositiveProbability(MAX);
+		double standardFpp = standard.getFalsePositiveProbability(MAX);
+		Assert.assertTrue(blockedFpp > standardFpp);
+		Assert.assertTrue(blockedFpp < 2 * standardFpp);
+	}
+
+}
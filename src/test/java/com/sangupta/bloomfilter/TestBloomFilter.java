@@ -21,7 +21,12 @@
 
 package com.sangupta.bloomfilter;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.List;
 import java.util.UUID;
 
@@ -29,7 +34,18 @@ import junit.framework.Assert;
 
 import org.junit.Test;
 
+import com.sangupta.bloomfilter.core.BitArray;
+import com.sangupta.bloomfilter.core.BitArrayCodec;
+import com.sangupta.bloomfilter.core.FastBitArray;
+import com.sangupta.bloomfilter.decompose.ByteSink;
+import com.sangupta.bloomfilter.decompose.Decomposer;
+import com.sangupta.bloomfilter.hash.CRC32HashFunction;
+import com.sangupta.bloomfilter.hash.XXHash64HashFunction;
+import com.sangupta.bloomfilter.impl.BlockedBloomFilter;
+import com.sangupta.bloomfilter.impl.ConcurrentInMemoryBloomFilter;
 import com.sangupta.bloomfilter.impl.InMemoryBloomFilter;
+import com.sangupta.bloomfilter.impl.OffHeapBloomFilter;
+import com.sangupta.bloomfilter.impl.SplitBlockBloomFilter;
 
 /**
  * JUnit tests for {@link InMemoryBloomFilter}
@@ -98,5 +114,379 @@ public class TestBloomFilter {
 		}
 		System.out.println("False positives found in two millions: " + fpp);
 	}
+	
+	@Test
+	public void testCustomDecomposer() {
+		// decompose only the part before the colon
+		Decomposer<String> decomposer = new Decomposer<String>() {
+			
+			@Override
+			public void decompose(String object, ByteSink sink) {
+				sink.putChars(object.substring(0, object.indexOf(':')));
+			}
+			
+		};
+		
+		BloomFilter<String> filter = new AbstractBloomFilter<String>(MAX, FPP, decomposer) {
+			
+			@Override
+			protected BitArray createBitArray(long numBits) {
+				return new FastBitArray(numBits);
+			}
+			
+		};
+		for(int index = 0; index < 1000; index++) {
+			filter.add("key" + index + ":first");
+		}
+		
+		// contains must use the same decomposition as add
+		for(int index = 0; index < 1000; index++) {
+			Assert.assertTrue(filter.contains("key" + index + ":second"));
+		}
+	}
+	
+	@Test
+	public void testStreamingHash() {
+		AbstractBloomFilter<String> filter = new InMemoryBloomFilter<String>(MAX, FPP);
+		Assert.assertFalse(filter.isStreamingHash());
+		
+		filter.setStreamingHash(true);
+		Assert.assertTrue(filter.isStreamingHash());
+		
+		List<String> values = new ArrayList<String>();
+		for(int index = 0; index < 1000; index++) {
+			String value = UUID.randomUUID().toString() + index;
+			values.add(value);
+			filter.add(value);
+		}
+		
+		// the byte array path must set the very same bits
+		filter.setStreamingHash(false);
+		for(String value : values) {
+			Assert.assertTrue(filter.contains(value));
+			Assert.assertFalse(filter.add(value));
+		}
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void testStreamingHashUnsupported() {
+		AbstractBloomFilter<String> filter = new AbstractBloomFilter<String>(MAX, FPP, null, new CRC32HashFunction()) {
+			
+			@Override
+			protected BitArray createBitArray(long numBits) {
+				return new FastBitArray(numBits);
+			}
+			
+		};
+		
+		filter.setStreamingHash(true);
+	}
+	
+	@Test
+	public void testBatch() {
+		List<AbstractBloomFilter<String>> filters = new ArrayList<AbstractBloomFilter<String>>();
+		filters.add(new InMemoryBloomFilter<String>(MAX, FPP));
+		filters.add(new BlockedBloomFilter<String>(MAX, FPP));
+		filters.add(new SplitBlockBloomFilter<String>(MAX, FPP));
+		
+		// not a multiple of the batch size
+		int numKeys = 1000;
+		byte[][] added = new byte[numKeys][];
+		byte[][] queried = new byte[2 * numKeys][];
+		for(int index = 0; index < numKeys; index++) {
+			added[index] = UUID.randomUUID().toString().getBytes();
+			queried[2 * index] = added[index];
+			queried[2 * index + 1] = UUID.randomUUID().toString().getBytes();
+		}
+		
+		for(AbstractBloomFilter<String> filter : filters) {
+			BitSet changed = filter.addBatch(added);
+			Assert.assertEquals(numKeys, changed.cardinality());
+			
+			// the batch must agree with the single element operations
+			BitSet present = filter.containsBatch(queried);
+			for(int index = 0; index < queried.length; index++) {
+				Assert.assertEquals(filter.contains(queried[index]), present.get(index));
+			}
+			for(int index = 0; index < numKeys; index++) {
+				Assert.assertTrue(present.get(2 * index));
+				Assert.assertFalse(filter.add(added[index]));
+			}
+			
+			// adding again changes nothing
+			Assert.assertTrue(filter.addBatch(added).isEmpty());
+			
+			// the collection variants use the same batches
+			List<String> values = new ArrayList<String>();
+			for(int index = 0; index < numKeys; index++) {
+				values.add(UUID.randomUUID().toString());
+			}
+			Assert.assertTrue(filter.addAll(values));
+			Assert.assertTrue(filter.containsAll(values));
+			for(String value : values) {
+				Assert.assertTrue(filter.contains(value));
+			}
+		}
+	}
+	
+	@Test
+	public void testElementCountEstimate() {
+		List<AbstractBloomFilter<String>> filters = new ArrayList<AbstractBloomFilter<String>>();
+		filters.add(new InMemoryBloomFilter<String>(MAX, FPP));
+		filters.add(new BlockedBloomFilter<String>(MAX, FPP));
+		filters.add(new SplitBlockBloomFilter<String>(MAX, FPP));
+		
+		int numElements = MAX / 2;
+		for(AbstractBloomFilter<String> filter : filters) {
+			Assert.assertEquals(0, filter.getApproximateElementCount());
+			Assert.assertEquals(0d, filter.getFillRatio());
+			Assert.assertEquals(0d, filter.getCurrentFalsePositiveProbability());
+			
+			for(int index = 0; index < numElements; index++) {
+				filter.add("element-" + index);
+			}
+			
+			long estimate = filter.getApproximateElementCount();
+			Assert.assertTrue("Estimate " + estimate, Math.abs(estimate - numElements) < numElements / 50);
+			Assert.assertEquals((double) filter.bitArray.bitCount() / filter.bitArray.bitSize(), filter.getFillRatio());
+			
+			double expected = filter.getFalsePositiveProbability(numElements);
+			double current = filter.getCurrentFalsePositiveProbability();
+			Assert.assertTrue("Current " + current, Math.abs(current - expected) < expected / 10);
+			
+			// the estimate survives a merge
+			InMemoryBloomFilter<String> merged = new InMemoryBloomFilter<String>(MAX, FPP);
+			if(filter instanceof InMemoryBloomFilter) {
+				merged.union(filter);
+				Assert.assertEquals(estimate, merged.getApproximateElementCount());
+			}
+		}
+	}
+	
+	@Test
+	public void testUnionIntersect() {
+		InMemoryBloomFilter<String> first = new InMemoryBloomFilter<String>(MAX, FPP);
+		InMemoryBloomFilter<String> second = new InMemoryBloomFilter<String>(MAX, FPP);
+		InMemoryBloomFilter<String> both = new InMemoryBloomFilter<String>(MAX, FPP);
+		
+		List<String> common = new ArrayList<String>();
+		for(int index = 0; index < 10000; index++) {
+			String shared = UUID.randomUUID().toString();
+			common.add(shared);
+			first.add(shared);
+			second.add(shared);
+			
+			String value = UUID.randomUUID().toString();
+			first.add(value);
+			both.add(value);
+			
+			value = UUID.randomUUID().toString();
+			second.add(value);
+			both.add(value);
+		}
+		
+		// intersecting a copy keeps the common elements
+		InMemoryBloomFilter<String> intersection = new InMemoryBloomFilter<String>(MAX, FPP);
+		intersection.union(first);
+		intersection.intersect(second);
+		Assert.assertTrue(intersection.containsAll(common));
+		
+		// the union sets exactly the bits of adding all elements
+		both.addAll(common);
+		first.union(second);
+		for(long index = 0; index < first.bitArray.bitSize(); index++) {
+			Assert.assertEquals(both.bitArray.getBit(index), first.bitArray.getBit(index));
+		}
+	}
+	
+	@Test
+	public void testUnionIncompatible() {
+		InMemoryBloomFilter<String> filter = new InMemoryBloomFilter<String>(MAX, FPP);
+		
+		List<AbstractBloomFilter<String>> others = new ArrayList<AbstractBloomFilter<String>>();
+		others.add(new InMemoryBloomFilter<String>(2 * MAX, FPP));
+		others.add(new BlockedBloomFilter<String>(MAX, FPP));
+		
+		for(AbstractBloomFilter<String> other : others) {
+			try {
+				filter.union(other);
+				Assert.fail();
+			} catch(IllegalArgumentException e) {
+				// expected
+			}
+		}
+		
+		OffHeapBloomFilter<String> murmur = new OffHeapBloomFilter<String>(MAX, FPP);
+		OffHeapBloomFilter<String> crc = new OffHeapBloomFilter<String>(MAX, FPP, 0, null, new CRC32HashFunction());
+		try {
+			murmur.intersect(crc);
+			Assert.fail();
+		} catch(IllegalArgumentException e) {
+			// expected
+		} finally {
+			murmur.close();
+			crc.close();
+		}
+		
+		// the same hash function with a different seed sets different bits
+		OffHeapBloomFilter<String> seeded = new OffHeapBloomFilter<String>(MAX, FPP, 0, null, new XXHash64HashFunction(1));
+		OffHeapBloomFilter<String> reseeded = new OffHeapBloomFilter<String>(MAX, FPP, 0, null, new XXHash64HashFunction(2));
+		try {
+			seeded.union(reseeded);
+			Assert.fail();
+		} catch(IllegalArgumentException e) {
+			// expected
+		} finally {
+			seeded.close();
+			reseeded.close();
+		}
+	}
+	
+	@Test
+	public void testWriteReadFile() throws IOException {
+		InMemoryBloomFilter<String> filter = new InMemoryBloomFilter<String>(MAX, FPP);
+		for(int index = 0; index < 10000; index++) {
+			filter.add("element-" + index);
+		}
+		
+		File file = File.createTempFile("bloom", ".filter");
+		file.deleteOnExit();
+		filter.writeTo(file);
+		
+		// the raw bits span several frames
+		Assert.assertTrue(file.length() > (filter.getNumberOfBits() + 63) / 64 * 8 + 56);
+		
+		InMemoryBloomFilter<String> read = new InMemoryBloomFilter<String>(MAX, FPP);
+		read.add("not-in-file");
+		read.readFrom(file);
+		Assert.assertEquals(filter.bitArray.bitCount(), read.bitArray.bitCount());
+		for(long index = 0; index < filter.bitArray.bitSize(); index++) {
+			Assert.assertEquals(filter.bitArray.getBit(index), read.bitArray.getBit(index));
+		}
+		
+		// the filter can be written after other data in a channel
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try {
+			FileChannel channel = raf.getChannel();
+			channel.position(100);
+			filter.writeTo(channel);
+			
+			channel.position(100);
+			read.bitArray.clear();
+			read.readFrom(channel);
+			Assert.assertEquals(filter.bitArray.bitCount(), read.bitArray.bitCount());
+		} finally {
+			raf.close();
+		}
+	}
+	
+	@Test
+	public void testWriteReadCompressed() throws IOException {
+		InMemoryBloomFilter<String> filter = new InMemoryBloomFilter<String>(MAX, FPP);
+		for(int index = 0; index < 1000; index++) {
+			filter.add("element-" + index);
+		}
+		
+		File raw = File.createTempFile("bloom", ".filter");
+		raw.deleteOnExit();
+		filter.writeTo(raw);
+		
+		File compressed = File.createTempFile("bloom", ".filter");
+		compressed.deleteOnExit();
+		filter.writeTo(compressed, BitArrayCodec.ROARING);
+		
+		// a lightly filled filter is mostly zeros
+		Assert.assertTrue(compressed.length() < raw.length() / 10);
+		
+		InMemoryBloomFilter<String> read = new InMemoryBloomFilter<String>(MAX, FPP);
+		read.readFrom(compressed);
+		Assert.assertEquals(filter.bitArray.bitCount(), read.bitArray.bitCount());
+		for(int index = 0; index < 1000; index++) {
+			Assert.assertTrue(read.contains("element-" + index));
+		}
+	}
+	
+	@Test
+	public void testReadAcrossClasses() throws IOException {
+		OffHeapBloomFilter<String> filter = new OffHeapBloomFilter<String>(MAX, FPP);
+		for(int index = 0; index < 1000; index++) {
+			filter.add("element-" + index);
+		}
+		
+		File file = File.createTempFile("bloom", ".filter");
+		file.deleteOnExit();
+		filter.writeTo(file);
+		filter.close();
+		
+		// filters with the same probe layout read each other's files
+		List<AbstractBloomFilter<String>> others = new ArrayList<AbstractBloomFilter<String>>();
+		others.add(new InMemoryBloomFilter<String>(MAX, FPP));
+		others.add(new ConcurrentInMemoryBloomFilter<String>(MAX, FPP));
+		
+		for(AbstractBloomFilter<String> other : others) {
+			other.readFrom(file);
+			for(int index = 0; index < 1000; index++) {
+				Assert.assertTrue(other.contains("element-" + index));
+			}
+			other.close();
+		}
+	}
+	
+	@Test
+	public void testReadMismatchedFile() throws IOException {
+		OffHeapBloomFilter<String> filter = new OffHeapBloomFilter<String>(MAX, FPP, 0, null, new XXHash64HashFunction(1));
+		filter.add("element");
+		
+		File file = File.createTempFile("bloom", ".filter");
+		file.deleteOnExit();
+		filter.writeTo(file);
+		filter.close();
+		
+		List<AbstractBloomFilter<String>> others = new ArrayList<AbstractBloomFilter<String>>();
+		others.add(new OffHeapBloomFilter<String>(2 * MAX, FPP, 0, null, new XXHash64HashFunction(1)));
+		others.add(new OffHeapBloomFilter<String>(MAX, FPP, 0, null, new XXHash64HashFunction(2)));
+		others.add(new OffHeapBloomFilter<String>(MAX, FPP, 0, null, new CRC32HashFunction()));
+		others.add(new InMemoryBloomFilter<String>(MAX, FPP));
+		others.add(new OffHeapBloomFilter<String>(MAX, FPP, 0, null, new XXHash64HashFunction(1)) {
+			
+			@Override
+			protected int getProbeLayoutId() {
+				return PROBE_LAYOUT_BLOCKED;
+			}
+			
+		});
+		
+		for(AbstractBloomFilter<String> other : others) {
+			try {
+				other.readFrom(file);
+				Assert.fail();
+			} catch(IOException e) {
+				// expected
+			} finally {
+				other.close();
+			}
+		}
+		
+		// a damaged bit fails the checksum
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try {
+			raf.seek(file.length() / 2);
+			int value = raf.read();
+			raf.seek(file.length() / 2);
+			raf.write(value ^ 0x10);
+		} finally {
+			raf.close();
+		}
+		
+		OffHeapBloomFilter<String> damaged = new OffHeapBloomFilter<String>(MAX, FPP, 0, null, new XXHash64HashFunction(1));
+		try {
+			damaged.readFrom(file);
+			Assert.fail();
+		} catch(IOException e) {
+			Assert.assertEquals(0, damaged.bitArray.bitCount());
+		} finally {
+			damaged.close();
+		}
+	}
 
-}
\ No newline at end of file
+}
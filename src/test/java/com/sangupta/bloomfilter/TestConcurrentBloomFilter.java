@@ -0,0 +1,89 @@
+/**
+ *
+ * bloomfilter - Bloom filters for Java
+ * Copyright (c) 2014-2015, Sandeep Gupta
+ * 
+ * http://sangupta.com/projects/bloomfilter
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+
+package com.sangupta.bloomfilter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+import com.sangupta.bloomfilter.impl.ConcurrentInMemoryBloomFilter;
+
+/**
+ * JUnit tests for {@link ConcurrentInMemoryBloomFilter}
+ * 
+ * @author sangupta
+ *
+ */
+public class TestConcurrentBloomFilter {
+	
+	private static final int NUM_THREADS = 8;
+	
+	private static final int PER_THREAD = 50 * 1000;
+	
+	@Test
+	public void testConcurrentAdd() throws InterruptedException {
+		final BloomFilter<String> filter = new ConcurrentInMemoryBloomFilter<String>(NUM_THREADS * PER_THREAD, 0.01);
+		
+		final List<List<String>> values = new ArrayList<List<String>>();
+		for(int thread = 0; thread < NUM_THREADS; thread++) {
+			List<String> list = new ArrayList<String>();
+			for(int index = 0; index < PER_THREAD; index++) {
+				list.add(UUID.randomUUID().toString());
+			}
+			values.add(list);
+		}
+		
+		List<Thread> threads = new ArrayList<Thread>();
+		for(int thread = 0; thread < NUM_THREADS; thread++) {
+			final List<String> mine = values.get(thread);
+			Thread worker = new Thread() {
+				
+				@Override
+				public void run() {
+					for(String value : mine) {
+						filter.add(value);
+					}
+				}
+				
+			};
+			
+			threads.add(worker);
+			worker.start();
+		}
+		
+		for(Thread worker : threads) {
+			worker.join();
+		}
+		
+		for(List<String> list : values) {
+			for(String value : list) {
+				Assert.assertTrue(filter.contains(value));
+			}
+		}
+	}
+
+}
@@ -0,0 +1,162 @@
+/**
+ *
+ * bloomfilter - Bloom filters for Java
+ * Copyright (c) 2014-2015, Sandeep Gupta
+ * 
+ * http://sangupta.com/projects/bloomfilter
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+
+package com.sangupta.bloomfilter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+import com.sangupta.bloomfilter.impl.CountingBloomFilter;
+
+/**
+ * JUnit tests for {@link CountingBloomFilter}
+ * 
+ * @author sangupta
+ *
+ */
+public class TestCountingBloomFilter {
+	
+	private static final int MAX = 100 * 1000;
+	
+	private static final double FPP = 0.01;
+	
+	@Test
+	public void testAddRemove() {
+		CountingBloomFilter<String> filter = new CountingBloomFilter<String>(MAX, FPP);
+		
+		List<String> kept = new ArrayList<String>();
+		List<String> removed = new ArrayList<String>();
+		for(int index = 0; index < MAX; index++) {
+			String uuid = UUID.randomUUID().toString();
+			(index % 2 == 0 ? kept : removed).add(uuid);
+			filter.add(uuid);
+		}
+		
+		for(String uuid : removed) {
+			Assert.assertTrue(filter.remove(uuid));
+		}
+		
+		// no false negatives for the elements still present
+		for(String uuid : kept) {
+			Assert.assertTrue(filter.contains(uuid));
+		}
+		
+		// removed elements are gone, bar false positives
+		int present = 0;
+		for(String uuid : removed) {
+			if(filter.contains(uuid)) {
+				present++;
+			}
+		}
+		Assert.assertTrue("Present after removal: " + present, present < MAX / 2 * FPP * 2);
+		
+		for(String uuid : kept) {
+			Assert.assertTrue(filter.remove(uuid));
+		}
+		
+		// everything removed, the filter is empty again
+		Assert.assertEquals(0, filter.containsBatch(new byte[][] { kept.get(0).getBytes(), removed.get(0).getBytes() }).cardinality());
+		Assert.assertFalse(filter.remove("not-present"));
+	}
+	
+	@Test
+	public void testDuplicates() {
+		CountingBloomFilter<String> filter = new CountingBloomFilter<String>(MAX, FPP);
+		
+		filter.add("duplicate");
+		filter.add("duplicate");
+		
+		Assert.assertTrue(filter.remove("duplicate"));
+		Assert.assertTrue(filter.contains("duplicate"));
+		Assert.assertTrue(filter.remove("duplicate"));
+		Assert.assertFalse(filter.contains("duplicate"));
+	}
+
+	@Test
+	public void testClear() {
+		CountingBloomFilter<String> filter = new CountingBloomFilter<String>(MAX, FPP);
+
+		filter.add("cleared");
+		filter.clear();
+		Assert.assertFalse(filter.contains("cleared"));
+		Assert.assertEquals(0, filter.getApproximateElementCount());
+
+		// the counters were cleared too, so a single add is undone by one removal
+		filter.add("cleared");
+		Assert.assertTrue(filter.remove("cleared"));
+		Assert.assertFalse(filter.contains("cleared"));
+	}
+
+	@Test
+	public void testBatch() {
+		CountingBloomFilter<String> filter = new CountingBloomFilter<String>(MAX, FPP, 8);
+		Assert.assertEquals(8, filter.getBitsPerCounter());
+		
+		byte[][] keys = new byte[1000][];
+		for(int index = 0; index < keys.length; index++) {
+			keys[index] = UUID.randomUUID().toString().getBytes();
+		}
+		
+		filter.addBatch(keys);
+		filter.addBatch(keys);
+		
+		// batches must update the counters
+		for(byte[] key : keys) {
+			Assert.assertTrue(filter.remove(key));
+		}
+		Assert.assertEquals(keys.length, filter.containsBatch(keys).cardinality());
+		for(byte[] key : keys) {
+			Assert.assertTrue(filter.remove(key));
+		}
+		Assert.assertEquals(0, filter.containsBatch(keys).cardinality());
+	}
+	
+	@Test
+	public void testParallelLoadRefused() {
+		CountingBloomFilter<String> filter = new CountingBloomFilter<String>(MAX, FPP);
+		List<String> values = new ArrayList<String>();
+		for(int index = 0; index < 10000; index++) {
+			values.add("k" + index);
+		}
+		
+		try {
+			new ParallelBloomFilterLoader<String>(2).load(filter, values);
+			Assert.fail();
+		} catch(UnsupportedOperationException e) {
+			// expected
+		}
+		
+		// nothing was loaded, and adding sequentially keeps removals exact
+		Assert.assertEquals(0, filter.getApproximateElementCount());
+		filter.addAll(values);
+		Assert.assertTrue(filter.remove("k0"));
+		for(int index = 1; index < values.size(); index++) {
+			Assert.assertTrue(filter.contains(values.get(index)));
+		}
+	}
+
+}
@@ -0,0 +1,254 @@
+/**
+ *
+ * bloomfilter - Bloom filters for Java
+ * Copyright (c) 2014-2015, Sandeep Gupta
+ * 
+ * http://sangupta.com/projects/bloomfilter
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+
+package com.sangupta.bloomfilter;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+import com.sangupta.bloomfilter.core.FingerprintArray;
+import com.sangupta.bloomfilter.core.InMemoryFingerprintArray;
+import com.sangupta.bloomfilter.core.MMapFileBackedFingerprintArray;
+import com.sangupta.bloomfilter.hash.CRC32HashFunction;
+import com.sangupta.bloomfilter.impl.CuckooFilter;
+import com.sangupta.bloomfilter.impl.InMemoryBloomFilter;
+
+/**
+ * JUnit tests for {@link CuckooFilter} and the {@link FingerprintArray}s
+ * 
+ * @author sangupta
+ *
+ */
+public class TestCuckooFilter {
+	
+	private static final int MAX = 100 * 1000;
+	
+	private static final double FPP = 0.001;
+	
+	@Test
+	public void testAddContainsRemove() {
+		CuckooFilter<String> filter = new CuckooFilter<String>(MAX, FPP);
+		Assert.assertEquals(13, filter.getBitsPerFingerprint());
+		
+		List<String> kept = new ArrayList<String>();
+		List<String> removed = new ArrayList<String>();
+		for(int index = 0; index < MAX; index++) {
+			String uuid = UUID.randomUUID().toString();
+			(index % 2 == 0 ? kept : removed).add(uuid);
+			Assert.assertTrue(filter.add(uuid));
+		}
+		
+		Assert.assertEquals(MAX, filter.getApproximateElementCount());
+		for(String uuid : removed) {
+			Assert.assertTrue(filter.remove(uuid));
+		}
+		Assert.assertEquals(MAX / 2, filter.getApproximateElementCount());
+		Assert.assertEquals((double) (MAX / 2) / (filter.getNumberOfBuckets() * CuckooFilter.BUCKET_SIZE), filter.getFillRatio());
+		
+		// no false negatives for the elements still present
+		for(String uuid : kept) {
+			Assert.assertTrue(filter.contains(uuid));
+		}
+		
+		// removed elements are gone, bar false positives
+		int present = 0;
+		for(String uuid : removed) {
+			if(filter.contains(uuid)) {
+				present++;
+			}
+		}
+		Assert.assertTrue("Present after removal: " + present, present < MAX / 2 * FPP * 2);
+		
+		// observed false positives within the estimate
+		int falsePositives = 0;
+		for(int index = 0; index < MAX; index++) {
+			if(filter.contains(UUID.randomUUID().toString())) {
+				falsePositives++;
+			}
+		}
+		
+		double observed = (double) falsePositives / MAX;
+		Assert.assertTrue("Observed " + observed, observed < filter.getFalsePositiveProbability(MAX) * 1.5);
+	}
+	
+	@Test
+	public void testFull() {
+		CuckooFilter<String> filter = new CuckooFilter<String>(1000, 0.01);
+		
+		List<String> added = new ArrayList<String>();
+		try {
+			while(true) {
+				String uuid = UUID.randomUUID().toString();
+				filter.add(uuid);
+				added.add(uuid);
+			}
+		} catch(IllegalStateException e) {
+			// expected
+		}
+		
+		// the table is filled well beyond its nominal capacity
+		Assert.assertTrue(added.size() > filter.getNumberOfBuckets() * CuckooFilter.BUCKET_SIZE * 0.9);
+		
+		// and nothing was lost by the failed insertion
+		for(String uuid : added) {
+			Assert.assertTrue(filter.contains(uuid));
+		}
+	}
+	
+	@Test
+	public void testDuplicates() {
+		CuckooFilter<String> filter = new CuckooFilter<String>(MAX, FPP);
+		
+		filter.add("duplicate");
+		filter.add("duplicate");
+		
+		Assert.assertTrue(filter.remove("duplicate"));
+		Assert.assertTrue(filter.contains("duplicate"));
+		Assert.assertTrue(filter.remove("duplicate"));
+		Assert.assertFalse(filter.contains("duplicate"));
+		Assert.assertFalse(filter.remove("duplicate"));
+	}
+	
+	@Test
+	public void testNarrowHashFunction() {
+		// CRC32 fills only the low 32 bits of the hash
+		CuckooFilter<String> filter = new CuckooFilter<String>(MAX, FPP, null, new CRC32HashFunction());
+		
+		List<String> added = new ArrayList<String>();
+		for(int index = 0; index < MAX; index++) {
+			String uuid = UUID.randomUUID().toString();
+			Assert.assertTrue(filter.add(uuid));
+			added.add(uuid);
+		}
+		
+		for(String uuid : added) {
+			Assert.assertTrue(filter.contains(uuid));
+		}
+		
+		int falsePositives = 0;
+		for(int index = 0; index < MAX; index++) {
+			if(filter.contains(UUID.randomUUID().toString())) {
+				falsePositives++;
+			}
+		}
+		
+		double observed = (double) falsePositives / MAX;
+		Assert.assertTrue("Observed " + observed, observed < FPP * 2);
+	}
+	
+	@Test
+	public void testPersistence() throws IOException {
+		File file = File.createTempFile("cuckoo", ".fingerprints");
+		file.deleteOnExit();
+		
+		long numSlots = CuckooFilter.optimalNumberOfBuckets(MAX) * CuckooFilter.BUCKET_SIZE;
+		int bits = CuckooFilter.optimalFingerprintBits(FPP);
+		
+		List<String> contained = new ArrayList<String>();
+		CuckooFilter<String> filter = new CuckooFilter<String>(new MMapFileBackedFingerprintArray(file, numSlots, bits), null, null);
+		for(int index = 0; index < MAX; index++) {
+			String uuid = UUID.randomUUID().toString();
+			contained.add(uuid);
+			filter.add(uuid);
+		}
+		filter.close();
+		
+		filter = new CuckooFilter<String>(new MMapFileBackedFingerprintArray(file, numSlots, bits), null, null);
+		try {
+			// the count is recovered from the file
+			Assert.assertEquals(MAX, filter.getApproximateElementCount());
+			for(String uuid : contained) {
+				Assert.assertTrue(filter.contains(uuid));
+			}
+		} finally {
+			filter.close();
+		}
+	}
+	
+	@Test
+	public void testFingerprintArrays() throws IOException {
+		for(int bits = 2; bits <= 32; bits++) {
+			testArray(new InMemoryFingerprintArray(1001, bits));
+			
+			File file = File.createTempFile("fingerprints", ".bin");
+			file.deleteOnExit();
+			testArray(new MMapFileBackedFingerprintArray(file, 1001, bits));
+		}
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void testPartialBucket() {
+		new CuckooFilter<String>(new InMemoryFingerprintArray(13, 8), null, null);
+	}
+	
+	@Test
+	public void testSpace() {
+		// below 0.3% a cuckoo filter is smaller than a bloom filter
+		for(double fpp : new double[] { 0.001, 0.0001, 0.00001 }) {
+			CuckooFilter<String> cuckoo = new CuckooFilter<String>(MAX, fpp);
+			InMemoryBloomFilter<String> bloom = new InMemoryBloomFilter<String>(MAX, fpp);
+			
+			Assert.assertTrue("At " + fpp, cuckoo.getNumberOfBits() < bloom.getNumberOfBits());
+			
+			for(int index = 0; index < MAX; index++) {
+				cuckoo.add(UUID.randomUUID().toString());
+			}
+		}
+	}
+	
+	private void testArray(FingerprintArray array) throws IOException {
+		try {
+			int mask = (int) ((1L << array.getBitsPerFingerprint()) - 1);
+			for(int index = 0; index < array.size(); index++) {
+				Assert.assertEquals(0, array.get(index));
+				array.set(index, (index * 0x9E3779B1) & mask);
+			}
+			
+			for(int index = 0; index < array.size(); index++) {
+				Assert.assertEquals((index * 0x9E3779B1) & mask, array.get(index));
+			}
+			
+			// overwriting a slot leaves its neighbours alone
+			for(int index = 0; index < array.size(); index += 2) {
+				array.set(index, mask);
+			}
+			for(int index = 0; index < array.size(); index++) {
+				Assert.assertEquals(index % 2 == 0 ? mask : (index * 0x9E3779B1) & mask, array.get(index));
+			}
+			
+			array.clear();
+			for(int index = 0; index < array.size(); index++) {
+				Assert.assertEquals(0, array.get(index));
+			}
+		} finally {
+			array.close();
+		}
+	}
+
+}
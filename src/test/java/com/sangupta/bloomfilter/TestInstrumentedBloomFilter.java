@@ -0,0 +1,184 @@
+/**
+ *
+ * bloomfilter - Bloom filters for Java
+ * Copyright (c) 2014-2015, Sandeep Gupta
+ * 
+ * http://sangupta.com/projects/bloomfilter
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+
+package com.sangupta.bloomfilter;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+import com.sangupta.bloomfilter.impl.InMemoryBloomFilter;
+
+/**
+ * JUnit tests for {@link InstrumentedBloomFilter}
+ * 
+ * @author sangupta
+ *
+ */
+public class TestInstrumentedBloomFilter {
+	
+	private static final int MAX = 100 * 1000;
+	
+	private static final double FPP = 0.01;
+	
+	@Test
+	public void testCounters() {
+		InstrumentedBloomFilter<String> filter = new InstrumentedBloomFilter<String>(new InMemoryBloomFilter<String>(MAX, FPP), 8);
+		
+		int numElements = 1000;
+		for(int index = 0; index < numElements; index++) {
+			Assert.assertTrue(filter.add("element-" + index));
+		}
+		
+		// adding again changes nothing
+		for(int index = 0; index < numElements / 2; index++) {
+			Assert.assertFalse(filter.add("element-" + index));
+		}
+		
+		int positives = 0;
+		for(int index = 0; index < numElements; index++) {
+			if(filter.contains("element-" + index)) {
+				positives++;
+			}
+			if(filter.contains("missing-" + index)) {
+				positives++;
+			}
+		}
+		
+		Assert.assertEquals(numElements + numElements / 2, filter.getAddCount());
+		Assert.assertEquals(numElements, filter.getAddChangedCount());
+		Assert.assertEquals(2 * numElements, filter.getContainsCount());
+		Assert.assertEquals(positives, filter.getPositiveCount());
+		Assert.assertEquals((double) positives / (2 * numElements), filter.getPositiveRate());
+		
+		// one call in eight is timed
+		Assert.assertEquals(filter.getAddCount() / 8, sum(filter.getAddLatencyHistogram()));
+		Assert.assertEquals(filter.getContainsCount() / 8, sum(filter.getContainsLatencyHistogram()));
+		Assert.assertTrue(filter.getContainsLatency99thPercentileNanos() > 0);
+		
+		// batches count every key
+		byte[][] keys = new byte[10][];
+		for(int index = 0; index < keys.length; index++) {
+			keys[index] = ("batch-" + index).getBytes();
+		}
+		filter.addBatch(keys);
+		Assert.assertEquals(numElements + numElements / 2 + keys.length, filter.getAddCount());
+		Assert.assertEquals(numElements + keys.length, filter.getAddChangedCount());
+		
+		filter.containsBatch(keys);
+		Assert.assertEquals(2 * numElements + keys.length, filter.getContainsCount());
+		Assert.assertEquals(positives + keys.length, filter.getPositiveCount());
+		
+		Assert.assertEquals((filter.getNumberOfBits() + 7) / 8, filter.getMemoryBytes());
+		Assert.assertTrue(filter.getFillRatio() > 0);
+		
+		filter.reset();
+		Assert.assertEquals(0, filter.getAddCount());
+		Assert.assertEquals(0, filter.getPositiveCount());
+		Assert.assertEquals(0, sum(filter.getAddLatencyHistogram()));
+		Assert.assertEquals(0, filter.getAddLatency99thPercentileNanos());
+		Assert.assertEquals(0d, filter.getPositiveRate());
+		
+		filter.close();
+	}
+	
+	@Test
+	public void testDisabled() {
+		InstrumentedBloomFilter<String> filter = new InstrumentedBloomFilter<String>(new InMemoryBloomFilter<String>(MAX, FPP), 1);
+		filter.setEnabled(false);
+		Assert.assertFalse(filter.isEnabled());
+		
+		List<String> values = new ArrayList<String>();
+		for(int index = 0; index < 100; index++) {
+			values.add("element-" + index);
+		}
+		
+		// calls still reach the filter, but are not recorded
+		Assert.assertTrue(filter.addAll(values));
+		Assert.assertTrue(filter.containsAll(values));
+		Assert.assertEquals(0, filter.getAddCount());
+		Assert.assertEquals(0, filter.getContainsCount());
+		Assert.assertEquals(0, sum(filter.getContainsLatencyHistogram()));
+		
+		filter.setEnabled(true);
+		Assert.assertTrue(filter.containsAll(values));
+		Assert.assertEquals(values.size(), filter.getContainsCount());
+		Assert.assertEquals(values.size(), filter.getPositiveCount());
+		
+		filter.close();
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void testSampleIntervalNotPowerOfTwo() {
+		new InstrumentedBloomFilter<String>(new InMemoryBloomFilter<String>(MAX, FPP), 10);
+	}
+	
+	@Test
+	public void testJmx() throws Exception {
+		InstrumentedBloomFilter<String> filter = new InstrumentedBloomFilter<String>(new InMemoryBloomFilter<String>(MAX, FPP));
+		ObjectName name = filter.register("test-jmx");
+		
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		Assert.assertTrue(server.isRegistered(name));
+		
+		for(int index = 0; index < 100; index++) {
+			filter.add("element-" + index);
+		}
+		
+		Assert.assertEquals(100L, server.getAttribute(name, "AddCount"));
+		Assert.assertEquals(filter.getFillRatio(), server.getAttribute(name, "FillRatio"));
+		Assert.assertEquals(filter.getApproximateElementCount(), server.getAttribute(name, "ApproximateElementCount"));
+		
+		server.invoke(name, "reset", null, null);
+		Assert.assertEquals(0L, server.getAttribute(name, "AddCount"));
+		
+		// the name cannot be taken twice
+		InstrumentedBloomFilter<String> other = new InstrumentedBloomFilter<String>(new InMemoryBloomFilter<String>(MAX, FPP));
+		try {
+			other.register("test-jmx");
+			Assert.fail();
+		} catch(javax.management.InstanceAlreadyExistsException e) {
+			// expected
+		}
+		
+		filter.close();
+		Assert.assertFalse(server.isRegistered(name));
+		other.close();
+	}
+	
+	private static long sum(long[] counts) {
+		long total = 0;
+		for(long count : counts) {
+			total += count;
+		}
+		
+		return total;
+	}
+
+}
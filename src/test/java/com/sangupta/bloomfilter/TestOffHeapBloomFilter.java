@@ -0,0 +1,82 @@
+/**
+ *
+ * bloomfilter - Bloom filters for Java
+ * Copyright (c) 2014-2015, Sandeep Gupta
+ * 
+ * http://sangupta.com/projects/bloomfilter
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+
+
+package com.sangupta.bloomfilter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+import com.sangupta.bloomfilter.impl.OffHeapBloomFilter;
+
+/**
+ * JUnit tests for {@link OffHeapBloomFilter}
+ * 
+ * @author sangupta
+ *
+ */
+public class TestOffHeapBloomFilter {
+	
+	private static final int MAX = 100 * 1000;
+	
+	private static final double FPP = 0.01;
+	
+	@Test
+	public void testAddContains() {
+		BloomFilter<String> filter = new OffHeapBloomFilter<String>(MAX, FPP, 2 * 1024 * 1024);
+		try {
+			List<String> contained = new ArrayList<String>();
+			for(int index = 0; index < MAX; index++) {
+				String uuid = UUID.randomUUID().toString();
+				contained.add(uuid);
+				filter.add(uuid);
+			}
+			
+			for(String uuid : contained) {
+				Assert.assertTrue(filter.contains(uuid));
+			}
+			
+			int falsePositives = 0;
+			for(int index = 0; index < MAX; index++) {
+				if(filter.contains(UUID.randomUUID().toString())) {
+					falsePositives++;
+				}
+			}
+			
+			// allow for some statistical slack
+			Assert.assertTrue(falsePositives < 2 * FPP * MAX);
+		} finally {
+			filter.close();
+		}
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidInsertions() {
+		new OffHeapBloomFilter<String>(0, FPP);
+	}
+
+}
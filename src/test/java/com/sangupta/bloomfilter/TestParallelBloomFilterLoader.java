@@ -0,0 +1,145 @@
+/**
+ *
+ * bloomfilter - Bloom filters for Java
+ * Copyright (c) 2014-2015, Sandeep Gupta
+ * 
+ * http://sangupta.com/projects/bloomfilter
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+
+package com.sangupta.bloomfilter;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ForkJoinPool;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+import com.sangupta.bloomfilter.impl.BlockedBloomFilter;
+import com.sangupta.bloomfilter.impl.ConcurrentInMemoryBloomFilter;
+import com.sangupta.bloomfilter.impl.InMemoryBloomFilter;
+import com.sangupta.bloomfilter.impl.SplitBlockBloomFilter;
+
+/**
+ * JUnit tests for {@link ParallelBloomFilterLoader}
+ * 
+ * @author sangupta
+ *
+ */
+public class TestParallelBloomFilterLoader {
+	
+	private static final int MAX = 100 * 1000;
+	
+	private static final double FPP = 0.01;
+	
+	@Test
+	public void testBitIdenticalToSequential() {
+		List<String> values = new ArrayList<String>();
+		byte[][] keys = new byte[MAX][];
+		for(int index = 0; index < MAX; index++) {
+			String uuid = UUID.randomUUID().toString();
+			values.add(uuid);
+			keys[index] = uuid.getBytes();
+		}
+		values.set(MAX / 2, null);
+		
+		for(int parallelism = 1; parallelism <= 4; parallelism++) {
+			ParallelBloomFilterLoader<String> loader = new ParallelBloomFilterLoader<String>(parallelism);
+			
+			for(int filterIndex = 0; filterIndex < 4; filterIndex++) {
+				AbstractBloomFilter<String> sequential = newFilter(filterIndex);
+				AbstractBloomFilter<String> parallel = newFilter(filterIndex);
+				
+				sequential.addAll(values);
+				loader.load(parallel, values);
+				assertSameBits(sequential, parallel);
+				
+				sequential = newFilter(filterIndex);
+				parallel = newFilter(filterIndex);
+				
+				sequential.addBatch(keys);
+				loader.load(parallel, keys);
+				assertSameBits(sequential, parallel);
+			}
+		}
+	}
+	
+	@Test
+	public void testPoolAndCollection() {
+		List<String> values = new LinkedList<String>();
+		for(int index = 0; index < MAX; index++) {
+			values.add(UUID.randomUUID().toString());
+		}
+		
+		AbstractBloomFilter<String> filter = new InMemoryBloomFilter<String>(MAX, FPP);
+		ForkJoinPool pool = new ForkJoinPool(2);
+		try {
+			new ParallelBloomFilterLoader<String>(pool).load(filter, values);
+			Assert.assertFalse(pool.isShutdown());
+		} finally {
+			pool.shutdown();
+		}
+		
+		Assert.assertTrue(filter.containsAll(values));
+	}
+	
+	@Test(expected = UnsupportedOperationException.class)
+	public void testNotBitwiseMergeable() {
+		AbstractBloomFilter<String> filter = new InMemoryBloomFilter<String>(MAX, FPP) {
+			
+			@Override
+			protected boolean isBitwiseMergeable() {
+				return false;
+			}
+			
+		};
+		
+		new ParallelBloomFilterLoader<String>(2).load(filter, new byte[][] { "value".getBytes() });
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidParallelism() {
+		new ParallelBloomFilterLoader<String>(0);
+	}
+	
+	private static AbstractBloomFilter<String> newFilter(int index) {
+		switch(index) {
+			case 0:
+				return new InMemoryBloomFilter<String>(MAX, FPP);
+				
+			case 1:
+				return new ConcurrentInMemoryBloomFilter<String>(MAX, FPP);
+				
+			case 2:
+				return new BlockedBloomFilter<String>(MAX, FPP);
+				
+			default:
+				return new SplitBlockBloomFilter<String>(MAX, FPP);
+		}
+	}
+	
+	private static void assertSameBits(AbstractBloomFilter<String> expected, AbstractBloomFilter<String> actual) {
+		Assert.assertEquals(expected.bitArray.bitSize(), actual.bitArray.bitSize());
+		for(long index = 0; index < expected.bitArray.bitSize(); index++) {
+			Assert.assertEquals(expected.bitArray.getBit(index), actual.bitArray.getBit(index));
+		}
+	}
+
+}
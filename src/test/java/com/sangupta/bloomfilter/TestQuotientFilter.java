@@ -0,0 +1,249 @@
+/**
+ *
+ * bloomfilter - Bloom filters for Java
+ * Copyright (c) 2014-2015, Sandeep Gupta
+ * 
+ * http://sangupta.com/projects/bloomfilter
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+
+package com.sangupta.bloomfilter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+import com.sangupta.bloomfilter.hash.CRC32HashFunction;
+import com.sangupta.bloomfilter.hash.HashFunction;
+import com.sangupta.bloomfilter.hash.XXHash64HashFunction;
+import com.sangupta.bloomfilter.impl.QuotientFilter;
+
+/**
+ * JUnit tests for {@link QuotientFilter}
+ * 
+ * @author sangupta
+ *
+ */
+public class TestQuotientFilter {
+	
+	private static final int MAX = 100 * 1000;
+	
+	private static final double FPP = 0.01;
+	
+	@Test
+	public void testContains() {
+		QuotientFilter<String> filter = new QuotientFilter<String>(MAX, FPP);
+		long slots = filter.getNumberOfSlots();
+		
+		List<String> contained = addValues(filter, MAX);
+		Assert.assertEquals(MAX, filter.size());
+		Assert.assertEquals(slots, filter.getNumberOfSlots());
+		for(String value : contained) {
+			Assert.assertTrue(filter.contains(value));
+		}
+		
+		Assert.assertTrue(falsePositiveRate(filter) < FPP);
+	}
+	
+	@Test
+	public void testRemove() {
+		QuotientFilter<String> filter = new QuotientFilter<String>(MAX, FPP);
+		List<String> contained = addValues(filter, MAX);
+		
+		// an element added twice must be removed twice
+		String value = contained.get(0);
+		filter.add(value);
+		Assert.assertTrue(filter.remove(value));
+		Assert.assertTrue(filter.contains(value));
+		Assert.assertTrue(filter.remove(value));
+		
+		for(String uuid : contained.subList(1, MAX / 2)) {
+			Assert.assertTrue(filter.remove(uuid));
+		}
+		Assert.assertEquals(MAX / 2, filter.size());
+		
+		for(String uuid : contained.subList(MAX / 2, MAX)) {
+			Assert.assertTrue(filter.contains(uuid));
+		}
+	}
+	
+	@Test
+	public void testResize() {
+		QuotientFilter<String> filter = new QuotientFilter<String>(1000, FPP);
+		long slots = filter.getNumberOfSlots();
+		int remainderBits = filter.getRemainderBits();
+		
+		// grows by itself while elements are added
+		List<String> contained = addValues(filter, 20 * 1000);
+		Assert.assertEquals(16 * slots, filter.getNumberOfSlots());
+		Assert.assertEquals(remainderBits - 4, filter.getRemainderBits());
+		
+		filter.resize();
+		Assert.assertEquals(32 * slots, filter.getNumberOfSlots());
+		Assert.assertEquals(contained.size(), filter.size());
+		for(String value : contained) {
+			Assert.assertTrue(filter.contains(value));
+		}
+	}
+	
+	@Test
+	public void testMerge() {
+		QuotientFilter<String> first = new QuotientFilter<String>(MAX, FPP);
+		QuotientFilter<String> second = new QuotientFilter<String>(MAX, FPP);
+		List<String> firstValues = addValues(first, MAX);
+		List<String> secondValues = addValues(second, MAX);
+		
+		first.merge(second);
+		Assert.assertEquals(2 * MAX, first.size());
+		Assert.assertEquals(2 * second.getNumberOfSlots(), first.getNumberOfSlots());
+		for(String value : firstValues) {
+			Assert.assertTrue(first.contains(value));
+		}
+		for(String value : secondValues) {
+			Assert.assertTrue(first.contains(value));
+		}
+		
+		// the merged elements can be removed again
+		for(String value : secondValues) {
+			Assert.assertTrue(first.remove(value));
+		}
+		Assert.assertEquals(MAX, first.size());
+	}
+	
+	@Test
+	public void testNarrowHashFunction() {
+		// CRC32 fills only the low 32 bits of the hash
+		QuotientFilter<String> filter = new QuotientFilter<String>(MAX, FPP, null, new CRC32HashFunction());
+		List<String> values = addValues(filter, MAX);
+		for(String value : values) {
+			Assert.assertTrue(filter.contains(value));
+		}
+		
+		double observed = falsePositiveRate(filter);
+		Assert.assertTrue("Observed " + observed, observed < FPP * 2);
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void testMergeIncompatible() {
+		QuotientFilter<String> filter = new QuotientFilter<String>(MAX, FPP);
+		filter.merge(new QuotientFilter<String>(MAX, FPP, null, new XXHash64HashFunction()));
+	}
+	
+	@Test
+	public void testAgainstMultiset() {
+		// the hash undoes the mix of the filter so that it becomes the
+		// fingerprint itself, and runs, clusters and the wrap around the end
+		// of the table are all exercised
+		HashFunction identity = new HashFunction() {
+			
+			@Override
+			public boolean isSingleValued() {
+				return true;
+			}
+			
+			@Override
+			public int getId() {
+				return 1024;
+			}
+			
+			@Override
+			public long hash(byte[] bytes) {
+				return hash64(bytes, 0, bytes.length);
+			}
+			
+			@Override
+			public long[] hashMultiple(byte[] bytes) {
+				return new long[] { hash(bytes) };
+			}
+			
+			@Override
+			public long hash64(byte[] bytes, int offset, int length) {
+				long hash = (bytes[offset] & 0xFFL) << 56;
+				hash ^= hash >>> 33;
+				hash *= 0x9cb4b2f8129337dbL;
+				hash ^= hash >>> 33;
+				hash *= 0x4f74430c22a54005L;
+				hash ^= hash >>> 33;
+				return hash;
+			}
+			
+			@Override
+			public int hashMultiple(byte[] bytes, int offset, int length, long[] result) {
+				result[0] = hash64(bytes, offset, length);
+				return 1;
+			}
+			
+		};
+		
+		Random random = new Random(42);
+		for(int round = 0; round < 20; round++) {
+			QuotientFilter<String> filter = new QuotientFilter<String>(4, 4, null, identity);
+			int[] counts = new int[256];
+			int size = 0;
+			
+			for(int operation = 0; operation < 2000; operation++) {
+				// keep to a few regions of the table, so that clusters form
+				int fingerprint = random.nextInt(4) * 64 + 48 + random.nextInt(16);
+				byte[] key = new byte[] { (byte) fingerprint };
+				
+				if(size < 80 && random.nextInt(3) != 0) {
+					Assert.assertTrue(filter.add(key));
+					counts[fingerprint]++;
+					size++;
+				} else {
+					Assert.assertEquals(counts[fingerprint] > 0, filter.remove(key));
+					if(counts[fingerprint] > 0) {
+						counts[fingerprint]--;
+						size--;
+					}
+				}
+				
+				Assert.assertEquals(size, filter.size());
+				for(int index = 0; index < 256; index++) {
+					Assert.assertEquals(counts[index] > 0, filter.contains(new byte[] { (byte) index }));
+				}
+			}
+		}
+	}
+	
+	private List<String> addValues(QuotientFilter<String> filter, int count) {
+		List<String> values = new ArrayList<String>();
+		for(int index = 0; index < count; index++) {
+			String value = UUID.randomUUID().toString();
+			values.add(value);
+			Assert.assertTrue(filter.add(value));
+		}
+		
+		return values;
+	}
+	
+	private double falsePositiveRate(QuotientFilter<String> filter) {
+		int falsePositives = 0;
+		for(int index = 0; index < MAX; index++) {
+			if(filter.contains(UUID.randomUUID().toString())) {
+				falsePositives++;
+			}
+		}
+		
+		return (double) falsePositives / MAX;
+	}
+
+}
@@ -0,0 +1,208 @@
+/**
+ *
+ * bloomfilter - Bloom filters for Java
+ * Copyright (c) 2014-2015, Sandeep Gupta
+ * 
+ * http://sangupta.com/projects/bloomfilter
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+
+package com.sangupta.bloomfilter;
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.UUID;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+import com.sangupta.bloomfilter.impl.BinaryFuse8Filter;
+import com.sangupta.bloomfilter.impl.RibbonFilter;
+
+/**
+ * JUnit tests for {@link RibbonFilter}
+ * 
+ * @author sangupta
+ *
+ */
+public class TestRibbonFilter {
+	
+	private static final int MAX = 200 * 1000;
+	
+	@Test
+	public void testContains() {
+		List<String> contained = new ArrayList<String>();
+		for(int index = 0; index < MAX; index++) {
+			contained.add(UUID.randomUUID().toString());
+		}
+		
+		// duplicates are allowed
+		contained.addAll(contained.subList(0, 1000));
+		
+		for(int bitsPerKey : new int[] { 1, 7, 10 }) {
+			RibbonFilter<String> filter = new RibbonFilter<String>(contained, bitsPerKey);
+			testFilter(filter, contained, bitsPerKey);
+			
+			// close to bitsPerKey bits per value
+			double bitsPerValue = (double) filter.getNumberOfBits() / contained.size();
+			Assert.assertTrue("Bits per value " + bitsPerValue, bitsPerValue < bitsPerKey * (1 + RibbonFilter.OVERHEAD) + 0.1);
+		}
+	}
+	
+	@Test
+	public void testStreaming() {
+		// values are generated on the fly and never held in memory
+		RibbonFilter<String> filter = new RibbonFilter<String>(generate(MAX), 8);
+		for(int index = 0; index < MAX; index++) {
+			Assert.assertTrue(filter.contains("value-" + index));
+		}
+		
+		int falsePositives = 0;
+		for(int index = MAX; index < 2 * MAX; index++) {
+			if(filter.contains("value-" + index)) {
+				falsePositives++;
+			}
+		}
+		
+		double observed = (double) falsePositives / MAX;
+		Assert.assertTrue("Observed " + observed, observed < 1.5 / 256);
+	}
+	
+	@Test
+	public void testByteKeys() {
+		List<String> contained = new ArrayList<String>();
+		byte[][] keys = new byte[1000][];
+		for(int index = 0; index < keys.length; index++) {
+			contained.add(UUID.randomUUID().toString());
+			keys[index] = contained.get(index).getBytes(Charset.forName("UTF-8"));
+		}
+		
+		RibbonFilter<String> filter = new RibbonFilter<String>(contained, 8);
+		Assert.assertEquals(keys.length, filter.containsBatch(keys).cardinality());
+	}
+	
+	@Test
+	public void testSmallSets() {
+		for(int size = 0; size < 100; size++) {
+			List<String> contained = new ArrayList<String>();
+			for(int index = 0; index < size; index++) {
+				contained.add("value-" + index);
+			}
+			
+			RibbonFilter<String> filter = new RibbonFilter<String>(contained, 16);
+			for(String value : contained) {
+				Assert.assertTrue(filter.contains(value));
+			}
+		}
+	}
+	
+	@Test
+	public void testSmallerThanFuse() {
+		List<String> contained = new ArrayList<String>();
+		for(int index = 0; index < MAX; index++) {
+			contained.add(UUID.randomUUID().toString());
+		}
+		
+		// the same false positive rate of 2^-8 in less space
+		RibbonFilter<String> ribbon = new RibbonFilter<String>(contained, 8);
+		BinaryFuse8Filter<String> fuse = new BinaryFuse8Filter<String>(contained);
+		
+		Assert.assertTrue(ribbon.getNumberOfBits() < fuse.getNumberOfBits() * 0.95);
+	}
+	
+	@Test(expected = IllegalStateException.class)
+	public void testValuesChanged() {
+		// every pass returns one more value than the last
+		final Iterable<String> growing = new Iterable<String>() {
+			
+			private int size = 1000;
+			
+			@Override
+			public Iterator<String> iterator() {
+				return generate(this.size++).iterator();
+			}
+			
+		};
+		
+		new RibbonFilter<String>(growing, 8);
+	}
+	
+	@Test(expected = UnsupportedOperationException.class)
+	public void testImmutable() {
+		new RibbonFilter<String>(Collections.singletonList("value"), 8).add("another");
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidBitsPerKey() {
+		new RibbonFilter<String>(Collections.singletonList("value"), 33);
+	}
+	
+	private static Iterable<String> generate(final int size) {
+		return new Iterable<String>() {
+			
+			@Override
+			public Iterator<String> iterator() {
+				return new Iterator<String>() {
+					
+					private int index = 0;
+					
+					@Override
+					public boolean hasNext() {
+						return this.index < size;
+					}
+					
+					@Override
+					public String next() {
+						return "value-" + (this.index++);
+					}
+					
+					@Override
+					public void remove() {
+						throw new UnsupportedOperationException();
+					}
+					
+				};
+			}
+			
+		};
+	}
+	
+	private void testFilter(RibbonFilter<String> filter, List<String> contained, int bitsPerKey) {
+		// no false negatives
+		for(String value : contained) {
+			Assert.assertTrue(filter.contains(value));
+		}
+		
+		// false positives close to 2^-bitsPerKey
+		int falsePositives = 0;
+		for(int index = 0; index < MAX; index++) {
+			if(filter.contains(UUID.randomUUID().toString())) {
+				falsePositives++;
+			}
+		}
+		
+		double expected = Math.pow(2, -bitsPerKey);
+		double observed = (double) falsePositives / MAX;
+		System.out.println("Ribbon filter with " + bitsPerKey + " bits per key, expected " + expected + ", observed " + observed);
+		Assert.assertTrue("Observed " + observed, observed < expected * 1.5);
+		Assert.assertTrue("Observed " + observed, observed > expected * 0.5);
+	}
+
+}
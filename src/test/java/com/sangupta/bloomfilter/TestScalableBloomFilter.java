@@ -0,0 +1,117 @@
+/**
+ *
+ * bloomfilter - Bloom filters for Java
+ * Copyright (c) 2014-2015, Sandeep Gupta
+ * 
+ * http://sangupta.com/projects/bloomfilter
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+
+package com.sangupta.bloomfilter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+import com.sangupta.bloomfilter.impl.BlockedBloomFilter;
+import com.sangupta.bloomfilter.impl.ScalableBloomFilter;
+
+/**
+ * JUnit tests for {@link ScalableBloomFilter}
+ * 
+ * @author sangupta
+ *
+ */
+public class TestScalableBloomFilter {
+	
+	private static final int INITIAL = 10 * 1000;
+	
+	private static final int MAX = 300 * 1000;
+	
+	private static final double FPP = 0.01;
+	
+	@Test
+	public void testGrowth() {
+		ScalableBloomFilter<String> filter = new ScalableBloomFilter<String>(INITIAL, FPP);
+		testFilter(filter, FPP);
+	}
+	
+	@Test
+	public void testCustomSlice() {
+		ScalableBloomFilter<String> filter = new ScalableBloomFilter<String>(INITIAL, FPP, 4, 0.8, 0.5) {
+			
+			@Override
+			protected AbstractBloomFilter<String> createSlice(long capacity, double fpp) {
+				return new BlockedBloomFilter<String>(capacity, fpp);
+			}
+			
+		};
+		
+		// blocked slices run somewhat above their nominal rate
+		testFilter(filter, FPP * 1.5);
+	}
+	
+	@Test
+	public void testDuplicates() {
+		ScalableBloomFilter<String> filter = new ScalableBloomFilter<String>(INITIAL, FPP);
+		for(int round = 0; round < 10; round++) {
+			for(int index = 0; index < INITIAL / 2; index++) {
+				filter.add("value-" + index);
+			}
+		}
+		
+		// re-adding the same values must not grow the filter
+		Assert.assertEquals(1, filter.getNumberOfSlices());
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidTighteningRatio() {
+		new ScalableBloomFilter<String>(INITIAL, FPP, 2, 1, 0.5);
+	}
+	
+	private void testFilter(ScalableBloomFilter<String> filter, double maxFpp) {
+		List<String> contained = new ArrayList<String>();
+		for(int index = 0; index < MAX; index++) {
+			String uuid = UUID.randomUUID().toString();
+			contained.add(uuid);
+			filter.add(uuid);
+		}
+		
+		Assert.assertTrue(filter.getNumberOfSlices() > 1);
+		
+		// no false negatives
+		for(String uuid : contained) {
+			Assert.assertTrue(filter.contains(uuid));
+		}
+		
+		// the compound false positive rate stays bounded
+		int falsePositives = 0;
+		for(int index = 0; index < MAX; index++) {
+			if(filter.contains(UUID.randomUUID().toString())) {
+				falsePositives++;
+			}
+		}
+		
+		double observed = (double) falsePositives / MAX;
+		Assert.assertTrue("Observed " + observed, observed < maxFpp);
+		Assert.assertTrue(filter.getCurrentFalsePositiveProbability() < maxFpp);
+	}
+
+}
@@ -0,0 +1,230 @@
+/**
+ *
+ * bloomfilter - Bloom filters for Java
+ * Copyright (c) 2014-2015, Sandeep Gupta
+ * 
+ * http://sangupta.com/projects/bloomfilter
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+
+package com.sangupta.bloomfilter;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+import com.sangupta.bloomfilter.impl.SlidingWindowBloomFilter;
+
+/**
+ * JUnit tests for {@link SlidingWindowBloomFilter}
+ * 
+ * @author sangupta
+ *
+ */
+public class TestSlidingWindowBloomFilter {
+	
+	private static final int MAX = 100 * 1000;
+	
+	private static final double FPP = 0.01;
+	
+	private static final long WINDOW = 4000;
+	
+	@Test
+	public void testRotation() {
+		AtomicLong clock = new AtomicLong(1000 * 1000);
+		SlidingWindowBloomFilter<String> filter = newFilter(clock);
+		Assert.assertEquals(1000, filter.getGenerationMillis());
+		
+		filter.add("first");
+		clock.addAndGet(2500);
+		filter.add("second");
+		
+		// the first value is kept until its generation is reused
+		clock.addAndGet(1499);
+		Assert.assertTrue(filter.contains("first"));
+		Assert.assertTrue(filter.contains("second"));
+		
+		clock.addAndGet(1);
+		Assert.assertFalse(filter.contains("first"));
+		Assert.assertTrue(filter.contains("second"));
+		
+		clock.addAndGet(2000);
+		Assert.assertFalse(filter.contains("second"));
+	}
+	
+	@Test
+	public void testIdle() {
+		AtomicLong clock = new AtomicLong(1000 * 1000);
+		SlidingWindowBloomFilter<String> filter = newFilter(clock);
+		for(int period = 0; period < 4; period++) {
+			filter.add("value-" + period);
+			clock.addAndGet(1000);
+		}
+		
+		// nothing survives a pause longer than the window
+		clock.addAndGet(10 * WINDOW);
+		for(int period = 0; period < 4; period++) {
+			Assert.assertFalse(filter.contains("value-" + period));
+		}
+	}
+	
+	@Test
+	public void testClockBackwards() {
+		AtomicLong clock = new AtomicLong(1000 * 1000);
+		SlidingWindowBloomFilter<String> filter = newFilter(clock);
+		filter.add("first");
+		
+		clock.addAndGet(-10 * WINDOW);
+		filter.add("second");
+		Assert.assertTrue(filter.contains("first"));
+		Assert.assertTrue(filter.contains("second"));
+	}
+	
+	@Test
+	public void testFalsePositives() {
+		final AtomicLong clock = new AtomicLong(1000 * 1000);
+		SlidingWindowBloomFilter<String> filter = new SlidingWindowBloomFilter<String>(MAX / 4, FPP, WINDOW, 4) {
+			
+			@Override
+			protected long currentTimeMillis() {
+				return clock.get();
+			}
+			
+		};
+		
+		// fill every live generation to its capacity
+		List<String> contained = new ArrayList<String>();
+		for(int index = 0; index < MAX; index++) {
+			if(index > 0 && index % (MAX / 4) == 0) {
+				clock.addAndGet(1000);
+			}
+			
+			String value = UUID.randomUUID().toString();
+			contained.add(value);
+			filter.add(value);
+		}
+		
+		for(String value : contained) {
+			Assert.assertTrue(filter.contains(value));
+		}
+		
+		int falsePositives = 0;
+		for(int index = 0; index < MAX; index++) {
+			if(filter.contains(UUID.randomUUID().toString())) {
+				falsePositives++;
+			}
+		}
+		
+		double observed = (double) falsePositives / MAX;
+		Assert.assertTrue("Observed " + observed, observed < FPP * 1.2);
+	}
+	
+	@Test
+	public void testPersistence() throws IOException {
+		File directory = Files.createTempDirectory("window").toFile();
+		AtomicLong clock = new AtomicLong(1000 * 1000);
+		
+		SlidingWindowBloomFilter<String> filter = newFilter(clock, directory);
+		filter.add("first");
+		clock.addAndGet(1000);
+		filter.add("second");
+		filter.close();
+		
+		// the window survives a restart
+		clock.addAndGet(2500);
+		filter = newFilter(clock, directory);
+		Assert.assertTrue(filter.contains("first"));
+		Assert.assertTrue(filter.contains("second"));
+		filter.close();
+		
+		// generations that expired while closed are cleared
+		clock.addAndGet(1000);
+		filter = newFilter(clock, directory);
+		Assert.assertFalse(filter.contains("first"));
+		Assert.assertTrue(filter.contains("second"));
+		filter.close();
+		
+		deleteAll(directory);
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void testPersistenceWithOtherArguments() throws IOException {
+		File directory = Files.createTempDirectory("window").toFile();
+		try {
+			new SlidingWindowBloomFilter<String>(MAX, FPP, WINDOW, 4, directory).close();
+			new SlidingWindowBloomFilter<String>(MAX, FPP, WINDOW, 8, directory);
+		} finally {
+			deleteAll(directory);
+		}
+	}
+	
+	@Test(expected = IOException.class)
+	public void testInvalidStateFile() throws IOException {
+		File directory = Files.createTempDirectory("window").toFile();
+		RandomAccessFile file = new RandomAccessFile(new File(directory, SlidingWindowBloomFilter.STATE_FILE_NAME), "rw");
+		file.writeLong(42);
+		file.close();
+		
+		try {
+			new SlidingWindowBloomFilter<String>(MAX, FPP, WINDOW, 4, directory);
+		} finally {
+			deleteAll(directory);
+		}
+	}
+	
+	private SlidingWindowBloomFilter<String> newFilter(final AtomicLong clock) {
+		return new SlidingWindowBloomFilter<String>(1000, FPP, WINDOW, 4) {
+			
+			@Override
+			protected long currentTimeMillis() {
+				return clock.get();
+			}
+			
+		};
+	}
+	
+	private SlidingWindowBloomFilter<String> newFilter(final AtomicLong clock, File directory) throws IOException {
+		return new SlidingWindowBloomFilter<String>(1000, FPP, WINDOW, 4, directory) {
+			
+			@Override
+			protected long currentTimeMillis() {
+				return clock.get();
+			}
+			
+		};
+	}
+	
+	private void deleteAll(File directory) {
+		File[] files = directory.listFiles();
+		if(files != null) {
+			for(File file : files) {
+				file.delete();
+			}
+		}
+		
+		directory.delete();
+	}
+
+}
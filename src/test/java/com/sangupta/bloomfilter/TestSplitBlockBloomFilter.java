@@ -0,0 +1,124 @@
+/**
+ *
+ * bloomfilter - Bloom filters for Java
+ * Copyright (c) 2014-2015, Sandeep Gupta
+ * 
+ * http://sangupta.com/projects/bloomfilter
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+
+package com.sangupta.bloomfilter;
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+import com.sangupta.bloomfilter.hash.XXHash64HashFunction;
+import com.sangupta.bloomfilter.impl.SplitBlockBloomFilter;
+
+/**
+ * JUnit tests for {@link SplitBlockBloomFilter}
+ * 
+ * @author sangupta
+ *
+ */
+public class TestSplitBlockBloomFilter {
+	
+	private static final int MAX = 200 * 1000;
+	
+	private static final double FPP = 0.01;
+	
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+	
+	@Test
+	public void testFilter() {
+		SplitBlockBloomFilter<String> filter = new SplitBlockBloomFilter<String>(MAX, FPP);
+		
+		List<String> contained = new ArrayList<String>();
+		for(int index = 0; index < MAX; index++) {
+			String uuid = UUID.randomUUID().toString();
+			contained.add(uuid);
+			filter.add(uuid);
+		}
+		
+		for(String uuid : contained) {
+			Assert.assertTrue(filter.contains(uuid));
+		}
+		
+		int falsePositives = 0;
+		for(int index = 0; index < MAX; index++) {
+			if(filter.contains(UUID.randomUUID().toString())) {
+				falsePositives++;
+			}
+		}
+		
+		double expected = filter.getFalsePositiveProbability(MAX);
+		double observed = (double) falsePositives / MAX;
+		Assert.assertTrue("Observed " + observed + ", expected " + expected, observed < expected * 1.5);
+		Assert.assertTrue("Observed " + observed + ", expected " + expected, observed > expected / 1.5);
+	}
+	
+	@Test
+	public void testSizing() {
+		Assert.assertEquals(SplitBlockBloomFilter.MINIMUM_BYTES, SplitBlockBloomFilter.optimalNumBytes(1, FPP));
+		Assert.assertEquals(SplitBlockBloomFilter.MAXIMUM_BYTES, SplitBlockBloomFilter.optimalNumBytes(Integer.MAX_VALUE, FPP));
+		
+		int bytes = SplitBlockBloomFilter.optimalNumBytes(MAX, FPP);
+		Assert.assertEquals(0, bytes & (bytes - 1));
+	}
+	
+	@Test
+	public void testBitsetLayout() {
+		SplitBlockBloomFilter<String> filter = new SplitBlockBloomFilter<String>(1000, FPP);
+		byte[] value = "hello".getBytes(UTF_8);
+		filter.add(value);
+		
+		// compute the bitset independently following the parquet specification
+		int[] salt = { 0x47b6137b, 0x44974d91, 0x8824ad5b, 0xa2b7289d, 0x705495c7, 0x2df1424b, 0x9efc4947, 0x5c6bfb31 };
+		long hash = new XXHash64HashFunction().hash(value);
+		
+		byte[] bitset = filter.toBitset();
+		int numBlocks = bitset.length / 32;
+		int block = (int) (((hash >>> 32) * numBlocks) >>> 32);
+		
+		int[] words = new int[bitset.length / 4];
+		for(int lane = 0; lane < 8; lane++) {
+			words[block * 8 + lane] = 1 << (((int) hash * salt[lane]) >>> 27);
+		}
+		
+		byte[] expected = new byte[bitset.length];
+		for(int word = 0; word < words.length; word++) {
+			expected[word * 4] = (byte) words[word];
+			expected[word * 4 + 1] = (byte) (words[word] >>> 8);
+			expected[word * 4 + 2] = (byte) (words[word] >>> 16);
+			expected[word * 4 + 3] = (byte) (words[word] >>> 24);
+		}
+		
+		Assert.assertTrue(Arrays.equals(expected, bitset));
+		
+		// read it back
+		SplitBlockBloomFilter<String> read = SplitBlockBloomFilter.fromBitset(bitset);
+		Assert.assertTrue(read.contains(value));
+		Assert.assertTrue(Arrays.equals(bitset, read.toBitset()));
+	}
+
+}
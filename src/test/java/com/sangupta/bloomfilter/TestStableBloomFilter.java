@@ -0,0 +1,135 @@
+/**
+ *
+ * bloomfilter - Bloom filters for Java
+ * Copyright (c) 2014-2015, Sandeep Gupta
+ * 
+ * http://sangupta.com/projects/bloomfilter
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+
+package com.sangupta.bloomfilter;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+import com.sangupta.bloomfilter.impl.InMemoryBloomFilter;
+import com.sangupta.bloomfilter.impl.StableBloomFilter;
+
+/**
+ * JUnit tests for {@link StableBloomFilter}
+ * 
+ * @author sangupta
+ *
+ */
+public class TestStableBloomFilter {
+	
+	private static final int CELLS = 200 * 1000;
+	
+	private static final double FPP = 0.01;
+	
+	@Test
+	public void testStableFalsePositiveRate() {
+		for(int bitsPerCell : new int[] { 2, 4 }) {
+			StableBloomFilter<String> filter = new StableBloomFilter<String>(CELLS, FPP, bitsPerCell, StableBloomFilter.optimalNumberOfHashFunctions(FPP), null, null);
+			Assert.assertTrue(filter.getStableFalsePositiveProbability() <= FPP);
+			
+			// a regular filter of the same size saturates on the same stream
+			BloomFilter<String> regular = new InMemoryBloomFilter<String>(CELLS / 10, FPP);
+			
+			for(int round = 0; round < 5; round++) {
+				for(int index = 0; index < CELLS; index++) {
+					String value = "value-" + round + "-" + index;
+					filter.add(value);
+					regular.add(value);
+				}
+				
+				// the most recent elements are remembered
+				for(int index = CELLS - 100; index < CELLS; index++) {
+					Assert.assertTrue(filter.contains("value-" + round + "-" + index));
+				}
+				
+				double observed = falsePositiveRate(filter);
+				Assert.assertTrue("Observed " + observed, observed < FPP * 1.2);
+				Assert.assertTrue("Observed " + observed, observed > FPP * 0.6);
+			}
+			
+			Assert.assertTrue(falsePositiveRate(regular) > 0.9);
+		}
+	}
+	
+	@Test
+	public void testOldElementsFade() {
+		StableBloomFilter<String> filter = new StableBloomFilter<String>(CELLS, FPP);
+		for(int index = 0; index < 1000; index++) {
+			filter.add("old-" + index);
+		}
+		for(int index = 0; index < 10 * CELLS; index++) {
+			filter.add("new-" + index);
+		}
+		
+		int remembered = 0;
+		for(int index = 0; index < 1000; index++) {
+			if(filter.contains("old-" + index)) {
+				remembered++;
+			}
+		}
+		
+		// no better than chance
+		Assert.assertTrue("Remembered " + remembered, remembered < 1000 * FPP * 2);
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidHashFunctions() {
+		new StableBloomFilter<String>(10, FPP, 2, 10, null, null);
+	}
+	
+	private double falsePositiveRate(BloomFilter<String> filter) {
+		int falsePositives = 0;
+		int queries = 100 * 1000;
+		for(int index = 0; index < queries; index++) {
+			if(filter.contains("absent-" + index)) {
+				falsePositives++;
+			}
+		}
+		
+		return (double) falsePositives / queries;
+	}
+	
+	@Test(expected = UnsupportedOperationException.class)
+	public void testParallelLoadRefused() {
+		StableBloomFilter<String> filter = new StableBloomFilter<String>(CELLS, FPP);
+		new ParallelBloomFilterLoader<String>(2).load(filter, new byte[][] { "value".getBytes() });
+	}
+	
+	@Test
+	public void testInstancesDecayDifferently() {
+		StableBloomFilter<String> first = new StableBloomFilter<String>(CELLS, FPP);
+		StableBloomFilter<String> second = new StableBloomFilter<String>(CELLS, FPP);
+		for(int index = 0; index < CELLS; index++) {
+			first.add("element-" + index);
+			second.add("element-" + index);
+		}
+		
+		// the same elements, but different cells decremented
+		boolean differ = false;
+		for(long index = 0; index < first.bitArray.bitSize() && !differ; index++) {
+			differ = first.bitArray.getBit(index) != second.bitArray.getBit(index);
+		}
+		Assert.assertTrue(differ);
+	}
+
+}
@@ -0,0 +1,120 @@
+/**
+ *
+ * bloomfilter - Bloom filters for Java
+ * Copyright (c) 2014-2015, Sandeep Gupta
+ * 
+ * http://sangupta.com/projects/bloomfilter
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+
+package com.sangupta.bloomfilter.core;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+/**
+ * JUnit tests for {@link ConcurrentBitArray}
+ * 
+ * @author sangupta
+ *
+ */
+public class TestConcurrentBitArray {
+	
+	private static final int NUM_BITS = 1 << 20;
+	
+	private static final int NUM_THREADS = 8;
+	
+	@Test
+	public void testConcurrentSetBit() throws InterruptedException {
+		final ConcurrentBitArray bits = new ConcurrentBitArray(NUM_BITS);
+		final AtomicInteger changed = new AtomicInteger();
+		final CountDownLatch start = new CountDownLatch(1);
+		
+		// threads interleave on the same words, so that every word
+		// sees contention from all of them
+		List<Thread> threads = new ArrayList<Thread>();
+		for(int thread = 0; thread < NUM_THREADS; thread++) {
+			final int offset = thread;
+			Thread worker = new Thread() {
+				
+				@Override
+				public void run() {
+					try {
+						start.await();
+					} catch (InterruptedException e) {
+						return;
+					}
+					
+					for(int index = offset; index < NUM_BITS; index += NUM_THREADS) {
+						if(bits.setBit(index)) {
+							changed.incrementAndGet();
+						}
+						
+						// setting again must not report a change
+						Assert.assertFalse(bits.setBit(index));
+					}
+				}
+				
+			};
+			
+			threads.add(worker);
+			worker.start();
+		}
+		
+		start.countDown();
+		for(Thread worker : threads) {
+			worker.join();
+		}
+		
+		Assert.assertEquals(NUM_BITS, changed.get());
+		Assert.assertEquals(NUM_BITS, bits.bitCount());
+		for(int index = 0; index < NUM_BITS; index++) {
+			Assert.assertTrue(bits.getBit(index));
+		}
+	}
+	
+	@Test
+	public void testOrAnd() {
+		ConcurrentBitArray first = new ConcurrentBitArray(NUM_BITS);
+		ConcurrentBitArray second = new ConcurrentBitArray(NUM_BITS);
+		
+		for(int index = 0; index < NUM_BITS; index += 3) {
+			first.setBit(index);
+		}
+		for(int index = 0; index < NUM_BITS; index += 5) {
+			second.setBit(index);
+		}
+		
+		ConcurrentBitArray union = new ConcurrentBitArray(NUM_BITS);
+		union.or(first);
+		union.or(second);
+		
+		first.and(second);
+		for(int index = 0; index < NUM_BITS; index++) {
+			Assert.assertEquals(index % 3 == 0 || index % 5 == 0, union.getBit(index));
+			Assert.assertEquals(index % 15 == 0, first.getBit(index));
+		}
+		Assert.assertEquals((NUM_BITS + 14) / 15, first.bitCount());
+		Assert.assertEquals((NUM_BITS + 2) / 3 + (NUM_BITS + 4) / 5 - (NUM_BITS + 14) / 15, union.bitCount());
+	}
+
+}
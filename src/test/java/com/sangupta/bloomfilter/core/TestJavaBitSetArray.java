@@ -22,6 +22,7 @@
 package com.sangupta.bloomfilter.core;
 
 import java.io.IOException;
+import java.util.BitSet;
 
 import junit.framework.Assert;
 
@@ -59,5 +60,39 @@ public class TestJavaBitSetArray {
 			}
 		}
 	}
+	
+	@Test
+	public void testWords() {
+		// a partial last word
+		JavaBitSetArray bits = new JavaBitSetArray(MILLION + 10);
+		int numWords = (MILLION + 10 + 63) / 64;
+		
+		long[] words = new long[numWords];
+		for(int index = 0; index < numWords; index++) {
+			words[index] = index * 0x9E3779B97F4A7C15L;
+		}
+		
+		// or in two ranges, at different offsets
+		bits.orWords(0, words, 0, 100);
+		bits.orWords(100, words, 100, numWords - 100);
+		
+		// bits past the end are never set
+		BitSet expected = BitSet.valueOf(words);
+		expected.clear(MILLION + 10, numWords * 64);
+		Assert.assertEquals(expected.cardinality(), bits.bitCount());
+		
+		long[] read = new long[numWords - 7];
+		bits.getWords(7, read, 0, read.length);
+		Assert.assertEquals(expected.get(7 * 64, numWords * 64), BitSet.valueOf(read));
+		
+		// and-ing with zeros clears the range
+		long[] zeros = new long[10];
+		bits.andWords(50, zeros, 0, zeros.length);
+		expected.clear(50 * 64, 60 * 64);
+		Assert.assertEquals(expected.cardinality(), bits.bitCount());
+		for(int index = expected.nextSetBit(0); index >= 0; index = expected.nextSetBit(index + 1)) {
+			Assert.assertTrue(bits.getBit(index));
+		}
+	}
 
 }
\ No newline at end of file
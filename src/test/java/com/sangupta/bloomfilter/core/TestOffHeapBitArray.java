@@ -0,0 +1,148 @@
+/**
+ *
+ * bloomfilter - Bloom filters for Java
+ * Copyright (c) 2014-2015, Sandeep Gupta
+ * 
+ * http://sangupta.com/projects/bloomfilter
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+
+
+package com.sangupta.bloomfilter.core;
+
+import java.io.IOException;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+/**
+ * JUnit tests for {@link OffHeapBitArray}
+ * 
+ * @author sangupta
+ *
+ */
+public class TestOffHeapBitArray {
+	
+	private static final int NUM_BITS = (1 << 20) + 13;
+	
+	@Test
+	public void testSetClear() throws IOException {
+		OffHeapBitArray bits = new OffHeapBitArray(NUM_BITS);
+		try {
+			Assert.assertEquals(NUM_BITS, bits.bitSize());
+			
+			for(int index = 0; index < NUM_BITS; index += 7) {
+				Assert.assertTrue(bits.setBit(index));
+				Assert.assertFalse(bits.setBit(index));
+			}
+			
+			for(int index = 0; index < NUM_BITS; index++) {
+				Assert.assertEquals(index % 7 == 0, bits.getBit(index));
+			}
+			
+			bits.clearBit(7);
+			Assert.assertFalse(bits.getBit(7));
+			Assert.assertTrue(bits.getBit(14));
+			
+			bits.clear();
+			for(int index = 0; index < NUM_BITS; index++) {
+				Assert.assertFalse(bits.getBit(index));
+			}
+		} finally {
+			bits.close();
+		}
+	}
+	
+	@Test
+	public void testAligned() throws IOException {
+		OffHeapBitArray bits = new OffHeapBitArray(NUM_BITS, 2 * 1024 * 1024);
+		try {
+			bits.setBit(0);
+			bits.setBit(NUM_BITS - 1);
+			
+			Assert.assertTrue(bits.getBit(0));
+			Assert.assertTrue(bits.getBit(NUM_BITS - 1));
+			Assert.assertFalse(bits.getBit(NUM_BITS - 2));
+		} finally {
+			bits.close();
+		}
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidAlignment() {
+		new OffHeapBitArray(NUM_BITS, 100);
+	}
+	
+	@Test(expected = IndexOutOfBoundsException.class)
+	public void testOutOfBounds() throws IOException {
+		OffHeapBitArray bits = new OffHeapBitArray(NUM_BITS);
+		try {
+			bits.getBit(NUM_BITS);
+		} finally {
+			bits.close();
+		}
+	}
+	
+	@Test
+	public void testClose() throws IOException {
+		OffHeapBitArray bits = new OffHeapBitArray(NUM_BITS);
+		bits.setBit(1);
+		bits.close();
+		
+		// closing twice is harmless
+		bits.close();
+		
+		try {
+			bits.getBit(1);
+			Assert.fail("Closed array must not be readable");
+		} catch(IllegalStateException e) {
+			// expected
+		}
+	}
+	
+	@Test
+	public void testOrAnd() throws IOException {
+		OffHeapBitArray first = new OffHeapBitArray(NUM_BITS);
+		OffHeapBitArray second = new OffHeapBitArray(NUM_BITS);
+		OffHeapBitArray union = new OffHeapBitArray(NUM_BITS);
+		JavaBitSetArray other = new JavaBitSetArray(NUM_BITS);
+		
+		try {
+			for(int index = 0; index < NUM_BITS; index += 3) {
+				first.setBit(index);
+			}
+			for(int index = 0; index < NUM_BITS; index += 5) {
+				second.setBit(index);
+				other.setBit(index);
+			}
+			
+			union.or(first);
+			union.or(other);
+			
+			first.and(second);
+			for(int index = 0; index < NUM_BITS; index++) {
+				Assert.assertEquals(index % 3 == 0 || index % 5 == 0, union.getBit(index));
+				Assert.assertEquals(index % 15 == 0, first.getBit(index));
+			}
+		} finally {
+			first.close();
+			second.close();
+			union.close();
+		}
+	}
+
+}
@@ -0,0 +1,95 @@
+/**
+ *
+ * bloomfilter - Bloom filters for Java
+ * Copyright (c) 2014-2015, Sandeep Gupta
+ * 
+ * http://sangupta.com/projects/bloomfilter
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+
+package com.sangupta.bloomfilter.core;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+/**
+ * JUnit tests for {@link PackedCounterArray}
+ * 
+ * @author sangupta
+ *
+ */
+public class TestPackedCounterArray {
+	
+	private static final int NUM_COUNTERS = 10 * 1000 + 7;
+	
+	@Test
+	public void testIncrementDecrement() {
+		for(int bits = 2; bits <= 32; bits <<= 1) {
+			PackedCounterArray counters = new PackedCounterArray(NUM_COUNTERS, bits);
+			Assert.assertEquals(NUM_COUNTERS, counters.size());
+			Assert.assertEquals((1L << bits) - 1, counters.getMaxValue());
+			
+			for(int index = 0; index < NUM_COUNTERS; index += 3) {
+				Assert.assertEquals(1, counters.increment(index));
+			}
+			
+			// neighbours must not be disturbed
+			for(int index = 0; index < NUM_COUNTERS; index++) {
+				Assert.assertEquals(index % 3 == 0 ? 1 : 0, counters.get(index));
+			}
+			
+			for(int index = 0; index < NUM_COUNTERS; index += 3) {
+				Assert.assertEquals(0, counters.decrement(index));
+				Assert.assertEquals(0, counters.decrement(index));
+			}
+			
+			for(int index = 0; index < NUM_COUNTERS; index++) {
+				Assert.assertEquals(0, counters.get(index));
+			}
+		}
+	}
+	
+	@Test
+	public void testSaturation() {
+		PackedCounterArray counters = new PackedCounterArray(NUM_COUNTERS, 4);
+		for(int count = 1; count <= 20; count++) {
+			Assert.assertEquals(Math.min(count, 15), counters.increment(5));
+		}
+		
+		// saturated counters stay put
+		Assert.assertEquals(15, counters.decrement(5));
+		Assert.assertEquals(0, counters.get(4));
+		Assert.assertEquals(0, counters.get(6));
+		
+		counters.set(5, 3);
+		Assert.assertEquals(2, counters.decrement(5));
+		
+		counters.clear();
+		Assert.assertEquals(0, counters.get(5));
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidWidth() {
+		new PackedCounterArray(NUM_COUNTERS, 3);
+	}
+	
+	@Test(expected = IndexOutOfBoundsException.class)
+	public void testOutOfRange() {
+		new PackedCounterArray(NUM_COUNTERS, 4).get(NUM_COUNTERS);
+	}
+
+}
@@ -0,0 +1,125 @@
+/**
+ *
+ * bloomfilter - Bloom filters for Java
+ * Copyright (c) 2014-2015, Sandeep Gupta
+ * 
+ * http://sangupta.com/projects/bloomfilter
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+
+
+package com.sangupta.bloomfilter.decompose;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+/**
+ * JUnit tests for {@link ByteSink}
+ * 
+ * @author sangupta
+ *
+ */
+public class TestByteSink {
+	
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+	
+	@Test
+	public void testSameAsDataOutputStream() throws IOException {
+		ByteArrayOutputStream stream = new ByteArrayOutputStream();
+		DataOutputStream data = new DataOutputStream(stream);
+		data.writeByte(-3);
+		data.write(new byte[] { 1, 2, 3, 4, 5 }, 1, 3);
+		data.writeChar('€');
+		data.writeShort(-12345);
+		data.writeInt(0xCAFEBABE);
+		data.writeLong(0x0123456789ABCDEFL);
+		data.writeFloat(3.14f);
+		data.writeDouble(-2.718);
+		data.writeBoolean(true);
+		data.writeBoolean(false);
+		data.writeBytes("hello €");
+		
+		// start small so that the sink has to grow
+		ByteSink sink = new ByteSink(1);
+		sink.putByte((byte) -3)
+			.putBytes(new byte[] { 1, 2, 3, 4, 5 }, 1, 3)
+			.putChar('€')
+			.putShort((short) -12345)
+			.putInt(0xCAFEBABE)
+			.putLong(0x0123456789ABCDEFL)
+			.putFloat(3.14f)
+			.putDouble(-2.718)
+			.putBoolean(true)
+			.putBoolean(false)
+			.putChars("hello €");
+		
+		Assert.assertTrue(Arrays.equals(stream.toByteArray(), sink.getByteArray()));
+	}
+	
+	@Test
+	public void testUTF8() {
+		String[] values = new String[] {
+			"",
+			"plain ascii",
+			"café € ￿",
+			"pair 😀 end",
+			"lone high \ud83d",
+			"lone low \ude00 x",
+			"reversed \ude00\ud83d"
+		};
+		
+		ByteSink sink = new ByteSink();
+		for(String value : values) {
+			sink.reset();
+			sink.putString(value, UTF_8);
+			
+			byte[] expected = value.getBytes(UTF_8);
+			Assert.assertEquals(expected.length, sink.size());
+			Assert.assertTrue(Arrays.equals(expected, Arrays.copyOf(sink.getBuffer(), sink.size())));
+		}
+	}
+	
+	@Test
+	public void testOtherCharset() {
+		Charset utf16 = Charset.forName("UTF-16BE");
+		ByteSink sink = new ByteSink();
+		sink.putString("café", utf16);
+		
+		Assert.assertTrue(Arrays.equals("café".getBytes(utf16), sink.getByteArray()));
+	}
+	
+	@Test
+	public void testReset() {
+		ByteSink sink = new ByteSink();
+		sink.putLong(1);
+		byte[] buffer = sink.getBuffer();
+		
+		sink.reset();
+		Assert.assertEquals(0, sink.size());
+		
+		sink.putInt(7);
+		Assert.assertSame(buffer, sink.getBuffer());
+		Assert.assertTrue(Arrays.equals(new byte[] { 0, 0, 0, 7 }, sink.getByteArray()));
+	}
+
+}
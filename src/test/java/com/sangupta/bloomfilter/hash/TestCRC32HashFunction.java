@@ -0,0 +1,65 @@
+/**
+ *
+ * bloomfilter - Bloom filters for Java
+ * Copyright (c) 2014-2015, Sandeep Gupta
+ * 
+ * http://sangupta.com/projects/bloomfilter
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+
+
+package com.sangupta.bloomfilter.hash;
+
+import java.nio.charset.Charset;
+import java.util.zip.CRC32;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+/**
+ * JUnit tests for {@link CRC32HashFunction}
+ * 
+ * @author sangupta
+ *
+ */
+public class TestCRC32HashFunction {
+	
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+	
+	@Test
+	public void testSlice() {
+		CRC32HashFunction hasher = new CRC32HashFunction();
+		byte[] bytes = "Nobody inspects the spammish repetition".getBytes(UTF_8);
+		
+		CRC32 crc32 = new CRC32();
+		crc32.update(bytes, 7, 8);
+		
+		Assert.assertEquals(crc32.getValue(), hasher.hash64(bytes, 7, 8));
+		
+		// the reused checksum must be reset between calls
+		Assert.assertEquals(crc32.getValue(), hasher.hash64(bytes, 7, 8));
+		
+		long[] result = new long[1];
+		Assert.assertEquals(1, hasher.hashMultiple(bytes, 7, 8, result));
+		Assert.assertEquals(crc32.getValue(), result[0]);
+		
+		crc32.reset();
+		crc32.update(bytes);
+		Assert.assertEquals(crc32.getValue(), hasher.hash(bytes));
+	}
+
+}
@@ -0,0 +1,193 @@
+/**
+ *
+ * bloomfilter - Bloom filters for Java
+ * Copyright (c) 2014-2015, Sandeep Gupta
+ * 
+ * http://sangupta.com/projects/bloomfilter
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+
+
+package com.sangupta.bloomfilter.hash;
+
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Random;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+import com.sangupta.bloomfilter.decompose.ByteSink;
+
+/**
+ * JUnit tests for {@link HashingSink}
+ * 
+ * @author sangupta
+ *
+ */
+public class TestHashingSink {
+	
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+	
+	@Test
+	public void testSameAsByteArray() {
+		Murmur3HashFunction hasher = new Murmur3HashFunction();
+		HashingSink hashing = hasher.newHashingSink();
+		Random random = new Random(42);
+		
+		for(int round = 0; round < 500; round++) {
+			ByteSink bytes = new ByteSink();
+			hashing.reset();
+			
+			// the same random sequence of writes to both sinks
+			int writes = random.nextInt(40);
+			for(int write = 0; write < writes; write++) {
+				apply(random, bytes, hashing);
+			}
+			
+			long[] expected = hasher.hashMultiple(bytes.getByteArray());
+			long[] actual = new long[2];
+			hashing.hash128(actual);
+			
+			Assert.assertEquals(bytes.size(), hashing.size());
+			Assert.assertTrue(Arrays.equals(expected, actual));
+			Assert.assertEquals(expected[0], hashing.hash64());
+		}
+	}
+	
+	@Test
+	public void testEmpty() {
+		Murmur3HashFunction hasher = new Murmur3HashFunction();
+		Assert.assertEquals(hasher.hash64(new byte[0], 0, 0), hasher.newHashingSink().hash64());
+	}
+	
+	@Test
+	public void testLongStrings() {
+		Murmur3HashFunction hasher = new Murmur3HashFunction();
+		StagingSink sink = new StagingSink(hasher.getSeed());
+		
+		// one, two, three and four byte characters, and an unpaired surrogate
+		StringBuilder builder = new StringBuilder();
+		Random random = new Random(42);
+		while(builder.length() < 20000) {
+			switch(random.nextInt(5)) {
+				case 0:
+					builder.append((char) ('a' + random.nextInt(26)));
+					break;
+					
+				case 1:
+					builder.append((char) (0x80 + random.nextInt(0x780)));
+					break;
+					
+				case 2:
+					builder.append((char) (0x800 + random.nextInt(0x7000)));
+					break;
+					
+				case 3:
+					builder.appendCodePoint(0x10000 + random.nextInt(0x10000));
+					break;
+					
+				default:
+					builder.append('\uD800');
+					break;
+			}
+		}
+		String value = builder.toString();
+		
+		for(Charset charset : new Charset[] { UTF_8, Charset.forName("UTF-16"), Charset.forName("ISO-8859-1") }) {
+			byte[] encoded = value.getBytes(charset);
+			sink.reset().putString(value, charset);
+			Assert.assertEquals(charset.name(), hasher.hash64(encoded, 0, encoded.length), sink.hash64());
+			
+			// the staging buffer never grows
+			Assert.assertEquals(64, sink.capacity());
+		}
+		
+		sink.reset().putChars(value);
+		byte[] bytes = new ByteSink().putChars(value).getByteArray();
+		Assert.assertEquals(hasher.hash64(bytes, 0, bytes.length), sink.hash64());
+		Assert.assertEquals(64, sink.capacity());
+	}
+	
+	@Test(expected = UnsupportedOperationException.class)
+	public void testNoBuffer() {
+		new Murmur3HashFunction().newHashingSink().getByteArray();
+	}
+	
+	private void apply(Random random, ByteSink first, ByteSink second) {
+		switch(random.nextInt(6)) {
+			case 0:
+				byte b = (byte) random.nextInt();
+				first.putByte(b);
+				second.putByte(b);
+				break;
+				
+			case 1:
+				int i = random.nextInt();
+				first.putInt(i);
+				second.putInt(i);
+				break;
+				
+			case 2:
+				long l = random.nextLong();
+				first.putLong(l);
+				second.putLong(l);
+				break;
+				
+			case 3:
+				double d = random.nextDouble();
+				first.putDouble(d);
+				second.putDouble(d);
+				break;
+				
+			case 4:
+				// small and larger than the staging buffer
+				byte[] bytes = new byte[random.nextBoolean() ? random.nextInt(20) : random.nextInt(300)];
+				random.nextBytes(bytes);
+				int offset = bytes.length == 0 ? 0 : random.nextInt(bytes.length);
+				first.putBytes(bytes, offset, bytes.length - offset);
+				second.putBytes(bytes, offset, bytes.length - offset);
+				break;
+				
+			default:
+				char[] chars = new char[random.nextInt(100)];
+				for(int index = 0; index < chars.length; index++) {
+					chars[index] = (char) (random.nextBoolean() ? 'a' + random.nextInt(26) : random.nextInt(0x3000));
+				}
+				String string = new String(chars);
+				first.putString(string, UTF_8);
+				second.putString(string, UTF_8);
+				break;
+		}
+	}
+	
+	/**
+	 * A {@link HashingSink} that tells the size of its staging buffer
+	 */
+	private static class StagingSink extends HashingSink {
+		
+		public StagingSink(long seed) {
+			super(seed);
+		}
+		
+		public int capacity() {
+			return this.buffer.length;
+		}
+		
+	}
+
+}
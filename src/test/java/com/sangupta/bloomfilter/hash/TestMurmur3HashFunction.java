@@ -0,0 +1,85 @@
+/**
+ *
+ * bloomfilter - Bloom filters for Java
+ * Copyright (c) 2014-2015, Sandeep Gupta
+ * 
+ * http://sangupta.com/projects/bloomfilter
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+
+
+package com.sangupta.bloomfilter.hash;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+import com.sangupta.murmur.Murmur3;
+
+/**
+ * JUnit tests for {@link Murmur3HashFunction}
+ * 
+ * @author sangupta
+ *
+ */
+public class TestMurmur3HashFunction {
+	
+	private static final long SEED = 0x7f3a21eal;
+	
+	@Test
+	public void testSameAsLibrary() {
+		Murmur3HashFunction hasher = new Murmur3HashFunction();
+		Random random = new Random(42);
+		
+		// cover every tail length, and a few blocks of 16 bytes
+		for(int length = 0; length < 100; length++) {
+			byte[] bytes = new byte[length];
+			random.nextBytes(bytes);
+			
+			// the library overwrites the start of the array, so hash a copy
+			long[] expected = Murmur3.hash_x64_128(Arrays.copyOf(bytes, length), 0, SEED);
+			
+			Assert.assertTrue(Arrays.equals(expected, hasher.hashMultiple(bytes)));
+			Assert.assertEquals(expected[0], hasher.hash64(bytes, 0, length));
+		}
+	}
+	
+	@Test
+	public void testSlice() {
+		Murmur3HashFunction hasher = new Murmur3HashFunction();
+		Random random = new Random(42);
+		
+		byte[] bytes = new byte[37];
+		random.nextBytes(bytes);
+		
+		byte[] padded = new byte[bytes.length + 10];
+		random.nextBytes(padded);
+		System.arraycopy(bytes, 0, padded, 3, bytes.length);
+		byte[] original = padded.clone();
+		
+		long[] result = new long[2];
+		Assert.assertEquals(2, hasher.hashMultiple(padded, 3, bytes.length, result));
+		Assert.assertTrue(Arrays.equals(hasher.hashMultiple(bytes), result));
+		Assert.assertEquals(result[0], hasher.hash64(padded, 3, bytes.length));
+		
+		// the input must not be modified
+		Assert.assertTrue(Arrays.equals(original, padded));
+	}
+
+}
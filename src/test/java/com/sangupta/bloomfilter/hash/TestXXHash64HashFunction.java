@@ -0,0 +1,61 @@
+/**
+ *
+ * bloomfilter - Bloom filters for Java
+ * Copyright (c) 2014-2015, Sandeep Gupta
+ * 
+ * http://sangupta.com/projects/bloomfilter
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+
+package com.sangupta.bloomfilter.hash;
+
+import java.nio.charset.Charset;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+/**
+ * JUnit tests for {@link XXHash64HashFunction}
+ * 
+ * @author sangupta
+ *
+ */
+public class TestXXHash64HashFunction {
+	
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+	
+	@Test
+	public void testKnownValues() {
+		XXHash64HashFunction hasher = new XXHash64HashFunction();
+		
+		Assert.assertEquals(0xEF46DB3751D8E999L, hasher.hash(new byte[0]));
+		Assert.assertEquals(0x44BC2CF5AD770999L, hasher.hash("abc".getBytes(UTF_8)));
+		
+		// longer than one stripe of 32 bytes
+		Assert.assertEquals(0xFBCEA83C8A378BF1L, hasher.hash("Nobody inspects the spammish repetition".getBytes(UTF_8)));
+	}
+	
+	@Test
+	public void testOffset() {
+		byte[] bytes = "Nobody inspects the spammish repetition".getBytes(UTF_8);
+		byte[] padded = new byte[bytes.length + 10];
+		System.arraycopy(bytes, 0, padded, 3, bytes.length);
+		
+		Assert.assertEquals(XXHash64HashFunction.hash(bytes, 0, bytes.length, 0), XXHash64HashFunction.hash(padded, 3, bytes.length, 0));
+	}
+
+}